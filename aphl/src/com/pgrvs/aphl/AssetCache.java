@@ -0,0 +1,246 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.TreeMap;
+
+import com.pgrvs.aphl.util.CompressionType;
+import com.pgrvs.aphl.util.CompressionUtil;
+
+/**
+ * <p>This class holds decompressed assets (e.g. pixel and palette data) of a ROM, so that data shared by many
+ * objects is only decompressed once. Each ROM has a cache available through {@link GbaRom#getAssetCache()}.</p>
+ * 
+ * <p>Assets are keyed by their address and compression type. The cache holds a limited amount of decompressed
+ * bytes, and drops the least recently used assets once that limit is passed. Any write to the ROM that touches
+ * the compressed bytes of an asset drops that asset, so the cache never returns stale data.</p>
+ * 
+ * <p>The cache is safe to share between threads. Decompression happens outside of any lock, so threads loading
+ * different assets do not wait on each other.</p>
+ * 
+ * @author Phillip Groves
+ * 
+ */
+public class AssetCache implements RomWriteListener {
+	
+	/** The amount of decompressed bytes held by default (16 MB) */
+	public static final long DEFAULT_MAX_BYTES = 16L << 20;
+	
+	/** Rough amount of bytes used by each entry besides its data */
+	private static final int ENTRY_OVERHEAD = 64;
+	
+	private final GbaRom rom;
+	
+	/** Entries by key, in order of least to most recently used */
+	private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<Long, Entry>(16, 0.75f, true);
+	
+	/** Entries by key, sorted by address for finding those touched by a write */
+	private final TreeMap<Long, Entry> byAddress = new TreeMap<Long, Entry>();
+	
+	/** The maximum amount of bytes to hold */
+	private long maxBytes;
+	
+	/** The amount of bytes held */
+	private long bytes;
+	
+	/** The largest compressed length of any entry added, which bounds how far back a write may reach */
+	private int maxCompressedLength;
+	
+	/** Counts writes, so that data decompressed during a write is not cached */
+	private long writes;
+	
+	/**
+	 * 
+	 * @param rom
+	 * @param maxBytes The maximum amount of decompressed bytes to hold
+	 */
+	public AssetCache(GbaRom rom, long maxBytes) {
+		this.rom = rom;
+		this.maxBytes = maxBytes;
+	}
+	
+	/**
+	 * <p>Returns the decompressed data at the given address, decompressing it if it is not held.</p>
+	 * 
+	 * <p>While a transaction is open on the ROM, data that is not held is decompressed from a copy that includes 
+	 * the pending writes (see {@link CompressionUtil#copy(GbaRom, int)}) and is not cached. Held assets are still 
+	 * returned, as every pending write drops the assets it touches.</p>
+	 * 
+	 * <p>Note: The returned array is shared with every other caller, and must not be modified.</p>
+	 * 
+	 * @param address Address of the compressed data
+	 * @return Decompressed data
+	 */
+	public byte[] get(int address) {
+		// the type and the data are read from the same source, so they never disagree
+		boolean pending = rom.getTransaction() != null;
+		ByteBuffer source = pending ? CompressionUtil.copy(rom, address) : rom.getByteView();
+		int start = pending ? 0 : address;
+		CompressionType type = CompressionUtil.getType(source, start);
+		if (type == null)
+			throw new IllegalStateException("Unknown compression type: " + (source.get(start) & 0xFF));
+		
+		long key = key(address, type.value());
+		long writes;
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (entry != null)
+				return entry.data;
+			writes = this.writes;
+		}
+		
+		byte[] data = new byte[CompressionUtil.getDecompLength(source, start)];
+		int length = CompressionUtil.decompress(source, start, data, 0);
+		
+		synchronized (this) {
+			if (!pending && writes == this.writes && !entries.containsKey(key))
+				add(key, new Entry(key, address, length, data));
+		}
+		return data;
+	}
+	
+	/**
+	 * 
+	 * @param maxBytes The maximum amount of decompressed bytes to hold
+	 */
+	public synchronized void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		evict();
+	}
+	
+	/**
+	 * 
+	 * @return The maximum amount of decompressed bytes to hold
+	 */
+	public synchronized long getMaxBytes() {
+		return maxBytes;
+	}
+	
+	/**
+	 * 
+	 * @return The amount of bytes held, including a rough overhead for each asset
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+	
+	/**
+	 * 
+	 * @return The amount of assets held
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+	
+	/**
+	 * Drops every held asset.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		byAddress.clear();
+		bytes = 0;
+	}
+	
+	@Override
+	public synchronized void written(int address, int length) {
+		writes++;
+		if (entries.isEmpty())
+			return;
+		
+		long from = key(Math.max(0, address - maxCompressedLength), 0);
+		long to = key(address + length, 0);
+		for (Iterator<Entry> i = byAddress.subMap(from, to).values().iterator(); i.hasNext(); ) {
+			Entry entry = i.next();
+			if (entry.address + entry.length > address) {
+				i.remove();
+				entries.remove(entry.key);
+				bytes -= entry.size();
+			}
+		}
+	}
+	
+	/**
+	 * Adds an entry, and then drops the least recently used entries until the limit is met.
+	 * 
+	 * @param key Key of the entry
+	 * @param entry The entry to add
+	 */
+	private void add(long key, Entry entry) {
+		entries.put(key, entry);
+		byAddress.put(key, entry);
+		bytes += entry.size();
+		maxCompressedLength = Math.max(maxCompressedLength, entry.length);
+		evict();
+	}
+	
+	/**
+	 * Drops the least recently used entries until the limit is met.
+	 */
+	private void evict() {
+		for (Iterator<Entry> i = entries.values().iterator(); bytes > maxBytes && i.hasNext(); ) {
+			Entry entry = i.next();
+			i.remove();
+			byAddress.remove(entry.key);
+			bytes -= entry.size();
+		}
+	}
+	
+	/**
+	 * 
+	 * @param address Address of the compressed data
+	 * @param type Compression type (header byte) of the data
+	 * @return Key ordered by address, then by type
+	 */
+	private static long key(int address, int type) {
+		return ((long) address << 8) | type;
+	}
+	
+	/**
+	 * A held asset and the range of compressed bytes it was read from.
+	 */
+	private static class Entry {
+		
+		private final long key;
+		private final int address;
+		
+		/** The amount of compressed bytes */
+		private final int length;
+		
+		private final byte[] data;
+		
+		private Entry(long key, int address, int length, byte[] data) {
+			this.key = key;
+			this.address = address;
+			this.length = length;
+			this.data = data;
+		}
+		
+		private long size() {
+			return data.length + ENTRY_OVERHEAD;
+		}
+	}
+}
@@ -0,0 +1,430 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <p>This class finds room for data that has to be moved, such as a graphic that grew after being compressed 
+ * again or a longer string table. Free space is any run of a single filler byte (0xFF by default) of at least a 
+ * minimum length.</p>
+ * 
+ * <p>The ROM is scanned once on creation, in parallel chunks on a {@link ForkJoinPool}, and each free run is then 
+ * kept both by address and by size. Allocating takes the smallest run that fits the requested size and alignment, 
+ * and freeing fills a range with the filler byte and joins it with its neighbouring runs, so relocating many 
+ * assets never scans the ROM again.</p>
+ * 
+ * <p>Allocators register themselves with their ROM, and any write that touches a free run removes the written 
+ * bytes from it. Writes never add free space, even when they write the filler byte, as data may contain it; call 
+ * {@link #free(int, int)} instead. Call {@link #release()} when an allocator is no longer needed.</p>
+ * 
+ * <p>Space freed while a transaction is open (see {@link GbaRom#beginTransaction()}) is held back until the 
+ * transaction is committed, as the filler is only written then, and is dropped if it is rolled back.</p>
+ * 
+ * @author Phillip Groves
+ * 
+ */
+public class FreeSpaceAllocator implements RomWriteListener {
+	
+	/** The shortest run of filler bytes treated as free by default */
+	public static final int DEFAULT_MIN_LENGTH = 16;
+	
+	/** The amount of bytes scanned by a single task */
+	private static final int CHUNK_SIZE = 1 << 18;
+	
+	private final GbaRom rom;
+	
+	/** The byte that fills free space */
+	private final int filler;
+	
+	/** The shortest run of filler bytes found by the scan */
+	private final int minLength;
+	
+	/** End address (exclusive) of each free run by start address, where runs never overlap or touch */
+	private final TreeMap<Integer, Integer> runs = new TreeMap<Integer, Integer>();
+	
+	/** Each free run keyed by length and then start address (see {@link #key(int, int)}) */
+	private final TreeSet<Long> bySize = new TreeSet<Long>();
+	
+	/** The amount of free bytes */
+	private long freeBytes;
+	
+	/** End address (exclusive) of each run freed within {@link #pendingTransaction} by start address */
+	private final TreeMap<Integer, Integer> pending = new TreeMap<Integer, Integer>();
+	
+	/** The transaction that the pending runs were freed within, or null if there are none */
+	private GbaRomTransaction pendingTransaction;
+	
+	/**
+	 * Scans for runs of 0xFF of at least {@link #DEFAULT_MIN_LENGTH} bytes.
+	 * 
+	 * @param rom The ROM to allocate from
+	 */
+	public FreeSpaceAllocator(GbaRom rom) {
+		this (rom, 0xFF, DEFAULT_MIN_LENGTH);
+	}
+	
+	/**
+	 * 
+	 * @param rom The ROM to allocate from
+	 * @param filler The byte that fills free space, usually 0xFF or 0x00
+	 * @param minLength The shortest run of filler bytes to treat as free
+	 */
+	public FreeSpaceAllocator(GbaRom rom, int filler, int minLength) {
+		this.rom = rom;
+		this.filler = filler & 0xFF;
+		this.minLength = Math.max(1, minLength);
+		
+		ByteBuffer source = rom.getByteView();
+		int[] found = ForkJoinPool.commonPool().invoke(new ScanTask(source, 0, source.limit())).toArray();
+		for (int i = 0; i < found.length; i += 2) {
+			// join runs split by the edge of a chunk before checking their length
+			int start = found[i], end = found[i + 1];
+			while (i + 2 < found.length && found[i + 2] == end) {
+				end = found[i + 3];
+				i += 2;
+			}
+			if (end - start >= this.minLength)
+				add(start, end);
+		}
+		rom.addWriteListener(this);
+	}
+	
+	/**
+	 * Reserves free space of the given size aligned to 4 bytes.
+	 * 
+	 * @param size The amount of bytes needed
+	 * @return Address of the reserved space, or -1 if no free run is large enough
+	 */
+	public int allocate(int size) {
+		return allocate(size, 4);
+	}
+	
+	/**
+	 * Reserves free space of the given size, taking it from the smallest free run that fits. The space is only 
+	 * reserved, and should be written by the caller.
+	 * 
+	 * @param size The amount of bytes needed
+	 * @param align The alignment of the address returned (e.g. 4 for data read as 32-bit values)
+	 * @return Address of the reserved space, or -1 if no free run is large enough
+	 */
+	public synchronized int allocate(int size, int align) {
+		if (size <= 0 || align <= 0)
+			throw new IllegalStateException("Allocation size and alignment must be positive!");
+		
+		// runs are sorted by length, so any run at least size + align - 1 long fits and ends the search
+		for (Long key : bySize.tailSet(key(size, 0))) {
+			int start = (int) (key & 0xFFFFFFFFL);
+			int end = runs.get(start);
+			int address = (int) (((long) start + align - 1) / align * align);
+			if (address + size <= end) {
+				remove(start, end);
+				if (start < address)
+					add(start, address);
+				if (address + size < end)
+					add(address + size, end);
+				return address;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Fills the given range with the filler byte, and adds it to the free space along with any free run it touches. 
+	 * If a transaction is open, the range is only added once it is committed.
+	 * 
+	 * @param address The first address to free
+	 * @param length The amount of bytes to free
+	 */
+	public synchronized void free(int address, int length) {
+		if (length <= 0)
+			return;
+		byte[] fill = new byte[length];
+		Arrays.fill(fill, (byte) filler);
+		GbaRomTransaction transaction = rom.getTransaction();
+		rom.putBytes(address, fill); // removes any overlap from the free and pending runs
+		
+		if (transaction == null) {
+			join(address, address + length);
+			return;
+		}
+		if (transaction != pendingTransaction) {
+			// runs left by a transaction that was rolled back
+			pending.clear();
+			pendingTransaction = transaction;
+			transaction.afterCommit(new Runnable() {
+				@Override
+				public void run() {
+					commitPending();
+				}
+			});
+		}
+		pending.put(address, address + length);
+	}
+	
+	/**
+	 * 
+	 * @param address The first address
+	 * @param length The amount of bytes
+	 * @return Whether the whole range is free
+	 */
+	public synchronized boolean isFree(int address, int length) {
+		Map.Entry<Integer, Integer> run = runs.floorEntry(address);
+		return run != null && run.getValue() >= address + length;
+	}
+	
+	/**
+	 * 
+	 * @return End address (exclusive) of each free run by start address
+	 */
+	public synchronized NavigableMap<Integer, Integer> getRuns() {
+		return Collections.unmodifiableNavigableMap(new TreeMap<Integer, Integer>(runs));
+	}
+	
+	/**
+	 * 
+	 * @return The amount of free bytes
+	 */
+	public synchronized long getFreeBytes() {
+		return freeBytes;
+	}
+	
+	/**
+	 * 
+	 * @return The length of the largest free run, or 0 if there is no free space
+	 */
+	public synchronized int getLargestRun() {
+		return bySize.isEmpty() ? 0 : (int) (bySize.last() >>> 32);
+	}
+	
+	/**
+	 * 
+	 * @return The byte that fills free space
+	 */
+	public int getFiller() {
+		return filler;
+	}
+	
+	/**
+	 * Stops this allocator from listening to writes on its ROM. The allocator should not be used afterwards.
+	 */
+	public void release() {
+		rom.removeWriteListener(this);
+	}
+	
+	@Override
+	public synchronized void written(int address, int length) {
+		int end = address + length;
+		if (pendingTransaction != null && !pendingTransaction.isClosed())
+			trim(pending, address, end); // later writes within the transaction, rather than it being applied
+		
+		Map.Entry<Integer, Integer> lower = runs.floorEntry(address);
+		Integer from = lower != null && lower.getValue() > address ? lower.getKey() : runs.higherKey(address);
+		if (from == null || from >= end)
+			return;
+		
+		List<int[]> touched = new ArrayList<int[]>();
+		for (Map.Entry<Integer, Integer> run : runs.subMap(from, true, end, false).entrySet())
+			touched.add(new int[] { run.getKey(), run.getValue() });
+		for (int[] run : touched) {
+			remove(run[0], run[1]);
+			if (run[0] < address)
+				add(run[0], address);
+			if (end < run[1])
+				add(end, run[1]);
+		}
+	}
+	
+	/**
+	 * Adds the runs freed within the pending transaction, which has just been committed.
+	 */
+	private synchronized void commitPending() {
+		for (Map.Entry<Integer, Integer> run : pending.entrySet())
+			join(run.getKey(), run.getValue());
+		pending.clear();
+		pendingTransaction = null;
+	}
+	
+	/**
+	 * Adds the given range to the free space, joining it with any free run it touches.
+	 * 
+	 * @param start The first address of the range
+	 * @param end The address after the range
+	 */
+	private void join(int start, int end) {
+		Map.Entry<Integer, Integer> lower = runs.floorEntry(start);
+		if (lower != null && lower.getValue() == start) {
+			start = lower.getKey();
+			remove(lower.getKey(), lower.getValue());
+		}
+		Integer higher = runs.get(end);
+		if (higher != null) {
+			remove(end, higher);
+			end = higher;
+		}
+		add(start, end);
+	}
+	
+	/**
+	 * 
+	 * @param start The first address of the run
+	 * @param end The address after the run
+	 */
+	private void add(int start, int end) {
+		runs.put(start, end);
+		bySize.add(key(end - start, start));
+		freeBytes += end - start;
+	}
+	
+	/**
+	 * 
+	 * @param start The first address of the run
+	 * @param end The address after the run
+	 */
+	private void remove(int start, int end) {
+		runs.remove(start);
+		bySize.remove(key(end - start, start));
+		freeBytes -= end - start;
+	}
+	
+	/**
+	 * Removes the given range from runs that are not indexed by size.
+	 * 
+	 * @param runs End address (exclusive) of each run by start address
+	 * @param start The first address to remove
+	 * @param end The address after the range to remove
+	 */
+	private static void trim(TreeMap<Integer, Integer> runs, int start, int end) {
+		Map.Entry<Integer, Integer> run = runs.lowerEntry(end);
+		while (run != null && run.getValue() > start) {
+			runs.remove(run.getKey());
+			if (end < run.getValue())
+				runs.put(end, run.getValue());
+			if (run.getKey() < start) {
+				runs.put(run.getKey(), start);
+				break;
+			}
+			run = runs.lowerEntry(run.getKey());
+		}
+	}
+	
+	/**
+	 * 
+	 * @param length The length of a run
+	 * @param start The first address of a run
+	 * @return Key ordered by length, then by address
+	 */
+	private static long key(int length, int start) {
+		return ((long) length << 32) | (start & 0xFFFFFFFFL);
+	}
+	
+	/**
+	 * Runs of filler bytes found by a scan, held as pairs of start and end addresses in address order.
+	 */
+	private static class Runs {
+		
+		private int[] values = new int[64];
+		private int size;
+		
+		private void add(int start, int end) {
+			if (size == values.length)
+				values = Arrays.copyOf(values, size * 2);
+			values[size++] = start;
+			values[size++] = end;
+		}
+		
+		private void addAll(Runs runs) {
+			if (size + runs.size > values.length)
+				values = Arrays.copyOf(values, Math.max(values.length * 2, size + runs.size));
+			System.arraycopy(runs.values, 0, values, size, runs.size);
+			size += runs.size;
+		}
+		
+		private int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+	
+	/**
+	 * A task that scans a range of the buffer for runs of filler bytes, splitting itself while the range is larger 
+	 * than a chunk. Runs that reach either edge of a chunk are kept whatever their length, so they can be joined 
+	 * with the neighbouring chunk.
+	 */
+	private class ScanTask extends RecursiveTask<Runs> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final ByteBuffer source;
+		private final int start;
+		private final int end;
+		
+		private ScanTask(ByteBuffer source, int start, int end) {
+			this.source = source;
+			this.start = start;
+			this.end = end;
+		}
+		
+		@Override
+		protected Runs compute() {
+			if (end - start > CHUNK_SIZE) {
+				int middle = start + ((end - start) >> 1);
+				ScanTask left = new ScanTask(source, start, middle);
+				left.fork();
+				Runs right = new ScanTask(source, middle, end).compute();
+				Runs runs = left.join();
+				runs.addAll(right);
+				return runs;
+			}
+			
+			Runs runs = new Runs();
+			long pattern = (filler & 0xFFL) * 0x0101010101010101L;
+			byte value = (byte) filler;
+			int address = start;
+			while (address < end) {
+				if (source.get(address) != value) {
+					address++;
+					continue;
+				}
+				int run = address++;
+				while (address + 8 <= end && source.getLong(address) == pattern)
+					address += 8;
+				while (address < end && source.get(address) == value)
+					address++;
+				if (address - run >= minLength || run == start || address == end)
+					runs.add(run, address);
+			}
+			return runs;
+		}
+	}
+}
@@ -23,16 +23,34 @@
 
 package com.pgrvs.aphl;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.channels.FileChannel.MapMode;
-import java.util.HashMap;
+import java.nio.MappedByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.pgrvs.aphl.util.PoketextCodec;
 
 /**
  * <p>This class represents the read-only memory (ROM) file associated with 3rd generation Pokemon games. These 
@@ -43,22 +61,68 @@ import java.util.Map;
  * cache your changes if needed. It is recommended that you create an object for the data you are editing, then 
  * implement the {@link Savable} interface and write your changes when required.</p>
  * 
+ * <p>Methods that take an address read and write at that absolute index, and never move the shared position of 
+ * the underlying buffer. They are safe to call from many threads on a single instance, so one mapped ROM can be 
+ * shared between readers. Methods without an address continue from the shared position (see 
+ * {@link #position(int)}), and should only be used by one thread at a time.</p>
+ * 
+ * <p>Every page ({@link #PAGE_SIZE} bytes) written is tracked until it is flushed to disk with {@link #flush()}. 
+ * {@link #getDirtyPages()} gives tools such as checksums or patch makers the pages changed since the last flush, 
+ * so their work is in proportion to the changes rather than to the size of the ROM. Call {@link #close()} once 
+ * done with a ROM.</p>
+ * 
+ * <p>Writes can also be grouped into a {@link GbaRomTransaction} (see {@link #beginTransaction()}), which holds 
+ * them in memory until they are committed or rolled back together. {@link #save(Savable...)} saves many objects 
+ * this way.</p>
+ * 
+ * <p>ROM files are opened in one of the modes of {@link GbaRomMode}. Files opened {@link GbaRomMode#READ_ONLY} 
+ * throw {@link java.nio.ReadOnlyBufferException} on every put() method, and files opened 
+ * {@link GbaRomMode#PRIVATE} keep every write in memory. ROMs can also be loaded from memory (e.g. from an 
+ * archive) with {@link #GbaRom(byte[], GbaRomMode)} or {@link #GbaRom(InputStream)}.</p>
+ * 
  * <p>Also included are the underlying header (title, code, version), and character set for the ROM.</p>
  * 
  * @author Phillip Groves
- *
+ * 
  */
-public class GbaRom {
-
+public class GbaRom implements Closeable {
+	
+	/** The amount of bytes in each page tracked for {@link #flush()} (4 KB) */
+	public static final int PAGE_SIZE = 4096;
+	
+	/** Shift from an address to its page */
+	private static final int PAGE_SHIFT = 12;
+	
+	/** The channel of the ROM file, kept open until this ROM is closed, or null if this ROM was loaded from memory */
+	private final FileChannel channel;
+	
+	/** How this ROM was opened */
+	private final GbaRomMode mode;
+	
 	/** A buffer holding the bytes of this ROM in little endian order */
 	private final ByteBuffer bytes;
 	
+	/** One bit for each page written since it was last flushed */
+	private final AtomicLongArray dirty;
+	
 	/** The character set for generation 3 Pokemon games, mapped byte-to-character */
-	private final HashMap<Integer, String> characters;
+	private final PoketextCodec characters;
 	
 	/** Contains the header information (title, game code, version) of this game */
 	private final GbaRomHeader header;
 	
+	/** Objects notified of each write, such as caches of data read from this ROM */
+	private final List<RomWriteListener> listeners = new CopyOnWriteArrayList<RomWriteListener>();
+	
+	/** Decompressed assets shared by every object that reads from this ROM */
+	private final AssetCache assetCache = new AssetCache(this, AssetCache.DEFAULT_MAX_BYTES);
+	
+	/** String tables shared by every caller of {@link #getStringTable(int, int)}, keyed by address and length */
+	private final ConcurrentMap<Long, GbaStringTable> stringTables = new ConcurrentHashMap<Long, GbaStringTable>();
+	
+	/** The open transaction holding pending writes, or null if writes are applied immediately */
+	private volatile GbaRomTransaction transaction;
+	
 	/**
 	 * 
 	 * @param path Path to ROM file
@@ -69,12 +133,81 @@ public class GbaRom {
 	
 	/**
 	 * 
-	 * @param romFile The file to read
+	 * @param path Path to ROM file
+	 * @param mode How to open the file
+	 */
+	public GbaRom(String path, GbaRomMode mode) {
+		this (new File(path), mode);
+	}
+	
+	/**
+	 * 
+	 * @param romFile The file to read, which is opened {@link GbaRomMode#READ_WRITE}
 	 */
 	public GbaRom(File romFile) {
-		this.bytes = loadBytes(romFile);
+		this (romFile, GbaRomMode.READ_WRITE);
+	}
+	
+	/**
+	 * 
+	 * @param romFile The file to read
+	 * @param mode How to open the file. {@link GbaRomMode#PRIVATE} still needs a file that can be written, so load 
+	 * 	files on read-only media through {@link #GbaRom(InputStream)} instead
+	 */
+	public GbaRom(File romFile, GbaRomMode mode) {
+		this (openChannel(romFile, mode), mode);
+	}
+	
+	/**
+	 * 
+	 * @param data The bytes of the ROM, which are shared rather than copied, so writes to this ROM show in the 
+	 * 	array
+	 */
+	public GbaRom(byte[] data) {
+		this (data, GbaRomMode.READ_WRITE);
+	}
+	
+	/**
+	 * 
+	 * @param data The bytes of the ROM. The array is shared with {@link GbaRomMode#READ_WRITE} and 
+	 * 	{@link GbaRomMode#READ_ONLY}, and copied with {@link GbaRomMode#PRIVATE}
+	 * @param mode Whether writes are allowed, and whether they show in the given array
+	 */
+	public GbaRom(byte[] data, GbaRomMode mode) {
+		this (null, wrapBytes(data, mode), mode);
+	}
+	
+	/**
+	 * 
+	 * @param input Stream of the bytes of the ROM, which is read fully but not closed
+	 */
+	public GbaRom(InputStream input) {
+		this (readBytes(input), GbaRomMode.READ_WRITE);
+	}
+	
+	/**
+	 * 
+	 * @param channel The channel of the file to map
+	 * @param mode How the file was opened
+	 */
+	private GbaRom(FileChannel channel, GbaRomMode mode) {
+		this (channel, loadBytes(channel, mode), mode);
+	}
+	
+	/**
+	 * 
+	 * @param channel The channel of the file, or null if loaded from memory
+	 * @param bytes The bytes of this ROM
+	 * @param mode How this ROM was opened
+	 */
+	private GbaRom(FileChannel channel, ByteBuffer bytes, GbaRomMode mode) {
+		this.channel = channel;
+		this.mode = mode;
+		this.bytes = bytes.order(ByteOrder.LITTLE_ENDIAN);
+		this.dirty = new AtomicLongArray((getPageCount() + 63) >>> 6);
 		this.characters = loadCharacterSet();
-		this.header = new GbaRomHeader(bytes);
+		this.header = new GbaRomHeader(this);
+		addWriteListener(assetCache);
 	}
 	
 	/**
@@ -85,6 +218,49 @@ public class GbaRom {
 		return header;
 	}
 	
+	/**
+	 * 
+	 * @return The cache of decompressed assets (e.g. pixel and palette data) read from this ROM
+	 */
+	public AssetCache getAssetCache() {
+		return assetCache;
+	}
+	
+	/**
+	 * 
+	 * @return How this ROM was opened
+	 */
+	public GbaRomMode getMode() {
+		return mode;
+	}
+	
+	/**
+	 * 
+	 * @return The size of this ROM in bytes
+	 */
+	public int getLength() {
+		return bytes.capacity();
+	}
+	
+	/**
+	 * <p>Moves the shared position used by the relative get() and put() methods (those without an address).</p>
+	 * 
+	 * <p>Note: The shared position is not thread-safe. Concurrent readers should use the absolute methods instead.</p>
+	 * 
+	 * @param address The position to continue reading or writing from
+	 */
+	public void position(int address) {
+		bytes.position(address);
+	}
+	
+	/**
+	 * 
+	 * @return The shared position used by the relative get() and put() methods
+	 */
+	public int position() {
+		return bytes.position();
+	}
+	
 	/**
 	 * <p>See {@link ByteBuffer#get(int)}</p>
 	 * 
@@ -94,8 +270,9 @@ public class GbaRom {
 	 * @return The retrieved byte (8-bit) value
 	 */
 	public int getByte(int address) {
-		bytes.position(address);
-		return getByte();
+		if (isPending(address, 1))
+			return pending(address, 1).get(0) & 0xFF;
+		return bytes.get(address) & 0xFF;
 	}
 	
 	/**
@@ -106,7 +283,9 @@ public class GbaRom {
 	 * @return The retrieved byte (8-bit) value
 	 */
 	public int getByte() {
-		return bytes.get() & 0xFF; // & 0xFF will unsign the 8-bit value
+		int address = bytes.position();
+		bytes.position(address + 1);
+		return getByte(address);
 	}
 	
 	/**
@@ -117,10 +296,67 @@ public class GbaRom {
 	 * @return The retrieved byte (8-bit) values
 	 */
 	public int[] getBytes(int address, int length) {
-		int[] result = new int[length];
+		return getBytes(address, new int[length], 0, length);
+	}
+	
+	/**
+	 * Bulk get method. Reads the bytes at the given address into the given array, which avoids allocating a 
+	 * result for each call.
+	 * 
+	 * @param address The position to read
+	 * @param destination The array to fill with unsigned byte (8-bit) values
+	 * @param offset The first index of the array to fill
+	 * @param length The amount of bytes to read
+	 * @return The given destination array
+	 */
+	public int[] getBytes(int address, int[] destination, int offset, int length) {
+		ByteBuffer source = isPending(address, length) ? pending(address, length) : view(address, length);
 		for (int i = 0; i < length; i++)
-			result[i] = getByte(address + i);
-		return result;
+			destination[offset + i] = source.get(i) & 0xFF;
+		return destination;
+	}
+	
+	/**
+	 * Bulk get method. Copies the raw bytes at the given address into the given array with a single bulk 
+	 * transfer.
+	 * 
+	 * @param address The position to read
+	 * @param destination The array to fill
+	 * @param offset The first index of the array to fill
+	 * @param length The amount of bytes to read
+	 * @return The given destination array
+	 */
+	public byte[] getBytes(int address, byte[] destination, int offset, int length) {
+		(isPending(address, length) ? pending(address, length) : view(address, length)).get(destination, offset, 
+				length);
+		return destination;
+	}
+	
+	/**
+	 * <p>Returns a read-only view of every byte in this ROM. The view shares the underlying buffer, so addresses of 
+	 * the view match those of the ROM, and no data is copied.</p>
+	 * 
+	 * <p>Note: Views do not show writes pending in a transaction.</p>
+	 * 
+	 * @return The read-only view
+	 */
+	public ByteBuffer getByteView() {
+		return getByteView(0, getLength());
+	}
+	
+	/**
+	 * <p>Returns a read-only view of the bytes at the given address and length. The view shares the underlying 
+	 * buffer, so no data is copied, and it is in little endian order.</p>
+	 * 
+	 * <p>Note: Writes should still go through the put() methods of this class. Views do not show writes pending in 
+	 * a transaction.</p>
+	 * 
+	 * @param address The position of the view
+	 * @param length The amount of bytes to view
+	 * @return The read-only view
+	 */
+	public ByteBuffer getByteView(int address, int length) {
+		return view(address, length).asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
 	}
 	
 	/**
@@ -130,8 +366,9 @@ public class GbaRom {
 	 * @return The little endian short (16-bit) value
 	 */
 	public int getShort(int address) {
-		bytes.position(address);
-		return getShort();
+		if (isPending(address, 2))
+			return pending(address, 2).getShort(0) & 0xFFFF;
+		return bytes.getShort(address) & 0xFFFF;
 	}
 	
 	/**
@@ -140,7 +377,9 @@ public class GbaRom {
 	 * @return The little endian short (16-bit) value
 	 */
 	public int getShort() {
-		return bytes.getShort() & 0xFFFF; // & 0xFFFF will unsign the 16-bit value
+		int address = bytes.position();
+		bytes.position(address + 2);
+		return getShort(address);
 	}
 	
 	/**
@@ -151,10 +390,52 @@ public class GbaRom {
 	 * @return The retrieved short (16-bit) values
 	 */
 	public int[] getShorts(int address, int length) {
-		int[] result = new int[length];
+		return getShorts(address, new int[length], 0, length);
+	}
+	
+	/**
+	 * Bulk get method. Reads the 16-bit values at the given address into the given array, which avoids 
+	 * allocating a result for each call.
+	 * 
+	 * @param address The position to read
+	 * @param destination The array to fill with unsigned short (16-bit) values
+	 * @param offset The first index of the array to fill
+	 * @param length The amount of shorts to read
+	 * @return The given destination array
+	 */
+	public int[] getShorts(int address, int[] destination, int offset, int length) {
+		ByteBuffer source = isPending(address, length * 2) ? pending(address, length * 2) : view(address, length * 2);
 		for (int i = 0; i < length; i++)
-			result[i] = getShort(address + (i * 2));
-		return result;
+			destination[offset + i] = source.getShort(i * 2) & 0xFFFF;
+		return destination;
+	}
+	
+	/**
+	 * Bulk get method. Copies the 16-bit values at the given address into the given array with a single bulk 
+	 * transfer. Values are signed, as with any short.
+	 * 
+	 * @param address The position to read
+	 * @param destination The array to fill
+	 * @param offset The first index of the array to fill
+	 * @param length The amount of shorts to read
+	 * @return The given destination array
+	 */
+	public short[] getShorts(int address, short[] destination, int offset, int length) {
+		ByteBuffer source = isPending(address, length * 2) ? pending(address, length * 2) : view(address, length * 2);
+		source.asShortBuffer().get(destination, offset, length);
+		return destination;
+	}
+	
+	/**
+	 * Returns a read-only view of the 16-bit values at the given address and length. The view shares the 
+	 * underlying buffer, so no data is copied, and does not show writes pending in a transaction.
+	 * 
+	 * @param address The position of the view
+	 * @param length The amount of shorts to view
+	 * @return The read-only view
+	 */
+	public ShortBuffer getShortView(int address, int length) {
+		return view(address, length * 2).asShortBuffer().asReadOnlyBuffer();
 	}
 	
 	/**
@@ -164,8 +445,9 @@ public class GbaRom {
 	 * @return The little endian integer (32-bit) value
 	 */
 	public int getInt(int address) {
-		bytes.position(address);
-		return getInt();
+		if (isPending(address, 4))
+			return pending(address, 4).getInt(0);
+		return bytes.getInt(address);
 	}
 	
 	/**
@@ -174,7 +456,9 @@ public class GbaRom {
 	 * @return The little endian short (16-bit) value
 	 */
 	public int getInt() {
-		return bytes.getInt();
+		int address = bytes.position();
+		bytes.position(address + 4);
+		return getInt(address);
 	}
 	
 	/**
@@ -185,10 +469,35 @@ public class GbaRom {
 	 * @return The retrieved short (32-bit) values
 	 */
 	public int[] getInts(int address, int length) {
-		int[] result = new int[length];
-		for (int i = 0; i < length; i++)
-			result[i] = getInt(address + (i * 4));
-		return result;
+		return getInts(address, new int[length], 0, length);
+	}
+	
+	/**
+	 * Bulk get method. Copies the 32-bit values at the given address into the given array with a single bulk 
+	 * transfer.
+	 * 
+	 * @param address The position to read
+	 * @param destination The array to fill
+	 * @param offset The first index of the array to fill
+	 * @param length The amount of integers to read
+	 * @return The given destination array
+	 */
+	public int[] getInts(int address, int[] destination, int offset, int length) {
+		ByteBuffer source = isPending(address, length * 4) ? pending(address, length * 4) : view(address, length * 4);
+		source.asIntBuffer().get(destination, offset, length);
+		return destination;
+	}
+	
+	/**
+	 * Returns a read-only view of the 32-bit values at the given address and length. The view shares the 
+	 * underlying buffer, so no data is copied, and does not show writes pending in a transaction.
+	 * 
+	 * @param address The position of the view
+	 * @param length The amount of integers to view
+	 * @return The read-only view
+	 */
+	public IntBuffer getIntView(int address, int length) {
+		return view(address, length * 4).asIntBuffer().asReadOnlyBuffer();
 	}
 	
 	/**
@@ -201,8 +510,7 @@ public class GbaRom {
 	 * @return The little endian pointer value
 	 */
 	public int getPointer(int address) {
-		bytes.position(address);
-		return getPointer();
+		return getInt(address) & 0x1FFFFFF;
 	}
 	
 	/**
@@ -215,7 +523,7 @@ public class GbaRom {
 	 * @return The little endian pointer value
 	 */
 	public int getPointer() {
-		return bytes.getInt() & 0x1FFFFFF; // & 0x1FFFFFF will remove the leading 8 bits from an integer
+		return getInt() & 0x1FFFFFF; // & 0x1FFFFFF will remove the leading 8 bits from an integer
 	}
 	
 	/**
@@ -228,10 +536,24 @@ public class GbaRom {
 	 * @return The retrieved short (32-bit) values
 	 */
 	public int[] getPointers(int address, int length) {
-		int[] result = new int[length];
-		for (int i = 0; i < length; i++)
-			result[i] = getPointer(address + (i * 4));
-		return result;
+		return getPointers(address, new int[length], 0, length);
+	}
+	
+	/**
+	 * <p>Bulk get method. Reads the pointer values at the given address into the given array, which avoids 
+	 * allocating a result for each call.</p>
+	 * 
+	 * @param address The position to read
+	 * @param destination The array to fill
+	 * @param offset The first index of the array to fill
+	 * @param length The amount of integers to read
+	 * @return The given destination array
+	 */
+	public int[] getPointers(int address, int[] destination, int offset, int length) {
+		getInts(address, destination, offset, length);
+		for (int i = offset; i < offset + length; i++)
+			destination[i] &= 0x1FFFFFF;
+		return destination;
 	}
 	
 	/**
@@ -243,8 +565,12 @@ public class GbaRom {
 	 * @return The retrieved text
 	 */
 	public String getString(int address, int length) {
-		bytes.position(address);
-		return getString(length);
+		StringBuilder builder = new StringBuilder(length);
+		if (isPending(address, length))
+			characters.decode(pending(address, length), 0, length, builder);
+		else
+			characters.decode(bytes, address, length, builder);
+		return builder.toString();
 	}
 	
 	/**
@@ -256,10 +582,9 @@ public class GbaRom {
 	 * @return The retrieved text
 	 */
 	public String getString(int length) {
-		StringBuilder builder = new StringBuilder();
-		for (int i = 0; i < length; i++)
-			builder.append(characters.get(getByte()));
-		return builder.toString();
+		int address = bytes.position();
+		bytes.position(address + length);
+		return getString(address, length);
 	}
 	
 	/**
@@ -271,8 +596,29 @@ public class GbaRom {
 	 * @return The retrieved text
 	 */
 	public String getStringUtilEnd(int address) {
-		bytes.position(address);
-		return getStringUtilEnd();
+		StringBuilder builder = new StringBuilder();
+		getStringUtilEnd(address, builder);
+		return builder.toString().trim();
+	}
+	
+	/**
+	 * <p>Reads text at the given address until 0xFF (ending character) is reached, and appends the untrimmed 
+	 * result to the given builder. This avoids allocating when reading many strings in bulk.</p>
+	 * 
+	 * @param address The address to read
+	 * @param builder The builder to append to
+	 * @return The address after the ending character
+	 */
+	public int getStringUtilEnd(int address, StringBuilder builder) {
+		if (transaction == null)
+			return characters.decodeUntilEnd(bytes, address, builder);
+		
+		int end = address;
+		while (getByte(end) != PoketextCodec.END)
+			end++;
+		characters.decode(isPending(address, end - address) ? pending(address, end - address) : view(address, 
+				end - address), 0, end - address, builder);
+		return end + 1;
 	}
 	
 	/**
@@ -285,17 +631,14 @@ public class GbaRom {
 	 */
 	public String getStringUtilEnd() {
 		StringBuilder builder = new StringBuilder();
-		String current;
-		
-		while (!(current = characters.get(getByte())).equalsIgnoreCase("|end|"))
-			builder.append(current);
-		
+		bytes.position(getStringUtilEnd(bytes.position(), builder));
 		return builder.toString().trim();
 	}
 	
 	/**
 	 * Retrieves a list of text strings that are seperated by 0xFF (ending character). Underlying this method is 
-	 * a loop containing {@link #getStringUtilEnd()}.
+	 * a loop containing {@link #getStringUtilEnd(int, StringBuilder)}. For random access to single entries, see 
+	 * {@link #getStringTable(int, int)}.
 	 * 
 	 * @param address The address to read
 	 * @param length The amount of strings to read
@@ -303,14 +646,43 @@ public class GbaRom {
 	 */
 	public String[] getStringList(int address, int length) {
 		String[] list = new String[length];
+		StringBuilder builder = new StringBuilder();
 		
-		bytes.position(address);
-		for (int i = 0; i < list.length; i++)
-			list[i] = getStringUtilEnd();
+		for (int i = 0; i < list.length; i++) {
+			builder.setLength(0);
+			address = getStringUtilEnd(address, builder);
+			list[i] = builder.toString().trim();
+		}
 		
 		return list;
 	}
 	
+	/**
+	 * <p>Returns an indexed table of text strings that are seperated by 0xFF (ending character). Unlike 
+	 * {@link #getStringList(int, int)}, single entries can be read without decoding those before them.</p>
+	 * 
+	 * <p>Tables are shared: every call for the same address and length returns the same table, which stays 
+	 * registered with this ROM for as long as the ROM is used.</p>
+	 * 
+	 * @param address The address of the table
+	 * @param length The amount of strings in the table
+	 * @return The string table, which stays in sync with writes to this ROM
+	 */
+	public GbaStringTable getStringTable(int address, int length) {
+		long key = ((long) address << 32) | (length & 0xFFFFFFFFL);
+		GbaStringTable table = stringTables.get(key);
+		if (table == null) {
+			GbaStringTable created = new GbaStringTable(this, address, length, GbaStringTable.DEFAULT_CACHE_SIZE, 
+					true);
+			table = stringTables.putIfAbsent(key, created);
+			if (table == null)
+				table = created;
+			else
+				removeWriteListener(created);
+		}
+		return table;
+	}
+	
 	/**
 	 * See {@link ByteBuffer#put(int, int)}
 	 * 
@@ -318,8 +690,13 @@ public class GbaRom {
 	 * @param value The 8-bit value to be written
 	 */
 	public void putByte(int address, int value) {
-		bytes.position(address);
-		putByte(value);
+		GbaRomTransaction transaction = this.transaction;
+		if (transaction != null) {
+			stage(transaction, address, new byte[] { (byte) value });
+			return;
+		}
+		bytes.put(address, (byte) value);
+		applied(address, 1);
 	}
 	
 	/**
@@ -328,7 +705,9 @@ public class GbaRom {
 	 * @param value The 8-bit value to be written
 	 */
 	public void putByte(int value) {
-		bytes.put((byte) value);
+		int address = bytes.position();
+		putByte(address, value);
+		bytes.position(address + 1);
 	}
 	
 	/**
@@ -338,8 +717,33 @@ public class GbaRom {
 	 * @param values The 8-bit values to write
 	 */
 	public void putBytes(int address, int[] values) {
+		GbaRomTransaction transaction = this.transaction;
+		if (transaction != null) {
+			byte[] data = new byte[values.length];
+			for (int i = 0; i < values.length; i++)
+				data[i] = (byte) values[i];
+			stage(transaction, address, data);
+			return;
+		}
 		for (int i = 0; i < values.length; i++)
-			putByte(address + i, values[i]);
+			bytes.put(address + i, (byte) values[i]);
+		applied(address, values.length);
+	}
+	
+	/**
+	 * Bulk put method. Writes the given bytes at the given address with a single bulk transfer.
+	 * 
+	 * @param address The position to write
+	 * @param values The 8-bit values to write
+	 */
+	public void putBytes(int address, byte[] values) {
+		GbaRomTransaction transaction = this.transaction;
+		if (transaction != null) {
+			stage(transaction, address, values.clone());
+			return;
+		}
+		view(address, values.length).put(values);
+		applied(address, values.length);
 	}
 	
 	/**
@@ -349,8 +753,13 @@ public class GbaRom {
 	 * @param value The 16-bit value to be written
 	 */
 	public void putShort(int address, int value) {
-		bytes.position(address);
-		putShort(value);
+		GbaRomTransaction transaction = this.transaction;
+		if (transaction != null) {
+			stage(transaction, address, pending(2).putShort(0, (short) value).array());
+			return;
+		}
+		bytes.putShort(address, (short) value);
+		applied(address, 2);
 	}
 	
 	/**
@@ -359,7 +768,9 @@ public class GbaRom {
 	 * @param value The 16-bit value to be written
 	 */
 	public void putShort(int value) {
-		bytes.putShort((short) value);
+		int address = bytes.position();
+		putShort(address, value);
+		bytes.position(address + 2);
 	}
 	
 	/**
@@ -369,8 +780,35 @@ public class GbaRom {
 	 * @param values The 16-bit values to write
 	 */
 	public void putShorts(int address, int[] values) {
+		GbaRomTransaction transaction = this.transaction;
+		if (transaction != null) {
+			ByteBuffer data = pending(values.length * 2);
+			for (int i = 0; i < values.length; i++)
+				data.putShort(i * 2, (short) values[i]);
+			stage(transaction, address, data.array());
+			return;
+		}
 		for (int i = 0; i < values.length; i++)
-			putByte(address + (i * 2), values[i]);
+			bytes.putShort(address + (i * 2), (short) values[i]);
+		applied(address, values.length * 2);
+	}
+	
+	/**
+	 * Bulk put method. Writes the given shorts at the given address with a single bulk transfer.
+	 * 
+	 * @param address The position to write
+	 * @param values The 16-bit values to write
+	 */
+	public void putShorts(int address, short[] values) {
+		GbaRomTransaction transaction = this.transaction;
+		if (transaction != null) {
+			ByteBuffer data = pending(values.length * 2);
+			data.asShortBuffer().put(values);
+			stage(transaction, address, data.array());
+			return;
+		}
+		view(address, values.length * 2).asShortBuffer().put(values);
+		applied(address, values.length * 2);
 	}
 	
 	/**
@@ -380,8 +818,13 @@ public class GbaRom {
 	 * @param value The 32-bit value to be written
 	 */
 	public void putInt(int address, int value) {
-		bytes.position(address);
-		putInt(value);
+		GbaRomTransaction transaction = this.transaction;
+		if (transaction != null) {
+			stage(transaction, address, pending(4).putInt(0, value).array());
+			return;
+		}
+		bytes.putInt(address, value);
+		applied(address, 4);
 	}
 	
 	/**
@@ -390,7 +833,30 @@ public class GbaRom {
 	 * @param value The 16-bit value to be written
 	 */
 	public void putInt(int value) {
-		bytes.putInt((short) value);
+		int address = bytes.position();
+		putInt(address, value);
+		bytes.position(address + 4);
+	}
+	
+	/**
+	 * <p>Writes a pointer to the given offset, adding the leading byte (08 or 09) that {@link #getPointer(int)} 
+	 * removes.</p>
+	 * 
+	 * @param address The address to write
+	 * @param offset The offset pointed to
+	 */
+	public void putPointer(int address, int offset) {
+		putInt(address, 0x08000000 | offset);
+	}
+	
+	/**
+	 * <p>Writes a pointer to the given offset, adding the leading byte (08 or 09) that {@link #getPointer()} 
+	 * removes.</p>
+	 * 
+	 * @param offset The offset pointed to
+	 */
+	public void putPointer(int offset) {
+		putInt(0x08000000 | offset);
 	}
 	
 	/**
@@ -400,8 +866,23 @@ public class GbaRom {
 	 * @param values The 32-bit values to write
 	 */
 	public void putInts(int address, int[] values) {
-		for (int i = 0; i < values.length; i++)
-			putByte(address + (i * 4), values[i]);
+		GbaRomTransaction transaction = this.transaction;
+		if (transaction != null) {
+			ByteBuffer data = pending(values.length * 4);
+			data.asIntBuffer().put(values);
+			stage(transaction, address, data.array());
+			return;
+		}
+		view(address, values.length * 4).asIntBuffer().put(values);
+		applied(address, values.length * 4);
+	}
+	
+	/**
+	 * 
+	 * @return The codec used to convert to/from "Poketext"
+	 */
+	public PoketextCodec getCharacterSet() {
+		return characters;
 	}
 	
 	/**
@@ -410,32 +891,393 @@ public class GbaRom {
 	 * 
 	 * @param address The address to write
 	 * @param text The text to write
+	 * @throws IllegalStateException If the text holds a character that is not in the character set. Nothing is 
+	 * 	written, where such characters used to be skipped
 	 */
 	public void putString(int address, String text) {
-		for (int i = 0; i < text.length(); i++) {
-			for (Map.Entry<Integer, String> entry : characters.entrySet()) {
-				if (entry.getValue().equals(text.substring(i, i + 1))) {
-					System.out.println("Got here");
-					putByte(address + i, entry.getKey());
-				}
+		putBytes(address, characters.encode(text));
+	}
+	
+	/**
+	 * <p>Opens a transaction. Until it is committed or rolled back, every put() method of this ROM writes into the 
+	 * transaction instead of the file. Only one transaction may be open at a time.</p>
+	 * 
+	 * <p>Write listeners are notified as writes are made into the transaction, again for each range applied on 
+	 * commit, and again for each range dropped on rollback.</p>
+	 * 
+	 * @return The open transaction
+	 */
+	public synchronized GbaRomTransaction beginTransaction() {
+		if (!mode.isWritable())
+			throw new IllegalStateException("Transactions cannot be opened on a read-only ROM!");
+		if (transaction != null)
+			throw new IllegalStateException("A transaction is already open on this ROM!");
+		transaction = new GbaRomTransaction(this);
+		return transaction;
+	}
+	
+	/**
+	 * 
+	 * @return The open transaction, or null if writes are applied immediately
+	 */
+	public GbaRomTransaction getTransaction() {
+		return transaction;
+	}
+	
+	/**
+	 * Saves each of the given objects as one transaction, so that either every change is applied or none are. If 
+	 * a transaction is already open, the objects are saved into it instead and nothing is applied yet.
+	 * 
+	 * @param objects The objects to save
+	 */
+	public void save(Savable... objects) {
+		if (transaction != null) {
+			for (Savable object : objects)
+				object.save();
+			return;
+		}
+		
+		try (GbaRomTransaction transaction = beginTransaction()) {
+			for (Savable object : objects)
+				object.save();
+			transaction.commit();
+		}
+	}
+	
+	/**
+	 * Applies the pending writes of the given transaction in address order. Write listeners are notified before 
+	 * the actions added by {@link GbaRomTransaction#afterCommit(Runnable)} run. The pages written are left dirty 
+	 * until the caller flushes them (see {@link #flush()}), so a commit never waits on the disk.
+	 * 
+	 * <p>The transaction is removed from this ROM and listeners are notified even if applying a write fails, so 
+	 * the ROM is never left with a closed transaction, and listeners never keep data from before the commit.</p>
+	 * 
+	 * @param transaction The open transaction
+	 */
+	synchronized void commit(GbaRomTransaction transaction) {
+		checkTransaction(transaction);
+		TreeMap<Integer, byte[]> ranges = transaction.take();
+		try {
+			for (Map.Entry<Integer, byte[]> batch : GbaRomTransaction.join(ranges, bytes).entrySet()) {
+				view(batch.getKey(), batch.getValue().length).put(batch.getValue());
+				markDirty(batch.getKey(), batch.getValue().length);
+			}
+		} finally {
+			// bytes between joined ranges are rewritten unchanged, so listeners are only told of the pending ranges
+			this.transaction = null;
+			for (Map.Entry<Integer, byte[]> range : ranges.entrySet())
+				written(range.getKey(), range.getValue().length);
+		}
+		
+		for (Runnable action : transaction.takeCommitActions())
+			action.run();
+	}
+	
+	/**
+	 * Drops the pending writes of the given transaction. Listeners are notified of each dropped range, as they may 
+	 * have read the pending bytes.
+	 * 
+	 * @param transaction The open transaction
+	 */
+	synchronized void rollback(GbaRomTransaction transaction) {
+		checkTransaction(transaction);
+		TreeMap<Integer, byte[]> discarded = transaction.discard();
+		this.transaction = null;
+		
+		for (Map.Entry<Integer, byte[]> range : discarded.entrySet())
+			written(range.getKey(), range.getValue().length);
+	}
+	
+	/**
+	 * Forces every dirty page to disk, and marks them as clean. Only ROM files opened 
+	 * {@link GbaRomMode#READ_WRITE} are flushed; otherwise pages stay dirty, as they never reach a file.
+	 */
+	public void flush() {
+		flush(0, getLength());
+	}
+	
+	/**
+	 * Forces each dirty page within the given range to disk, and marks them as clean. Runs of neighbouring dirty 
+	 * pages are forced together. See {@link #flush()} for which ROMs are flushed. If a run can not be forced, its pages 
+	 * stay dirty and an {@link IllegalStateException} is thrown.
+	 * 
+	 * @param address The first address to flush
+	 * @param length The amount of bytes to flush
+	 */
+	public void flush(int address, int length) {
+		if (length <= 0 || channel == null || mode != GbaRomMode.READ_WRITE)
+			return;
+		int first = address >>> PAGE_SHIFT;
+		int last = Math.min((address + length - 1) >>> PAGE_SHIFT, getPageCount() - 1);
+		int start = -1;
+		for (int page = first; page <= last + 1; page++) {
+			// clear the bit before forcing, so a write made during the flush marks its page again
+			boolean flushed = page <= last && clean(page);
+			if (flushed && start < 0)
+				start = page;
+			else if (!flushed && start >= 0) {
+				force(start, page - start);
+				start = -1;
 			}
 		}
 	}
 	
+	/**
+	 * 
+	 * @return Index of each page ({@link #PAGE_SIZE} bytes from address page * PAGE_SIZE) written since it was 
+	 * 	last flushed
+	 */
+	public BitSet getDirtyPages() {
+		long[] words = new long[dirty.length()];
+		for (int i = 0; i < words.length; i++)
+			words[i] = dirty.get(i);
+		return BitSet.valueOf(words);
+	}
+	
+	/**
+	 * 
+	 * @param address The first address
+	 * @param length The amount of bytes
+	 * @return Whether any page within the given range was written since it was last flushed
+	 */
+	public boolean isDirty(int address, int length) {
+		if (length <= 0)
+			return false;
+		int last = Math.min((address + length - 1) >>> PAGE_SHIFT, getPageCount() - 1);
+		for (int page = address >>> PAGE_SHIFT; page <= last; page++) {
+			if ((dirty.get(page >>> 6) & (1L << page)) != 0)
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * 
+	 * @return The amount of pages in this ROM
+	 */
+	public int getPageCount() {
+		return (getLength() + PAGE_SIZE - 1) >>> PAGE_SHIFT;
+	}
+	
+	/**
+	 * Flushes every dirty page and closes the ROM file. The ROM should not be used afterwards.
+	 */
+	@Override
+	public void close() {
+		if (channel == null)
+			return;
+		flush();
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Registers a listener to be notified of every write made through the put() methods of this ROM.
+	 * 
+	 * @param listener The listener to add
+	 */
+	public void addWriteListener(RomWriteListener listener) {
+		listeners.add(listener);
+	}
+	
+	/**
+	 * 
+	 * @param listener The listener to remove
+	 */
+	public void removeWriteListener(RomWriteListener listener) {
+		listeners.remove(listener);
+	}
+	
+	/**
+	 * Marks the pages of a range written to the underlying buffer as dirty, and notifies each write listener.
+	 * 
+	 * @param address The first address written
+	 * @param length The amount of bytes written
+	 */
+	private void applied(int address, int length) {
+		markDirty(address, length);
+		written(address, length);
+	}
+	
+	/**
+	 * 
+	 * @param address The first address written
+	 * @param length The amount of bytes written
+	 */
+	private void markDirty(int address, int length) {
+		if (length <= 0)
+			return;
+		for (int page = address >>> PAGE_SHIFT; page <= (address + length - 1) >>> PAGE_SHIFT; page++) {
+			int word = page >>> 6;
+			long bit = 1L << page, bits;
+			while (((bits = dirty.get(word)) & bit) == 0 && !dirty.compareAndSet(word, bits, bits | bit));
+		}
+	}
+	
+	/**
+	 * Marks the given page as clean.
+	 * 
+	 * @param page Index of the page
+	 * @return Whether the page was dirty
+	 */
+	private boolean clean(int page) {
+		int word = page >>> 6;
+		long bit = 1L << page, bits;
+		while (((bits = dirty.get(word)) & bit) != 0) {
+			if (dirty.compareAndSet(word, bits, bits & ~bit))
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Forces a run of pages of the mapped buffer of this ROM to disk. A ROM can not be flushed once it has been 
+	 * closed.
+	 * 
+	 * <p>If the pages can not be forced, they are marked as dirty again before the exception is thrown, since they 
+	 * were marked as clean before being forced.</p>
+	 * 
+	 * @param page Index of the first page
+	 * @param count The amount of pages
+	 */
+	private void force(int page, int count) {
+		int address = page << PAGE_SHIFT;
+		int length = Math.min(count << PAGE_SHIFT, getLength() - address);
+		boolean forced = false;
+		try {
+			if (!channel.isOpen())
+				throw new IllegalStateException("Unable to flush ROM pages at " + Integer.toHexString(address) 
+						+ ", as the ROM file has been closed");
+			((MappedByteBuffer) bytes).force(address, length);
+			forced = true;
+		} catch (UncheckedIOException e) {
+			throw new IllegalStateException("Unable to flush ROM pages at " + Integer.toHexString(address), e);
+		} finally {
+			if (!forced)
+				markDirty(address, length);
+		}
+	}
+	
+	/**
+	 * Notifies each write listener that the given range has been written.
+	 * 
+	 * @param address The first address written
+	 * @param length The amount of bytes written
+	 */
+	private void written(int address, int length) {
+		for (RomWriteListener listener : listeners)
+			listener.written(address, length);
+	}
+	
+	/**
+	 * Throws if the given transaction is not the one open on this ROM.
+	 * 
+	 * @param transaction The transaction to check
+	 */
+	private void checkTransaction(GbaRomTransaction transaction) {
+		if (transaction.isClosed())
+			throw new IllegalStateException("Transaction has already been committed or rolled back!");
+		if (this.transaction != transaction)
+			throw new IllegalStateException("Transaction is not open on this ROM!");
+	}
+	
+	/**
+	 * Writes into the given transaction and notifies each write listener. Writes outside of this ROM are thrown 
+	 * here, as they would be without a transaction, rather than when the transaction is committed.
+	 * 
+	 * @param transaction The open transaction
+	 * @param address The first address written
+	 * @param data The bytes written, which are kept by the transaction
+	 */
+	private void stage(GbaRomTransaction transaction, int address, byte[] data) {
+		if (address < 0 || address > getLength() - data.length)
+			throw new IndexOutOfBoundsException("Write of " + data.length + " bytes at " 
+					+ Integer.toHexString(address) + " is outside of the ROM");
+		transaction.put(address, data);
+		written(address, data.length);
+	}
+	
+	/**
+	 * 
+	 * @param address The first address
+	 * @param length The amount of bytes
+	 * @return Whether an open transaction holds pending writes within the given range
+	 */
+	private boolean isPending(int address, int length) {
+		GbaRomTransaction transaction = this.transaction;
+		return transaction != null && transaction.touches(address, length);
+	}
+	
+	/**
+	 * Reads the given range with pending writes of the open transaction copied over applied data.
+	 * 
+	 * @param address The first address
+	 * @param length The amount of bytes
+	 * @return Little endian buffer of the bytes, starting at index 0
+	 */
+	private ByteBuffer pending(int address, int length) {
+		byte[] data = new byte[length];
+		view(address, length).get(data);
+		GbaRomTransaction transaction = this.transaction;
+		if (transaction != null)
+			transaction.apply(address, data);
+		return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	/**
+	 * 
+	 * @param length The amount of bytes
+	 * @return Empty little endian buffer for a pending write
+	 */
+	private static ByteBuffer pending(int length) {
+		return ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	/**
+	 * Creates a little endian view of the underlying buffer at the given address and length. The view has its 
+	 * own position, so the shared position is left untouched.
+	 * 
+	 * @param address The position of the view
+	 * @param length The amount of bytes to view
+	 * @return The view
+	 */
+	private ByteBuffer view(int address, int length) {
+		ByteBuffer view = bytes.duplicate();
+		view.limit(address + length);
+		view.position(address);
+		return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	/**
+	 * Opens the given ROM file. The channel stays open after the file is mapped, until the ROM is closed.
+	 * 
+	 * @param romFile The file to open
+	 * @param mode How to open the file
+	 * @return The channel of the file
+	 */
+	private static FileChannel openChannel(File romFile, GbaRomMode mode) {
+		try {
+			return new RandomAccessFile(romFile, mode.fileMode()).getChannel();
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to open GBA ROM: " + romFile, e);
+		}
+	}
+	
 	/**
 	 * Initializes the buffer that is used to read and write bytes from file
 	 * 
-	 * @param romFile The file to load
+	 * @param channel The channel of the file to load
+	 * @param mode How the file was opened
 	 * @return The bytes of the file in little endian order
 	 */
-	private ByteBuffer loadBytes(File romFile) {
+	private static ByteBuffer loadBytes(FileChannel channel, GbaRomMode mode) {
 		ByteBuffer buffer = null;
 		
 		try {
-			RandomAccessFile reader = new RandomAccessFile(romFile, "rw");
-			buffer = reader.getChannel().map(MapMode.READ_WRITE, 0, reader.length()).order(ByteOrder.LITTLE_ENDIAN);
-			
-			reader.close();
+			buffer = channel.map(mode.mapMode(), 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -446,25 +1288,51 @@ public class GbaRom {
 		return buffer;
 	}
 	
+	/**
+	 * Wraps bytes of a ROM loaded from memory.
+	 * 
+	 * @param data The bytes of the ROM
+	 * @param mode Whether writes are allowed, and whether they show in the given array
+	 * @return The bytes of the ROM
+	 */
+	private static ByteBuffer wrapBytes(byte[] data, GbaRomMode mode) {
+		switch (mode) {
+			case READ_ONLY: return ByteBuffer.wrap(data).asReadOnlyBuffer();
+			case PRIVATE: return ByteBuffer.wrap(data.clone());
+			default: return ByteBuffer.wrap(data);
+		}
+	}
+	
+	/**
+	 * Reads every byte of the given stream.
+	 * 
+	 * @param input The stream to read
+	 * @return The bytes read
+	 */
+	private static byte[] readBytes(InputStream input) {
+		ByteArrayOutputStream output = new ByteArrayOutputStream(1 << 20);
+		byte[] buffer = new byte[64 << 10];
+		try {
+			for (int read; (read = input.read(buffer)) != -1; )
+				output.write(buffer, 0, read);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to read GBA ROM from stream", e);
+		}
+		return output.toByteArray();
+	}
+	
 	/**
 	 * Initializes the character set used for "Poketext", which can be found at /src/resources/character-set.ini
 	 * 
 	 * @return The loaded set
 	 */
-	private HashMap<Integer, String> loadCharacterSet() {
-		HashMap<Integer, String> set = new HashMap<Integer, String>();
-		try (BufferedReader br = new BufferedReader(new FileReader("src/resources/character-set.ini"))) {
-			String line;
-			while ((line = br.readLine()) != null) {
-				if (line.contains("=")) {
-					String[] data = line.split("=", 2);
-					set.put(Integer.decode("0x" + data[0]), data[1]);
-				}
-			}
-			br.close();
+	private PoketextCodec loadCharacterSet() {
+		try (Reader reader = new InputStreamReader(new FileInputStream("src/resources/character-set.ini"), 
+				StandardCharsets.UTF_8)) {
+			return PoketextCodec.load(reader);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
-		return set;
+		return new PoketextCodec(Collections.<Integer, String>emptyMap());
 	}
 }
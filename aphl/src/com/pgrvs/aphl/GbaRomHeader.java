@@ -24,10 +24,12 @@
 package com.pgrvs.aphl;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
  * This class represents the header information for this ROM. Header information includes information such as 
- * the game code, title, and version.
+ * the game code, title, and version. Changes are saved through the put() methods of the ROM, so they join any open 
+ * transaction (see {@link GbaRom#save(Savable...)}) and are seen by write listeners.
  * 
  * @author Phillip Groves
  *
@@ -40,6 +42,10 @@ public class GbaRomHeader implements Savable {
 	private static final int GAME_CODE_LENGTH = 4;
 	private static final int GAME_VERSION_ADDRESS = 0xBC;
 	
+	/** Locally held for saving, or null if this header was read from a buffer */
+	private final GbaRom rom;
+	
+	/** The buffer this header was read from, or null if it was read from a ROM */
 	private final ByteBuffer bytes;
 	
 	/** 12-character representation of game name */
@@ -52,15 +58,35 @@ public class GbaRomHeader implements Savable {
 	private String version;
 	
 	/**
+	 * 
+	 * @param rom The ROM to read
+	 */
+	public GbaRomHeader(GbaRom rom) {
+		for (int i = 0; i < GAME_TITLE_LENGTH; i++)
+			this.title += (char) (byte) rom.getByte(GAME_TITLE_ADDRESS + i);
+		for (int i = 0; i < GAME_CODE_LENGTH; i++)
+			this.gameCode += (char) (byte) rom.getByte(GAME_CODE_ADDRESS + i);
+		this.version = "1." + (byte) rom.getByte(GAME_VERSION_ADDRESS);
+		this.rom = rom;
+		this.bytes = null;
+	}
+	
+	/**
+	 * <p>Reads the header from a buffer. {@link #save()} writes straight into the buffer, so changes skip any open 
+	 * transaction and are not seen by write listeners, and a read-only buffer (e.g. {@link GbaRom#getByteView()}) 
+	 * can not be saved to.</p>
 	 * 
 	 * @param bytes The bytes of this ROM
+	 * @deprecated Use {@link #GbaRomHeader(GbaRom)} or {@link GbaRom#getHeader()}, which save through the ROM
 	 */
+	@Deprecated
 	public GbaRomHeader(ByteBuffer bytes) {
 		for (int i = 0; i < GAME_TITLE_LENGTH; i++)
 			this.title += (char) bytes.get(GAME_TITLE_ADDRESS + i);
 		for (int i = 0; i < GAME_CODE_LENGTH; i++)
 			this.gameCode += (char) bytes.get(GAME_CODE_ADDRESS + i);
 		this.version = "1." + bytes.get(GAME_VERSION_ADDRESS);
+		this.rom = null;
 		this.bytes = bytes;
 	}
 	
@@ -90,10 +116,18 @@ public class GbaRomHeader implements Savable {
 
 	@Override
 	public void save() {
-		bytes.put(GAME_VERSION_ADDRESS, (byte) version.charAt(2));
-		for (int i = 0; i < GAME_TITLE_LENGTH; i++)
-			bytes.put(GAME_TITLE_ADDRESS + i, title.getBytes()[i]);
-		for (int i = 0; i < GAME_CODE_LENGTH; i++)
-			bytes.put(GAME_CODE_ADDRESS + i, gameCode.getBytes()[i]);
+		if (rom == null) {
+			byte[] title = Arrays.copyOf(this.title.getBytes(), GAME_TITLE_LENGTH);
+			byte[] gameCode = Arrays.copyOf(this.gameCode.getBytes(), GAME_CODE_LENGTH);
+			bytes.put(GAME_VERSION_ADDRESS, (byte) version.charAt(2));
+			for (int i = 0; i < GAME_TITLE_LENGTH; i++)
+				bytes.put(GAME_TITLE_ADDRESS + i, title[i]);
+			for (int i = 0; i < GAME_CODE_LENGTH; i++)
+				bytes.put(GAME_CODE_ADDRESS + i, gameCode[i]);
+			return;
+		}
+		rom.putByte(GAME_VERSION_ADDRESS, version.charAt(2));
+		rom.putBytes(GAME_TITLE_ADDRESS, Arrays.copyOf(title.getBytes(), GAME_TITLE_LENGTH));
+		rom.putBytes(GAME_CODE_ADDRESS, Arrays.copyOf(gameCode.getBytes(), GAME_CODE_LENGTH));
 	}
 }
@@ -0,0 +1,83 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl;
+
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * <p>This simple enumerated type lists the ways a {@link GbaRom} can be opened. Each mode decides whether writes 
+ * are allowed, and whether they reach the file.</p>
+ * 
+ * <p>Files opened {@link #READ_ONLY} are mapped without ever being opened for writing, so they can be read from 
+ * read-only media, and every process reading the same file shares the page cache of the operating system.</p>
+ * 
+ * @author Phillip Groves
+ *
+ */
+public enum GbaRomMode {
+
+	/** Writes are not allowed */
+	READ_ONLY( "r", MapMode.READ_ONLY ),
+
+	/** Writes are allowed, but are only held in memory and never reach the file */
+	PRIVATE( "rw", MapMode.PRIVATE ),
+
+	/** Writes are allowed, and are written to the file */
+	READ_WRITE( "rw", MapMode.READ_WRITE );
+
+	/** Mode of {@link java.io.RandomAccessFile} used to open the file */
+	private final String fileMode;
+	
+	/** Mode used to map the file */
+	private final MapMode mapMode;
+	
+	private GbaRomMode(String fileMode, MapMode mapMode) {
+		this.fileMode = fileMode;
+		this.mapMode = mapMode;
+	}
+	
+	/**
+	 * 
+	 * @return Mode of {@link java.io.RandomAccessFile} used to open the file
+	 */
+	String fileMode() {
+		return fileMode;
+	}
+	
+	/**
+	 * 
+	 * @return Mode used to map the file
+	 */
+	MapMode mapMode() {
+		return mapMode;
+	}
+	
+	/**
+	 * 
+	 * @return Whether writes are allowed
+	 */
+	public boolean isWritable() {
+		return this != READ_ONLY;
+	}
+}
@@ -0,0 +1,271 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * <p>This class holds writes to a ROM that have not been applied yet. While a transaction is open (see 
+ * {@link GbaRom#beginTransaction()}), every put() method of the ROM writes into the transaction instead of the 
+ * file, and every get() method of the ROM sees those pending writes. Views of the ROM (e.g. 
+ * {@link GbaRom#getByteView()}) only show applied data.</p>
+ * 
+ * <p>Pending writes are kept as sorted ranges, where overlapping and touching writes are joined into one. 
+ * {@link #commit()} applies the ranges in address order, and {@link #rollback()} drops them, leaving the file 
+ * untouched. Many small edits (e.g. to tables) are therefore applied as a few large sequential writes. Committing 
+ * does not flush the ROM, so the pages written stay dirty until {@link GbaRom#flush()} is called.</p>
+ * 
+ * <p>Transactions can be used with try-with-resources, where a transaction that was not committed is rolled back 
+ * on close.</p>
+ * 
+ * @author Phillip Groves
+ * 
+ */
+public class GbaRomTransaction implements AutoCloseable {
+	
+	/** Ranges closer than this amount of bytes are applied as one write, along with the bytes between them */
+	private static final int MERGE_GAP = 16;
+	
+	private final GbaRom rom;
+	
+	/** Pending bytes of each range by address, where ranges never overlap or touch */
+	private final TreeMap<Integer, byte[]> ranges = new TreeMap<Integer, byte[]>();
+	
+	/** Actions to run once the pending writes have been applied, in the order they were added */
+	private final List<Runnable> commitActions = new ArrayList<Runnable>();
+	
+	/** Whether this transaction has been committed or rolled back */
+	private boolean closed;
+	
+	/**
+	 * 
+	 * @param rom The ROM written to
+	 */
+	GbaRomTransaction(GbaRom rom) {
+		this.rom = rom;
+	}
+	
+	/**
+	 * Applies every pending write to the ROM in address order, and then notifies the write listeners of the ROM. 
+	 * The file is not forced to disk.
+	 */
+	public void commit() {
+		rom.commit(this);
+	}
+	
+	/**
+	 * Drops every pending write. The file is left untouched.
+	 */
+	public void rollback() {
+		rom.rollback(this);
+	}
+	
+	/**
+	 * Rolls this transaction back if it has not been committed.
+	 */
+	@Override
+	public void close() {
+		if (!isClosed())
+			rollback();
+	}
+	
+	/**
+	 * 
+	 * @return Whether this transaction has been committed or rolled back
+	 */
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+	
+	/**
+	 * 
+	 * @return The amount of pending bytes
+	 */
+	public synchronized int getPendingBytes() {
+		int length = 0;
+		for (byte[] data : ranges.values())
+			length += data.length;
+		return length;
+	}
+	
+	/**
+	 * 
+	 * @return The amount of separate ranges pending
+	 */
+	public synchronized int getPendingRanges() {
+		return ranges.size();
+	}
+	
+	/**
+	 * Adds a pending write, joining it with any range it overlaps or touches.
+	 * 
+	 * @param address The first address written
+	 * @param data The bytes written
+	 */
+	synchronized void put(int address, byte[] data) {
+		checkOpen();
+		int start = address, end = address + data.length;
+		Map.Entry<Integer, byte[]> lower = ranges.floorEntry(address);
+		if (lower != null && lower.getKey() + lower.getValue().length >= end) {
+			// the write falls within a single range, so update it in place
+			System.arraycopy(data, 0, lower.getValue(), address - lower.getKey(), data.length);
+			return;
+		}
+		if (lower != null && lower.getKey() + lower.getValue().length >= address)
+			start = lower.getKey();
+		
+		NavigableMap<Integer, byte[]> joined = ranges.subMap(start, true, end, true);
+		for (Map.Entry<Integer, byte[]> range : joined.entrySet())
+			end = Math.max(end, range.getKey() + range.getValue().length);
+		byte[] merged = new byte[end - start];
+		for (Map.Entry<Integer, byte[]> range : joined.entrySet())
+			System.arraycopy(range.getValue(), 0, merged, range.getKey() - start, range.getValue().length);
+		System.arraycopy(data, 0, merged, address - start, data.length);
+		joined.clear();
+		ranges.put(start, merged);
+	}
+	
+	/**
+	 * 
+	 * @param address The first address
+	 * @param length The amount of bytes
+	 * @return Whether any pending write overlaps the given range
+	 */
+	synchronized boolean touches(int address, int length) {
+		Map.Entry<Integer, byte[]> lower = ranges.floorEntry(address);
+		if (lower != null && lower.getKey() + lower.getValue().length > address)
+			return true;
+		Integer higher = ranges.higherKey(address);
+		return higher != null && higher < address + length;
+	}
+	
+	/**
+	 * Copies pending writes over bytes read from the ROM.
+	 * 
+	 * @param address Address of the first byte read
+	 * @param destination Bytes read from the ROM, which are updated
+	 */
+	synchronized void apply(int address, byte[] destination) {
+		int end = address + destination.length;
+		Map.Entry<Integer, byte[]> lower = ranges.floorEntry(address);
+		int from = lower != null ? lower.getKey() : address;
+		for (Map.Entry<Integer, byte[]> range : ranges.subMap(from, true, end, false).entrySet()) {
+			int start = Math.max(address, range.getKey());
+			int stop = Math.min(end, range.getKey() + range.getValue().length);
+			if (start < stop)
+				System.arraycopy(range.getValue(), start - range.getKey(), destination, start - address, stop - start);
+		}
+	}
+	
+	/**
+	 * Takes the pending writes for applying, and closes this transaction.
+	 * 
+	 * @return Pending bytes of each range by address
+	 */
+	synchronized TreeMap<Integer, byte[]> take() {
+		checkOpen();
+		closed = true;
+		TreeMap<Integer, byte[]> pending = new TreeMap<Integer, byte[]>(ranges);
+		ranges.clear();
+		return pending;
+	}
+	
+	/**
+	 * Joins ranges that are close together into batches to write, filling the space between them with the 
+	 * applied data they would overwrite.
+	 * 
+	 * @param ranges Pending bytes of each range by address, as taken by {@link #take()}
+	 * @param committed Buffer of applied data, for filling the space between joined ranges
+	 * @return Bytes of each batch to write by address
+	 */
+	static TreeMap<Integer, byte[]> join(TreeMap<Integer, byte[]> ranges, ByteBuffer committed) {
+		TreeMap<Integer, byte[]> batches = new TreeMap<Integer, byte[]>();
+		Map.Entry<Integer, byte[]> batch = null;
+		for (Map.Entry<Integer, byte[]> range : ranges.entrySet()) {
+			if (batch != null && range.getKey() - (batch.getKey() + batch.getValue().length) <= MERGE_GAP) {
+				int start = batch.getKey();
+				byte[] merged = new byte[range.getKey() + range.getValue().length - start];
+				System.arraycopy(batch.getValue(), 0, merged, 0, batch.getValue().length);
+				for (int i = batch.getValue().length; i < range.getKey() - start; i++)
+					merged[i] = committed.get(start + i);
+				System.arraycopy(range.getValue(), 0, merged, range.getKey() - start, range.getValue().length);
+				batches.put(start, merged);
+				batch = batches.floorEntry(start);
+			} else {
+				batches.put(range.getKey(), range.getValue());
+				batch = batches.floorEntry(range.getKey());
+			}
+		}
+		return batches;
+	}
+	
+	/**
+	 * Drops every pending write and closes this transaction.
+	 * 
+	 * @return The ranges that were pending, by address
+	 */
+	synchronized TreeMap<Integer, byte[]> discard() {
+		checkOpen();
+		closed = true;
+		TreeMap<Integer, byte[]> discarded = new TreeMap<Integer, byte[]>(ranges);
+		ranges.clear();
+		commitActions.clear();
+		return discarded;
+	}
+	
+	/**
+	 * Adds an action to run after this transaction is committed and every write listener has been notified. The 
+	 * action is dropped if this transaction is rolled back.
+	 * 
+	 * @param action The action to run
+	 */
+	synchronized void afterCommit(Runnable action) {
+		checkOpen();
+		commitActions.add(action);
+	}
+	
+	/**
+	 * Takes the actions to run now that this transaction has been committed.
+	 * 
+	 * @return Each action added by {@link #afterCommit(Runnable)}
+	 */
+	synchronized List<Runnable> takeCommitActions() {
+		List<Runnable> actions = new ArrayList<Runnable>(commitActions);
+		commitActions.clear();
+		return actions;
+	}
+	
+	/**
+	 * Throws if this transaction has been committed or rolled back.
+	 */
+	private void checkOpen() {
+		if (closed)
+			throw new IllegalStateException("Transaction has already been committed or rolled back!");
+	}
+}
@@ -0,0 +1,214 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>This class represents a table of text strings that are seperated by 0xFF (ending character), such as the
+ * item, move, or species name tables. Unlike {@link GbaRom#getStringList(int, int)}, getting a single entry does
+ * not decode every entry before it.</p>
+ * 
+ * <p>On first use, the table is scanned once for its ending characters and the address of each entry is kept in
+ * a compact index. Decoded strings are then held in a bounded cache that drops the least recently used entry.
+ * Writes to the ROM that touch the table drop the affected entries, and the index is checked again on next use.
+ * </p>
+ * 
+ * <p>Tables register themselves with their ROM, so call {@link #release()} when a table is no longer needed. Tables 
+ * returned by {@link GbaRom#getStringTable(int, int)} are shared by every caller, and stay registered for as long 
+ * as their ROM.</p>
+ * 
+ * @author Phillip Groves
+ * 
+ */
+public class GbaStringTable implements RomWriteListener {
+	
+	/** The amount of decoded strings held by default */
+	public static final int DEFAULT_CACHE_SIZE = 256;
+	
+	private final GbaRom rom;
+	
+	/** Address of the first string */
+	private final int address;
+	
+	/** The amount of strings in this table */
+	private final int length;
+	
+	/** Address of each string, followed by the address after the last ending character; null until first use */
+	private int[] offsets;
+	
+	/** Whether a write has touched this table since {@link #offsets} was built */
+	private boolean stale;
+	
+	/** Whether this table is shared through {@link GbaRom#getStringTable(int, int)}, and so is never released */
+	private final boolean shared;
+	
+	/** Decoded strings by index, in order of least to most recently used */
+	private final LinkedHashMap<Integer, String> cache;
+	
+	/**
+	 * 
+	 * @param rom
+	 * @param address Address of the first string
+	 * @param length The amount of strings
+	 * @param cacheSize The maximum amount of decoded strings to hold
+	 */
+	public GbaStringTable(GbaRom rom, int address, int length, int cacheSize) {
+		this (rom, address, length, cacheSize, false);
+	}
+	
+	/**
+	 * 
+	 * @param rom
+	 * @param address Address of the first string
+	 * @param length The amount of strings
+	 * @param cacheSize The maximum amount of decoded strings to hold
+	 * @param shared Whether the table is shared through {@link GbaRom#getStringTable(int, int)}
+	 */
+	GbaStringTable(GbaRom rom, int address, int length, final int cacheSize, boolean shared) {
+		this.rom = rom;
+		this.shared = shared;
+		this.address = address;
+		this.length = length;
+		this.cache = new LinkedHashMap<Integer, String>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+				return size() > cacheSize;
+			}
+		};
+		rom.addWriteListener(this);
+	}
+	
+	/**
+	 * 
+	 * @param index Index of the string
+	 * @return The trimmed text of the string
+	 */
+	public synchronized String get(int index) {
+		checkIndex(index);
+		int[] offsets = offsets();
+		String text = cache.get(index);
+		if (text == null) {
+			StringBuilder builder = new StringBuilder();
+			rom.getStringUtilEnd(offsets[index], builder);
+			text = builder.toString().trim();
+			cache.put(index, text);
+		}
+		return text;
+	}
+	
+	/**
+	 * 
+	 * @param index Index of the string
+	 * @return Address of the string
+	 */
+	public synchronized int getAddress(int index) {
+		checkIndex(index);
+		return offsets()[index];
+	}
+	
+	/**
+	 * 
+	 * @return The address after the last ending character of this table
+	 */
+	public synchronized int getEndAddress() {
+		return offsets()[length];
+	}
+	
+	/**
+	 * 
+	 * @return {@link #address}
+	 */
+	public int getAddress() {
+		return address;
+	}
+	
+	/**
+	 * 
+	 * @return The amount of strings in this table
+	 */
+	public int size() {
+		return length;
+	}
+	
+	/**
+	 * Stops this table from listening to writes on its ROM. The table should not be used afterwards. Shared tables 
+	 * (see {@link GbaRom#getStringTable(int, int)}) are left registered, as other callers still use them.
+	 */
+	public void release() {
+		if (!shared)
+			rom.removeWriteListener(this);
+	}
+	
+	@Override
+	public synchronized void written(int address, int length) {
+		if (offsets == null || address + length <= this.address || address >= offsets[this.length])
+			return;
+		
+		int first = Arrays.binarySearch(offsets, 0, this.length, address);
+		first = first < 0 ? Math.max(0, -first - 2) : first;
+		for (Iterator<Integer> i = cache.keySet().iterator(); i.hasNext(); ) {
+			int index = i.next();
+			if (index >= first && offsets[index] < address + length)
+				i.remove();
+		}
+		stale = true;
+	}
+	
+	/**
+	 * Builds the index of string addresses if needed. If a write moved any ending character, every cached string
+	 * is dropped, as entries may no longer line up with their index.
+	 * 
+	 * @return Address of each string
+	 */
+	private int[] offsets() {
+		if (offsets == null || stale) {
+			int[] scanned = new int[length + 1];
+			int position = address;
+			for (int i = 0; i < length; i++) {
+				scanned[i] = position;
+				while (rom.getByte(position++) != 0xFF);
+			}
+			scanned[length] = position;
+			
+			if (offsets != null && !Arrays.equals(offsets, scanned))
+				cache.clear();
+			offsets = scanned;
+			stale = false;
+		}
+		return offsets;
+	}
+	
+	/**
+	 * 
+	 * @param index Index to check
+	 */
+	private void checkIndex(int index) {
+		if (index < 0 || index >= length)
+			throw new IndexOutOfBoundsException("String index " + index + " is outside of table size " + length);
+	}
+}
@@ -0,0 +1,291 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <p>This class finds every pointer to a given offset, so that data can be moved without searching the whole ROM 
+ * for its pointers each time. A pointer is any 4-byte aligned value whose leading byte is 08 or 09 and whose 
+ * offset lies within the ROM (see {@link GbaRom#getPointer(int)}). Values that only look like pointers are 
+ * found as well, so check each reference before trusting it blindly.</p>
+ * 
+ * <p>The ROM is scanned once on creation, in parallel chunks on a {@link ForkJoinPool}, into a sorted array of 
+ * primitive entries, each holding an offset and the address that points to it. Indexes register themselves with 
+ * their ROM, and pointers written afterwards are kept in a small set beside the array, which is folded into the 
+ * array once it grows. Every reference is read again before it is returned, so pointers that have since been 
+ * overwritten are never returned.</p>
+ * 
+ * <p>Call {@link #release()} when an index is no longer needed.</p>
+ * 
+ * @author Phillip Groves
+ * 
+ */
+public class PointerIndex implements RomWriteListener {
+	
+	/** The amount of bytes scanned by a single task */
+	private static final int CHUNK_SIZE = 1 << 18;
+	
+	/** The least amount of written pointers held before they are folded into {@link #entries} */
+	private static final int MIN_FOLD_SIZE = 4096;
+	
+	private final GbaRom rom;
+	
+	/** Pointers found by the scan, each keyed by offset and then address (see {@link #key(int, int)}) */
+	private long[] entries;
+	
+	/** Pointers written since {@link #entries} was built, keyed the same way */
+	private final TreeSet<Long> written = new TreeSet<Long>();
+	
+	/**
+	 * 
+	 * @param rom The ROM to index
+	 */
+	public PointerIndex(GbaRom rom) {
+		this.rom = rom;
+		ByteBuffer source = rom.getByteView();
+		this.entries = ForkJoinPool.commonPool().invoke(new ScanTask(source, 0, source.limit() & ~3)).toArray();
+		Arrays.parallelSort(entries);
+		rom.addWriteListener(this);
+	}
+	
+	/**
+	 * 
+	 * @param offset The offset pointed to
+	 * @return Address of each pointer to the given offset, in address order
+	 */
+	public synchronized int[] getReferences(int offset) {
+		int[] references = new int[8];
+		int count = 0;
+		for (int i = lowerBound(entries, key(offset, 0)); i < entries.length && target(entries[i]) == offset; i++) {
+			if (count == references.length)
+				references = Arrays.copyOf(references, count * 2);
+			references[count++] = source(entries[i]);
+		}
+		for (long entry : written.subSet(key(offset, 0), key(offset + 1, 0))) {
+			if (count == references.length)
+				references = Arrays.copyOf(references, count * 2);
+			references[count++] = source(entry);
+		}
+		
+		// drop pointers that have been overwritten, and those found by both the scan and a later write
+		Arrays.sort(references, 0, count);
+		int kept = 0;
+		for (int i = 0; i < count; i++) {
+			if ((kept == 0 || references[kept - 1] != references[i]) && pointsTo(references[i], offset))
+				references[kept++] = references[i];
+		}
+		return Arrays.copyOf(references, kept);
+	}
+	
+	/**
+	 * Rewrites every pointer to the given offset so that it points to the new offset instead. The pointers are 
+	 * written as one transaction, or into the open transaction of the ROM if there is one.
+	 * 
+	 * @param oldOffset The offset pointed to
+	 * @param newOffset The offset to point to instead
+	 * @return The amount of pointers rewritten
+	 */
+	public int repoint(int oldOffset, int newOffset) {
+		// the ROM is written outside of the lock on this index, as its listeners are notified under a lock on the ROM
+		int[] references = getReferences(oldOffset);
+		if (references.length == 0)
+			return 0;
+		
+		if (rom.getTransaction() != null) {
+			for (int address : references)
+				rom.putPointer(address, newOffset);
+			return references.length;
+		}
+		try (GbaRomTransaction transaction = rom.beginTransaction()) {
+			for (int address : references)
+				rom.putPointer(address, newOffset);
+			transaction.commit();
+		}
+		return references.length;
+	}
+	
+	/**
+	 * Stops this index from listening to writes on its ROM. The index should not be used afterwards.
+	 */
+	public void release() {
+		rom.removeWriteListener(this);
+	}
+	
+	@Override
+	public synchronized void written(int address, int length) {
+		int last = Math.min(address + length - 1, rom.getLength() - 4);
+		for (int word = address & ~3; word <= last; word += 4) {
+			int value = rom.getInt(word);
+			if (isPointer(value, rom.getLength()))
+				written.add(key(value & 0x1FFFFFF, word));
+		}
+		if (written.size() > Math.max(MIN_FOLD_SIZE, entries.length >> 4))
+			fold();
+	}
+	
+	/**
+	 * Merges the written pointers into {@link #entries}, dropping every pointer that has since been overwritten.
+	 */
+	private void fold() {
+		long[] merged = Arrays.copyOf(entries, entries.length + written.size());
+		int count = entries.length;
+		for (long entry : written)
+			merged[count++] = entry;
+		Arrays.sort(merged);
+		
+		int kept = 0;
+		for (int i = 0; i < count; i++) {
+			if ((kept == 0 || merged[kept - 1] != merged[i]) && pointsTo(source(merged[i]), target(merged[i])))
+				merged[kept++] = merged[i];
+		}
+		entries = Arrays.copyOf(merged, kept);
+		written.clear();
+	}
+	
+	/**
+	 * 
+	 * @param address Address of the pointer
+	 * @param offset The offset pointed to
+	 * @return Whether the given address still holds a pointer to the offset
+	 */
+	private boolean pointsTo(int address, int offset) {
+		int value = rom.getInt(address);
+		return isPointer(value, rom.getLength()) && (value & 0x1FFFFFF) == offset;
+	}
+	
+	/**
+	 * 
+	 * @param value A 32-bit value
+	 * @param length The size of the ROM in bytes
+	 * @return Whether the value is a pointer into the ROM
+	 */
+	private static boolean isPointer(int value, int length) {
+		int bank = value >>> 24;
+		return (bank == 0x08 || bank == 0x09) && (value & 0x1FFFFFF) < length;
+	}
+	
+	/**
+	 * 
+	 * @param entries Sorted keys
+	 * @param key The key to find
+	 * @return Index of the first key that is not less than the given key
+	 */
+	private static int lowerBound(long[] entries, long key) {
+		int index = Arrays.binarySearch(entries, key);
+		return index < 0 ? -index - 1 : index;
+	}
+	
+	/**
+	 * 
+	 * @param offset The offset pointed to
+	 * @param address Address of the pointer
+	 * @return Key ordered by offset, then by address
+	 */
+	private static long key(int offset, int address) {
+		return ((long) offset << 32) | (address & 0xFFFFFFFFL);
+	}
+	
+	private static int target(long key) {
+		return (int) (key >>> 32);
+	}
+	
+	private static int source(long key) {
+		return (int) key;
+	}
+	
+	/**
+	 * Keys found by a scan, in address order.
+	 */
+	private static class Entries {
+		
+		private long[] values = new long[256];
+		private int size;
+		
+		private void add(long key) {
+			if (size == values.length)
+				values = Arrays.copyOf(values, size * 2);
+			values[size++] = key;
+		}
+		
+		private void addAll(Entries entries) {
+			if (size + entries.size > values.length)
+				values = Arrays.copyOf(values, Math.max(values.length * 2, size + entries.size));
+			System.arraycopy(entries.values, 0, values, size, entries.size);
+			size += entries.size;
+		}
+		
+		private long[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+	
+	/**
+	 * A task that scans a range of the buffer for pointers, splitting itself while the range is larger than a chunk.
+	 */
+	private static class ScanTask extends RecursiveTask<Entries> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final ByteBuffer source;
+		private final int start;
+		private final int end;
+		
+		private ScanTask(ByteBuffer source, int start, int end) {
+			this.source = source;
+			this.start = start;
+			this.end = end;
+		}
+		
+		@Override
+		protected Entries compute() {
+			if (end - start > CHUNK_SIZE) {
+				int middle = (start + ((end - start) >> 1)) & ~3;
+				ScanTask left = new ScanTask(source, start, middle);
+				left.fork();
+				Entries right = new ScanTask(source, middle, end).compute();
+				Entries entries = left.join();
+				entries.addAll(right);
+				return entries;
+			}
+			
+			Entries entries = new Entries();
+			int length = source.limit();
+			for (int address = start; address < end; address += 4) {
+				// check the leading byte first, as most words are not pointers
+				int bank = source.get(address + 3);
+				if (bank == 0x08 || bank == 0x09) {
+					int value = source.getInt(address);
+					if (isPointer(value, length))
+						entries.add(key(value & 0x1FFFFFF, address));
+				}
+			}
+			return entries;
+		}
+	}
+}
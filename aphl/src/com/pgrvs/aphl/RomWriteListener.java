@@ -0,0 +1,43 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl;
+
+/**
+ * This interface is intended to be implemented by objects that hold data derived from the ROM (e.g. caches or 
+ * indexes), and need to know when the underlying bytes change. Listeners are registered with 
+ * {@link GbaRom#addWriteListener(RomWriteListener)}.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public interface RomWriteListener {
+
+	/**
+	 * Called after bytes have been written to the ROM. This may be called from any thread that writes.
+	 * 
+	 * @param address The first address written
+	 * @param length The amount of bytes written
+	 */
+	public void written(int address, int length);
+}
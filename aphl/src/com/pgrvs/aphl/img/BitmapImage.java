@@ -23,27 +23,44 @@
 
 package com.pgrvs.aphl.img;
 
-import java.awt.Color;
-import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
-import java.util.HashMap;
-import java.util.Map;
+import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
- * This class represents an image within the ROM. Each image is built on {@link BitmapPixelData}
+ * <p>This class represents an image within the ROM. Each image is built on {@link BitmapPixelData}
  * and {@link BitmapPaletteData}. For ease with other Java components (e.g. Swing), and for logical reasons, 
- * this class extends {@link BufferedImage}.
+ * this class extends {@link BufferedImage}.</p>
+ * 
+ * <p>Images keep the color index of each pixel, so changing colors only needs one pass over the pixels rather 
+ * than decoding the pixel data again. See {@link #setPalette(BitmapPaletteData)}, or register an image with 
+ * {@link BitmapPaletteData#addPaletteListener(PaletteListener)} to follow every change to its palette. The 
+ * indexes take one byte per pixel on top of the ARGB raster, so an image uses 5 bytes per pixel rather than 
+ * 4.</p>
  * 
  * @author Phillip Groves
  *
  */
-public class BitmapImage extends BufferedImage {
+public class BitmapImage extends BufferedImage implements PaletteListener {
 	
 	/** Each bitmap image is comprised of 8x8 tiles */
 	private static final int TILE_SIZE = 8;
 	
-	/** The map allows for faster building and maintaining of the image */
-	private Map<Integer, BufferedImage> tiles = new HashMap<Integer, BufferedImage>();
+	/** Pixel data of the image, kept for building {@link #atlas} */
+	private final BitmapPixelData pixels;
+	
+	/** Color index of each pixel in rows */
+	private final byte[] indexes;
+	
+	/** Colors of the image, where color index 0 is transparent */
+	private int[] colors;
+	
+	/** Color indexes of every tile; null until first use */
+	private volatile BitmapTileAtlas atlas;
+	
+	/** Tile subimages, indexed by tile id and then flip variant; null until first use */
+	private volatile AtomicReferenceArray<BufferedImage> tiles;
 	
 	/**
 	 * 
@@ -58,26 +75,25 @@ public class BitmapImage extends BufferedImage {
 		if (width % TILE_SIZE != 0 || height % TILE_SIZE != 0)
 			throw new IllegalStateException( "Bitmap image width and height must be divisible by 8!" );
 		
+		this.pixels = pixels;
+		this.indexes = new byte[width * super.getHeight()];
+		ByteBuffer values = pixels.getValues();
+		byte[] tile = new byte[TILE_SIZE * TILE_SIZE];
 		int index = 0;
 		// loop through rows of tiles
 		for (int yTile = 0; yTile < (super.getHeight() / TILE_SIZE); yTile++) {
-			// loop through columns of tiles
-			for (int xTile = 0; xTile < (super.getWidth() / TILE_SIZE); xTile++) {
+			// loop through columns of tiles, unpacking a whole tile at a time
+			for (int xTile = 0; xTile < (width / TILE_SIZE); xTile++) {
+				BitmapPixelUnpacker.unpack(values, index, pixels.getDepth(), tile, 0, tile.length);
+				index += tile.length;
 				// loop through rows of pixels inside tile
 				for (int yPixel = 0; yPixel < TILE_SIZE; yPixel++) {
-					// loop through columns of pixels inside tile
-					for (int xPixel = 0; xPixel < TILE_SIZE; xPixel++) {
-						int colorIndex = pixels.getPixel(index);
-						Color pixel = palette.getColor( colorIndex );
-				
-						getRaster().setPixel(xPixel + (xTile * TILE_SIZE), yPixel + (yTile * TILE_SIZE), 
-								new int[] { pixel.getRed(), pixel.getGreen(), pixel.getBlue(),
-										colorIndex == 0 ? 0 : 255 });
-						index++;
-					}
+					int out = ((yTile * TILE_SIZE) + yPixel) * width + (xTile * TILE_SIZE);
+					System.arraycopy(tile, yPixel * TILE_SIZE, indexes, out, TILE_SIZE);
 				}
 			}
 		}
+		setPalette(palette);
 	}
 	
 	/**
@@ -91,63 +107,104 @@ public class BitmapImage extends BufferedImage {
 	}
 	
 	/**
-	 * Retrieves an 8x8 tile from this image at the given tile id (usually given by game, e.g. in tilesets)
+	 * Retrieves an 8x8 tile from this image at the given tile id (usually given by game, e.g. in tilesets). Each 
+	 * tile and flip is only built once, and the same image is returned afterwards.
 	 * 
 	 * @param id Index of tile
 	 * @param xFlip Whether to flip on the horizontal axis
 	 * @param yFlip Whether to flip on the vertical axis
-	 * @return 8x8 tile subimage of this image
+	 * @return 8x8 tile image, which must not be modified
 	 */
 	public BufferedImage getTile(int id, boolean xFlip, boolean yFlip) {
-		BufferedImage tile = getTile(id);
-		if (xFlip)
-			tile = flipTileX(tile);
-		if (yFlip)
-			tile = flipTileY(tile);
+		BitmapTileAtlas atlas = getTileAtlas();
+		int offset = atlas.getOffset(id);
+		AtomicReferenceArray<BufferedImage> tiles = this.tiles;
+		if (tiles == null) {
+			synchronized (this) {
+				if (this.tiles == null)
+					this.tiles = new AtomicReferenceArray<BufferedImage>(atlas.size() * 4);
+				tiles = this.tiles;
+			}
+		}
+		
+		int slot = (id * 4) + (yFlip ? 2 : 0) + (xFlip ? 1 : 0);
+		BufferedImage tile = tiles.get(slot);
+		if (tile == null) {
+			tile = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+			int[] data = ((DataBufferInt) tile.getRaster().getDataBuffer()).getData();
+			byte[] indexes = atlas.getIndexes(xFlip, yFlip);
+			for (int i = 0; i < data.length; i++)
+				data[i] = colors[indexes[offset + i] & 0xFF];
+			if (!tiles.compareAndSet(slot, null, tile))
+				tile = tiles.get(slot);
+		}
 		return tile;
 	}
 	
 	/**
-	 * Retrieves an 8x8 tile from this image at the given tile id (usually given by game, e.g. in tilesets)
 	 * 
-	 * @param id Index of tile
-	 * @return 8x8 tile subimage of this image
+	 * @return Color indexes of every tile of this image, built on first use
 	 */
-	private BufferedImage getTile(int id) {
-		if (!tiles.containsKey( id)) {
-			int x = (id % ( super.getWidth() / TILE_SIZE )) * TILE_SIZE;
-			int y = (id / (super.getWidth() / TILE_SIZE )) * TILE_SIZE;
-			tiles.put(id, super.getSubimage(x, y, TILE_SIZE, TILE_SIZE));
+	public BitmapTileAtlas getTileAtlas() {
+		BitmapTileAtlas atlas = this.atlas;
+		if (atlas == null) {
+			synchronized (this) {
+				if (this.atlas == null)
+					this.atlas = new BitmapTileAtlas(pixels);
+				atlas = this.atlas;
+			}
 		}
-		return tiles.get( id );
+		return atlas;
 	}
 	
 	/**
-	 * Flips an 8x8 tile on the horizontal axis.
+	 * Recolors every pixel of this image with the given palette. Pixel data is not decoded again.
 	 * 
-	 * @param tile Tile to flip
-	 * @return Flipped tile
+	 * @param palette Color data
 	 */
-	private BufferedImage flipTileX(BufferedImage tile) {
-		BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, tile.getType());
-		Graphics2D graphics = image.createGraphics();
-		graphics.drawImage(tile, 0, 0, TILE_SIZE, TILE_SIZE, TILE_SIZE, 0, 0, TILE_SIZE, null);
-		graphics.dispose();
-		return image;
+	public void setPalette(BitmapPaletteData palette) {
+		// color index 0 is transparent
+		int[] colors = palette.getArgbValues().clone();
+		colors[0] &= 0x00FFFFFF;
+		this.colors = colors;
+		this.tiles = null;
+		
+		int[] data = ((DataBufferInt) getRaster().getDataBuffer()).getData();
+		for (int i = 0; i < data.length; i++)
+			data[i] = colors[indexes[i] & 0xFF];
 	}
 	
 	/**
-	 * Flips an 8x8 tile on the vertical axis.
 	 * 
-	 * @param tile Tile to flip
-	 * @return Flipped tile
+	 * @param x Column of pixel
+	 * @param y Row of pixel
+	 * @return Color palette index of the pixel
 	 */
-	private BufferedImage flipTileY( BufferedImage tile ) {
-		BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, tile.getType());
-		Graphics2D graphics = image.createGraphics();
-		graphics.drawImage(tile, 0, 0, TILE_SIZE, TILE_SIZE, 0, TILE_SIZE, TILE_SIZE, 0, null);
-		graphics.dispose();
-		return image;
+	public int getIndex(int x, int y) {
+		return indexes[(y * getWidth()) + x] & 0xFF;
+	}
+	
+	/**
+	 * Recolors only the pixels whose color index is within the changed range. Pixels of other colors are left 
+	 * as they are.
+	 */
+	@Override
+	public void colorsChanged(BitmapPaletteData palette, int index, int length) {
+		int[] colors = this.colors.clone();
+		int end = Math.min(index + length, colors.length);
+		for (int i = index; i < end; i++)
+			colors[i] = palette.getArgb(i);
+		// color index 0 is transparent
+		colors[0] &= 0x00FFFFFF;
+		this.colors = colors;
+		this.tiles = null;
+		
+		int[] data = ((DataBufferInt) getRaster().getDataBuffer()).getData();
+		for (int i = 0; i < data.length; i++) {
+			int color = indexes[i] & 0xFF;
+			if (color >= index && color < end)
+				data[i] = colors[color];
+		}
 	}
 	
 	/**
@@ -158,6 +215,6 @@ public class BitmapImage extends BufferedImage {
 	 * @return Height in pixels
 	 */
 	private static int getHeight( BitmapPixelData pixels, int width ) {
-		return (pixels.getValues().length / width) * (8 / pixels.getDepth().value());
+		return (pixels.getLength() / width) * (8 / pixels.getDepth().value());
 	}
 }
\ No newline at end of file
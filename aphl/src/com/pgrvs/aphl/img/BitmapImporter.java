@@ -0,0 +1,373 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.img;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>This class converts a {@link BufferedImage} into tiled 4bpp or 8bpp pixel data and a palette of 16-bit 
+ * colors, the reverse of {@link BitmapImage}. The result is an {@link ImportedBitmap}.</p>
+ * 
+ * <p>Each pixel is first reduced to the 15 bits of color the game can show. If the image then has more colors 
+ * than the palette can hold, they are reduced with median cut. Pixels are matched to the palette through a lookup 
+ * table over every 15-bit color (a 32x32x32 cube), so each distinct color is only matched once. Pixels with an 
+ * alpha below half become color index 0, which is transparent.</p>
+ * 
+ * <p>Tiles can also be deduplicated, in which case tiles that repeat (including flipped on either axis) are only 
+ * held once, and a tilemap is built for the image.</p>
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class BitmapImporter {
+	
+	/** The amount of 15-bit colors */
+	private static final int COLORS = 1 << 15;
+	
+	/** Each tile is 8x8 pixels */
+	private static final int TILE_SIZE = BitmapTileAtlas.TILE_SIZE;
+	
+	/** The largest tile id a tilemap entry can hold */
+	private static final int MAX_TILE_ID = 0x3FF;
+	
+	/** The amount of bits per pixel to import to */
+	private final BitmapPixelDepth depth;
+	
+	/** Whether repeated tiles are only held once */
+	private boolean deduplicate;
+	
+	/**
+	 * 
+	 * @param depth Bits per pixel to import to, which must be 4 or 8
+	 */
+	public BitmapImporter(BitmapPixelDepth depth) {
+		if (depth != BitmapPixelDepth.BPP_4 && depth != BitmapPixelDepth.BPP_8)
+			throw new IllegalStateException("Images can only be imported as 4bpp or 8bpp!");
+		this.depth = depth;
+	}
+	
+	/**
+	 * 
+	 * @param deduplicate Whether repeated tiles (including flipped tiles) are only held once
+	 */
+	public void setDeduplicate(boolean deduplicate) {
+		this.deduplicate = deduplicate;
+	}
+	
+	/**
+	 * Imports an image with a palette made from its own colors.
+	 * 
+	 * @param image The image to import, whose width and height must be divisible by 8
+	 * @return The imported pixel data and palette
+	 */
+	public ImportedBitmap importImage(BufferedImage image) {
+		int[] colors = toColors(image);
+		short[] palette = quantize(colors, 1 << depth.value());
+		return importImage(image, colors, palette);
+	}
+	
+	/**
+	 * Imports an image with an existing palette (e.g. to put new artwork on a palette shared with other images).
+	 * 
+	 * @param image The image to import, whose width and height must be divisible by 8
+	 * @param palette Color data, of which the first 16 (4bpp) or 256 (8bpp) colors are used
+	 * @return The imported pixel data and palette
+	 */
+	public ImportedBitmap importImage(BufferedImage image, BitmapPaletteData palette) {
+		short[] values = Arrays.copyOf(palette.getValues(), Math.min(palette.size(), 1 << depth.value()));
+		return importImage(image, toColors(image), values);
+	}
+	
+	/**
+	 * 
+	 * @param image The image to import
+	 * @param colors 15-bit color of each pixel in rows, or -1 for transparent pixels
+	 * @param palette The 16-bit value of each color to match, where color index 0 is transparent
+	 * @return The imported pixel data and palette
+	 */
+	private ImportedBitmap importImage(BufferedImage image, int[] colors, short[] palette) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int[] cube = createLookupCube(colors, palette);
+		palette = Arrays.copyOf(palette, 1 << depth.value());
+		
+		ByteArrayOutputStream tiles = new ByteArrayOutputStream(width * height);
+		int[] tilemap = deduplicate ? new int[(width / TILE_SIZE) * (height / TILE_SIZE)] : null;
+		Map<ByteBuffer, Integer> unique = new HashMap<ByteBuffer, Integer>();
+		byte[] tile = new byte[TILE_SIZE * TILE_SIZE];
+		int index = 0;
+		// loop through rows of tiles
+		for (int yTile = 0; yTile < (height / TILE_SIZE); yTile++) {
+			// loop through columns of tiles
+			for (int xTile = 0; xTile < (width / TILE_SIZE); xTile++) {
+				for (int yPixel = 0; yPixel < TILE_SIZE; yPixel++) {
+					int in = ((yTile * TILE_SIZE) + yPixel) * width + (xTile * TILE_SIZE);
+					for (int xPixel = 0; xPixel < TILE_SIZE; xPixel++) {
+						int color = colors[in + xPixel];
+						tile[(yPixel * TILE_SIZE) + xPixel] = (byte) (color < 0 ? 0 : cube[color]);
+					}
+				}
+				
+				if (deduplicate)
+					tilemap[index++] = findOrAdd(tile, unique, tiles);
+				else
+					pack(tile, tiles);
+			}
+		}
+		return new ImportedBitmap(tiles.toByteArray(), palette, tilemap, depth, width, height);
+	}
+	
+	/**
+	 * Finds the entry of a tile that has already been added, in any flip, or adds the tile.
+	 * 
+	 * @param tile Color indexes of the tile
+	 * @param unique Tile ids of each unflipped tile added
+	 * @param tiles Packed pixel data of each tile added
+	 * @return Tilemap entry of the tile
+	 */
+	private int findOrAdd(byte[] tile, Map<ByteBuffer, Integer> unique, ByteArrayOutputStream tiles) {
+		for (int flip = 0; flip < 4; flip++) {
+			boolean xFlip = (flip & 1) != 0;
+			boolean yFlip = (flip & 2) != 0;
+			// a tile drawn with a flip matches a tile added unflipped if flipping it the same way matches
+			Integer id = unique.get(ByteBuffer.wrap(flip(tile, xFlip, yFlip)));
+			if (id != null)
+				return id | (xFlip ? 0x400 : 0) | (yFlip ? 0x800 : 0);
+		}
+		
+		int id = unique.size();
+		if (id > MAX_TILE_ID)
+			throw new IllegalStateException("Image has more than " + (MAX_TILE_ID + 1) + " unique tiles!");
+		unique.put(ByteBuffer.wrap(tile.clone()), id);
+		pack(tile, tiles);
+		return id;
+	}
+	
+	/**
+	 * Packs color indexes into pixel data, where the first pixel of a 4bpp byte is its low half.
+	 * 
+	 * @param tile Color indexes of a tile
+	 * @param tiles The pixel data to append to
+	 */
+	private void pack(byte[] tile, ByteArrayOutputStream tiles) {
+		if (depth == BitmapPixelDepth.BPP_8) {
+			tiles.write(tile, 0, tile.length);
+		} else {
+			for (int i = 0; i < tile.length; i += 2)
+				tiles.write((tile[i] & 0x0F) | ((tile[i + 1] & 0x0F) << 4));
+		}
+	}
+	
+	/**
+	 * 
+	 * @param tile Color indexes of a tile
+	 * @param xFlip Whether to flip on the horizontal axis
+	 * @param yFlip Whether to flip on the vertical axis
+	 * @return Color indexes of the flipped tile
+	 */
+	private static byte[] flip(byte[] tile, boolean xFlip, boolean yFlip) {
+		byte[] flipped = new byte[tile.length];
+		for (int y = 0; y < TILE_SIZE; y++)
+			for (int x = 0; x < TILE_SIZE; x++)
+				flipped[(y * TILE_SIZE) + x] = tile[((yFlip ? TILE_SIZE - 1 - y : y) * TILE_SIZE) 
+						+ (xFlip ? TILE_SIZE - 1 - x : x)];
+		return flipped;
+	}
+	
+	/**
+	 * Reduces each pixel of an image to 15 bits of color.
+	 * 
+	 * @param image The image to read
+	 * @return 15-bit color of each pixel in rows, or -1 for transparent pixels
+	 */
+	private static int[] toColors(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		if (width % TILE_SIZE != 0 || height % TILE_SIZE != 0)
+			throw new IllegalStateException( "Bitmap image width and height must be divisible by 8!" );
+		
+		int[] colors = image.getRGB(0, 0, width, height, null, 0, width);
+		for (int i = 0; i < colors.length; i++) {
+			int argb = colors[i];
+			if ((argb >>> 24) < 0x80)
+				colors[i] = -1;
+			else
+				colors[i] = ((argb >> 19) & 0x1F) | (((argb >> 11) & 0x1F) << 5) | (((argb >> 3) & 0x1F) << 10);
+		}
+		return colors;
+	}
+	
+	/**
+	 * Chooses a palette for the given colors with median cut. Color index 0 is kept for transparency.
+	 * 
+	 * @param colors 15-bit color of each pixel, or -1 for transparent pixels
+	 * @param size The maximum amount of colors in the palette
+	 * @return The 16-bit value of each color chosen
+	 */
+	private static short[] quantize(int[] colors, int size) {
+		int[] counts = new int[COLORS];
+		int distinct = 0;
+		for (int color : colors)
+			if (color >= 0 && counts[color]++ == 0)
+				distinct++;
+		
+		int[] used = new int[distinct];
+		for (int color = 0, i = 0; color < COLORS; color++)
+			if (counts[color] > 0)
+				used[i++] = color;
+		
+		// split the box with the widest channel until there are enough boxes
+		List<int[]> boxes = new ArrayList<int[]>();
+		if (distinct > 0)
+			boxes.add(new int[] { 0, distinct });
+		while (boxes.size() < size - 1) {
+			int widest = -1, widestRange = 0, widestChannel = 0;
+			for (int i = 0; i < boxes.size(); i++) {
+				int[] box = boxes.get(i);
+				for (int channel = 0; channel < 3 && box[1] - box[0] > 1; channel++) {
+					int range = range(used, box[0], box[1], channel);
+					if (range > widestRange) {
+						widest = i;
+						widestRange = range;
+						widestChannel = channel;
+					}
+				}
+			}
+			if (widest < 0)
+				break; // every box holds a single color
+			
+			int[] box = boxes.get(widest);
+			int split = split(used, counts, box[0], box[1], widestChannel);
+			boxes.set(widest, new int[] { box[0], split });
+			boxes.add(new int[] { split, box[1] });
+		}
+		
+		// each color is the average of its box, weighted by how many pixels use each color
+		short[] palette = new short[boxes.size() + 1];
+		for (int i = 0; i < boxes.size(); i++) {
+			int[] box = boxes.get(i);
+			long red = 0, green = 0, blue = 0, total = 0;
+			for (int j = box[0]; j < box[1]; j++) {
+				int color = used[j];
+				red += (long) (color & 0x1F) * counts[color];
+				green += (long) ((color >> 5) & 0x1F) * counts[color];
+				blue += (long) ((color >> 10) & 0x1F) * counts[color];
+				total += counts[color];
+			}
+			palette[i + 1] = (short) (((red + total / 2) / total) | (((green + total / 2) / total) << 5) 
+					| (((blue + total / 2) / total) << 10));
+		}
+		return palette;
+	}
+	
+	/**
+	 * 
+	 * @param used 15-bit colors
+	 * @param start Position of the first color of the box
+	 * @param end Position after the last color of the box
+	 * @param channel Channel to measure (0 red, 1 green, 2 blue)
+	 * @return The difference between the highest and lowest value of the channel in the box
+	 */
+	private static int range(int[] used, int start, int end, int channel) {
+		int shift = channel * 5;
+		int min = 0x1F, max = 0;
+		for (int i = start; i < end; i++) {
+			int value = (used[i] >> shift) & 0x1F;
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+		return max - min;
+	}
+	
+	/**
+	 * Sorts the colors of a box by a channel, and finds where half of its pixels have been passed.
+	 * 
+	 * @param used 15-bit colors
+	 * @param counts The amount of pixels of each 15-bit color
+	 * @param start Position of the first color of the box
+	 * @param end Position after the last color of the box
+	 * @param channel Channel to sort by (0 red, 1 green, 2 blue)
+	 * @return Position of the first color of the second half, which always leaves both halves non-empty
+	 */
+	private static int split(int[] used, int[] counts, int start, int end, int channel) {
+		int shift = channel * 5;
+		// sort by the channel through keys of the channel above the color
+		for (int i = start; i < end; i++)
+			used[i] |= ((used[i] >> shift) & 0x1F) << 15;
+		Arrays.sort(used, start, end);
+		long total = 0;
+		for (int i = start; i < end; i++) {
+			used[i] &= COLORS - 1;
+			total += counts[used[i]];
+		}
+		
+		long passed = 0;
+		int split = start + 1;
+		for (int i = start; i < end - 1; i++) {
+			passed += counts[used[i]];
+			split = i + 1;
+			if (passed * 2 >= total)
+				break;
+		}
+		return split;
+	}
+	
+	/**
+	 * Matches every color used by an image to its nearest palette color.
+	 * 
+	 * @param colors 15-bit color of each pixel, or -1 for transparent pixels
+	 * @param palette The 16-bit value of each color, where color index 0 is transparent
+	 * @return Color index of each 15-bit color used
+	 */
+	private static int[] createLookupCube(int[] colors, short[] palette) {
+		int[] cube = new int[COLORS];
+		Arrays.fill(cube, -1);
+		for (int color : colors) {
+			if (color < 0 || cube[color] >= 0)
+				continue;
+			
+			int red = color & 0x1F, green = (color >> 5) & 0x1F, blue = (color >> 10) & 0x1F;
+			int nearest = palette.length > 1 ? 1 : 0, nearestDistance = Integer.MAX_VALUE;
+			for (int i = 1; i < palette.length; i++) {
+				int dr = red - (palette[i] & 0x1F);
+				int dg = green - ((palette[i] >> 5) & 0x1F);
+				int db = blue - ((palette[i] >> 10) & 0x1F);
+				int distance = (dr * dr) + (dg * dg) + (db * db);
+				if (distance < nearestDistance) {
+					nearest = i;
+					nearestDistance = distance;
+				}
+			}
+			cube[color] = nearest;
+		}
+		return cube;
+	}
+}
@@ -24,15 +24,25 @@
 package com.pgrvs.aphl.img;
 
 import java.awt.Color;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import com.pgrvs.aphl.GbaRom;
 import com.pgrvs.aphl.Savable;
+import com.pgrvs.aphl.util.CompressionType;
+import com.pgrvs.aphl.util.CompressionUtil;
 import com.pgrvs.aphl.util.Lz77CompressionUtil;
 
 /**
- * This class represents a palette of colors within the ROM. Each color palette can contain 16 or 512 colors, and 
+ * <p>This class represents a palette of colors within the ROM. Each color palette can contain 16 or 512 colors, and 
  * contains 16-bit integer values. Methods for getting and setting palette data are available, and changes can be 
- * saved as well.
+ * saved as well.</p>
+ * 
+ * <p>Colors are held as their 16-bit values and as packed 32-bit ARGB values for rendering. {@link Color} objects 
+ * are only created when asked for. Images and tilemaps registered through 
+ * {@link #addPaletteListener(PaletteListener)} are recolored as colors change.</p>
  * 
  * @author Phillip Groves
  *
@@ -45,71 +55,133 @@ public class BitmapPaletteData implements Savable {
 	/** Address of this palette data */
 	private final int address;
 	
+	/** The compression of this palette data, or null if it is not compressed */
+	private final CompressionType compression;
+	
 	/** The 16-bit values backing this palette */
-	private int[] values;
+	private final short[] values;
+	
+	/** Opaque 32-bit ARGB value of each color, held for rendering straight into image buffers */
+	private final int[] argb;
 	
-	/** Color objects held for ease with other Java components (e.g. Swing) */
-	private Color[] colors;
+	/** Listeners notified of each change to the colors */
+	private final List<PaletteListener> listeners = new CopyOnWriteArrayList<PaletteListener>();
 	
 	/**
+	 * Reads a compressed palette, as this constructor always has. See 
+	 * {@link #BitmapPaletteData(GbaRom, int, int, boolean)} for palettes that are not compressed.
 	 * 
 	 * @param rom
-	 * @param address Address to read
-	 * @param size Amount of colors
+	 * @param address Address to read, which must be compressed in a format listed by {@link CompressionType}
+	 * @param size Amount of colors, which is unused as the size is taken from the compressed header
 	 */
 	public BitmapPaletteData(GbaRom rom, int address, int size) {
+		this (rom, address, size, true);
+	}
+	
+	/**
+	 * 
+	 * @param rom
+	 * @param address Address to read
+	 * @param size Amount of colors, which is only used if the palette is not compressed
+	 * @param compressed Whether the palette is compressed in a format listed by {@link CompressionType}. This is 
+	 * 	never guessed from the data, as the first byte of many uncompressed palettes matches a compression type
+	 */
+	public BitmapPaletteData(GbaRom rom, int address, int size, boolean compressed) {
 		this.address = address;
 		this.rom = rom;
 		
-		if (rom.getByte(address) == 0x10)
-			this.values = Lz77CompressionUtil.decompress(rom, address);
-			
-		this.colors = new Color[values.length / 2];
-		
-		for (int i = 0; i < values.length; i++) {
-			int value = values[i] | (values[++i] << 8);
-			
-			int red = ( value & 0x1F ) << 3;
-			int green = ( value & 0x3E0 ) >> 2;
-			int blue = ( value & 0x7C00 ) >> 7;
-			
-			colors[i / 2] = new Color(red, green, blue);
+		if (compressed) {
+			this.compression = CompressionType.of(rom.getByte(address));
+			if (compression == null)
+				throw new IllegalStateException("Palette at " + Integer.toHexString(address) + " is not compressed!");
+			byte[] data = rom.getAssetCache().get(address);
+			this.values = new short[data.length / 2];
+			ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(values);
+		} else {
+			this.compression = null;
+			this.values = rom.getShorts(address, new short[size], 0, size);
 		}
+		
+		this.argb = new int[values.length];
+		for (int i = 0; i < values.length; i++)
+			argb[i] = toArgb(values[i]);
+	}
+	
+	/**
+	 * Creates a palette that is not read from a ROM (e.g. from {@link BitmapImporter}), which cannot be saved.
+	 * 
+	 * @param values The 16-bit value of each color, which are copied
+	 */
+	public BitmapPaletteData(short[] values) {
+		this.rom = null;
+		this.address = -1;
+		this.compression = null;
+		this.values = values.clone();
+		this.argb = new int[values.length];
+		for (int i = 0; i < values.length; i++)
+			argb[i] = toArgb(values[i]);
 	}
 	
 	/**
 	 * 
 	 * @param index The index of the color
-	 * @return The color at the given index
+	 * @return The 16-bit value of the color at the given index
 	 */
 	public int getValue(int index) {
-		return values[index];
+		return values[index] & 0xFFFF;
 	}
 	
 	/**
 	 * 
 	 * @param index The index of the color to replace
-	 * @param value The value of the new color
+	 * @param value The 16-bit value of the new color
 	 */
 	public void setValue(int index, int value) {
-		values[index] = value;
+		values[index] = (short) value;
+		argb[index] = toArgb(value);
+		changed(index, 1);
 	}
 	
 	/**
+	 * Replaces several colors at once, notifying listeners a single time.
 	 * 
-	 * @return All color values
+	 * @param index The index of the first color to replace
+	 * @param values The 16-bit values of the new colors
 	 */
-	public int[] getValues() {
+	public void setValues(int index, short[] values) {
+		for (int i = 0; i < values.length; i++) {
+			this.values[index + i] = values[i];
+			argb[index + i] = toArgb(values[i]);
+		}
+		changed(index, values.length);
+	}
+	
+	/**
+	 * <p>Note: The returned array is held by this palette, so colors should be changed through 
+	 * {@link #setValue(int, int)} instead, which also notifies listeners.</p>
+	 * 
+	 * @return The 16-bit value of each color on this palette
+	 */
+	public short[] getValues() {
 		return values;
 	}
 	
+	/**
+	 * 
+	 * @return The amount of colors on this palette
+	 */
+	public int size() {
+		return values.length;
+	}
+	
 	/**
 	 * 
 	 * @param index The index of the color
 	 * @return The color at the given index
 	 */
 	public Color getColor(int index) {
-		return colors[index];
+		return new Color(argb[index]);
 	}
 	
 	/**
@@ -117,19 +189,101 @@ public class BitmapPaletteData implements Savable {
 	 * @return All colors on this palette
 	 */
 	public Color[] getColors() {
+		Color[] colors = new Color[argb.length];
+		for (int i = 0; i < colors.length; i++)
+			colors[i] = new Color(argb[i]);
 		return colors;
 	}
 	
 	/**
 	 * 
-	 * @return {@link #address}
+	 * @param index The index of the color
+	 * @return The opaque 32-bit ARGB value of the color at the given index
+	 */
+	public int getArgb(int index) {
+		return argb[index];
+	}
+	
+	/**
+	 * <p>Note: The returned array is held by this palette, and must not be modified.</p>
+	 * 
+	 * @return The opaque 32-bit ARGB value of each color on this palette
+	 */
+	public int[] getArgbValues() {
+		return argb;
+	}
+	
+	/**
+	 * 
+	 * @return {@link #address}, or -1 if this palette was not read from a ROM
 	 */
 	public int getAddress() {
 		return address;
 	}
 	
+	/**
+	 * Registers a listener to be notified of every change to the colors of this palette.
+	 * 
+	 * @param listener The listener to add
+	 */
+	public void addPaletteListener(PaletteListener listener) {
+		listeners.add(listener);
+	}
+	
+	/**
+	 * 
+	 * @param listener The listener to remove
+	 */
+	public void removePaletteListener(PaletteListener listener) {
+		listeners.remove(listener);
+	}
+	
+	/**
+	 * <p>Writes this palette back to the ROM. Palettes compressed with {@link CompressionType#LZ77} are compressed 
+	 * again, and must still fit in the space of the original data (up to the next 4-byte boundary).</p>
+	 */
 	@Override
 	public void save() {
-		rom.putShorts(address, values);
+		if (rom == null)
+			throw new IllegalStateException("Cannot save a palette that was not read from a ROM!");
+		if (compression == null) {
+			rom.putShorts(address, values);
+			return;
+		}
+		if (compression != CompressionType.LZ77)
+			throw new IllegalStateException("Cannot save a palette compressed as " + compression + "!");
+		
+		byte[] data = new byte[values.length * 2];
+		ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().put(values);
+		byte[] compressed = Lz77CompressionUtil.compress(data);
+		
+		int space = (CompressionUtil.measure(rom, address).getCompressedLength() + 3) & ~3;
+		if (compressed.length > space)
+			throw new IllegalStateException("Compressed palette is " + compressed.length 
+					+ " bytes, which does not fit in the " + space + " bytes at " + Integer.toHexString(address));
+		rom.putBytes(address, compressed);
+	}
+	
+	/**
+	 * Notifies each palette listener that the given colors have changed.
+	 * 
+	 * @param index The index of the first color changed
+	 * @param length The amount of colors changed
+	 */
+	private void changed(int index, int length) {
+		for (PaletteListener listener : listeners)
+			listener.colorsChanged(this, index, length);
+	}
+	
+	/**
+	 * 
+	 * @param value 16-bit value of a color
+	 * @return The opaque 32-bit ARGB value of the color
+	 */
+	private static int toArgb(int value) {
+		int red = ( value & 0x1F ) << 3;
+		int green = ( value & 0x3E0 ) >> 2;
+		int blue = ( value & 0x7C00 ) >> 7;
+		return 0xFF000000 | (red << 16) | (green << 8) | blue;
 	}
-}
+}
\ No newline at end of file
@@ -23,20 +23,25 @@
 
 package com.pgrvs.aphl.img;
 
+import java.nio.ByteBuffer;
+
 import com.pgrvs.aphl.GbaRom;
-import com.pgrvs.aphl.util.Lz77CompressionUtil;
 
 /**
- * This class represents pixel data for an image. Pixel data is a map of how each pixel corresponds to a palette's 
- * colors by providing color indexes.
+ * <p>This class represents pixel data for an image. Pixel data is a map of how each pixel corresponds to a palette's 
+ * colors by providing color indexes.</p>
+ * 
+ * <p>Pixel data is held in a read-only {@link ByteBuffer} rather than copied. Compressed data shares the array 
+ * held by {@link GbaRom#getAssetCache()}, and uncompressed data is a view of the ROM itself, so loading every image 
+ * of a ROM holds each decompressed asset once at most.</p>
  * 
  * @author Phillip Groves
  *
  */
 public class BitmapPixelData {
 	
-	/** Byte values containing pixel data for an image */
-	private int[] values;
+	/** Byte values containing pixel data for an image, starting at index 0 */
+	private final ByteBuffer values;
 	
 	/** The amount of bits per pixel */
 	private final BitmapPixelDepth depth;
@@ -44,13 +49,47 @@ public class BitmapPixelData {
 	/**
 	 * 
 	 * @param rom
-	 * @param address Address of pixel data
+	 * @param address Address of pixel data, which must be compressed in a format listed by 
+	 * 	{@link com.pgrvs.aphl.util.CompressionType}. Decompressed data is shared through 
+	 * 	{@link GbaRom#getAssetCache()}
 	 * @param depth Bits per pixel
 	 */
 	public BitmapPixelData(GbaRom rom, int address, BitmapPixelDepth depth) {
+		this (rom.getAssetCache().get(address), depth);
+	}
+	
+	/**
+	 * 
+	 * @param rom
+	 * @param address Address of uncompressed pixel data. The data is viewed rather than copied, so later writes to 
+	 * 	the ROM show in this pixel data. While a transaction is open, the data is copied along with its pending 
+	 * 	writes instead, as views only show applied data
+	 * @param length The amount of bytes of pixel data
+	 * @param depth Bits per pixel
+	 */
+	public BitmapPixelData(GbaRom rom, int address, int length, BitmapPixelDepth depth) {
+		this (rom.getTransaction() == null ? rom.getByteView(address, length) 
+				: ByteBuffer.wrap(rom.getBytes(address, new byte[length], 0, length)), depth);
+	}
+	
+	/**
+	 * 
+	 * @param values Byte values containing pixel data, which are shared rather than copied
+	 * @param depth Bits per pixel
+	 */
+	public BitmapPixelData(byte[] values, BitmapPixelDepth depth) {
+		this (ByteBuffer.wrap(values), depth);
+	}
+	
+	/**
+	 * 
+	 * @param values Byte values containing pixel data, from the position to the limit of the buffer. The bytes are 
+	 * 	shared rather than copied
+	 * @param depth Bits per pixel
+	 */
+	public BitmapPixelData(ByteBuffer values, BitmapPixelDepth depth) {
+		this.values = values.slice().asReadOnlyBuffer();
 		this.depth = depth;
-		if (rom.getByte(address) == 0x10)
-			this.values = Lz77CompressionUtil.decompress(rom, address);
 	}
 	
 	/**
@@ -59,20 +98,31 @@ public class BitmapPixelData {
 	 * @return Color palette Index of the pixel
 	 */
 	public int getPixel(int index) {
-		int pixel = values[index / (8 / depth.value())];
-		if ((index & 1) == 0)
-			pixel &= 0x0F;
-		else
-			pixel = (pixel & 0xF0) >> depth.value();
-		return pixel;
+		return BitmapPixelUnpacker.getPixel(values, index, depth);
+	}
+	
+	/**
+	 * 
+	 * @return A read-only view of all pixel data, starting at index 0
+	 */
+	public ByteBuffer getValues() {
+		return values.duplicate();
+	}
+	
+	/**
+	 * 
+	 * @return The amount of bytes of pixel data
+	 */
+	public int getLength() {
+		return values.capacity();
 	}
 	
 	/**
 	 * 
-	 * @return All pixel data
+	 * @return The amount of pixels
 	 */
-	public int[] getValues() {
-		return values;
+	public int getPixelCount() {
+		return values.capacity() * (8 / depth.value());
 	}
 
 	/**
@@ -0,0 +1,113 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.img;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>This class is responsible for expanding packed pixel data into one color index per pixel, for every 
+ * {@link BitmapPixelDepth}. Pixels smaller than a byte are packed starting with the lowest bits, so the first 
+ * pixel of a 4bpp byte is its low half.</p>
+ * 
+ * <p>Whole bytes of 1bpp and 2bpp data are expanded through a lookup table for each depth, and 4bpp and 8bpp 
+ * data through their own loops, so rows and tiles are unpacked without any division or per-pixel bit math.</p>
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class BitmapPixelUnpacker {
+	
+	/** Color indexes of every byte value for depths below a byte, indexed by depth ordinal and then 
+	 * (byte * pixels per byte) + pixel */
+	private static final byte[][] TABLES = new byte[BitmapPixelDepth.values().length][];
+	
+	static {
+		for (BitmapPixelDepth depth : new BitmapPixelDepth[] { BitmapPixelDepth.BPP_1, BitmapPixelDepth.BPP_2 }) {
+			int bits = depth.value();
+			int perByte = 8 / bits;
+			byte[] table = new byte[256 * perByte];
+			for (int value = 0; value < 256; value++)
+				for (int i = 0; i < perByte; i++)
+					table[(value * perByte) + i] = (byte) ((value >> (i * bits)) & ((1 << bits) - 1));
+			TABLES[depth.ordinal()] = table;
+		}
+	}
+	
+	/**
+	 * 
+	 * @param source Packed pixel data, where pixel 0 is at index 0
+	 * @param pixel Index of pixel
+	 * @param depth Bits per pixel
+	 * @return Color palette index of the pixel
+	 */
+	public static int getPixel(ByteBuffer source, int pixel, BitmapPixelDepth depth) {
+		int bits = depth.value();
+		int shift = Integer.numberOfTrailingZeros(8 / bits); // log2 of pixels per byte
+		int position = (pixel & ((1 << shift) - 1)) * bits;
+		return (source.get(pixel >> shift) >> position) & ((1 << bits) - 1);
+	}
+	
+	/**
+	 * Expands packed pixels into color indexes.
+	 * 
+	 * @param source Packed pixel data, where pixel 0 is at index 0
+	 * @param pixel Index of the first pixel to unpack
+	 * @param depth Bits per pixel
+	 * @param destination The array to fill with color indexes
+	 * @param offset Position in the destination of the first pixel
+	 * @param length The amount of pixels to unpack
+	 */
+	public static void unpack(ByteBuffer source, int pixel, BitmapPixelDepth depth, byte[] destination, int offset, 
+			int length) {
+		int shift = Integer.numberOfTrailingZeros(8 / depth.value()); // log2 of pixels per byte
+		int perByte = 1 << shift;
+		int end = pixel + length;
+		// pixels before the first whole byte
+		for (; pixel < end && (pixel & (perByte - 1)) != 0; pixel++)
+			destination[offset++] = (byte) getPixel(source, pixel, depth);
+		
+		// whole bytes
+		int in = pixel >> shift;
+		int bytes = (end - pixel) >> shift;
+		if (depth == BitmapPixelDepth.BPP_8) {
+			for (int i = 0; i < bytes; i++)
+				destination[offset++] = source.get(in++);
+		} else if (depth == BitmapPixelDepth.BPP_4) {
+			for (int i = 0; i < bytes; i++) {
+				int value = source.get(in++);
+				destination[offset++] = (byte) (value & 0x0F);
+				destination[offset++] = (byte) ((value >> 4) & 0x0F);
+			}
+		} else {
+			byte[] table = TABLES[depth.ordinal()];
+			for (int i = 0; i < bytes; i++, offset += perByte)
+				System.arraycopy(table, (source.get(in++) & 0xFF) << shift, destination, offset, perByte);
+		}
+		pixel += bytes << shift;
+		
+		// pixels after the last whole byte
+		for (; pixel < end; pixel++)
+			destination[offset++] = (byte) getPixel(source, pixel, depth);
+	}
+}
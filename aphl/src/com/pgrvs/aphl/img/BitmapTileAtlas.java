@@ -0,0 +1,172 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.img;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>This class holds every 8x8 tile of {@link BitmapPixelData} as unpacked color indexes (one byte per pixel) in 
+ * a single array, so that renderers (e.g. for tilemaps) can copy tiles without going through 
+ * {@link java.awt.image.BufferedImage} objects. Each tile takes 64 bytes, starting at {@link #getOffset(int)}, 
+ * in rows from top to bottom.</p>
+ * 
+ * <p>The four flip variants of the tiles are each held in their own array, which is built on first use and then 
+ * shared. Atlases are safe to share between threads without locking, and arrays returned must not be 
+ * modified.</p>
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class BitmapTileAtlas {
+	
+	/** Each tile is 8x8 pixels */
+	public static final int TILE_SIZE = 8;
+	
+	/** The amount of pixels in a tile */
+	public static final int TILE_PIXELS = TILE_SIZE * TILE_SIZE;
+	
+	/** The amount of tiles held */
+	private final int length;
+	
+	/** The amount of bits per pixel of the pixel data */
+	private final BitmapPixelDepth depth;
+	
+	/** Color indexes of unflipped tiles */
+	private final byte[] indexes;
+	
+	/** Color indexes of each flip variant, indexed by {@link #variant(boolean, boolean)}; null until first use */
+	private final AtomicReferenceArray<byte[]> variants = new AtomicReferenceArray<byte[]>(4);
+	
+	/**
+	 * 
+	 * @param pixels Pixel data, in tiles
+	 */
+	public BitmapTileAtlas(BitmapPixelData pixels) {
+		this.depth = pixels.getDepth();
+		this.length = pixels.getPixelCount() / TILE_PIXELS;
+		
+		this.indexes = new byte[length * TILE_PIXELS];
+		BitmapPixelUnpacker.unpack(pixels.getValues(), 0, depth, indexes, 0, indexes.length);
+		variants.set(0, indexes);
+	}
+	
+	/**
+	 * Returns the color indexes of every tile with the given flips. The array is shared, and must not be modified. 
+	 * Each variant is built on first use; threads that race to build it may each flip the tiles, but only one 
+	 * array is kept.
+	 * 
+	 * @param xFlip Whether tiles are flipped on the horizontal axis
+	 * @param yFlip Whether tiles are flipped on the vertical axis
+	 * @return Color indexes of every tile, where each tile starts at {@link #getOffset(int)}
+	 */
+	public byte[] getIndexes(boolean xFlip, boolean yFlip) {
+		int variant = variant(xFlip, yFlip);
+		byte[] flipped = variants.get(variant);
+		if (flipped == null) {
+			flipped = flip(indexes, xFlip, yFlip);
+			if (!variants.compareAndSet(variant, null, flipped))
+				flipped = variants.get(variant);
+		}
+		return flipped;
+	}
+	
+	/**
+	 * 
+	 * @param id Index of tile
+	 * @param x Column of pixel inside the tile
+	 * @param y Row of pixel inside the tile
+	 * @param xFlip Whether the tile is flipped on the horizontal axis
+	 * @param yFlip Whether the tile is flipped on the vertical axis
+	 * @return Color palette index of the pixel
+	 */
+	public int getPixel(int id, int x, int y, boolean xFlip, boolean yFlip) {
+		if (xFlip)
+			x = TILE_SIZE - 1 - x;
+		if (yFlip)
+			y = TILE_SIZE - 1 - y;
+		return indexes[getOffset(id) + (y * TILE_SIZE) + x] & 0xFF;
+	}
+	
+	/**
+	 * 
+	 * @param id Index of tile
+	 * @return Position of the first pixel of the tile in arrays returned by {@link #getIndexes(boolean, boolean)}
+	 */
+	public int getOffset(int id) {
+		if (id < 0 || id >= length)
+			throw new IndexOutOfBoundsException("Tile " + id + " is outside of atlas size " + length);
+		return id * TILE_PIXELS;
+	}
+	
+	/**
+	 * 
+	 * @return The amount of tiles held
+	 */
+	public int size() {
+		return length;
+	}
+	
+	/**
+	 * 
+	 * @return Bits used for each pixel of the pixel data
+	 */
+	public BitmapPixelDepth getDepth() {
+		return depth;
+	}
+	
+	/**
+	 * Flips every tile of the given color indexes.
+	 * 
+	 * @param indexes Color indexes of unflipped tiles
+	 * @param xFlip Whether to flip on the horizontal axis
+	 * @param yFlip Whether to flip on the vertical axis
+	 * @return Color indexes of flipped tiles
+	 */
+	private static byte[] flip(byte[] indexes, boolean xFlip, boolean yFlip) {
+		byte[] flipped = new byte[indexes.length];
+		for (int tile = 0; tile < indexes.length; tile += TILE_PIXELS) {
+			for (int y = 0; y < TILE_SIZE; y++) {
+				int in = tile + ((yFlip ? TILE_SIZE - 1 - y : y) * TILE_SIZE);
+				int out = tile + (y * TILE_SIZE);
+				if (xFlip) {
+					for (int x = 0; x < TILE_SIZE; x++)
+						flipped[out + x] = indexes[in + TILE_SIZE - 1 - x];
+				} else {
+					System.arraycopy(indexes, in, flipped, out, TILE_SIZE);
+				}
+			}
+		}
+		return flipped;
+	}
+	
+	/**
+	 * 
+	 * @param xFlip Whether tiles are flipped on the horizontal axis
+	 * @param yFlip Whether tiles are flipped on the vertical axis
+	 * @return Index of the flip variant
+	 */
+	private static int variant(boolean xFlip, boolean yFlip) {
+		return (yFlip ? 2 : 0) | (xFlip ? 1 : 0);
+	}
+}
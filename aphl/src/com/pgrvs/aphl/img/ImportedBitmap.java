@@ -0,0 +1,160 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.img;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * <p>This class holds the result of {@link BitmapImporter}: tiled pixel data and a palette in the formats used by 
+ * the game. Both are ready to be compressed (see {@link com.pgrvs.aphl.util.Lz77CompressionUtil#compress(byte[])}) 
+ * or written as they are through {@link com.pgrvs.aphl.GbaRom#putBytes(int, byte[])}.</p>
+ * 
+ * <p>If tiles were deduplicated, the pixel data only holds unique tiles, and {@link #getTilemap()} gives the 
+ * entry for each tile of the image.</p>
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class ImportedBitmap {
+	
+	/** Packed pixel data, in tiles */
+	private final byte[] pixels;
+	
+	/** The 16-bit value of each color */
+	private final short[] palette;
+	
+	/** Tilemap entry of each tile of the image in rows, or null if tiles were not deduplicated */
+	private final int[] tilemap;
+	
+	/** The amount of bits per pixel */
+	private final BitmapPixelDepth depth;
+	
+	/** Width in pixels */
+	private final int width;
+	
+	/** Height in pixels */
+	private final int height;
+	
+	/**
+	 * 
+	 * @param pixels Packed pixel data, in tiles
+	 * @param palette The 16-bit value of each color
+	 * @param tilemap Tilemap entry of each tile of the image in rows, or null if tiles were not deduplicated
+	 * @param depth Bits per pixel
+	 * @param width Width in pixels
+	 * @param height Height in pixels
+	 */
+	ImportedBitmap(byte[] pixels, short[] palette, int[] tilemap, BitmapPixelDepth depth, int width, int height) {
+		this.pixels = pixels;
+		this.palette = palette;
+		this.tilemap = tilemap;
+		this.depth = depth;
+		this.width = width;
+		this.height = height;
+	}
+	
+	/**
+	 * 
+	 * @return Packed pixel data, in tiles
+	 */
+	public byte[] getPixels() {
+		return pixels;
+	}
+	
+	/**
+	 * 
+	 * @return The pixel data, sharing {@link #getPixels()}
+	 */
+	public BitmapPixelData getPixelData() {
+		return new BitmapPixelData(pixels, depth);
+	}
+	
+	/**
+	 * 
+	 * @return The 16-bit value of each color, where color index 0 is transparent
+	 */
+	public short[] getPalette() {
+		return palette;
+	}
+	
+	/**
+	 * 
+	 * @return The 16-bit values of the palette as little endian bytes
+	 */
+	public byte[] getPaletteBytes() {
+		byte[] bytes = new byte[palette.length * 2];
+		ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().put(palette);
+		return bytes;
+	}
+	
+	/**
+	 * 
+	 * @return The palette
+	 */
+	public BitmapPaletteData getPaletteData() {
+		return new BitmapPaletteData(palette);
+	}
+	
+	/**
+	 * 
+	 * @return Tilemap entry of each tile of the image in rows (see {@link TilemapRenderer}), or null if tiles were 
+	 * 	not deduplicated
+	 */
+	public int[] getTilemap() {
+		return tilemap;
+	}
+	
+	/**
+	 * 
+	 * @return The amount of tiles in the pixel data
+	 */
+	public int getTileCount() {
+		return pixels.length * (8 / depth.value()) / BitmapTileAtlas.TILE_PIXELS;
+	}
+	
+	/**
+	 * 
+	 * @return Bits used for each pixel
+	 */
+	public BitmapPixelDepth getDepth() {
+		return depth;
+	}
+	
+	/**
+	 * 
+	 * @return Width of the image in pixels
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * 
+	 * @return Height of the image in pixels
+	 */
+	public int getHeight() {
+		return height;
+	}
+}
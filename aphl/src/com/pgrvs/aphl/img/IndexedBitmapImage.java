@@ -0,0 +1,184 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.img;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * <p>This class represents an image within the ROM that keeps its palette indexes rather than colors. Each image 
+ * is built on {@link BitmapPixelData} and {@link BitmapPaletteData}, like {@link BitmapImage}, but is backed by 
+ * {@link BufferedImage#TYPE_BYTE_BINARY} (1, 2 or 4 bits per pixel) or {@link BufferedImage#TYPE_BYTE_INDEXED} 
+ * (8 bits per pixel) and an {@link IndexColorModel}. A 4bpp image takes an eighth of the memory of a 
+ * {@link BitmapImage}.</p>
+ * 
+ * <p>Since the pixels only hold indexes, showing the image with another palette (e.g. a shiny palette) only needs 
+ * a new color model. See {@link #withPalette(BitmapPaletteData)}.</p>
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class IndexedBitmapImage extends BufferedImage {
+	
+	/** Each bitmap image is comprised of 8x8 tiles */
+	private static final int TILE_SIZE = 8;
+	
+	/** The amount of bits per pixel */
+	private final BitmapPixelDepth depth;
+	
+	/**
+	 * 
+	 * @param pixels Pixel data
+	 * @param palette Color data
+	 * @param width Width in pixels
+	 * @param height Height in pixels
+	 */
+	public IndexedBitmapImage(BitmapPixelData pixels, BitmapPaletteData palette, int width, int height) {
+		this (createColorModel(palette, pixels.getDepth()), width, 
+				height == 0 ? getHeight(pixels, width) : height, pixels.getDepth());
+		
+		if (width % TILE_SIZE != 0 || height % TILE_SIZE != 0)
+			throw new IllegalStateException( "Bitmap image width and height must be divisible by 8!" );
+		
+		byte[] data = ((DataBufferByte) getRaster().getDataBuffer()).getData();
+		ByteBuffer values = pixels.getValues();
+		int bits = depth.value();
+		int stride = (width * bits + 7) >> 3;
+		int index = 0;
+		// loop through rows of tiles
+		for (int yTile = 0; yTile < (super.getHeight() / TILE_SIZE); yTile++) {
+			// loop through columns of tiles
+			for (int xTile = 0; xTile < (width / TILE_SIZE); xTile++) {
+				// loop through rows of pixels inside tile, copying a whole row at a time
+				for (int yPixel = 0; yPixel < TILE_SIZE; yPixel++) {
+					int y = (yTile * TILE_SIZE) + yPixel;
+					int out = y * stride + ((xTile * TILE_SIZE * bits) >> 3);
+					if (bits == 4) {
+						// tiles hold the left pixel in the low half of a byte, rasters in the high half
+						int row = index >> 1;
+						for (int i = 0; i < 4; i++) {
+							int value = values.get(row + i) & 0xFF;
+							data[out + i] = (byte) (((value & 0x0F) << 4) | (value >> 4));
+						}
+					} else if (bits == 8) {
+						for (int i = 0; i < TILE_SIZE; i++)
+							data[out + i] = values.get(index + i);
+					} else {
+						for (int i = 0; i < TILE_SIZE; i++)
+							getRaster().setSample((xTile * TILE_SIZE) + i, y, 0, pixels.getPixel(index + i));
+					}
+					index += TILE_SIZE;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * @param pixels Pixel data
+	 * @param palette Color data
+	 * @param width Width in pixels
+	 */
+	public IndexedBitmapImage(BitmapPixelData pixels, BitmapPaletteData palette, int width) {
+		this (pixels, palette, width, 0);
+	}
+	
+	/**
+	 * Creates an empty image with the given color model.
+	 * 
+	 * @param colorModel Color model of the image
+	 * @param width Width in pixels
+	 * @param height Height in pixels
+	 * @param depth Bits per pixel
+	 */
+	private IndexedBitmapImage(IndexColorModel colorModel, int width, int height, BitmapPixelDepth depth) {
+		super (width, height, depth == BitmapPixelDepth.BPP_8 ? TYPE_BYTE_INDEXED : TYPE_BYTE_BINARY, colorModel);
+		this.depth = depth;
+	}
+	
+	/**
+	 * Creates an image that shares the pixels of another image.
+	 * 
+	 * @param colorModel Color model of the image
+	 * @param raster Pixels of the image
+	 * @param depth Bits per pixel
+	 */
+	private IndexedBitmapImage(IndexColorModel colorModel, WritableRaster raster, BitmapPixelDepth depth) {
+		super (colorModel, raster, false, null);
+		this.depth = depth;
+	}
+	
+	/**
+	 * Returns this image shown with another palette. The pixels are shared rather than copied, so this only 
+	 * costs as much as building a color model from the palette, and edits to the pixels of either image show in 
+	 * both.
+	 * 
+	 * @param palette Color data
+	 * @return An image with the same pixels and the given palette
+	 */
+	public IndexedBitmapImage withPalette(BitmapPaletteData palette) {
+		return new IndexedBitmapImage(createColorModel(palette, depth), getRaster(), depth);
+	}
+	
+	/**
+	 * 
+	 * @return Bits used for each pixel
+	 */
+	public BitmapPixelDepth getDepth() {
+		return depth;
+	}
+	
+	/**
+	 * Builds a color model from a palette, where color index 0 is transparent. The model always has exactly 
+	 * {@code 1 << depth} entries, since {@link BufferedImage#TYPE_BYTE_BINARY} picks the bits per pixel of its 
+	 * raster from the size of the map. Palettes with fewer colors are padded with transparent black.
+	 * 
+	 * @param palette Color data
+	 * @param depth Bits per pixel
+	 * @return The color model
+	 */
+	private static IndexColorModel createColorModel(BitmapPaletteData palette, BitmapPixelDepth depth) {
+		int[] colors = palette.getArgbValues();
+		int size = 1 << depth.value();
+		if (colors.length != size)
+			colors = Arrays.copyOf(colors, size);
+		return new IndexColorModel(depth.value(), size, colors, 0, true, 0, DataBuffer.TYPE_BYTE);
+	}
+	
+	/**
+	 * Calculates the height of this image based on the length of pixel data, pixel depth, and width.
+	 * 
+	 * @param pixels Pixel data
+	 * @param width Width in pixels
+	 * @return Height in pixels
+	 */
+	private static int getHeight(BitmapPixelData pixels, int width) {
+		return (pixels.getLength() / width) * (8 / pixels.getDepth().value());
+	}
+}
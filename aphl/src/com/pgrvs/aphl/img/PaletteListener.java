@@ -0,0 +1,44 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.img;
+
+/**
+ * This interface is intended to be implemented by objects that show colors of a palette (e.g. images or 
+ * tilemaps), and need to know when those colors change. Listeners are registered with 
+ * {@link BitmapPaletteData#addPaletteListener(PaletteListener)}.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public interface PaletteListener {
+
+	/**
+	 * Called after colors of a palette have changed. This is called from the thread that changed them.
+	 * 
+	 * @param palette The palette that changed
+	 * @param index The index of the first color changed
+	 * @param length The amount of colors changed
+	 */
+	public void colorsChanged(BitmapPaletteData palette, int index, int length);
+}
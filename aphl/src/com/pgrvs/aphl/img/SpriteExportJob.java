@@ -0,0 +1,146 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.img;
+
+/**
+ * This class describes a single image to export through {@link SpriteSheetExporter}, given by the addresses of its 
+ * pixel and palette data within the ROM.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class SpriteExportJob {
+	
+	/** Name of the image in the manifest */
+	private final String name;
+	
+	/** Address of compressed pixel data */
+	private final int pixelAddress;
+	
+	/** Address of palette data */
+	private final int paletteAddress;
+	
+	/** Whether the palette data is compressed */
+	private final boolean paletteCompressed;
+	
+	/** Width in pixels */
+	private final int width;
+	
+	/** The amount of bits per pixel */
+	private final BitmapPixelDepth depth;
+	
+	/**
+	 * 
+	 * @param name Name of the image in the manifest
+	 * @param pixelAddress Address of pixel data, which must be compressed (see {@link BitmapPixelData})
+	 * @param paletteAddress Address of palette data, which must be compressed (see {@link BitmapPaletteData})
+	 * @param width Width in pixels, which must be a positive multiple of 8
+	 * @param depth Bits per pixel
+	 */
+	public SpriteExportJob(String name, int pixelAddress, int paletteAddress, int width, BitmapPixelDepth depth) {
+		this (name, pixelAddress, paletteAddress, true, width, depth);
+	}
+	
+	/**
+	 * 
+	 * @param name Name of the image in the manifest
+	 * @param pixelAddress Address of pixel data, which must be compressed (see {@link BitmapPixelData})
+	 * @param paletteAddress Address of palette data
+	 * @param paletteCompressed Whether the palette data is compressed (see {@link BitmapPaletteData})
+	 * @param width Width in pixels, which must be a positive multiple of 8
+	 * @param depth Bits per pixel
+	 */
+	public SpriteExportJob(String name, int pixelAddress, int paletteAddress, boolean paletteCompressed, int width, 
+			BitmapPixelDepth depth) {
+		if (width <= 0 || width % 8 != 0)
+			throw new IllegalStateException("Width of " + name + " must be a positive multiple of 8, but was " + width);
+		
+		this.name = name;
+		this.pixelAddress = pixelAddress;
+		this.paletteAddress = paletteAddress;
+		this.paletteCompressed = paletteCompressed;
+		this.width = width;
+		this.depth = depth;
+	}
+	
+	/**
+	 * Creates a job named after the address of its pixel data.
+	 * 
+	 * @param pixelAddress Address of pixel data, which must be compressed (see {@link BitmapPixelData})
+	 * @param paletteAddress Address of palette data, which must be compressed (see {@link BitmapPaletteData})
+	 * @param width Width in pixels, which must be a positive multiple of 8
+	 * @param depth Bits per pixel
+	 */
+	public SpriteExportJob(int pixelAddress, int paletteAddress, int width, BitmapPixelDepth depth) {
+		this (String.format("%06X", pixelAddress), pixelAddress, paletteAddress, width, depth);
+	}
+	
+	/**
+	 * 
+	 * @return {@link #name}
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * 
+	 * @return {@link #pixelAddress}
+	 */
+	public int getPixelAddress() {
+		return pixelAddress;
+	}
+	
+	/**
+	 * 
+	 * @return {@link #paletteAddress}
+	 */
+	public int getPaletteAddress() {
+		return paletteAddress;
+	}
+	
+	/**
+	 * 
+	 * @return {@link #paletteCompressed}
+	 */
+	public boolean isPaletteCompressed() {
+		return paletteCompressed;
+	}
+	
+	/**
+	 * 
+	 * @return {@link #width}
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * 
+	 * @return Bits used for each pixel
+	 */
+	public BitmapPixelDepth getDepth() {
+		return depth;
+	}
+}
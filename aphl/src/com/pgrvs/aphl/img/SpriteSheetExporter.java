@@ -0,0 +1,405 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.img;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import com.pgrvs.aphl.GbaRom;
+import com.pgrvs.aphl.util.CompressionUtil;
+
+/**
+ * <p>This class exports many images of a ROM (e.g. every front, back, and shiny sprite) to PNG sprite sheets. Each 
+ * image is given as a {@link SpriteExportJob}. Exporting needs no display, so it works in headless environments.</p>
+ * 
+ * <p>Images are placed on sheets before any are decompressed, as their heights are known from the length in the 
+ * header of their compressed pixel data. Each sheet is then rendered by a bounded pool of threads, written to disk 
+ * while the next sheet renders, and dropped, so only two sheets are held at once no matter how many images are 
+ * exported.</p>
+ * 
+ * <p>Along with the sheets, a manifest of where each image was placed is written as both "manifest.json" and 
+ * "manifest.csv".</p>
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class SpriteSheetExporter {
+	
+	/** Width and height of each sheet by default */
+	public static final int DEFAULT_SHEET_SIZE = 1024;
+	
+	private final GbaRom rom;
+	
+	/** The directory to write into */
+	private final File directory;
+	
+	/** The maximum width of each sheet */
+	private int sheetWidth = DEFAULT_SHEET_SIZE;
+	
+	/** The maximum height of each sheet */
+	private int sheetHeight = DEFAULT_SHEET_SIZE;
+	
+	/** The amount of threads rendering images */
+	private int threads = Runtime.getRuntime().availableProcessors();
+	
+	/** Name of sheet files, followed by the index of the sheet and ".png" */
+	private String prefix = "sheet-";
+	
+	/**
+	 * 
+	 * @param rom
+	 * @param directory The directory to write sheets and manifests into, which is created if needed
+	 */
+	public SpriteSheetExporter(GbaRom rom, File directory) {
+		this.rom = rom;
+		this.directory = directory;
+	}
+	
+	/**
+	 * 
+	 * @param width The maximum width of each sheet in pixels
+	 * @param height The maximum height of each sheet in pixels. Images larger than a sheet get a sheet of their own
+	 */
+	public void setSheetSize(int width, int height) {
+		this.sheetWidth = width;
+		this.sheetHeight = height;
+	}
+	
+	/**
+	 * 
+	 * @param threads The amount of threads rendering images
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+	
+	/**
+	 * 
+	 * @param prefix Name of sheet files, followed by the index of the sheet and ".png"
+	 */
+	public void setPrefix(String prefix) {
+		this.prefix = prefix;
+	}
+	
+	/**
+	 * Exports the given images to sheets and writes the manifest.
+	 * 
+	 * @param jobs The images to export
+	 * @return The amount of sheets written
+	 * @throws IOException If a sheet or manifest cannot be written
+	 */
+	public int export(List<SpriteExportJob> jobs) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Cannot create directory " + directory);
+		
+		List<List<Placement>> sheets = pack(jobs);
+		List<Placement> placements = new ArrayList<Placement>();
+		for (List<Placement> sheet : sheets)
+			placements.addAll(sheet);
+		
+		ThreadPoolExecutor renderers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, 
+				new ArrayBlockingQueue<Runnable>(threads * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+		ExecutorService writer = Executors.newSingleThreadExecutor();
+		ConcurrentHashMap<Long, BitmapPaletteData> palettes = new ConcurrentHashMap<Long, BitmapPaletteData>();
+		try {
+			Future<?> written = null;
+			for (int i = 0; i < sheets.size(); i++) {
+				BufferedImage sheet = render(sheets.get(i), renderers, palettes);
+				// wait for the last sheet, so that at most two are held
+				if (written != null)
+					await(written);
+				written = writer.submit(new SheetWriter(sheet, new File(directory, prefix + i + ".png")));
+			}
+			if (written != null)
+				await(written);
+		} finally {
+			renderers.shutdownNow();
+			writer.shutdownNow();
+		}
+		
+		writeManifest(placements);
+		return sheets.size();
+	}
+	
+	/**
+	 * Places every image on a sheet, in shelves from tallest to shortest. Jobs are checked here, before any thread 
+	 * starts rendering, so a bad job fails the export before anything is written.
+	 * 
+	 * @param jobs The images to place
+	 * @return The placements of each sheet
+	 */
+	private List<List<Placement>> pack(List<SpriteExportJob> jobs) {
+		ByteBuffer source = rom.getByteView();
+		List<Placement> sorted = new ArrayList<Placement>(jobs.size());
+		for (SpriteExportJob job : jobs) {
+			if (CompressionUtil.getType(source, job.getPixelAddress()) == null)
+				throw new IllegalStateException("Pixel data of " + job.getName() + " at " 
+						+ Integer.toHexString(job.getPixelAddress()) + " is not compressed!");
+			long pixels = (long) CompressionUtil.getDecompLength(source, job.getPixelAddress()) 
+					* (8 / job.getDepth().value());
+			long height = pixels / job.getWidth();
+			if (height <= 0 || pixels % job.getWidth() != 0 || height % 8 != 0)
+				throw new IllegalStateException(pixels + " pixels of " + job.getName() + " do not fill whole tiles at a "
+						+ "width of " + job.getWidth());
+			sorted.add(new Placement(job, (int) height));
+		}
+		Collections.sort(sorted, new Comparator<Placement>() {
+			@Override
+			public int compare(Placement a, Placement b) {
+				return b.height - a.height;
+			}
+		});
+		
+		List<List<Placement>> sheets = new ArrayList<List<Placement>>();
+		List<Placement> sheet = null;
+		int x = 0, y = 0, shelfHeight = 0;
+		for (Placement placement : sorted) {
+			int width = placement.job.getWidth();
+			if (sheet != null && x + width > sheetWidth) {
+				// start a new shelf
+				x = 0;
+				y += shelfHeight;
+				shelfHeight = 0;
+			}
+			if (sheet == null || y + placement.height > sheetHeight) {
+				// start a new sheet
+				sheet = new ArrayList<Placement>();
+				sheets.add(sheet);
+				x = y = shelfHeight = 0;
+			}
+			placement.sheet = sheets.size() - 1;
+			placement.x = x;
+			placement.y = y;
+			sheet.add(placement);
+			x += width;
+			shelfHeight = Math.max(shelfHeight, placement.height);
+		}
+		return sheets;
+	}
+	
+	/**
+	 * Renders every image of a sheet in parallel.
+	 * 
+	 * @param placements The images of the sheet
+	 * @param renderers The threads rendering images
+	 * @param palettes Palettes loaded so far (see {@link #getPaletteKey(SpriteExportJob)}), which are shared between 
+	 * 	images
+	 * @return The rendered sheet
+	 * @throws IOException If an image cannot be rendered
+	 */
+	private BufferedImage render(List<Placement> placements, ExecutorService renderers, 
+			final ConcurrentHashMap<Long, BitmapPaletteData> palettes) throws IOException {
+		int width = 0, height = 0;
+		for (Placement placement : placements) {
+			width = Math.max(width, placement.x + placement.job.getWidth());
+			height = Math.max(height, placement.y + placement.height);
+		}
+		final BufferedImage sheet = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		final int[] data = ((DataBufferInt) sheet.getRaster().getDataBuffer()).getData();
+		
+		List<Future<?>> rendered = new ArrayList<Future<?>>(placements.size());
+		for (final Placement placement : placements) {
+			rendered.add(renderers.submit(new Runnable() {
+				@Override
+				public void run() {
+					SpriteExportJob job = placement.job;
+					long key = getPaletteKey(job);
+					BitmapPaletteData palette = palettes.get(key);
+					if (palette == null) {
+						palette = new BitmapPaletteData(rom, job.getPaletteAddress(), 1 << job.getDepth().value(), 
+								job.isPaletteCompressed());
+						palettes.putIfAbsent(key, palette);
+					}
+					BitmapPixelData pixels = new BitmapPixelData(rom, job.getPixelAddress(), job.getDepth());
+					BitmapImage image = new BitmapImage(pixels, palette, job.getWidth(), placement.height);
+					
+					// each image covers its own part of the sheet, so rows are copied without locking
+					int[] rows = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+					for (int y = 0; y < placement.height; y++)
+						System.arraycopy(rows, y * job.getWidth(), data, 
+								((placement.y + y) * sheet.getWidth()) + placement.x, job.getWidth());
+				}
+			}));
+		}
+		for (Future<?> future : rendered)
+			await(future);
+		return sheet;
+	}
+	
+	/**
+	 * Writes where each image was placed as JSON and CSV.
+	 * 
+	 * @param placements Every placement
+	 * @throws IOException If a manifest cannot be written
+	 */
+	private void writeManifest(List<Placement> placements) throws IOException {
+		PrintWriter json = new PrintWriter(new File(directory, "manifest.json"), "UTF-8");
+		PrintWriter csv = new PrintWriter(new File(directory, "manifest.csv"), "UTF-8");
+		try {
+			json.println("[");
+			csv.println("name,sheet,x,y,width,height,pixelAddress,paletteAddress,depth");
+			for (int i = 0; i < placements.size(); i++) {
+				Placement placement = placements.get(i);
+				SpriteExportJob job = placement.job;
+				String sheet = prefix + placement.sheet + ".png";
+				json.printf("  {\"name\": \"%s\", \"sheet\": \"%s\", \"x\": %d, \"y\": %d, \"width\": %d, \"height\": %d, "
+						+ "\"pixelAddress\": \"%06X\", \"paletteAddress\": \"%06X\", \"depth\": %d}%s%n", 
+						escapeJson(job.getName()), escapeJson(sheet), placement.x, placement.y, job.getWidth(), 
+						placement.height, job.getPixelAddress(), job.getPaletteAddress(), job.getDepth().value(), 
+						i + 1 < placements.size() ? "," : "");
+				csv.printf("%s,%s,%d,%d,%d,%d,%06X,%06X,%d%n", escapeCsv(job.getName()), escapeCsv(sheet), 
+						placement.x, placement.y, job.getWidth(), placement.height, job.getPixelAddress(), 
+						job.getPaletteAddress(), job.getDepth().value());
+			}
+			json.println("]");
+		} finally {
+			json.close();
+			csv.close();
+		}
+		if (json.checkError() || csv.checkError())
+			throw new IOException("Cannot write manifest to " + directory);
+	}
+	
+	/**
+	 * Jobs only share a palette if they read it the same way, as the palette size follows the pixel depth.
+	 * 
+	 * @param job The job to render
+	 * @return Key of the palette of the job, made of its address, pixel depth, and whether it is compressed
+	 */
+	private static long getPaletteKey(SpriteExportJob job) {
+		return ((long) job.getPaletteAddress() << 32) | (job.getDepth().value() << 1) 
+				| (job.isPaletteCompressed() ? 1 : 0);
+	}
+	
+	/**
+	 * Waits for a task, passing on its failure.
+	 * 
+	 * @param future The task to wait for
+	 * @throws IOException If the task failed to write
+	 */
+	private static void await(Future<?> future) throws IOException {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while exporting sprites", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IllegalStateException("Failed to export sprites", e.getCause());
+		}
+	}
+	
+	/**
+	 * 
+	 * @param text Text to escape
+	 * @return The text, escaped for a JSON string
+	 */
+	private static String escapeJson(String text) {
+		StringBuilder builder = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"' || c == '\\')
+				builder.append('\\').append(c);
+			else if (c < 0x20)
+				builder.append(String.format("\\u%04x", (int) c));
+			else
+				builder.append(c);
+		}
+		return builder.toString();
+	}
+	
+	/**
+	 * 
+	 * @param text Text to escape
+	 * @return The text, quoted for a CSV field if needed
+	 */
+	private static String escapeCsv(String text) {
+		if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0)
+			return text;
+		return '"' + text.replace("\"", "\"\"") + '"';
+	}
+	
+	/**
+	 * Where an image is placed on a sheet.
+	 */
+	private static class Placement {
+		
+		private final SpriteExportJob job;
+		
+		/** Height in pixels */
+		private final int height;
+		
+		/** Index of the sheet */
+		private int sheet;
+		
+		private int x;
+		private int y;
+		
+		private Placement(SpriteExportJob job, int height) {
+			this.job = job;
+			this.height = height;
+		}
+	}
+	
+	/**
+	 * Writes a sheet to a PNG file.
+	 */
+	private static class SheetWriter implements Callable<Void> {
+		
+		private final BufferedImage sheet;
+		private final File file;
+		
+		private SheetWriter(BufferedImage sheet, File file) {
+			this.sheet = sheet;
+			this.file = file;
+		}
+		
+		@Override
+		public Void call() throws IOException {
+			if (!ImageIO.write(sheet, "png", file))
+				throw new IOException("No PNG writer is available");
+			return null;
+		}
+	}
+}
@@ -0,0 +1,356 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.img;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * <p>This class draws a tilemap (e.g. a map, or a screen layout) from the tiles of a {@link BitmapTileAtlas}. Each 
+ * entry of the tilemap is given in the format used by the game:</p>
+ * 
+ * <ul>
+ * 	<li>Bits 0-9: Tile id</li>
+ * 	<li>Bit 10: Whether to flip on the horizontal axis</li>
+ * 	<li>Bit 11: Whether to flip on the vertical axis</li>
+ * 	<li>Bits 12-15: Palette bank (16 colors each), which is ignored for 8bpp tiles</li>
+ * </ul>
+ * 
+ * <p>Tiles are copied straight into the pixels of a single image, see {@link #getImage()}. Changing entries only 
+ * marks the tiles as dirty, and {@link #render()} redraws dirty tiles alone, so editing a large map does not 
+ * redraw the whole map.</p>
+ * 
+ * <p>Maps are often built from metatiles (blocks of tiles, such as the 2x2 blocks of the overworld). Metatiles 
+ * placed through {@link #setMetatile(int, int, int)} are drawn once and then copied from a cache.</p>
+ * 
+ * <p>Renderers registered with {@link BitmapPaletteData#addPaletteListener(PaletteListener)} redraw on next render 
+ * whenever a color changes.</p>
+ * 
+ * <p>Note: Renderers are not safe to share between threads.</p>
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class TilemapRenderer implements PaletteListener {
+	
+	/** Each tile is 8x8 pixels */
+	private static final int TILE_SIZE = BitmapTileAtlas.TILE_SIZE;
+	
+	/** Bits of an entry holding the tile id */
+	private static final int TILE_MASK = 0x3FF;
+	
+	/** Bit of an entry set when flipped on the horizontal axis */
+	private static final int X_FLIP = 0x400;
+	
+	/** Bit of an entry set when flipped on the vertical axis */
+	private static final int Y_FLIP = 0x800;
+	
+	private final BitmapTileAtlas atlas;
+	
+	/** Width in tiles */
+	private final int width;
+	
+	/** Height in tiles */
+	private final int height;
+	
+	/** Tilemap entries in rows */
+	private final int[] entries;
+	
+	/** Tiles changed since the last render */
+	private final BitSet dirty;
+	
+	/** Colors of every palette bank, where color index 0 of each bank is transparent */
+	private final int[] colors = new int[256];
+	
+	private final BufferedImage image;
+	
+	/** Pixels of {@link #image} */
+	private final int[] pixels;
+	
+	/** Tilemap entries of each metatile, in rows; null if no metatiles are set */
+	private int[] metatiles;
+	
+	/** Width and height of each metatile in tiles */
+	private int metatileSize;
+	
+	/** Pixels of each metatile drawn so far, indexed by metatile id */
+	private int[][] metatileCache;
+	
+	/** Metatile id placed at each tile, or -1 if the tile was set on its own */
+	private final int[] placed;
+	
+	/**
+	 * 
+	 * @param atlas Tiles to draw
+	 * @param palette Color data, holding up to 16 palette banks
+	 * @param width Width in tiles
+	 * @param height Height in tiles
+	 */
+	public TilemapRenderer(BitmapTileAtlas atlas, BitmapPaletteData palette, int width, int height) {
+		this.atlas = atlas;
+		this.width = width;
+		this.height = height;
+		this.entries = new int[width * height];
+		this.placed = new int[width * height];
+		this.dirty = new BitSet(width * height);
+		this.image = new BufferedImage(width * TILE_SIZE, height * TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+		this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		Arrays.fill(placed, -1);
+		setPalette(palette);
+	}
+	
+	/**
+	 * 
+	 * @param x Column in tiles
+	 * @param y Row in tiles
+	 * @param entry Tilemap entry
+	 */
+	public void setEntry(int x, int y, int entry) {
+		int index = index(x, y);
+		placed[index] = -1;
+		if (entries[index] != entry) {
+			entries[index] = entry;
+			dirty.set(index);
+		}
+	}
+	
+	/**
+	 * 
+	 * @param x Column in tiles
+	 * @param y Row in tiles
+	 * @return Tilemap entry
+	 */
+	public int getEntry(int x, int y) {
+		return entries[index(x, y)];
+	}
+	
+	/**
+	 * Sets every entry of the tilemap.
+	 * 
+	 * @param entries Tilemap entries in rows, e.g. from {@link com.pgrvs.aphl.GbaRom#getShorts(int, int[], int, int)}
+	 */
+	public void setEntries(int[] entries) {
+		if (entries.length != this.entries.length)
+			throw new IllegalStateException("Expected " + this.entries.length + " entries, but was given " + entries.length);
+		
+		for (int y = 0; y < height; y++)
+			for (int x = 0; x < width; x++)
+				setEntry(x, y, entries[(y * width) + x]);
+	}
+	
+	/**
+	 * Sets the metatiles that can be placed with {@link #setMetatile(int, int, int)}. Any metatiles already placed 
+	 * are redrawn on next render.
+	 * 
+	 * @param metatiles Tilemap entries of each metatile, in rows
+	 * @param size Width and height of each metatile in tiles
+	 */
+	public void setMetatiles(int[] metatiles, int size) {
+		if (metatiles.length % (size * size) != 0)
+			throw new IllegalStateException("Metatile entries must be a multiple of " + (size * size) + "!");
+		
+		this.metatiles = metatiles;
+		this.metatileSize = size;
+		this.metatileCache = new int[metatiles.length / (size * size)][];
+		for (int i = 0; i < placed.length; i++) {
+			if (placed[i] >= 0) {
+				placed[i] = -1;
+				dirty.set(i);
+			}
+		}
+	}
+	
+	/**
+	 * Places a metatile, setting the entries of every tile it covers.
+	 * 
+	 * @param x Column in metatiles
+	 * @param y Row in metatiles
+	 * @param id Index of metatile
+	 */
+	public void setMetatile(int x, int y, int id) {
+		if (metatiles == null)
+			throw new IllegalStateException("No metatiles have been set!");
+		
+		int area = metatileSize * metatileSize;
+		for (int yTile = 0; yTile < metatileSize; yTile++) {
+			for (int xTile = 0; xTile < metatileSize; xTile++) {
+				int index = index((x * metatileSize) + xTile, (y * metatileSize) + yTile);
+				int entry = metatiles[(id * area) + (yTile * metatileSize) + xTile];
+				if (entries[index] != entry || placed[index] != id) {
+					entries[index] = entry;
+					placed[index] = id;
+					dirty.set(index);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Changes the colors of every palette bank. The whole tilemap is redrawn on next render.
+	 * 
+	 * @param palette Color data, holding up to 16 palette banks
+	 */
+	public void setPalette(BitmapPaletteData palette) {
+		int[] argb = palette.getArgbValues();
+		Arrays.fill(colors, 0);
+		System.arraycopy(argb, 0, colors, 0, Math.min(argb.length, colors.length));
+		for (int i = 0; i < colors.length; i += atlas.getDepth() == BitmapPixelDepth.BPP_8 ? colors.length : 16)
+			colors[i] = 0;
+		
+		if (metatileCache != null)
+			Arrays.fill(metatileCache, null);
+		markDirty();
+	}
+	
+	@Override
+	public void colorsChanged(BitmapPaletteData palette, int index, int length) {
+		setPalette(palette);
+	}
+	
+	/**
+	 * Marks every tile as dirty, so that the whole tilemap is redrawn on next render.
+	 */
+	public void markDirty() {
+		dirty.set(0, entries.length);
+	}
+	
+	/**
+	 * Redraws every dirty tile.
+	 * 
+	 * @return The area redrawn in pixels, or null if nothing was dirty
+	 */
+	public Rectangle render() {
+		if (dirty.isEmpty())
+			return null;
+		
+		int minX = width, minY = height, maxX = 0, maxY = 0;
+		for (int index = dirty.nextSetBit(0); index >= 0; index = dirty.nextSetBit(index + 1)) {
+			int x = index % width;
+			int y = index / width;
+			int out = (y * TILE_SIZE * image.getWidth()) + (x * TILE_SIZE);
+			if (placed[index] >= 0)
+				copyFromMetatile(placed[index], x % metatileSize, y % metatileSize, out);
+			else
+				drawTile(entries[index], pixels, out, image.getWidth());
+			
+			minX = Math.min(minX, x);
+			minY = Math.min(minY, y);
+			maxX = Math.max(maxX, x);
+			maxY = Math.max(maxY, y);
+		}
+		dirty.clear();
+		return new Rectangle(minX * TILE_SIZE, minY * TILE_SIZE, (maxX - minX + 1) * TILE_SIZE, 
+				(maxY - minY + 1) * TILE_SIZE);
+	}
+	
+	/**
+	 * 
+	 * @return The image drawn into, which holds the tilemap as of the last render
+	 */
+	public BufferedImage getImage() {
+		return image;
+	}
+	
+	/**
+	 * 
+	 * @return Width in tiles
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * 
+	 * @return Height in tiles
+	 */
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * Copies one tile of a metatile from the cache, drawing the metatile first if needed.
+	 * 
+	 * @param id Index of metatile
+	 * @param xTile Column of the tile inside the metatile
+	 * @param yTile Row of the tile inside the metatile
+	 * @param out Position of the first pixel in {@link #pixels}
+	 */
+	private void copyFromMetatile(int id, int xTile, int yTile, int out) {
+		int size = metatileSize * TILE_SIZE;
+		int[] metatile = metatileCache[id];
+		if (metatile == null) {
+			metatile = new int[size * size];
+			int area = metatileSize * metatileSize;
+			for (int i = 0; i < area; i++) {
+				int start = ((i / metatileSize) * TILE_SIZE * size) + ((i % metatileSize) * TILE_SIZE);
+				drawTile(metatiles[(id * area) + i], metatile, start, size);
+			}
+			metatileCache[id] = metatile;
+		}
+		
+		int in = (yTile * TILE_SIZE * size) + (xTile * TILE_SIZE);
+		for (int y = 0; y < TILE_SIZE; y++)
+			System.arraycopy(metatile, in + (y * size), pixels, out + (y * image.getWidth()), TILE_SIZE);
+	}
+	
+	/**
+	 * Draws a single tile. Tile ids outside of the atlas are drawn as transparent.
+	 * 
+	 * @param entry Tilemap entry
+	 * @param destination Pixels to draw into
+	 * @param out Position of the first pixel
+	 * @param stride Width of the destination in pixels
+	 */
+	private void drawTile(int entry, int[] destination, int out, int stride) {
+		int id = entry & TILE_MASK;
+		if (id >= atlas.size()) {
+			for (int y = 0; y < TILE_SIZE; y++)
+				Arrays.fill(destination, out + (y * stride), out + (y * stride) + TILE_SIZE, 0);
+			return;
+		}
+		
+		byte[] indexes = atlas.getIndexes((entry & X_FLIP) != 0, (entry & Y_FLIP) != 0);
+		int in = atlas.getOffset(id);
+		int bank = atlas.getDepth() == BitmapPixelDepth.BPP_8 ? 0 : ((entry >> 12) & 0xF) << 4;
+		for (int y = 0; y < TILE_SIZE; y++, out += stride)
+			for (int x = 0; x < TILE_SIZE; x++)
+				destination[out + x] = colors[bank + (indexes[in++] & 0xFF)];
+	}
+	
+	/**
+	 * 
+	 * @param x Column in tiles
+	 * @param y Row in tiles
+	 * @return Index of the tile in {@link #entries}
+	 */
+	private int index(int x, int y) {
+		if (x < 0 || x >= width || y < 0 || y >= height)
+			throw new IndexOutOfBoundsException("Tile (" + x + ", " + y + ") is outside of tilemap size " 
+					+ width + "x" + height);
+		return (y * width) + x;
+	}
+}
@@ -0,0 +1,369 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.patch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import com.pgrvs.aphl.GbaRom;
+import com.pgrvs.aphl.GbaRomTransaction;
+import com.pgrvs.aphl.util.Crc32Util;
+
+/**
+ * <p>This class is responsible for applying patches to a ROM in place, in any of the formats listed by 
+ * {@link PatchFormat}. All methods within this class are static for easy access.</p>
+ * 
+ * <p>Every patch is applied as one transaction (see {@link GbaRom#beginTransaction()}), so a patch that is 
+ * malformed or fails its checksums leaves the ROM untouched. UPS and BPS patches check the ROM against the source 
+ * checksum before applying, and the result against the target checksum before committing. BPS patches read the 
+ * source from the applied data of the ROM, which the transaction leaves unchanged until commit, so data can be 
+ * copied from any part of the source however the target was built.</p>
+ * 
+ * <p>As the size of a mapped ROM is fixed, patches that change the size of the ROM are refused.</p>
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class PatchApplier {
+	
+	/** The amount of bytes written at a time */
+	private static final int BLOCK_SIZE = 1 << 16;
+	
+	/** The length of the checksums that end UPS and BPS patches */
+	private static final int FOOTER_LENGTH = 12;
+	
+	/** BPS commands */
+	private static final int SOURCE_READ = 0, TARGET_READ = 1, SOURCE_COPY = 2;
+	
+	/**
+	 * 
+	 * @param rom The ROM to patch
+	 * @param patch Stream of the patch, which is read fully but not closed
+	 * @return The format of the patch
+	 * @throws IOException If the patch cannot be read
+	 */
+	public static PatchFormat apply(GbaRom rom, InputStream patch) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[BLOCK_SIZE];
+		for (int read; (read = patch.read(buffer)) != -1; )
+			bytes.write(buffer, 0, read);
+		return apply(rom, ByteBuffer.wrap(bytes.toByteArray()));
+	}
+	
+	/**
+	 * Applies the given patch, whose format is taken from its first bytes. No transaction may be open on the ROM.
+	 * 
+	 * @param rom The ROM to patch
+	 * @param patch Buffer holding the patch from its position to its limit
+	 * @return The format of the patch
+	 */
+	public static PatchFormat apply(GbaRom rom, ByteBuffer patch) {
+		patch = patch.slice().order(ByteOrder.LITTLE_ENDIAN);
+		PatchFormat format = PatchFormat.of(patch);
+		if (format == null)
+			throw new IllegalStateException("Unknown patch format!");
+		patch.position(format.magic().length);
+		
+		try (GbaRomTransaction transaction = rom.beginTransaction()) {
+			switch (format) {
+				case IPS: applyIps(rom, patch); break;
+				case UPS: applyUps(rom, patch); break;
+				case BPS: applyBps(rom, patch); break;
+			}
+			transaction.commit();
+		}
+		return format;
+	}
+	
+	/**
+	 * 
+	 * @param rom The ROM to patch
+	 * @param patch Buffer positioned after the magic bytes
+	 */
+	private static void applyIps(GbaRom rom, ByteBuffer patch) {
+		patch.order(ByteOrder.BIG_ENDIAN);
+		while (true) {
+			checkRemaining(patch, 3);
+			int address = readIpsAddress(patch);
+			if (address == 0x454F46) {
+				if (patch.remaining() >= 3 && readIpsAddress(patch) != rom.getLength())
+					throw new IllegalStateException("IPS patch changes the size of the ROM!");
+				return;
+			}
+			
+			checkRemaining(patch, 2);
+			int length = patch.getShort() & 0xFFFF;
+			byte[] data;
+			if (length == 0) {
+				checkRemaining(patch, 3);
+				length = patch.getShort() & 0xFFFF;
+				data = new byte[length];
+				Arrays.fill(data, patch.get());
+			} else {
+				checkRemaining(patch, length);
+				data = new byte[length];
+				patch.get(data);
+			}
+			checkRange(rom, address, length);
+			rom.putBytes(address, data);
+		}
+	}
+	
+	/**
+	 * 
+	 * @param rom The ROM to patch
+	 * @param patch Buffer positioned after the magic bytes
+	 */
+	private static void applyUps(GbaRom rom, ByteBuffer patch) {
+		ByteBuffer source = checkHeader(rom, patch, PatchFormat.UPS);
+		int end = patch.limit() - FOOTER_LENGTH;
+		int target = patch.getInt(end + 4);
+		// records end at the checksums, so a record that runs into them ends the patch unexpectedly
+		patch.limit(end);
+		
+		long address = 0;
+		byte[] block = new byte[BLOCK_SIZE];
+		while (patch.position() < end) {
+			address += readNumber(patch);
+			// XOR source bytes until a 0, which marks an unchanged byte and ends the record
+			int length = 0;
+			while (true) {
+				checkRemaining(patch, 1);
+				int value = patch.get() & 0xFF;
+				if (value == 0)
+					break;
+				checkRange(rom, address + length, 1);
+				if (length == block.length) {
+					rom.putBytes((int) address, block);
+					address += length;
+					length = 0;
+				}
+				block[length] = (byte) (source.get((int) address + length) ^ value);
+				length++;
+			}
+			putBytes(rom, (int) address, block, length);
+			address += length + 1;
+		}
+		checkTarget(Crc32Util.crc32(rom), target);
+	}
+	
+	/**
+	 * 
+	 * @param rom The ROM to patch
+	 * @param patch Buffer positioned after the magic bytes
+	 */
+	private static void applyBps(GbaRom rom, ByteBuffer patch) {
+		ByteBuffer source = checkHeader(rom, patch, PatchFormat.BPS);
+		int end = patch.limit() - FOOTER_LENGTH;
+		int target = patch.getInt(end + 4);
+		// commands end at the checksums, so a command that runs into them ends the patch unexpectedly
+		patch.limit(end);
+		long metadata = readNumber(patch);
+		checkRemaining(patch, metadata);
+		patch.position(patch.position() + (int) metadata);
+		
+		// the target is written in order, so its checksum is built as it is written
+		CRC32 crc = new CRC32();
+		int output = 0;
+		long sourceOffset = 0, targetOffset = 0;
+		byte[] block = new byte[BLOCK_SIZE];
+		while (patch.position() < end) {
+			long command = readNumber(patch);
+			long length = (command >>> 2) + 1;
+			checkRange(rom, output, length);
+			
+			int type = (int) (command & 3);
+			if (type == SOURCE_READ) {
+				// the source and target share this range, which the ROM already holds
+				crc.update(view(source, output, (int) length));
+				output += length;
+				continue;
+			}
+			if (type == TARGET_READ) {
+				checkRemaining(patch, length);
+			} else {
+				long offset = readNumber(patch);
+				offset = (offset & 1) != 0 ? -(offset >>> 1) : offset >>> 1;
+				if (type == SOURCE_COPY) {
+					sourceOffset += offset;
+					checkRange(rom, sourceOffset, length);
+				} else {
+					targetOffset += offset;
+					if (targetOffset < 0 || targetOffset >= output)
+						throw new IllegalStateException("BPS patch copies target data that has not been written!");
+				}
+			}
+			
+			for (long done = 0; done < length; ) {
+				int count = (int) Math.min(block.length, length - done);
+				if (type == TARGET_READ) {
+					patch.get(block, 0, count);
+				} else if (type == SOURCE_COPY) {
+					view(source, (int) sourceOffset, count).get(block, 0, count);
+					sourceOffset += count;
+				} else if (targetOffset + count <= output) {
+					rom.getBytes((int) targetOffset, block, 0, count);
+					targetOffset += count;
+				} else {
+					// the copy overlaps the bytes it writes (e.g. a run of one byte), so copy a byte at a time
+					for (int i = 0; i < count; i++, targetOffset++) {
+						block[i] = targetOffset >= output ? block[(int) (targetOffset - output)] : 
+								(byte) rom.getByte((int) targetOffset);
+					}
+				}
+				putBytes(rom, output, block, count);
+				crc.update(block, 0, count);
+				output += count;
+				done += count;
+			}
+		}
+		if (output != rom.getLength())
+			throw new IllegalStateException("BPS patch does not build the whole target!");
+		checkTarget((int) crc.getValue(), target);
+	}
+	
+	/**
+	 * Reads the sizes at the start of a UPS or BPS patch, and checks them and the source checksum against the ROM.
+	 * 
+	 * @param rom The ROM to patch
+	 * @param patch Buffer positioned after the magic bytes
+	 * @param format The format of the patch
+	 * @return View of the applied data of the ROM, which is the source of the patch
+	 */
+	private static ByteBuffer checkHeader(GbaRom rom, ByteBuffer patch, PatchFormat format) {
+		if (patch.limit() < format.magic().length + FOOTER_LENGTH)
+			throw new IllegalStateException(format + " patch is too short!");
+		long sourceLength = readNumber(patch);
+		long targetLength = readNumber(patch);
+		if (sourceLength != rom.getLength() || targetLength != rom.getLength())
+			throw new IllegalStateException(format + " patch changes the size of the ROM, or is for another ROM!");
+		
+		int end = patch.limit() - FOOTER_LENGTH;
+		CRC32 crc = new CRC32();
+		crc.update(view(patch, 0, patch.limit() - 4));
+		if ((int) crc.getValue() != patch.getInt(end + 8))
+			throw new IllegalStateException(format + " patch is damaged (checksum does not match)!");
+		
+		ByteBuffer source = rom.getByteView();
+		if (Crc32Util.crc32(source) != patch.getInt(end))
+			throw new IllegalStateException(format + " patch is for another ROM (source checksum does not match)!");
+		return source;
+	}
+	
+	/**
+	 * 
+	 * @param crc Checksum of the patched ROM
+	 * @param target Target checksum read from the end of the patch
+	 */
+	private static void checkTarget(int crc, int target) {
+		if (crc != target)
+			throw new IllegalStateException("Patched ROM does not match the target checksum!");
+	}
+	
+	/**
+	 * Reads a number in the variable length encoding shared by UPS and BPS.
+	 * 
+	 * @param patch Buffer to read from
+	 * @return The number read
+	 */
+	private static long readNumber(ByteBuffer patch) {
+		long value = 0, shift = 1;
+		while (true) {
+			checkRemaining(patch, 1);
+			int bits = patch.get() & 0xFF;
+			value += (bits & 0x7F) * shift;
+			if ((bits & 0x80) != 0)
+				return value;
+			shift <<= 7;
+			value += shift;
+			if (shift > (1L << 56))
+				throw new IllegalStateException("Patch holds a number that is too large!");
+		}
+	}
+	
+	/**
+	 * 
+	 * @param patch Buffer to read from
+	 * @return The 24-bit big endian address read
+	 */
+	private static int readIpsAddress(ByteBuffer patch) {
+		return ((patch.get() & 0xFF) << 16) | ((patch.get() & 0xFF) << 8) | (patch.get() & 0xFF);
+	}
+	
+	/**
+	 * 
+	 * @param rom The ROM to write
+	 * @param address The first address to write
+	 * @param data Buffer holding the bytes to write
+	 * @param length The amount of bytes to write
+	 */
+	private static void putBytes(GbaRom rom, int address, byte[] data, int length) {
+		if (length == data.length)
+			rom.putBytes(address, data);
+		else if (length > 0)
+			rom.putBytes(address, Arrays.copyOf(data, length));
+	}
+	
+	/**
+	 * 
+	 * @param buffer Buffer holding data
+	 * @param start The first index
+	 * @param length The amount of bytes
+	 * @return View of the given range
+	 */
+	private static ByteBuffer view(ByteBuffer buffer, int start, int length) {
+		ByteBuffer view = buffer.duplicate();
+		view.limit(start + length);
+		view.position(start);
+		return view;
+	}
+	
+	/**
+	 * Throws if the patch ends before the given amount of bytes.
+	 * 
+	 * @param patch Buffer to read from
+	 * @param length The amount of bytes needed
+	 */
+	private static void checkRemaining(ByteBuffer patch, long length) {
+		if (patch.remaining() < length)
+			throw new IllegalStateException("Patch ends unexpectedly!");
+	}
+	
+	/**
+	 * Throws if the given range lies outside of the ROM.
+	 * 
+	 * @param rom The ROM to write
+	 * @param address The first address
+	 * @param length The amount of bytes
+	 */
+	private static void checkRange(GbaRom rom, long address, long length) {
+		if (address < 0 || address + length > rom.getLength())
+			throw new IllegalStateException("Patch writes past the end of the ROM: " + Long.toHexString(address));
+	}
+}
@@ -0,0 +1,550 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.patch;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import com.pgrvs.aphl.GbaRom;
+import com.pgrvs.aphl.util.Crc32Util;
+
+/**
+ * <p>This class is responsible for creating patches that turn one ROM (the source) into another (the target), in 
+ * any of the formats listed by {@link PatchFormat}. All methods within this class are static for easy access.</p>
+ * 
+ * <p>Both ROMs are compared in place through their buffers, in parallel chunks on a {@link ForkJoinPool}, and the 
+ * patch is streamed to its output, so neither ROM is copied. When the changed pages of the target are known (see 
+ * {@link GbaRom#getDirtyPages()}), only those pages are compared.</p>
+ * 
+ * <p>BPS patches are created linearly: each changed range is stored as new data, and unchanged ranges are read 
+ * from the source, without searching the source for moved data.</p>
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class PatchCreator {
+	
+	/** The amount of bytes compared by a single task */
+	private static final int CHUNK_SIZE = 1 << 18;
+	
+	/** The largest address an IPS record can hold */
+	private static final int IPS_MAX_ADDRESS = 0xFFFFFF;
+	
+	/** The largest amount of bytes an IPS record can hold */
+	private static final int IPS_MAX_LENGTH = 0xFFFF;
+	
+	/** The address that IPS records cannot start at, as it reads as the end of the patch ("EOF") */
+	private static final int IPS_EOF = 0x454F46;
+	
+	/** Unchanged bytes shorter than this are written into the surrounding IPS record, rather than starting another */
+	private static final int IPS_MERGE_GAP = 6;
+	
+	/** The shortest run of a single byte that is written as a run rather than as data */
+	private static final int MIN_RUN_LENGTH = 16;
+	
+	/** BPS commands */
+	private static final int SOURCE_READ = 0, TARGET_READ = 1, TARGET_COPY = 3;
+	
+	/**
+	 * Compares every byte of both ROMs. Neither ROM may have an open transaction, as the patch is created from 
+	 * applied data only.
+	 * 
+	 * @param source The ROM before the changes
+	 * @param target The ROM after the changes
+	 * @param format The format of the patch
+	 * @param output Stream to write the patch to, which is not closed
+	 * @throws IOException If the patch cannot be written
+	 */
+	public static void create(GbaRom source, GbaRom target, PatchFormat format, OutputStream output) 
+			throws IOException {
+		create(source, target, null, format, output);
+	}
+	
+	/**
+	 * Compares only the given pages of both ROMs, such as the dirty pages of a ROM opened 
+	 * {@link com.pgrvs.aphl.GbaRomMode#PRIVATE} against the file it was opened from. Neither ROM may have an open 
+	 * transaction, as the patch is created from applied data only.
+	 * 
+	 * @param source The ROM before the changes
+	 * @param target The ROM after the changes
+	 * @param pages Index of each page ({@link GbaRom#PAGE_SIZE} bytes) that may have changed
+	 * @param format The format of the patch
+	 * @param output Stream to write the patch to, which is not closed
+	 * @throws IOException If the patch cannot be written
+	 */
+	public static void create(GbaRom source, GbaRom target, BitSet pages, PatchFormat format, OutputStream output) 
+			throws IOException {
+		if (source.getTransaction() != null || target.getTransaction() != null)
+			throw new IllegalStateException("Cannot create a patch while a transaction is open on either ROM!");
+		create(source.getByteView(), target.getByteView(), pages, format, output);
+	}
+	
+	/**
+	 * 
+	 * @param source Buffer holding the data before the changes, whose addresses start at 0
+	 * @param target Buffer holding the data after the changes, whose addresses start at 0
+	 * @param pages Index of each page ({@link GbaRom#PAGE_SIZE} bytes) that may have changed, or null to compare 
+	 * 	every byte. Bytes past the end of the shorter buffer are always compared
+	 * @param format The format of the patch
+	 * @param output Stream to write the patch to, which is not closed
+	 * @throws IOException If the patch cannot be written
+	 */
+	public static void create(ByteBuffer source, ByteBuffer target, BitSet pages, PatchFormat format, 
+			OutputStream output) throws IOException {
+		source = source.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		target = target.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		int[] ranges = compare(source, target, pages);
+		
+		BufferedOutputStream buffered = new BufferedOutputStream(output, 1 << 16);
+		switch (format) {
+			case IPS: writeIps(source, target, ranges, buffered); break;
+			case UPS: writeUps(source, target, ranges, buffered); break;
+			case BPS: writeBps(source, target, ranges, buffered); break;
+		}
+		buffered.flush();
+	}
+	
+	/**
+	 * Finds every range of bytes that differ.
+	 * 
+	 * @param source Buffer holding the data before the changes
+	 * @param target Buffer holding the data after the changes
+	 * @param pages Index of each page that may have changed, or null to compare every byte
+	 * @return Start and end address of each range that differs, in address order
+	 */
+	private static int[] compare(ByteBuffer source, ByteBuffer target, BitSet pages) {
+		int shared = Math.min(source.limit(), target.limit());
+		int[] found = ForkJoinPool.commonPool().invoke(new CompareTask(source, target, pages, 0, shared)).toArray();
+		
+		// join ranges split by the edge of a chunk, and add the bytes past the end of the shorter buffer
+		Ranges ranges = new Ranges();
+		for (int i = 0; i < found.length; i += 2) {
+			int start = found[i], end = found[i + 1];
+			while (i + 2 < found.length && found[i + 2] == end) {
+				end = found[i + 3];
+				i += 2;
+			}
+			ranges.add(start, end);
+		}
+		int length = Math.max(source.limit(), target.limit());
+		if (shared < length)
+			ranges.add(shared, length);
+		return ranges.toArray();
+	}
+	
+	/**
+	 * Writes records of the target bytes of each range, with long runs of one byte written as run records.
+	 * 
+	 * @param source Buffer holding the data before the changes
+	 * @param target Buffer holding the data after the changes
+	 * @param ranges Start and end address of each range that differs
+	 * @param output Stream to write to
+	 * @throws IOException If the patch cannot be written
+	 */
+	private static void writeIps(ByteBuffer source, ByteBuffer target, int[] ranges, OutputStream output) 
+			throws IOException {
+		boolean truncated = target.limit() < source.limit();
+		if (truncated && target.limit() > IPS_MAX_ADDRESS)
+			throw new IllegalStateException("IPS patches cannot truncate to a length past 0xFFFFFF: " + 
+					Integer.toHexString(target.limit()));
+		
+		output.write(PatchFormat.IPS.magic());
+		for (int i = 0; i < ranges.length; i += 2) {
+			int start = ranges[i], end = Math.min(ranges[i + 1], target.limit());
+			while (i + 2 < ranges.length && ranges[i + 2] - end < IPS_MERGE_GAP && ranges[i + 2] < target.limit()) {
+				end = Math.min(ranges[i + 3], target.limit());
+				i += 2;
+			}
+			if (start >= end)
+				continue;
+			if (end - 1 > IPS_MAX_ADDRESS)
+				throw new IllegalStateException("IPS patches cannot change data past 0xFFFFFF: " + 
+						Integer.toHexString(end - 1));
+			
+			int literal = start;
+			for (int address = start; address < end; ) {
+				int run = runLength(target, address, end);
+				if (run < MIN_RUN_LENGTH || address == IPS_EOF) {
+					address += run;
+					continue;
+				}
+				writeIpsData(target, literal, address, output);
+				run = Math.min(run, IPS_MAX_LENGTH);
+				writeIpsAddress(address, output);
+				output.write(0);
+				output.write(0);
+				output.write(run >> 8);
+				output.write(run);
+				output.write(target.get(address));
+				address += run;
+				literal = address;
+			}
+			writeIpsData(target, literal, end, output);
+		}
+		output.write('E');
+		output.write('O');
+		output.write('F');
+		if (truncated)
+			writeIpsAddress(target.limit(), output);
+	}
+	
+	/**
+	 * Writes data records of the target bytes of the given range.
+	 * 
+	 * @param target Buffer holding the data after the changes
+	 * @param start The first address to write
+	 * @param end The address after the last to write
+	 * @param output Stream to write to
+	 * @throws IOException If the patch cannot be written
+	 */
+	private static void writeIpsData(ByteBuffer target, int start, int end, OutputStream output) throws IOException {
+		while (start < end) {
+			if (start == IPS_EOF)
+				start--; // write one unchanged byte rather than a record that reads as the end of the patch
+			int length = Math.min(end - start, IPS_MAX_LENGTH);
+			writeIpsAddress(start, output);
+			output.write(length >> 8);
+			output.write(length);
+			for (int i = 0; i < length; i++)
+				output.write(target.get(start + i));
+			start += length;
+		}
+	}
+	
+	/**
+	 * 
+	 * @param address 24-bit address to write in big endian order
+	 * @param output Stream to write to
+	 * @throws IOException If the patch cannot be written
+	 */
+	private static void writeIpsAddress(int address, OutputStream output) throws IOException {
+		output.write(address >> 16);
+		output.write(address >> 8);
+		output.write(address);
+	}
+	
+	/**
+	 * Writes the XOR of the source and target bytes of each range, where bytes past the end of either buffer are 0.
+	 * 
+	 * @param source Buffer holding the data before the changes
+	 * @param target Buffer holding the data after the changes
+	 * @param ranges Start and end address of each range that differs
+	 * @param output Stream to write to
+	 * @throws IOException If the patch cannot be written
+	 */
+	private static void writeUps(ByteBuffer source, ByteBuffer target, int[] ranges, OutputStream output) 
+			throws IOException {
+		CheckedOutputStream checked = new CheckedOutputStream(output, new CRC32());
+		checked.write(PatchFormat.UPS.magic());
+		writeNumber(source.limit(), checked);
+		writeNumber(target.limit(), checked);
+		
+		int length = Math.max(source.limit(), target.limit());
+		int next = 0; // address after the last record, including the 0 that ended it
+		for (int i = 0; i < ranges.length; i += 2) {
+			for (int address = Math.max(ranges[i], next); address < ranges[i + 1]; ) {
+				if (xor(source, target, address) == 0) {
+					address++; // only past the end of a buffer, where one of the bytes read as 0
+					continue;
+				}
+				// records only end at an unchanged byte, so a record may run on into the next range
+				writeNumber(address - next, checked);
+				for (int value; address < length && (value = xor(source, target, address)) != 0; address++)
+					checked.write(value);
+				checked.write(0);
+				next = address + 1;
+			}
+		}
+		writeFooter(source, target, checked);
+	}
+	
+	/**
+	 * 
+	 * @param source Buffer holding the data before the changes
+	 * @param target Buffer holding the data after the changes
+	 * @param address Address of the bytes
+	 * @return The XOR of the source and target bytes, where bytes past the end of either buffer are 0
+	 */
+	private static int xor(ByteBuffer source, ByteBuffer target, int address) {
+		int before = address < source.limit() ? source.get(address) & 0xFF : 0;
+		int after = address < target.limit() ? target.get(address) & 0xFF : 0;
+		return before ^ after;
+	}
+	
+	/**
+	 * Writes commands that read each unchanged range from the source, and each changed range from the patch.
+	 * 
+	 * @param source Buffer holding the data before the changes
+	 * @param target Buffer holding the data after the changes
+	 * @param ranges Start and end address of each range that differs
+	 * @param output Stream to write to
+	 * @throws IOException If the patch cannot be written
+	 */
+	private static void writeBps(ByteBuffer source, ByteBuffer target, int[] ranges, OutputStream output) 
+			throws IOException {
+		CheckedOutputStream checked = new CheckedOutputStream(output, new CRC32());
+		checked.write(PatchFormat.BPS.magic());
+		writeNumber(source.limit(), checked);
+		writeNumber(target.limit(), checked);
+		writeNumber(0, checked); // no metadata
+		
+		int written = 0; // address after the last byte of target written
+		long copied = 0; // address after the last byte read by a target copy
+		for (int i = 0; i < ranges.length && ranges[i] < target.limit(); i += 2) {
+			int start = ranges[i], end = Math.min(ranges[i + 1], target.limit());
+			if (written < start)
+				writeCommand(SOURCE_READ, start - written, checked);
+			
+			int literal = start;
+			for (int address = start; address < end; ) {
+				int run = runLength(target, address, end);
+				if (run < MIN_RUN_LENGTH) {
+					address += run;
+					continue;
+				}
+				// write the first byte of the run, and then copy it forward over the rest of the run
+				writeTargetRead(target, literal, address + 1, checked);
+				writeCommand(TARGET_COPY, run - 1, checked);
+				long offset = address - copied;
+				writeNumber((Math.abs(offset) << 1) | (offset < 0 ? 1 : 0), checked);
+				copied = address + run - 1L;
+				address += run;
+				literal = address;
+			}
+			writeTargetRead(target, literal, end, checked);
+			written = end;
+		}
+		if (written < target.limit())
+			writeCommand(SOURCE_READ, target.limit() - written, checked);
+		writeFooter(source, target, checked);
+	}
+	
+	/**
+	 * Writes a command that reads the target bytes of the given range from the patch.
+	 * 
+	 * @param target Buffer holding the data after the changes
+	 * @param start The first address to write
+	 * @param end The address after the last to write
+	 * @param output Stream to write to
+	 * @throws IOException If the patch cannot be written
+	 */
+	private static void writeTargetRead(ByteBuffer target, int start, int end, OutputStream output) 
+			throws IOException {
+		if (start >= end)
+			return;
+		writeCommand(TARGET_READ, end - start, output);
+		for (int address = start; address < end; address++)
+			output.write(target.get(address));
+	}
+	
+	/**
+	 * 
+	 * @param command The BPS command
+	 * @param length The amount of bytes the command writes
+	 * @param output Stream to write to
+	 * @throws IOException If the patch cannot be written
+	 */
+	private static void writeCommand(int command, long length, OutputStream output) throws IOException {
+		writeNumber(((length - 1) << 2) | command, output);
+	}
+	
+	/**
+	 * Writes the checksums of the source, the target, and then the patch itself.
+	 * 
+	 * @param source Buffer holding the data before the changes
+	 * @param target Buffer holding the data after the changes
+	 * @param output Stream that has checked every byte of the patch
+	 * @throws IOException If the patch cannot be written
+	 */
+	private static void writeFooter(ByteBuffer source, ByteBuffer target, CheckedOutputStream output) 
+			throws IOException {
+		ByteBuffer footer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+		footer.putInt(0, Crc32Util.crc32(all(source)));
+		footer.putInt(4, Crc32Util.crc32(all(target)));
+		output.write(footer.array());
+		footer.putInt(0, (int) output.getChecksum().getValue());
+		output.write(footer.array(), 0, 4);
+	}
+	
+	/**
+	 * Writes a number in the variable length encoding shared by UPS and BPS, where each byte holds 7 bits and the 
+	 * last byte has its top bit set.
+	 * 
+	 * @param value The number to write
+	 * @param output Stream to write to
+	 * @throws IOException If the patch cannot be written
+	 */
+	private static void writeNumber(long value, OutputStream output) throws IOException {
+		while (true) {
+			int bits = (int) (value & 0x7F);
+			value >>>= 7;
+			if (value == 0) {
+				output.write(0x80 | bits);
+				return;
+			}
+			output.write(bits);
+			value--;
+		}
+	}
+	
+	/**
+	 * 
+	 * @param buffer Buffer holding data
+	 * @param address The first address of the run
+	 * @param end The address after the last to check
+	 * @return The amount of bytes from the given address that equal it
+	 */
+	private static int runLength(ByteBuffer buffer, int address, int end) {
+		byte value = buffer.get(address);
+		int length = 1;
+		while (address + length < end && buffer.get(address + length) == value)
+			length++;
+		return length;
+	}
+	
+	/**
+	 * 
+	 * @param buffer Buffer holding data
+	 * @return View of the whole buffer, from address 0 to its limit
+	 */
+	private static ByteBuffer all(ByteBuffer buffer) {
+		ByteBuffer all = buffer.duplicate();
+		all.position(0);
+		return all;
+	}
+	
+	/**
+	 * Start and end addresses of ranges, in address order.
+	 */
+	private static class Ranges {
+		
+		private int[] values = new int[64];
+		private int size;
+		
+		private void add(int start, int end) {
+			if (size == values.length)
+				values = Arrays.copyOf(values, size * 2);
+			values[size++] = start;
+			values[size++] = end;
+		}
+		
+		private void addAll(Ranges ranges) {
+			if (size + ranges.size > values.length)
+				values = Arrays.copyOf(values, Math.max(values.length * 2, size + ranges.size));
+			System.arraycopy(ranges.values, 0, values, size, ranges.size);
+			size += ranges.size;
+		}
+		
+		private int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+	
+	/**
+	 * A task that finds the ranges of bytes that differ between two buffers, splitting itself while the range is 
+	 * larger than a chunk.
+	 */
+	private static class CompareTask extends RecursiveTask<Ranges> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final ByteBuffer source;
+		private final ByteBuffer target;
+		private final BitSet pages;
+		private final int start;
+		private final int end;
+		
+		private CompareTask(ByteBuffer source, ByteBuffer target, BitSet pages, int start, int end) {
+			this.source = source;
+			this.target = target;
+			this.pages = pages;
+			this.start = start;
+			this.end = end;
+		}
+		
+		@Override
+		protected Ranges compute() {
+			if (end - start > CHUNK_SIZE) {
+				int middle = (start + ((end - start) >> 1)) & ~(GbaRom.PAGE_SIZE - 1);
+				CompareTask left = new CompareTask(source, target, pages, start, middle);
+				left.fork();
+				Ranges right = new CompareTask(source, target, pages, middle, end).compute();
+				Ranges ranges = left.join();
+				ranges.addAll(right);
+				return ranges;
+			}
+			
+			Ranges ranges = new Ranges();
+			if (pages == null) {
+				compare(start, end, ranges);
+				return ranges;
+			}
+			for (int page = pages.nextSetBit(start / GbaRom.PAGE_SIZE); page >= 0; page = pages.nextSetBit(page + 1)) {
+				long from = (long) page * GbaRom.PAGE_SIZE;
+				if (from >= end)
+					break;
+				compare((int) from, (int) Math.min(end, from + GbaRom.PAGE_SIZE), ranges);
+			}
+			return ranges;
+		}
+		
+		/**
+		 * Adds each range of bytes that differ within the given range, joining it with the last range added if they 
+		 * touch.
+		 * 
+		 * @param start The first address to compare
+		 * @param end The address after the last to compare
+		 * @param ranges Ranges to add to
+		 */
+		private void compare(int start, int end, Ranges ranges) {
+			int address = start;
+			while (address < end) {
+				// skip equal bytes 8 at a time
+				while (address + 8 <= end && source.getLong(address) == target.getLong(address))
+					address += 8;
+				while (address < end && source.get(address) == target.get(address))
+					address++;
+				if (address >= end)
+					break;
+				
+				int first = address;
+				while (address < end && source.get(address) != target.get(address))
+					address++;
+				if (ranges.size > 0 && ranges.values[ranges.size - 1] == first)
+					ranges.values[ranges.size - 1] = address;
+				else
+					ranges.add(first, address);
+			}
+		}
+	}
+}
@@ -0,0 +1,80 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.patch;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This simple enumerated type lists the patch formats supported by {@link PatchCreator} and {@link PatchApplier}. 
+ * Each type contains the magic bytes found at the start of its patches, which is how the format of a patch is 
+ * identified.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public enum PatchFormat {
+	
+	/** Records of bytes to write, without checksums. Only the first 16 MB of a ROM can be patched */
+	IPS( "PATCH" ),
+	
+	/** Bytes to XOR with the source, followed by CRC-32 checksums of the source, target and patch */
+	UPS( "UPS1" ),
+	
+	/** Commands building the target from the source and the patch, followed by the same checksums as UPS */
+	BPS( "BPS1" );
+	
+	/** Bytes at the start of each patch */
+	private final byte[] magic;
+	
+	private PatchFormat(String magic) {
+		this.magic = magic.getBytes(StandardCharsets.US_ASCII);
+	}
+	
+	/**
+	 * 
+	 * @return Bytes at the start of each patch
+	 */
+	public byte[] magic() {
+		return magic.clone();
+	}
+	
+	/**
+	 * 
+	 * @param patch Buffer holding a patch from its position
+	 * @return The format of the patch, or null if it is not a known format
+	 */
+	public static PatchFormat of(ByteBuffer patch) {
+		for (PatchFormat format : values()) {
+			if (patch.remaining() < format.magic.length)
+				continue;
+			boolean matches = true;
+			for (int i = 0; i < format.magic.length && matches; i++)
+				matches = patch.get(patch.position() + i) == format.magic[i];
+			if (matches)
+				return format;
+		}
+		return null;
+	}
+}
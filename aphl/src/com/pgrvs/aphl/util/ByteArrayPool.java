@@ -0,0 +1,158 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>This class holds reusable byte arrays, so that repeated work (e.g. decompressing every asset in a ROM) does
+ * not allocate a new output array each time. Arrays are grouped by power-of-two sizes, so an acquired array may
+ * be longer than requested.</p>
+ * 
+ * <p>Pools are safe to share between threads. A shared pool is available through {@link #getShared()}, which holds 
+ * at most {@link #SHARED_MAX_BYTES} of free arrays in total, so that it never pins much memory for the life of the 
+ * process.</p>
+ * 
+ * @author Phillip Groves
+ * 
+ */
+public class ByteArrayPool {
+	
+	/** The amount of arrays held for each size by default */
+	public static final int DEFAULT_ARRAYS_PER_SIZE = 8;
+	
+	/** The total length of free arrays held by the shared pool (4 MB) */
+	public static final long SHARED_MAX_BYTES = 1 << 22;
+	
+	/** Arrays larger than this (16 MB) are never held */
+	private static final int MAX_BUCKET = 24;
+	
+	private static final ByteArrayPool SHARED = new ByteArrayPool(DEFAULT_ARRAYS_PER_SIZE, SHARED_MAX_BYTES);
+	
+	/** Free arrays, indexed by the log2 of their length */
+	private final ConcurrentLinkedQueue<byte[]>[] buckets;
+	
+	/** The amount of free arrays in each bucket */
+	private final AtomicIntegerArray counts;
+	
+	/** The total length of free arrays held */
+	private final AtomicLong bytes = new AtomicLong();
+	
+	/** The maximum amount of free arrays held in each bucket */
+	private final int arraysPerSize;
+	
+	/** The maximum total length of free arrays held */
+	private final long maxBytes;
+	
+	/**
+	 * 
+	 * @param arraysPerSize The maximum amount of free arrays to hold for each size
+	 */
+	public ByteArrayPool(int arraysPerSize) {
+		this (arraysPerSize, Long.MAX_VALUE);
+	}
+	
+	/**
+	 * 
+	 * @param arraysPerSize The maximum amount of free arrays to hold for each size
+	 * @param maxBytes The maximum total length of free arrays to hold, after which released arrays are dropped
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public ByteArrayPool(int arraysPerSize, long maxBytes) {
+		this.arraysPerSize = arraysPerSize;
+		this.maxBytes = maxBytes;
+		this.buckets = new ConcurrentLinkedQueue[MAX_BUCKET + 1];
+		this.counts = new AtomicIntegerArray(MAX_BUCKET + 1);
+		for (int i = 0; i < buckets.length; i++)
+			buckets[i] = new ConcurrentLinkedQueue<byte[]>();
+	}
+	
+	/**
+	 * 
+	 * @return A pool shared by the whole library
+	 */
+	public static ByteArrayPool getShared() {
+		return SHARED;
+	}
+	
+	/**
+	 * Takes a free array from this pool, or allocates a new one if none are free. The contents of the array are
+	 * not cleared.
+	 * 
+	 * @param length The minimum length of the array
+	 * @return An array at least as long as the given length
+	 */
+	public byte[] acquire(int length) {
+		int bucket = bucket(length);
+		if (bucket > MAX_BUCKET)
+			return new byte[length];
+		
+		byte[] array = buckets[bucket].poll();
+		if (array == null)
+			return new byte[1 << bucket];
+		counts.decrementAndGet(bucket);
+		bytes.addAndGet(-array.length);
+		return array;
+	}
+	
+	/**
+	 * Returns an array to this pool. The array must not be used after it has been released.
+	 * 
+	 * @param array The array to return, which should have been acquired from this pool
+	 */
+	public void release(byte[] array) {
+		int bucket = bucket(array.length);
+		if (bucket > MAX_BUCKET || array.length != 1 << bucket)
+			return;
+		if (bytes.addAndGet(array.length) > maxBytes) {
+			bytes.addAndGet(-array.length);
+			return;
+		}
+		if (counts.incrementAndGet(bucket) <= arraysPerSize) {
+			buckets[bucket].offer(array);
+		} else {
+			counts.decrementAndGet(bucket);
+			bytes.addAndGet(-array.length);
+		}
+	}
+	
+	/**
+	 * 
+	 * @return The total length of free arrays held by this pool
+	 */
+	public long getHeldBytes() {
+		return bytes.get();
+	}
+	
+	/**
+	 * 
+	 * @param length Length of an array
+	 * @return The log2 of the smallest power of two that can hold the given length
+	 */
+	private static int bucket(int length) {
+		return length <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(length - 1);
+	}
+}
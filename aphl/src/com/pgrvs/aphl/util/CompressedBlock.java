@@ -0,0 +1,105 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.util;
+
+/**
+ * This class represents a block of compressed data within the ROM, as found by {@link CompressedBlockScanner} or 
+ * measured by {@link CompressionUtil}. Blocks are immutable.
+ * 
+ * @author Phillip Groves
+ * 
+ */
+public class CompressedBlock {
+	
+	/** Address of the header of this block */
+	private final int address;
+	
+	/** The format of this block */
+	private final CompressionType type;
+	
+	/** The amount of bytes taken by this block in the ROM, including its header */
+	private final int compressedLength;
+	
+	/** The amount of bytes this block decompresses to */
+	private final int decompressedLength;
+	
+	/**
+	 * 
+	 * @param address Address of the header
+	 * @param type The format of the block
+	 * @param compressedLength The amount of bytes taken in the ROM, including the header
+	 * @param decompressedLength The amount of bytes the block decompresses to
+	 */
+	public CompressedBlock(int address, CompressionType type, int compressedLength, int decompressedLength) {
+		this.address = address;
+		this.type = type;
+		this.compressedLength = compressedLength;
+		this.decompressedLength = decompressedLength;
+	}
+	
+	/**
+	 * 
+	 * @return {@link #address}
+	 */
+	public int getAddress() {
+		return address;
+	}
+	
+	/**
+	 * 
+	 * @return {@link #type}
+	 */
+	public CompressionType getType() {
+		return type;
+	}
+	
+	/**
+	 * 
+	 * @return {@link #compressedLength}
+	 */
+	public int getCompressedLength() {
+		return compressedLength;
+	}
+	
+	/**
+	 * 
+	 * @return {@link #decompressedLength}
+	 */
+	public int getDecompressedLength() {
+		return decompressedLength;
+	}
+	
+	/**
+	 * 
+	 * @return The address after the last byte of this block
+	 */
+	public int getEndAddress() {
+		return address + compressedLength;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s at 0x%X (%d -> %d bytes)", type, address, compressedLength, decompressedLength);
+	}
+}
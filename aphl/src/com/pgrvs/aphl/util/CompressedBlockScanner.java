@@ -0,0 +1,201 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.pgrvs.aphl.GbaRom;
+
+/**
+ * <p>This class is responsible for finding every block of compressed data (e.g. graphics) within a ROM. The ROM 
+ * is split into chunks that are scanned in parallel on a {@link ForkJoinPool}.</p>
+ * 
+ * <p>Each 4-byte aligned address is first checked cheaply: the header must name a scanned type and a 
+ * decompressed length that is within range and a multiple of 4. The length is taken from the extended header 
+ * (a 24-bit length of 0, followed by a 32-bit length) where one is used. Addresses that pass are then walked 
+ * without writing any decompressed data, and kept only if every back-reference is valid and the data ends within 
+ * the ROM (see {@link CompressionUtil#measure(ByteBuffer, int)}).</p>
+ * 
+ * <p>Uncompressed data can pass these checks by chance, so blocks may overlap. Blocks found inside an earlier 
+ * block can be dropped with {@link #setSkipNested(boolean)}.</p>
+ * 
+ * @author Phillip Groves
+ * 
+ */
+public class CompressedBlockScanner {
+	
+	/** The amount of bytes scanned by a single task */
+	private static final int CHUNK_SIZE = 1 << 18;
+	
+	/** The types of data to find */
+	private EnumSet<CompressionType> types = EnumSet.of(CompressionType.LZ77, CompressionType.LZ11, 
+			CompressionType.RLE);
+	
+	/** The smallest decompressed length to accept */
+	private int minLength = 0x20;
+	
+	/** The largest decompressed length to accept */
+	private int maxLength = 0x40000;
+	
+	/** Whether to drop blocks that start inside an earlier block */
+	private boolean skipNested;
+	
+	/**
+	 * 
+	 * @param types The types of data to find
+	 */
+	public void setTypes(EnumSet<CompressionType> types) {
+		this.types = EnumSet.copyOf(types);
+	}
+	
+	/**
+	 * Sets the range of decompressed lengths to accept. Narrow ranges reject more false matches.
+	 * 
+	 * @param minLength The smallest decompressed length to accept
+	 * @param maxLength The largest decompressed length to accept
+	 */
+	public void setLengthRange(int minLength, int maxLength) {
+		this.minLength = minLength;
+		this.maxLength = maxLength;
+	}
+	
+	/**
+	 * 
+	 * @param skipNested Whether to drop blocks that start inside an earlier block
+	 */
+	public void setSkipNested(boolean skipNested) {
+		this.skipNested = skipNested;
+	}
+	
+	/**
+	 * 
+	 * @param rom The ROM to scan
+	 * @return Every block found, sorted by address
+	 */
+	public List<CompressedBlock> scan(GbaRom rom) {
+		return scan(rom.getByteView(), ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * 
+	 * @param source Buffer to scan, whose addresses start at 0
+	 * @param pool Pool to scan with
+	 * @return Every block found, sorted by address
+	 */
+	public List<CompressedBlock> scan(ByteBuffer source, ForkJoinPool pool) {
+		source = CompressionUtil.littleEndian(source);
+		List<CompressedBlock> found = pool.invoke(new ScanTask(source, 0, source.limit()));
+		if (!skipNested)
+			return Collections.unmodifiableList(found);
+		
+		List<CompressedBlock> blocks = new ArrayList<CompressedBlock>(found.size());
+		int end = 0;
+		for (CompressedBlock block : found) {
+			if (block.getAddress() >= end) {
+				blocks.add(block);
+				end = block.getEndAddress();
+			}
+		}
+		return Collections.unmodifiableList(blocks);
+	}
+	
+	/**
+	 * Checks for a block at the given address.
+	 * 
+	 * @param source Buffer to check
+	 * @param address Address to check
+	 * @return The block at the address, or null if none
+	 */
+	private CompressedBlock check(ByteBuffer source, int address) {
+		CompressionType type = CompressionType.of(source.get(address));
+		if (type == null || !types.contains(type))
+			return null;
+		
+		int header = 4;
+		int length = source.getInt(address) >>> 8;
+		if (length == 0) {
+			// extended header, holding the length in the next 4 bytes
+			if (address + 8 > source.limit())
+				return null;
+			header = 8;
+			length = source.getInt(address + 4);
+		}
+		if (length < minLength || length > maxLength || (length & 3) != 0)
+			return null;
+		if (address + header >= source.limit())
+			return null;
+		if (type == CompressionType.LZ77 || type == CompressionType.LZ11) {
+			if ((source.get(address + header) & 0x80) != 0)
+				return null; // nothing has been written to copy from
+		}
+		
+		int compressed = CompressionUtil.measure(source, address, type);
+		return compressed < 0 ? null : new CompressedBlock(address, type, compressed, length);
+	}
+	
+	/**
+	 * A task that scans a range of the buffer, splitting itself while the range is larger than a chunk.
+	 */
+	private class ScanTask extends RecursiveTask<List<CompressedBlock>> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final ByteBuffer source;
+		private final int start;
+		private final int end;
+		
+		private ScanTask(ByteBuffer source, int start, int end) {
+			this.source = source;
+			this.start = start;
+			this.end = end;
+		}
+		
+		@Override
+		protected List<CompressedBlock> compute() {
+			if (end - start > CHUNK_SIZE) {
+				int middle = (start + ((end - start) >> 1)) & ~3;
+				ScanTask left = new ScanTask(source, start, middle);
+				left.fork();
+				List<CompressedBlock> right = new ScanTask(source, middle, end).compute();
+				List<CompressedBlock> blocks = left.join();
+				blocks.addAll(right);
+				return blocks;
+			}
+			
+			List<CompressedBlock> blocks = new ArrayList<CompressedBlock>();
+			for (int address = start; address < end && address + 4 < source.limit(); address += 4) {
+				CompressedBlock block = check(source, address);
+				if (block != null)
+					blocks.add(block);
+			}
+			return blocks;
+		}
+	}
+}
@@ -0,0 +1,65 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.util;
+
+/**
+ * This simple enumerated type lists the speed/ratio trade-offs available when compressing data. Each level 
+ * contains how many earlier matches are tried at each position, and whether a match may be deferred by a byte 
+ * if a longer match starts there.
+ * 
+ * @author Phillip Groves
+ * 
+ */
+public enum CompressionLevel {
+	FAST( 4, false ),
+	NORMAL( 32, false ),
+	BEST( 4096, true );
+	
+	/** The maximum amount of earlier matches tried at each position */
+	private final int depth;
+	
+	/** Whether a match is deferred when a longer match starts at the next byte */
+	private final boolean lazy;
+	
+	private CompressionLevel(int depth, boolean lazy) {
+		this.depth = depth;
+		this.lazy = lazy;
+	}
+	
+	/**
+	 * 
+	 * @return The maximum amount of earlier matches tried at each position
+	 */
+	public int depth() {
+		return depth;
+	}
+	
+	/**
+	 * 
+	 * @return Whether a match is deferred when a longer match starts at the next byte
+	 */
+	public boolean lazy() {
+		return lazy;
+	}
+}
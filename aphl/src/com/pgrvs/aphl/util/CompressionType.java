@@ -0,0 +1,70 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.util;
+
+/**
+ * This simple enumerated type lists the compression formats supported by the GBA BIOS. Each type contains the 
+ * value found in the first byte of its compressed data, which is how the format of data is identified.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public enum CompressionType {
+	LZ77( 0x10 ),
+	LZ11( 0x11 ),
+	HUFFMAN_4( 0x24 ),
+	HUFFMAN_8( 0x28 ),
+	RLE( 0x30 );
+	
+	/** Value of the first header byte */
+	private final int value;
+	
+	private CompressionType(int value) {
+		this.value = value;
+	}
+	
+	/**
+	 * 
+	 * @return Value of the first header byte
+	 */
+	public int value() {
+		return value;
+	}
+	
+	/**
+	 * 
+	 * @param value Value of the first header byte
+	 * @return The type with the given value, or null if none match
+	 */
+	public static CompressionType of(int value) {
+		switch (value & 0xFF) {
+			case 0x10: return LZ77;
+			case 0x11: return LZ11;
+			case 0x24: return HUFFMAN_4;
+			case 0x28: return HUFFMAN_8;
+			case 0x30: return RLE;
+			default: return null;
+		}
+	}
+}
@@ -0,0 +1,258 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.pgrvs.aphl.GbaRom;
+
+/**
+ * <p>This class is responsible for decompressing data in any of the formats supported by the GBA BIOS. The 
+ * format is taken from the first byte of the data (see {@link CompressionType}), and decompression is handed to 
+ * the matching utility class (e.g. {@link Lz77CompressionUtil}). All methods within this class are static for 
+ * easy access.</p>
+ * 
+ * <p>Every format shares a 4-byte header: the type, followed by the 24-bit decompressed length. If that length 
+ * is 0, the real length follows in the next 4 bytes.</p>
+ * 
+ * <p>Methods taking a {@link GbaRom} read the data as its get() methods do, so they see writes pending in a 
+ * transaction (see {@link GbaRom#beginTransaction()}). Methods taking a buffer read only that buffer.</p>
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class CompressionUtil {
+	
+	/**
+	 * 
+	 * @param source Buffer holding the data
+	 * @param address Address of the data
+	 * @return The format of the compressed data, or null if it is not compressed in a known format
+	 */
+	public static CompressionType getType(ByteBuffer source, int address) {
+		return CompressionType.of(source.get(address));
+	}
+	
+	/**
+	 * Decompresses data at the given address, and then returns the result as unsigned byte values.
+	 * 
+	 * @param rom 
+	 * @param address Address to read
+	 * @return Decompressed data
+	 */
+	public static int[] decompress(GbaRom rom, int address) {
+		byte[] bytes = rom.getTransaction() == null ? decompress(rom.getByteView(), address) 
+				: decompress(copy(rom, address), 0);
+		int[] data = new int[bytes.length];
+		for (int i = 0; i < data.length; i++)
+			data[i] = bytes[i] & 0xFF;
+		return data;
+	}
+	
+	/**
+	 * Decompresses data at the given address of the given buffer (e.g. {@link GbaRom#getByteView()}), and 
+	 * then returns the result.
+	 * 
+	 * @param source Buffer holding the compressed data
+	 * @param address Address to read
+	 * @return Decompressed data
+	 */
+	public static byte[] decompress(ByteBuffer source, int address) {
+		byte[] data = new byte[getDecompLength(source, address)];
+		decompress(source, address, data, 0);
+		return data;
+	}
+	
+	/**
+	 * Decompresses data at the given address into an array taken from the given pool. The array may be longer 
+	 * than the decompressed data, and should be released to the pool once it is no longer needed.
+	 * 
+	 * @param source Buffer holding the compressed data
+	 * @param address Address to read
+	 * @param pool Pool to take the array from
+	 * @return Decompressed data, followed by unused bytes
+	 */
+	public static byte[] decompress(ByteBuffer source, int address, ByteArrayPool pool) {
+		byte[] data = pool.acquire(getDecompLength(source, address));
+		decompress(source, address, data, 0);
+		return data;
+	}
+	
+	/**
+	 * Decompresses data at the given address into the given array.
+	 * 
+	 * @param source Buffer holding the compressed data
+	 * @param address Address to read
+	 * @param destination Array to fill, which must have {@link #getDecompLength(ByteBuffer, int)} bytes 
+	 * 	available after the offset
+	 * @param offset The first index of the array to fill
+	 * @return The amount of compressed bytes read
+	 */
+	public static int decompress(ByteBuffer source, int address, byte[] destination, int offset) {
+		CompressionType type = getType(source, address);
+		if (type == null)
+			throw new IllegalStateException("Unknown compression type: " + (source.get(address) & 0xFF));
+		
+		switch (type) {
+			case LZ77:
+				return Lz77CompressionUtil.decompress(source, address, destination, offset);
+			case LZ11:
+				return Lz11CompressionUtil.decompress(source, address, destination, offset);
+			case RLE:
+				return RleCompressionUtil.decompress(source, address, destination, offset);
+			default:
+				return HuffmanCompressionUtil.decompress(source, address, destination, offset);
+		}
+	}
+	
+	/**
+	 * <p>Measures the compressed data at the given address without decompressing it. The data is walked to its 
+	 * end without writing any output, which gives the exact amount of bytes it takes up in the ROM (e.g. for 
+	 * relocating or overwriting it).</p>
+	 * 
+	 * @param source Buffer holding the compressed data
+	 * @param address Address of the compressed data
+	 * @return The measured block
+	 */
+	public static CompressedBlock measure(ByteBuffer source, int address) {
+		CompressionType type = getType(source, address);
+		if (type == null)
+			throw new IllegalStateException("Unknown compression type: " + (source.get(address) & 0xFF));
+		
+		int length = measure(source, address, type);
+		if (length < 0)
+			throw new IllegalStateException("Invalid " + type + " data at " + Integer.toHexString(address));
+		return new CompressedBlock(address, type, length, getDecompLength(source, address));
+	}
+	
+	/**
+	 * See {@link #measure(ByteBuffer, int)}
+	 * 
+	 * @param rom 
+	 * @param address Address of the compressed data
+	 * @return The measured block
+	 */
+	public static CompressedBlock measure(GbaRom rom, int address) {
+		if (rom.getTransaction() == null)
+			return measure(rom.getByteView(), address);
+		
+		CompressedBlock block = measure(copy(rom, address), 0);
+		return new CompressedBlock(address, block.getType(), block.getCompressedLength(), 
+				block.getDecompressedLength());
+	}
+	
+	/**
+	 * <p>Copies the compressed data at the given address as the get() methods of the ROM see it, including any 
+	 * writes pending in a transaction. Views of the ROM (e.g. {@link GbaRom#getByteView()}) only show applied 
+	 * data, so data rewritten within a transaction must be read through this copy instead.</p>
+	 * 
+	 * <p>The compressed length is not known until the data is walked, so a few KB are copied first, and more are 
+	 * copied until the data fits or the end of the ROM is reached.</p>
+	 * 
+	 * @param rom 
+	 * @param address Address of the compressed data
+	 * @return Little endian buffer holding the compressed data from index 0, which may be followed by other bytes
+	 */
+	public static ByteBuffer copy(GbaRom rom, int address) {
+		int remaining = rom.getLength() - address;
+		int length = Math.min(remaining, 0x1000);
+		while (true) {
+			ByteBuffer data = ByteBuffer.wrap(rom.getBytes(address, new byte[length], 0, length))
+					.order(ByteOrder.LITTLE_ENDIAN);
+			CompressionType type = length < 4 ? null : getType(data, 0);
+			if (type == null || length == remaining || measure(data, 0, type) >= 0)
+				return data;
+			long needed = Math.max(2L * length, getDecompLength(data, 0) * 9L / 8 + 16);
+			length = (int) Math.min(remaining, needed);
+		}
+	}
+	
+	/**
+	 * Walks the data at the given address without writing any output, and returns the amount of compressed bytes 
+	 * it takes up.
+	 * 
+	 * @param source Buffer holding the compressed data
+	 * @param address Address to read
+	 * @param type The format of the data
+	 * @return The amount of compressed bytes, or -1 if the data is not valid or runs past the buffer
+	 */
+	static int measure(ByteBuffer source, int address, CompressionType type) {
+		switch (type) {
+			case LZ77:
+				return Lz77CompressionUtil.measure(source, address);
+			case LZ11:
+				return Lz11CompressionUtil.measure(source, address);
+			case RLE:
+				return RleCompressionUtil.measure(source, address);
+			default:
+				return HuffmanCompressionUtil.measure(source, address);
+		}
+	}
+	
+	/**
+	 * Calculates the length of decompressed data
+	 * 
+	 * @param source Buffer holding the compressed data
+	 * @param address Address of the compressed data
+	 * @return Amount of decompressed bytes
+	 */
+	public static int getDecompLength(ByteBuffer source, int address) {
+		int length = getLittleEndianInt(source, address) >>> 8;
+		if (length == 0)
+			length = getLittleEndianInt(source, address + 4);
+		return length;
+	}
+	
+	/**
+	 * 
+	 * @param source Buffer holding the compressed data
+	 * @param address Address of the compressed data
+	 * @return The amount of bytes in the header, 4 or 8 if the decompressed length is extended
+	 */
+	static int getHeaderLength(ByteBuffer source, int address) {
+		return (getLittleEndianInt(source, address) >>> 8) == 0 ? 8 : 4;
+	}
+	
+	/**
+	 * 
+	 * @param source Buffer holding compressed data
+	 * @return The buffer, or a little endian view of it if it is in another order (e.g. a wrapped array)
+	 */
+	static ByteBuffer littleEndian(ByteBuffer source) {
+		return source.order() == ByteOrder.LITTLE_ENDIAN ? source : source.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+	/**
+	 * Reads a header value, which is little endian whatever the order of the buffer (e.g. a wrapped array).
+	 * 
+	 * @param source Buffer holding the compressed data
+	 * @param address The position to read
+	 * @return The little endian int (32-bit) value
+	 */
+	private static int getLittleEndianInt(ByteBuffer source, int address) {
+		int value = source.getInt(address);
+		return source.order() == ByteOrder.LITTLE_ENDIAN ? value : Integer.reverseBytes(value);
+	}
+}
@@ -0,0 +1,200 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.CRC32;
+
+import com.pgrvs.aphl.GbaRom;
+
+/**
+ * <p>This class is responsible for computing the CRC-32 checksums used by patch formats. All methods within this 
+ * class are static for easy access.</p>
+ * 
+ * <p>Large buffers are split into chunks whose checksums are computed in parallel on a {@link ForkJoinPool}, and 
+ * then joined with {@link #combine(int, int, long)}, which gives the same result as one pass over the whole 
+ * buffer.</p>
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class Crc32Util {
+	
+	/** The amount of bytes checked by a single task */
+	private static final int CHUNK_SIZE = 1 << 20;
+	
+	/**
+	 * 
+	 * @param source Buffer to check, from its position to its limit. The position is left untouched
+	 * @return The CRC-32 checksum of the buffer
+	 */
+	public static int crc32(ByteBuffer source) {
+		return crc32(source, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * 
+	 * @param source Buffer to check, from its position to its limit. The position is left untouched
+	 * @param pool Pool to check with
+	 * @return The CRC-32 checksum of the buffer
+	 */
+	public static int crc32(ByteBuffer source, ForkJoinPool pool) {
+		if (source.remaining() <= CHUNK_SIZE)
+			return update(new CRC32(), source, source.position(), source.limit());
+		return pool.invoke(new ChecksumTask(null, source, source.position(), source.limit()));
+	}
+	
+	/**
+	 * Computes the checksum of every byte of the given ROM, including writes pending in a transaction (see 
+	 * {@link GbaRom#beginTransaction()}).
+	 * 
+	 * @param rom The ROM to check
+	 * @return The CRC-32 checksum of the ROM
+	 */
+	public static int crc32(GbaRom rom) {
+		if (rom.getTransaction() == null)
+			return crc32(rom.getByteView());
+		return ForkJoinPool.commonPool().invoke(new ChecksumTask(rom, null, 0, rom.getLength()));
+	}
+	
+	/**
+	 * Joins the checksums of two pieces of data, as in zlib's crc32_combine().
+	 * 
+	 * @param crc1 The checksum of the first piece
+	 * @param crc2 The checksum of the second piece
+	 * @param length2 The length of the second piece in bytes
+	 * @return The checksum of the first piece followed by the second
+	 */
+	public static int combine(int crc1, int crc2, long length2) {
+		if (length2 <= 0)
+			return crc1;
+		
+		// operator for one zero bit, then squared into the operator for two and four zero bits
+		int[] even = new int[32];
+		int[] odd = new int[32];
+		odd[0] = 0xEDB88320;
+		for (int i = 1, row = 1; i < 32; i++, row <<= 1)
+			odd[i] = row;
+		square(even, odd);
+		square(odd, even);
+		
+		// apply length2 zero bytes to crc1, one bit of the length at a time
+		do {
+			square(even, odd);
+			if ((length2 & 1) != 0)
+				crc1 = times(even, crc1);
+			length2 >>>= 1;
+			if (length2 == 0)
+				break;
+			
+			square(odd, even);
+			if ((length2 & 1) != 0)
+				crc1 = times(odd, crc1);
+			length2 >>>= 1;
+		} while (length2 != 0);
+		return crc1 ^ crc2;
+	}
+	
+	/**
+	 * 
+	 * @param crc Checksum to continue
+	 * @param source Buffer to check
+	 * @param start The first index to check
+	 * @param end The index after the last to check
+	 * @return The checksum after the given range
+	 */
+	private static int update(CRC32 crc, ByteBuffer source, int start, int end) {
+		ByteBuffer range = source.duplicate();
+		range.limit(end);
+		range.position(start);
+		crc.update(range);
+		return (int) crc.getValue();
+	}
+	
+	/**
+	 * 
+	 * @param matrix Operator over GF(2)
+	 * @param vector Vector to multiply
+	 * @return The product of the operator and the vector
+	 */
+	private static int times(int[] matrix, int vector) {
+		int sum = 0;
+		for (int i = 0; vector != 0; i++, vector >>>= 1) {
+			if ((vector & 1) != 0)
+				sum ^= matrix[i];
+		}
+		return sum;
+	}
+	
+	/**
+	 * 
+	 * @param square Operator to fill with the square of the given operator
+	 * @param matrix Operator to square
+	 */
+	private static void square(int[] square, int[] matrix) {
+		for (int i = 0; i < 32; i++)
+			square[i] = times(matrix, matrix[i]);
+	}
+	
+	/**
+	 * A task that checks a range of a buffer or ROM, splitting itself while the range is larger than a chunk.
+	 */
+	private static class ChecksumTask extends RecursiveTask<Integer> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		/** ROM to read through its get() methods, or null to read {@link #source} */
+		private final GbaRom rom;
+		
+		private final ByteBuffer source;
+		private final int start;
+		private final int end;
+		
+		private ChecksumTask(GbaRom rom, ByteBuffer source, int start, int end) {
+			this.rom = rom;
+			this.source = source;
+			this.start = start;
+			this.end = end;
+		}
+		
+		@Override
+		protected Integer compute() {
+			if (end - start <= CHUNK_SIZE) {
+				if (rom == null)
+					return update(new CRC32(), source, start, end);
+				CRC32 crc = new CRC32();
+				crc.update(rom.getBytes(start, new byte[end - start], 0, end - start));
+				return (int) crc.getValue();
+			}
+			
+			int middle = start + ((end - start) >> 1);
+			ChecksumTask left = new ChecksumTask(rom, source, start, middle);
+			left.fork();
+			int right = new ChecksumTask(rom, source, middle, end).compute();
+			return combine(left.join(), right, end - middle);
+		}
+	}
+}
@@ -0,0 +1,144 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.util;
+
+import java.util.Arrays;
+
+/**
+ * This class finds earlier repeats of the data at a position, for use by compressors. Positions are chained by a 
+ * hash of their first three bytes, so only earlier positions that likely match are compared. Positions must be 
+ * inserted in order, and each search only looks within the window before the searched position.
+ * 
+ * @author Phillip Groves
+ * 
+ */
+class HashChainMatchFinder {
+	
+	private static final int HASH_BITS = 15;
+	
+	private final byte[] data;
+	private final int end;
+	
+	/** The most recent position inserted for each hash, or -1 if none */
+	private final int[] head = new int[1 << HASH_BITS];
+	
+	/** The previous position with the same hash, indexed by position within the window */
+	private final int[] previous;
+	
+	private final int windowMask;
+	private final int minDistance;
+	private final int maxLength;
+	private final int depth;
+	
+	/** The distance of the last match found */
+	private int distance;
+	
+	/**
+	 * 
+	 * @param data Data to search
+	 * @param end Index after the last byte of data
+	 * @param window The farthest distance a match may be (a power of two)
+	 * @param minDistance The nearest distance a match may be
+	 * @param maxLength The longest length a match may be
+	 * @param level How thoroughly to search
+	 */
+	HashChainMatchFinder(byte[] data, int end, int window, int minDistance, int maxLength, CompressionLevel level) {
+		this.data = data;
+		this.end = end;
+		this.previous = new int[window];
+		this.windowMask = window - 1;
+		this.minDistance = minDistance;
+		this.maxLength = maxLength;
+		this.depth = level.depth();
+		Arrays.fill(head, -1);
+	}
+	
+	/**
+	 * Adds a position to the chains, so later searches may match it.
+	 * 
+	 * @param position Position to add
+	 */
+	void insert(int position) {
+		if (position + 2 >= end)
+			return;
+		int hash = hash(position);
+		previous[position & windowMask] = head[hash];
+		head[hash] = position;
+	}
+	
+	/**
+	 * Finds the longest earlier match of the data at a position. The distance of the match is available from 
+	 * {@link #distance()}. Positions before this one should already be inserted, and this one should not be.
+	 * 
+	 * @param position Position to search
+	 * @return Length of the longest match, or 0 if there is none
+	 */
+	int find(int position) {
+		int limit = Math.min(maxLength, end - position);
+		if (limit < 3)
+			return 0;
+		
+		int best = 0;
+		int candidate = head[hash(position)];
+		for (int tries = depth; candidate >= 0 && tries > 0; tries--) {
+			int distance = position - candidate;
+			if (distance > windowMask + 1)
+				break;
+			if (distance >= minDistance && data[candidate + best] == data[position + best]) {
+				int length = 0;
+				while (length < limit && data[candidate + length] == data[position + length])
+					length++;
+				if (length > best) {
+					best = length;
+					this.distance = distance;
+					if (length == limit)
+						break;
+				}
+			}
+			int next = previous[candidate & windowMask];
+			if (next >= candidate)
+				break; // slot was reused by a newer position
+			candidate = next;
+		}
+		return best >= 3 ? best : 0;
+	}
+	
+	/**
+	 * 
+	 * @return The distance of the last match found
+	 */
+	int distance() {
+		return distance;
+	}
+	
+	/**
+	 * 
+	 * @param position Position to hash
+	 * @return Hash of the three bytes at the position
+	 */
+	private int hash(int position) {
+		int value = ((data[position] & 0xFF) << 16) | ((data[position + 1] & 0xFF) << 8) | (data[position + 2] & 0xFF);
+		return (value * 0x9E3779B1) >>> (32 - HASH_BITS);
+	}
+}
@@ -0,0 +1,165 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class is responsible for providing utility methods for Huffman compression, which stores each 4-bit 
+ * (type 0x24) or 8-bit (type 0x28) value as a variable length code. All methods within this class are static for 
+ * easy access.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class HuffmanCompressionUtil {
+	
+	/**
+	 * Decompresses Huffman data at the given address of the given buffer, and then returns the result.
+	 * 
+	 * @param source Buffer holding the compressed data
+	 * @param address Address to read
+	 * @return Decompressed data
+	 */
+	public static byte[] decompress(ByteBuffer source, int address) {
+		byte[] data = new byte[CompressionUtil.getDecompLength(source, address)];
+		decompress(source, address, data, 0);
+		return data;
+	}
+	
+	/**
+	 * <p>Decompresses Huffman data at the given address into the given array. Data is read with absolute gets, 
+	 * so the source buffer may be shared between threads.</p>
+	 * 
+	 * <p>The header is followed by the size of the code tree, then the tree itself, and then the codes as 32-bit 
+	 * words read from the top bit down. Each tree node holds the offset of its pair of children, and two flags for 
+	 * whether each child is a value rather than another node. The tree is walked from the root for each bit, and 
+	 * a value is written each time a flagged child is reached. 4-bit values fill the low half of a byte first.</p>
+	 * 
+	 * @param source Buffer holding the compressed data
+	 * @param address Address to read
+	 * @param destination Array to fill
+	 * @param offset The first index of the array to fill
+	 * @return The amount of compressed bytes read
+	 */
+	public static int decompress(ByteBuffer source, int address, byte[] destination, int offset) {
+		source = CompressionUtil.littleEndian(source);
+		CompressionType type = CompressionType.of(source.get(address));
+		if (type != CompressionType.HUFFMAN_4 && type != CompressionType.HUFFMAN_8)
+			throw new IllegalStateException("Invalid Huffman compression opcode.");
+		
+		int bits = type == CompressionType.HUFFMAN_4 ? 4 : 8;
+		int end = offset + CompressionUtil.getDecompLength(source, address);
+		int tree = address + CompressionUtil.getHeaderLength(source, address);
+		int root = tree + 1;
+		int read = tree + ((source.get(tree) & 0xFF) + 1) * 2;
+		int position = offset;
+		int node = root, value = 0, filled = 0;
+		
+		while (position < end) {
+			int word = source.getInt(read);
+			read += 4;
+			for (int bit = 31; bit >= 0 && position < end; bit--) {
+				int data = source.get(node) & 0xFF;
+				int child = (node & ~1) + ((data & 0x3F) << 1) + 2;
+				boolean leaf;
+				if (((word >>> bit) & 1) == 0) {
+					leaf = (data & 0x80) != 0;
+				} else {
+					child++;
+					leaf = (data & 0x40) != 0;
+				}
+				
+				if (!leaf) {
+					node = child;
+					continue;
+				}
+				
+				value |= (source.get(child) & ((1 << bits) - 1)) << filled;
+				filled += bits;
+				if (filled == 8) {
+					destination[position++] = (byte) value;
+					value = filled = 0;
+				}
+				node = root;
+			}
+		}
+		return read - address;
+	}
+	
+	/**
+	 * Walks the Huffman data at the given address without writing any output, and returns the amount of 
+	 * compressed bytes it takes up.
+	 * 
+	 * @param source Buffer holding the compressed data
+	 * @param address Address to read
+	 * @return The amount of compressed bytes, or -1 if the data is not valid Huffman or runs past the buffer
+	 */
+	static int measure(ByteBuffer source, int address) {
+		source = CompressionUtil.littleEndian(source);
+		int limit = source.limit();
+		CompressionType type = address + 4 > limit ? null : CompressionType.of(source.get(address));
+		if (type != CompressionType.HUFFMAN_4 && type != CompressionType.HUFFMAN_8)
+			return -1;
+		
+		int tree = address + CompressionUtil.getHeaderLength(source, address);
+		if (tree >= limit)
+			return -1;
+		int root = tree + 1;
+		int read = tree + ((source.get(tree) & 0xFF) + 1) * 2;
+		int treeEnd = read;
+		if (treeEnd > limit)
+			return -1;
+		int node = root;
+		long values = CompressionUtil.getDecompLength(source, address);
+		if (type == CompressionType.HUFFMAN_4)
+			values *= 2;
+		
+		while (values > 0) {
+			if (read + 4 > limit)
+				return -1;
+			int word = source.getInt(read);
+			read += 4;
+			for (int bit = 31; bit >= 0 && values > 0; bit--) {
+				int data = source.get(node) & 0xFF;
+				int child = (node & ~1) + ((data & 0x3F) << 1) + 2;
+				int flag = 0x80;
+				if (((word >>> bit) & 1) != 0) {
+					child++;
+					flag = 0x40;
+				}
+				if (child >= treeEnd)
+					return -1; // points outside of the tree
+				
+				if ((data & flag) != 0) {
+					values--;
+					node = root;
+				} else {
+					node = child;
+				}
+			}
+		}
+		return read - address;
+	}
+}
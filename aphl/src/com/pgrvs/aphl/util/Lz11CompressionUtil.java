@@ -0,0 +1,161 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class is responsible for providing utility methods for Lz11 compression, an extension of Lz77 with longer 
+ * copies that is used by some games and ROM bases. All methods within this class are static for easy access.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class Lz11CompressionUtil {
+	
+	private static final int LZ11_OPCODE = 0x11;
+	
+	/**
+	 * Decompresses Lz11 data at the given address of the given buffer, and then returns the result.
+	 * 
+	 * @param source Buffer holding the compressed data
+	 * @param address Address to read
+	 * @return Decompressed data
+	 */
+	public static byte[] decompress(ByteBuffer source, int address) {
+		byte[] data = new byte[CompressionUtil.getDecompLength(source, address)];
+		decompress(source, address, data, 0);
+		return data;
+	}
+	
+	/**
+	 * <p>Decompresses Lz11 data at the given address into the given array. Data is read with absolute gets, so 
+	 * the source buffer may be shared between threads.</p>
+	 * 
+	 * <p>Each flagged token holds its own length size in its top 4 bits: 0 for an 8-bit length (17-272), 1 for a 
+	 * 16-bit length (273-65808), and otherwise a 4-bit length (1-16) held in those bits.</p>
+	 * 
+	 * @param source Buffer holding the compressed data
+	 * @param address Address to read
+	 * @param destination Array to fill
+	 * @param offset The first index of the array to fill
+	 * @return The amount of compressed bytes read
+	 */
+	public static int decompress(ByteBuffer source, int address, byte[] destination, int offset) {
+		if ((source.get(address) & 0xFF) != LZ11_OPCODE)
+			throw new IllegalStateException("Invalid Lz11 compression opcode.");
+		
+		int end = offset + CompressionUtil.getDecompLength(source, address);
+		int position = offset;
+		int read = address + CompressionUtil.getHeaderLength(source, address);
+		int flags, value, length, distance;
+		
+		while (position < end) {
+			flags = source.get(read++);
+			for (int i = 0; i < 8 && position < end; i++, flags <<= 1) {
+				if ((flags & 0x80) != 0) {
+					value = source.get(read++) & 0xFF;
+					switch (value >> 4) {
+						case 0:
+							length = (((value & 0x0F) << 4) | ((value = source.get(read++) & 0xFF) >> 4)) + 0x11;
+							break;
+						case 1:
+							length = (((value & 0x0F) << 12) | ((source.get(read++) & 0xFF) << 4) 
+									| ((value = source.get(read++) & 0xFF) >> 4)) + 0x111;
+							break;
+						default:
+							length = (value >> 4) + 1;
+							break;
+					}
+					distance = (((value & 0x0F) << 8) | (source.get(read++) & 0xFF)) + 1;
+					length = Math.min(length, end - position);
+					
+					if (distance > position - offset)
+						throw new IllegalStateException("Cannot go back more than already written.");
+					Lz77CompressionUtil.copy(destination, position, distance, length);
+					position += length;
+				} else {
+					destination[position++] = source.get(read++);
+				}
+			}
+		}
+		return read - address;
+	}
+	
+	/**
+	 * Walks the Lz11 data at the given address without writing any output, and returns the amount of compressed 
+	 * bytes it takes up.
+	 * 
+	 * @param source Buffer holding the compressed data
+	 * @param address Address to read
+	 * @return The amount of compressed bytes, or -1 if the data is not valid Lz11 or runs past the buffer
+	 */
+	static int measure(ByteBuffer source, int address) {
+		int limit = source.limit();
+		if (address + 4 > limit || (source.get(address) & 0xFF) != LZ11_OPCODE)
+			return -1;
+		int read = address + CompressionUtil.getHeaderLength(source, address);
+		if (read > limit)
+			return -1;
+		
+		int end = CompressionUtil.getDecompLength(source, address);
+		int position = 0;
+		int flags, value, length;
+		
+		while (position < end) {
+			if (read >= limit)
+				return -1;
+			flags = source.get(read++);
+			for (int i = 0; i < 8 && position < end; i++, flags <<= 1) {
+				if ((flags & 0x80) != 0) {
+					if (read >= limit)
+						return -1;
+					value = source.get(read++) & 0xFF;
+					// tokens are 2, 3 or 4 bytes long, as given by the high half of their first byte
+					if (read + ((value >> 4) == 0 ? 2 : (value >> 4) == 1 ? 3 : 1) > limit)
+						return -1;
+					switch (value >> 4) {
+						case 0:
+							length = (((value & 0x0F) << 4) | ((value = source.get(read++) & 0xFF) >> 4)) + 0x11;
+							break;
+						case 1:
+							length = (((value & 0x0F) << 12) | ((source.get(read++) & 0xFF) << 4) 
+									| ((value = source.get(read++) & 0xFF) >> 4)) + 0x111;
+							break;
+						default:
+							length = (value >> 4) + 1;
+							break;
+					}
+					if ((((value & 0x0F) << 8) | (source.get(read++) & 0xFF)) >= position)
+						return -1; // goes back more than already written
+					position += length;
+				} else {
+					read++;
+					position++;
+				}
+			}
+		}
+		return read > limit ? -1 : read - address;
+	}
+}
@@ -23,6 +23,9 @@
 
 package com.pgrvs.aphl.util;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 import com.pgrvs.aphl.GbaRom;
 
 /**
@@ -37,7 +40,9 @@ public class Lz77CompressionUtil {
 	private static final int LZ77_OPCODE = 0x10;
 	
 	/**
-	 * <p>Decompresses Lz77 data at the given address, and then returns the result.</p>
+	 * <p>Decompresses Lz77 data at the given address, and then returns the result. This is 
+	 * {@link CompressionUtil#decompress(GbaRom, int)}, which includes writes pending in a transaction of the ROM, 
+	 * for data that must be Lz77.</p>
 	 * <p>This algorithm was originally developed by CUE @ dsdcmp, but it has been optimized and edited 
 	 * for our purposes. </p>
 	 * 
@@ -48,51 +53,258 @@ public class Lz77CompressionUtil {
 	public static int[] decompress(GbaRom rom, int address) {
 		if (rom.getByte(address) != LZ77_OPCODE)
 			throw new IllegalStateException("Invalid Lz77 compression opcode.");
+		return CompressionUtil.decompress(rom, address);
+	}
+	
+	/**
+	 * Decompresses Lz77 data at the given address of the given buffer (e.g. {@link GbaRom#getByteView()}), and 
+	 * then returns the result.
+	 * 
+	 * @param source Buffer holding the compressed data
+	 * @param address Address to read
+	 * @return Decompressed data
+	 */
+	public static byte[] decompress(ByteBuffer source, int address) {
+		byte[] data = new byte[getDecompLength(source, address)];
+		decompress(source, address, data, 0);
+		return data;
+	}
+	
+	/**
+	 * Decompresses Lz77 data at the given address into the given buffer, starting at its position. The position 
+	 * of the destination is moved past the decompressed data.
+	 * 
+	 * @param source Buffer holding the compressed data
+	 * @param address Address to read
+	 * @param destination Buffer to fill, which must have {@link #getDecompLength(ByteBuffer, int)} bytes remaining
+	 * @return The amount of compressed bytes read
+	 */
+	public static int decompress(ByteBuffer source, int address, ByteBuffer destination) {
+		int length = getDecompLength(source, address);
+		int read;
+		
+		if (destination.hasArray()) {
+			read = decompress(source, address, destination.array(), destination.arrayOffset() + destination.position());
+		} else {
+			ByteArrayPool pool = ByteArrayPool.getShared();
+			byte[] data = pool.acquire(length);
+			read = decompress(source, address, data, 0);
+			destination.duplicate().put(data, 0, length);
+			pool.release(data);
+		}
+		destination.position(destination.position() + length);
+		return read;
+	}
+	
+	/**
+	 * Decompresses Lz77 data at the given address into an array taken from the given pool. The array may be 
+	 * longer than the decompressed data, and should be released to the pool once it is no longer needed.
+	 * 
+	 * @param source Buffer holding the compressed data
+	 * @param address Address to read
+	 * @param pool Pool to take the array from
+	 * @return Decompressed data, followed by unused bytes
+	 */
+	public static byte[] decompress(ByteBuffer source, int address, ByteArrayPool pool) {
+		byte[] data = pool.acquire(getDecompLength(source, address));
+		decompress(source, address, data, 0);
+		return data;
+	}
+	
+	/**
+	 * <p>Decompresses Lz77 data at the given address into the given array. Data is read with absolute gets, so 
+	 * the source buffer may be shared between threads.</p>
+	 * 
+	 * <p>Back-references that do not overlap the bytes they produce are copied in bulk. Overlapping references 
+	 * (which repeat a short pattern) are copied byte by byte, as each byte may depend on the one before it.</p>
+	 * 
+	 * @param source Buffer holding the compressed data
+	 * @param address Address to read
+	 * @param destination Array to fill, which must have {@link #getDecompLength(ByteBuffer, int)} bytes 
+	 * 	available after the offset
+	 * @param offset The first index of the array to fill
+	 * @return The amount of compressed bytes read
+	 */
+	public static int decompress(ByteBuffer source, int address, byte[] destination, int offset) {
+		if ((source.get(address) & 0xFF) != LZ77_OPCODE)
+			throw new IllegalStateException("Invalid Lz77 compression opcode.");
 		
-		int[] data = new int[getDecompLength(rom)];
-		int destination, flags, offset, length, value, position = 0;
-		boolean flagged;
+		int end = offset + getDecompLength(source, address);
+		int position = offset;
+		int read = address + CompressionUtil.getHeaderLength(source, address);
+		int flags, value, length, distance;
 		
-		while (position < data.length) {
-			flags = rom.getByte();
-			for (int i = 0; i < 8; i++) {
-				flagged = (flags & ( 0x80 >> i) ) > 0;
-				if ( flagged ) {
-					value = rom.getByte();
-					length = (value >> 4) + 3;
-					offset = ((value & 0x0F) << 8) | rom.getByte();
-					destination = position;
+		while (position < end) {
+			flags = source.get(read++);
+			for (int i = 0; i < 8 && position < end; i++, flags <<= 1) {
+				if ((flags & 0x80) != 0) {
+					value = source.get(read++) & 0xFF;
+					length = Math.min((value >> 4) + 3, end - position);
+					distance = (((value & 0x0F) << 8) | (source.get(read++) & 0xFF)) + 1;
 					
-					if (offset > position)
+					if (distance > position - offset)
 						throw new IllegalStateException("Cannot go back more than already written.");
-					for (int j = 0; j < length; j++)
-						data[position++] = data[destination - offset - 1 + j];
+					copy(destination, position, distance, length);
+					position += length;
 				} else {
-					value = rom.getByte();
-					if (position < data.length)
-						data[position++] = value;
-					else if (value == 0)
-						break;
+					destination[position++] = source.get(read++);
 				}
-				if (position > data.length)
-					break;
 			}
 		}
-		return data;
+		return read - address;
 	}
 	
 	/**
-	 * Calculates the length of compressed data
+	 * Walks the Lz77 data at the given address without writing any output, and returns the amount of compressed 
+	 * bytes it takes up.
 	 * 
-	 * @param rom 
-	 * @return Amount to read
+	 * @param source Buffer holding the compressed data
+	 * @param address Address to read
+	 * @return The amount of compressed bytes, or -1 if the data is not valid Lz77 or runs past the buffer
+	 */
+	static int measure(ByteBuffer source, int address) {
+		int limit = source.limit();
+		if (address + 4 > limit || (source.get(address) & 0xFF) != LZ77_OPCODE)
+			return -1;
+		int read = address + CompressionUtil.getHeaderLength(source, address);
+		if (read > limit)
+			return -1;
+		
+		int end = getDecompLength(source, address);
+		int position = 0;
+		int flags, value;
+		
+		while (position < end) {
+			if (read >= limit)
+				return -1;
+			flags = source.get(read++);
+			for (int i = 0; i < 8 && position < end; i++, flags <<= 1) {
+				if ((flags & 0x80) != 0) {
+					if (read + 2 > limit)
+						return -1;
+					value = source.get(read++) & 0xFF;
+					if ((((value & 0x0F) << 8) | (source.get(read++) & 0xFF)) >= position)
+						return -1; // goes back more than already written
+					position += (value >> 4) + 3;
+				} else {
+					read++;
+					position++;
+				}
+			}
+		}
+		return read > limit ? -1 : read - address;
+	}
+	
+	/**
+	 * Compresses the given data with {@link CompressionLevel#NORMAL} into a VRAM-safe Lz77 stream. See 
+	 * {@link #compress(byte[], int, int, CompressionLevel, boolean)}.
+	 * 
+	 * @param data Data to compress
+	 * @return Compressed data
+	 */
+	public static byte[] compress(byte[] data) {
+		return compress(data, 0, data.length, CompressionLevel.NORMAL, true);
+	}
+	
+	/**
+	 * <p>Compresses the given data into an Lz77 stream (type 0x10), as read by the GBA BIOS and by 
+	 * {@link #decompress(ByteBuffer, int)}. The result is padded to a multiple of 4 bytes, so it can be written 
+	 * to the ROM as-is.</p>
+	 * 
+	 * <p>VRAM-safe streams never copy from a distance of 1. The BIOS decompresses to VRAM 16 bits at a time, 
+	 * so a reference to the byte just written would read a value that has not been stored yet.</p>
+	 * 
+	 * @param data Data to compress
+	 * @param offset The first index of data to compress
+	 * @param length The amount of bytes to compress
+	 * @param level How thoroughly to search for repeats
+	 * @param vramSafe Whether the stream must be safe to decompress directly to VRAM
+	 * @return Compressed data
+	 */
+	public static byte[] compress(byte[] data, int offset, int length, CompressionLevel level, boolean vramSafe) {
+		int end = offset + length;
+		byte[] output = new byte[length + ((length + 7) >> 3) + 11];
+		int write = 0;
+		
+		if (length > 0xFFFFFF) {
+			output[write++] = LZ77_OPCODE;
+			write += 3;
+			for (int i = 0; i < 4; i++)
+				output[write++] = (byte) (length >> (i * 8));
+		} else {
+			for (int i = 0; i < 4; i++)
+				output[write++] = (byte) ((LZ77_OPCODE | (length << 8)) >> (i * 8));
+		}
+		
+		HashChainMatchFinder finder = new HashChainMatchFinder(data, end, 0x1000, vramSafe ? 2 : 1, 18, level);
+		int position = offset;
+		int flagIndex = 0, flagBit = 0;
+		int match = finder.find(position);
+		
+		while (position < end) {
+			if (flagBit == 0) {
+				flagIndex = write++;
+				output[flagIndex] = 0;
+				flagBit = 0x80;
+			}
+			
+			int distance = finder.distance();
+			finder.insert(position);
+			
+			if (match > 0 && level.lazy() && position + 1 < end) {
+				int next = finder.find(position + 1);
+				if (next > match) {
+					output[write++] = data[position++]; // defer to the longer match
+					match = next;
+					flagBit >>= 1;
+					continue;
+				}
+			}
+			
+			if (match > 0) {
+				output[flagIndex] |= flagBit;
+				output[write++] = (byte) (((match - 3) << 4) | ((distance - 1) >> 8));
+				output[write++] = (byte) (distance - 1);
+				for (int i = 1; i < match; i++)
+					finder.insert(position + i);
+				position += match;
+			} else {
+				output[write++] = data[position++];
+			}
+			flagBit >>= 1;
+			match = position < end ? finder.find(position) : 0;
+		}
+		return Arrays.copyOf(output, (write + 3) & ~3);
+	}
+	
+	/**
+	 * Calculates the length of decompressed data
+	 * 
+	 * @param source Buffer holding the compressed data
+	 * @param address Address of the compressed data
+	 * @return Amount of decompressed bytes
 	 */
-	private static int getDecompLength(GbaRom rom) {
-		int length = 0;
-		for (int i = 0; i < 3; i++)
-			length |= (rom.getByte() << ( i * 8));
-		if (length == 0)
-			length = rom.getInt();
-		return length;
+	public static int getDecompLength(ByteBuffer source, int address) {
+		return CompressionUtil.getDecompLength(source, address);
+	}
+	
+	/**
+	 * Copies a back-reference within decompressed data.
+	 * 
+	 * @param data Decompressed data
+	 * @param position Index to copy to
+	 * @param distance How far back to copy from
+	 * @param length Amount of bytes to copy
+	 */
+	static void copy(byte[] data, int position, int distance, int length) {
+		int from = position - distance;
+		if (distance >= length) {
+			System.arraycopy(data, from, data, position, length);
+		} else if (distance == 1) {
+			Arrays.fill(data, position, position + length, data[from]);
+		} else {
+			for (int i = 0; i < length; i++)
+				data[position + i] = data[from + i];
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,246 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>This class is responsible for converting between "Poketext", the special character set used for in-game
+ * strings, and Java text. Each byte value maps to a token, which may be a single character (e.g. "A") or several
+ * (e.g. "|end|" or "...").</p>
+ * 
+ * <p>Decoding uses a flat 256-entry table, and encoding uses a trie that always takes the longest matching token.
+ * Neither direction allocates per character, so bulk text dumps can reuse a single {@link StringBuilder} or
+ * {@link CharBuffer}. Byte values without a token decode to their hex value (e.g. "|0A|"), which encodes back to
+ * the same byte. Where several byte values share a token (e.g. "'" at 0xB3 and 0xB4), text encodes to the highest 
+ * of them.</p>
+ * 
+ * <p>Instances are immutable once loaded, and are safe to share between threads.</p>
+ * 
+ * @author Phillip Groves
+ * 
+ */
+public class PoketextCodec {
+	
+	/** The byte value that ends a string of text */
+	public static final int END = 0xFF;
+	
+	/** Characters for each byte value, indexed by the unsigned byte */
+	private final char[][] decodeTable = new char[256][];
+	
+	/** Root of the trie used to find the byte value for the longest token at a position */
+	private final Node encodeTrie;
+	
+	/**
+	 * 
+	 * @param tokens Tokens mapped by their byte value (0-255)
+	 */
+	public PoketextCodec(Map<Integer, String> tokens) {
+		TreeMap<String, Integer> reverse = new TreeMap<String, Integer>();
+		for (int i = 0; i < decodeTable.length; i++) {
+			String token = tokens.get(i);
+			if (token == null || token.isEmpty())
+				token = String.format("|%02X|", i);
+			decodeTable[i] = token.toCharArray();
+			reverse.put(token, i); // later entries take precedence for duplicate tokens
+		}
+		this.encodeTrie = Node.build(reverse, "");
+	}
+	
+	/**
+	 * Loads a codec from character set lines in the format "XX=token", where XX is a hex byte value. Other lines
+	 * are ignored.
+	 * 
+	 * @param reader Reader of the character set
+	 * @return The loaded codec
+	 * @throws IOException If the reader fails
+	 */
+	public static PoketextCodec load(Reader reader) throws IOException {
+		Map<Integer, String> tokens = new TreeMap<Integer, String>();
+		BufferedReader br = new BufferedReader(reader);
+		String line;
+		while ((line = br.readLine()) != null) {
+			if (line.contains("=")) {
+				String[] data = line.split("=", 2);
+				tokens.put(Integer.parseInt(data[0].trim(), 16), data[1]);
+			}
+		}
+		return new PoketextCodec(tokens);
+	}
+	
+	/**
+	 * 
+	 * @param value The byte value (0-255)
+	 * @return The token for the given value
+	 */
+	public String getToken(int value) {
+		return new String(decodeTable[value & 0xFF]);
+	}
+	
+	/**
+	 * Decodes the given amount of bytes at the given address and appends the result.
+	 * 
+	 * @param source The buffer to read
+	 * @param address The position to read
+	 * @param length The amount of bytes to read
+	 * @param destination The builder to append to
+	 * @return The address after the last byte read
+	 */
+	public int decode(ByteBuffer source, int address, int length, StringBuilder destination) {
+		int end = address + length;
+		for (; address < end; address++)
+			destination.append(decodeTable[source.get(address) & 0xFF]);
+		return address;
+	}
+	
+	/**
+	 * Decodes bytes at the given address until 0xFF (ending character) is reached and appends the result. The
+	 * ending character itself is not appended.
+	 * 
+	 * @param source The buffer to read
+	 * @param address The position to read
+	 * @param destination The builder to append to
+	 * @return The address after the ending character
+	 */
+	public int decodeUntilEnd(ByteBuffer source, int address, StringBuilder destination) {
+		int value;
+		while ((value = source.get(address++) & 0xFF) != END)
+			destination.append(decodeTable[value]);
+		return address;
+	}
+	
+	/**
+	 * Decodes bytes at the given address until 0xFF (ending character) is reached and puts the result. The
+	 * ending character itself is not put.
+	 * 
+	 * @param source The buffer to read
+	 * @param address The position to read
+	 * @param destination The buffer to fill
+	 * @return The address after the ending character
+	 */
+	public int decodeUntilEnd(ByteBuffer source, int address, CharBuffer destination) {
+		int value;
+		while ((value = source.get(address++) & 0xFF) != END)
+			destination.put(decodeTable[value]);
+		return address;
+	}
+	
+	/**
+	 * Encodes the given text at the given address. Each position takes the longest token that matches.
+	 * 
+	 * @param text The text to encode
+	 * @param destination The buffer to write
+	 * @param address The position to write
+	 * @return The amount of bytes written
+	 * @throws IllegalStateException If a character does not start any token. Bytes before that character have 
+	 * 	already been written
+	 */
+	public int encode(CharSequence text, ByteBuffer destination, int address) {
+		int start = address;
+		int i = 0;
+		while (i < text.length()) {
+			Node node = encodeTrie;
+			int value = -1, length = 0;
+			for (int j = i; j < text.length() && (node = node.child(text.charAt(j))) != null; j++) {
+				if (node.value >= 0) {
+					value = node.value;
+					length = j - i + 1;
+				}
+			}
+			if (value < 0)
+				throw new IllegalStateException("Cannot encode \"" + text.charAt(i) + "\" as Poketext.");
+			destination.put(address++, (byte) value);
+			i += length;
+		}
+		return address - start;
+	}
+	
+	/**
+	 * 
+	 * @param text The text to encode
+	 * @return The encoded bytes
+	 * @throws IllegalStateException If a character does not start any token
+	 */
+	public byte[] encode(CharSequence text) {
+		ByteBuffer buffer = ByteBuffer.allocate(text.length()); // a token is never shorter than one character
+		int length = encode(text, buffer, 0);
+		return Arrays.copyOf(buffer.array(), length);
+	}
+	
+	/**
+	 * A node of the encoding trie. Children are kept sorted by character for binary search.
+	 */
+	private static class Node {
+		
+		private final char[] keys;
+		private final Node[] children;
+		
+		/** The byte value of the token ending at this node, or -1 if none */
+		private final int value;
+		
+		private Node(char[] keys, Node[] children, int value) {
+			this.keys = keys;
+			this.children = children;
+			this.value = value;
+		}
+		
+		private Node child(char key) {
+			int index = Arrays.binarySearch(keys, key);
+			return index < 0 ? null : children[index];
+		}
+		
+		/**
+		 * Builds the node for the given prefix from the sorted tokens that start with it.
+		 */
+		private static Node build(TreeMap<String, Integer> tokens, String prefix) {
+			Integer value = tokens.get(prefix);
+			Map<String, Integer> tail = tokens.tailMap(prefix, false);
+			
+			TreeMap<Character, Node> children = new TreeMap<Character, Node>();
+			for (String token : tail.keySet()) {
+				if (!token.startsWith(prefix))
+					break;
+				char key = token.charAt(prefix.length());
+				if (!children.containsKey(key))
+					children.put(key, build(tokens, prefix + key));
+			}
+			
+			char[] keys = new char[children.size()];
+			Node[] nodes = new Node[children.size()];
+			int i = 0;
+			for (Map.Entry<Character, Node> entry : children.entrySet()) {
+				keys[i] = entry.getKey();
+				nodes[i++] = entry.getValue();
+			}
+			return new Node(keys, nodes, value == null ? -1 : value);
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * This class is responsible for providing utility methods for run-length (RLE) compression, which stores runs of 
+ * a repeated byte as a single byte. All methods within this class are static for easy access.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class RleCompressionUtil {
+	
+	private static final int RLE_OPCODE = 0x30;
+	
+	/**
+	 * Decompresses RLE data at the given address of the given buffer, and then returns the result.
+	 * 
+	 * @param source Buffer holding the compressed data
+	 * @param address Address to read
+	 * @return Decompressed data
+	 */
+	public static byte[] decompress(ByteBuffer source, int address) {
+		byte[] data = new byte[CompressionUtil.getDecompLength(source, address)];
+		decompress(source, address, data, 0);
+		return data;
+	}
+	
+	/**
+	 * <p>Decompresses RLE data at the given address into the given array. Data is read with absolute gets, so 
+	 * the source buffer may be shared between threads.</p>
+	 * 
+	 * <p>Each block starts with a flag byte. If the top bit is set, the next byte is repeated (flag & 0x7F) + 3 
+	 * times; otherwise, the next (flag & 0x7F) + 1 bytes are copied as they are.</p>
+	 * 
+	 * @param source Buffer holding the compressed data
+	 * @param address Address to read
+	 * @param destination Array to fill
+	 * @param offset The first index of the array to fill
+	 * @return The amount of compressed bytes read
+	 */
+	public static int decompress(ByteBuffer source, int address, byte[] destination, int offset) {
+		if ((source.get(address) & 0xFF) != RLE_OPCODE)
+			throw new IllegalStateException("Invalid RLE compression opcode.");
+		
+		int end = offset + CompressionUtil.getDecompLength(source, address);
+		int position = offset;
+		int read = address + CompressionUtil.getHeaderLength(source, address);
+		int flag, length;
+		
+		while (position < end) {
+			flag = source.get(read++) & 0xFF;
+			if ((flag & 0x80) != 0) {
+				length = Math.min((flag & 0x7F) + 3, end - position);
+				Arrays.fill(destination, position, position + length, source.get(read++));
+			} else {
+				length = Math.min((flag & 0x7F) + 1, end - position);
+				ByteBuffer run = source.duplicate();
+				run.position(read);
+				run.get(destination, position, length);
+				read += (flag & 0x7F) + 1;
+			}
+			position += length;
+		}
+		return read - address;
+	}
+	
+	/**
+	 * Walks the RLE data at the given address without writing any output, and returns the amount of compressed 
+	 * bytes it takes up.
+	 * 
+	 * @param source Buffer holding the compressed data
+	 * @param address Address to read
+	 * @return The amount of compressed bytes, or -1 if the data is not valid RLE or runs past the buffer
+	 */
+	static int measure(ByteBuffer source, int address) {
+		int limit = source.limit();
+		if (address + 4 > limit || (source.get(address) & 0xFF) != RLE_OPCODE)
+			return -1;
+		int read = address + CompressionUtil.getHeaderLength(source, address);
+		if (read > limit)
+			return -1;
+		
+		int end = CompressionUtil.getDecompLength(source, address);
+		int position = 0;
+		int flag;
+		
+		while (position < end) {
+			if (read >= limit)
+				return -1;
+			flag = source.get(read++) & 0xFF;
+			if ((flag & 0x80) != 0) {
+				read++;
+				position += (flag & 0x7F) + 3;
+			} else {
+				read += (flag & 0x7F) + 1;
+				position += (flag & 0x7F) + 1;
+			}
+		}
+		return read > limit ? -1 : read - address;
+	}
+}
@@ -0,0 +1,108 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.pgrvs.aphl.util.Lz77CompressionUtil;
+
+/**
+ * Tests for {@link AssetCache}, and for reading assets rewritten within a transaction.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class AssetCacheTest {
+	
+	/** An RLE block of 8 bytes of 0x42 */
+	private static final byte[] RLE = { 0x30, 8, 0, 0, (byte) 0x85, 0x42 };
+	
+	@Test
+	public void assetsAreCachedUntilWritten() {
+		GbaRom rom = new GbaRom(new byte[0x4000]);
+		byte[] data = bytes(100);
+		rom.putBytes(0x1000, Lz77CompressionUtil.compress(data));
+		
+		AssetCache cache = rom.getAssetCache();
+		byte[] first = cache.get(0x1000);
+		assertArrayEquals(data, first);
+		assertEquals(1, cache.size());
+		assertSame(first, cache.get(0x1000));
+		
+		rom.putBytes(0x1000, RLE);
+		assertEquals(0, cache.size());
+		assertArrayEquals(filled(8, 0x42), cache.get(0x1000));
+	}
+	
+	@Test
+	public void pendingAssetsAreReadButNotCached() {
+		GbaRom rom = new GbaRom(new byte[0x4000]);
+		byte[] data = bytes(100);
+		rom.putBytes(0x1000, Lz77CompressionUtil.compress(data));
+		AssetCache cache = rom.getAssetCache();
+		cache.get(0x1000);
+		
+		GbaRomTransaction transaction = rom.beginTransaction();
+		rom.putBytes(0x1000, RLE);
+		assertEquals(0x30, rom.getByte(0x1000));
+		assertArrayEquals(filled(8, 0x42), cache.get(0x1000));
+		assertEquals(0, cache.size());
+		
+		// assets only written within the transaction are never seen in the applied data
+		rom.putBytes(0x2000, RLE);
+		assertArrayEquals(filled(8, 0x42), cache.get(0x2000));
+		assertEquals(0, cache.size());
+		
+		transaction.rollback();
+		assertArrayEquals(data, cache.get(0x1000));
+		assertEquals(1, cache.size());
+		
+		transaction = rom.beginTransaction();
+		rom.putBytes(0x1000, RLE);
+		assertArrayEquals(filled(8, 0x42), cache.get(0x1000));
+		transaction.commit();
+		assertEquals(0, cache.size());
+		assertArrayEquals(filled(8, 0x42), cache.get(0x1000));
+		assertEquals(1, cache.size());
+	}
+	
+	private static byte[] bytes(int length) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++)
+			data[i] = (byte) (i * 13 + (i >> 3));
+		return data;
+	}
+	
+	private static byte[] filled(int length, int value) {
+		byte[] data = new byte[length];
+		Arrays.fill(data, (byte) value);
+		return data;
+	}
+}
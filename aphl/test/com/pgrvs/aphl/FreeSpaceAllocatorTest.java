@@ -0,0 +1,149 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link FreeSpaceAllocator}.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class FreeSpaceAllocatorTest {
+	
+	@Test
+	public void scanFindsRunsAcrossChunks() {
+		// 1 MB of data with free runs at the start, across the edge of the first chunk, and at the end
+		byte[] data = new byte[0x100000];
+		Arrays.fill(data, 0x0000, 0x0100, (byte) 0xFF);
+		Arrays.fill(data, 0x3FFF0, 0x40020, (byte) 0xFF);
+		Arrays.fill(data, 0x80000, 0x80008, (byte) 0xFF); // too short
+		Arrays.fill(data, 0xFFF00, 0x100000, (byte) 0xFF);
+		FreeSpaceAllocator allocator = new FreeSpaceAllocator(new GbaRom(data));
+		
+		assertEquals(3, allocator.getRuns().size());
+		assertEquals(0x100, (int) allocator.getRuns().get(0));
+		assertEquals(0x40020, (int) allocator.getRuns().get(0x3FFF0));
+		assertEquals(0x100000, (int) allocator.getRuns().get(0xFFF00));
+		assertEquals(0x100 + 0x30 + 0x100, allocator.getFreeBytes());
+		assertEquals(0x100, allocator.getLargestRun());
+	}
+	
+	@Test
+	public void allocateTakesTheSmallestRunThatFits() {
+		GbaRom rom = romWithRuns(0x1000, 0x400, 0x2000, 0x40, 0x3001, 0x20);
+		FreeSpaceAllocator allocator = new FreeSpaceAllocator(rom);
+		
+		assertEquals(0x2000, allocator.allocate(0x30));
+		assertEquals(0x2030, allocator.allocate(0x10));
+		assertEquals(0x3004, allocator.allocate(0x18));
+		assertFalse(allocator.isFree(0x3004, 1));
+		assertTrue(allocator.isFree(0x3001, 3));
+		assertEquals(0x1000, allocator.allocate(0x100, 0x100));
+		assertEquals(-1, allocator.allocate(0x400));
+	}
+	
+	@Test
+	public void freeJoinsNeighbouringRuns() {
+		GbaRom rom = romWithRuns(0x1000, 0x100, 0x1200, 0x100);
+		FreeSpaceAllocator allocator = new FreeSpaceAllocator(rom);
+		
+		allocator.free(0x1100, 0x100);
+		assertEquals(1, allocator.getRuns().size());
+		assertEquals(0x1300, (int) allocator.getRuns().get(0x1000));
+		assertEquals(0x300, allocator.getFreeBytes());
+		assertEquals(0xFF, rom.getByte(0x1180));
+	}
+	
+	@Test
+	public void writesRemoveFreeSpace() {
+		GbaRom rom = romWithRuns(0x1000, 0x100);
+		FreeSpaceAllocator allocator = new FreeSpaceAllocator(rom);
+		
+		// writing the filler byte does not add free space
+		rom.putInt(0x1040, 0x12345678);
+		rom.putInt(0x2000, 0xFFFFFFFF);
+		assertEquals(0x1040, (int) allocator.getRuns().get(0x1000));
+		assertEquals(0x1100, (int) allocator.getRuns().get(0x1044));
+		assertFalse(allocator.isFree(0x2000, 4));
+		
+		allocator.release();
+		rom.putInt(0x1000, 0);
+		assertTrue(allocator.isFree(0x1000, 4));
+	}
+	
+	@Test
+	public void spaceFreedInATransactionIsAddedOnCommit() {
+		GbaRom rom = new GbaRom(new byte[0x4000]);
+		FreeSpaceAllocator allocator = new FreeSpaceAllocator(rom);
+		
+		GbaRomTransaction transaction = rom.beginTransaction();
+		allocator.free(0x1000, 0x400);
+		rom.putInt(0x1100, 0); // overwrites part of the freed space within the same transaction
+		assertFalse(allocator.isFree(0x1000, 4));
+		transaction.commit();
+		
+		assertEquals(2, allocator.getRuns().size());
+		assertEquals(0x1100, (int) allocator.getRuns().get(0x1000));
+		assertEquals(0x1400, (int) allocator.getRuns().get(0x1104));
+		assertEquals(0xFF, rom.getByteView().get(0x1000) & 0xFF);
+		assertEquals(0x1000, allocator.allocate(0x100));
+	}
+	
+	@Test
+	public void spaceFreedInATransactionIsDroppedOnRollback() {
+		GbaRom rom = new GbaRom(new byte[0x4000]);
+		FreeSpaceAllocator allocator = new FreeSpaceAllocator(rom);
+		
+		GbaRomTransaction transaction = rom.beginTransaction();
+		allocator.free(0x1000, 0x400);
+		transaction.rollback();
+		assertEquals(0, allocator.getFreeBytes());
+		assertEquals(0, rom.getByte(0x1000));
+		
+		// a later transaction only adds what it freed
+		rom.save(() -> allocator.free(0x2000, 0x100));
+		assertEquals(1, allocator.getRuns().size());
+		assertEquals(0x2100, (int) allocator.getRuns().get(0x2000));
+	}
+	
+	/**
+	 * 
+	 * @param runs Pairs of address and length to fill with 0xFF
+	 * @return ROM of zeros holding the given runs
+	 */
+	private static GbaRom romWithRuns(int... runs) {
+		byte[] data = new byte[0x4000];
+		for (int i = 0; i < runs.length; i += 2)
+			Arrays.fill(data, runs[i], runs[i] + runs[i + 1], (byte) 0xFF);
+		return new GbaRom(data);
+	}
+}
@@ -0,0 +1,294 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Stress test for the addressed methods of {@link GbaRom}. Many threads share one ROM file mapped 
+ * {@link GbaRomMode#READ_WRITE} and check every value they read against the known bytes of the ROM, while other 
+ * threads read through the bulk views, and a writer thread writes through every put() method into the last 
+ * quarter of the ROM at the same time.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class GbaRomConcurrencyTest {
+	
+	private static final int LENGTH = 1 << 22;
+	
+	/** The first address of the part of the ROM written during the test, which readers never read */
+	private static final int WRITTEN = LENGTH - (LENGTH >> 2);
+	
+	private static final int READERS = 8;
+	private static final int VIEWERS = 4;
+	private static final int ITERATIONS = 200000;
+	
+	private byte[] data;
+	private GbaRom rom;
+	private ExecutorService executor;
+	
+	@Before
+	public void setUp() throws IOException {
+		data = new byte[LENGTH];
+		new Random(1).nextBytes(data);
+		File file = File.createTempFile("aphl", ".gba");
+		file.deleteOnExit();
+		Files.write(file.toPath(), data);
+		rom = new GbaRom(file, GbaRomMode.READ_WRITE);
+		executor = Executors.newFixedThreadPool(READERS + VIEWERS + 1);
+	}
+	
+	@After
+	public void tearDown() throws InterruptedException {
+		executor.shutdownNow();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+		rom.close();
+	}
+	
+	@Test
+	public void concurrentReadsMatchKnownData() throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		AtomicBoolean reading = new AtomicBoolean(true);
+		byte[] written = Arrays.copyOfRange(data, WRITTEN, LENGTH);
+		Future<Integer> writes = executor.submit(writer(start, reading, written));
+		
+		List<Future<Void>> results = new ArrayList<Future<Void>>();
+		for (int i = 0; i < READERS; i++)
+			results.add(executor.submit(reader(start, i)));
+		for (int i = 0; i < VIEWERS; i++)
+			results.add(executor.submit(viewer(start, READERS + i)));
+		
+		start.countDown();
+		try {
+			for (Future<Void> result : results)
+				result.get(5, TimeUnit.MINUTES); // rethrows the first assertion failed by each thread
+		} finally {
+			reading.set(false);
+		}
+		assertTrue(writes.get(1, TimeUnit.MINUTES) > 0);
+		
+		// every write landed where it was made, and only its pages were marked dirty
+		assertArrayEquals(written, rom.getBytes(WRITTEN, new byte[written.length], 0, written.length));
+		assertArrayEquals(Arrays.copyOf(data, WRITTEN), rom.getBytes(0, new byte[WRITTEN], 0, WRITTEN));
+		BitSet dirty = rom.getDirtyPages();
+		assertEquals(-1, dirty.previousSetBit((WRITTEN >>> 12) - 1));
+		assertTrue(dirty.cardinality() > 0);
+		
+		rom.flush();
+		assertTrue(rom.getDirtyPages().isEmpty());
+	}
+	
+	/**
+	 * 
+	 * @param start Latch released once every thread is ready
+	 * @param reading Cleared once every reader has finished
+	 * @param written Bytes of the written part of the ROM, which are updated with each write
+	 * @return Task writing through each put() method until reading ends, returning the amount of writes
+	 */
+	private Callable<Integer> writer(final CountDownLatch start, final AtomicBoolean reading, final byte[] written) {
+		return new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				Random random = new Random(-1);
+				ByteBuffer expected = ByteBuffer.wrap(written).order(ByteOrder.LITTLE_ENDIAN);
+				start.await();
+				
+				int writes = 0;
+				for (; reading.get(); writes++) {
+					int offset = random.nextInt(written.length - 64);
+					int address = WRITTEN + offset;
+					int value = random.nextInt();
+					switch (writes % 6) {
+						case 0:
+							rom.putByte(address, value);
+							expected.put(offset, (byte) value);
+							break;
+						case 1:
+							rom.putShort(address, value);
+							expected.putShort(offset, (short) value);
+							break;
+						case 2:
+							rom.putInt(address, value);
+							expected.putInt(offset, value);
+							break;
+						case 3:
+							rom.putPointer(address, value & 0xFFFFFF);
+							expected.putInt(offset, (value & 0xFFFFFF) | 0x08000000);
+							break;
+						case 4:
+							byte[] bytes = new byte[64];
+							random.nextBytes(bytes);
+							rom.putBytes(address, bytes);
+							System.arraycopy(bytes, 0, written, offset, bytes.length);
+							break;
+						default:
+							int[] ints = new int[16];
+							for (int i = 0; i < ints.length; i++) {
+								ints[i] = random.nextInt();
+								expected.putInt(offset + (i * 4), ints[i]);
+							}
+							rom.putInts(address, ints);
+					}
+				}
+				return writes;
+			}
+		};
+	}
+	
+	/**
+	 * 
+	 * @param start Latch released once every thread is ready
+	 * @param seed Seed of the addresses read
+	 * @return Task checking the addressed get() methods
+	 */
+	private Callable<Void> reader(final CountDownLatch start, final int seed) {
+		return new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				Random random = new Random(seed);
+				byte[] bytes = new byte[64];
+				int[] values = new int[16];
+				start.await();
+				
+				for (int i = 0; i < ITERATIONS; i++) {
+					int address = random.nextInt(WRITTEN - 64);
+					switch (i & 7) {
+						case 0:
+							assertEquals(data[address] & 0xFF, rom.getByte(address));
+							break;
+						case 1:
+							assertEquals(expectedShort(address), rom.getShort(address));
+							break;
+						case 2:
+							assertEquals(expectedInt(address), rom.getInt(address));
+							break;
+						case 3:
+							assertEquals(expectedInt(address) & 0x1FFFFFF, rom.getPointer(address));
+							break;
+						case 4:
+							rom.getBytes(address, bytes, 0, bytes.length);
+							for (int j = 0; j < bytes.length; j++)
+								assertEquals(data[address + j], bytes[j]);
+							break;
+						case 5:
+							rom.getBytes(address, values, 0, values.length);
+							for (int j = 0; j < values.length; j++)
+								assertEquals(data[address + j] & 0xFF, values[j]);
+							break;
+						case 6:
+							rom.getShorts(address, values, 0, values.length);
+							for (int j = 0; j < values.length; j++)
+								assertEquals(expectedShort(address + j * 2), values[j]);
+							break;
+						default:
+							rom.getInts(address, values, 0, values.length);
+							for (int j = 0; j < values.length; j++)
+								assertEquals(expectedInt(address + j * 4), values[j]);
+					}
+				}
+				return null;
+			}
+		};
+	}
+	
+	/**
+	 * 
+	 * @param start Latch released once every thread is ready
+	 * @param seed Seed of the addresses read
+	 * @return Task reading through the bulk views, moving the position of each view it makes
+	 */
+	private Callable<Void> viewer(final CountDownLatch start, final int seed) {
+		return new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				Random random = new Random(seed);
+				byte[] bytes = new byte[4096];
+				start.await();
+				
+				for (int i = 0; i < ITERATIONS / 32; i++) {
+					int address = random.nextInt(WRITTEN - bytes.length) & ~3;
+					switch (i % 3) {
+						case 0:
+							ByteBuffer view = rom.getByteView(address, bytes.length);
+							view.get(bytes);
+							for (int j = 0; j < bytes.length; j++)
+								assertEquals(data[address + j], bytes[j]);
+							break;
+						case 1:
+							ShortBuffer shorts = rom.getShortView(address, 64);
+							for (int j = 0; j < 64; j++)
+								assertEquals(expectedShort(address + j * 2), shorts.get() & 0xFFFF);
+							break;
+						default:
+							IntBuffer ints = rom.getIntView(address, 64);
+							for (int j = 0; j < 64; j++)
+								assertEquals(expectedInt(address + j * 4), ints.get());
+					}
+					
+					// the whole-ROM view shares the buffer, so moving its position must not affect other readers
+					ByteBuffer whole = rom.getByteView();
+					whole.position(address);
+					whole.get(bytes, 0, 16);
+					assertArrayEquals(Arrays.copyOfRange(data, address, address + 16), Arrays.copyOf(bytes, 16));
+				}
+				return null;
+			}
+		};
+	}
+	
+	private int expectedShort(int address) {
+		return (data[address] & 0xFF) | (data[address + 1] & 0xFF) << 8;
+	}
+	
+	private int expectedInt(int address) {
+		return expectedShort(address) | expectedShort(address + 2) << 16;
+	}
+}
@@ -0,0 +1,153 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.BitSet;
+
+import org.junit.Test;
+
+/**
+ * Tests for the dirty page tracking of {@link GbaRom}, and for flushing pages with {@link GbaRom#flush(int, int)}.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class GbaRomFlushTest {
+	
+	private static final int PAGES = 8;
+	
+	@Test
+	public void writesMarkTheirPagesDirty() {
+		GbaRom rom = new GbaRom(new byte[PAGES * GbaRom.PAGE_SIZE]);
+		assertEquals(PAGES, rom.getPageCount());
+		assertTrue(rom.getDirtyPages().isEmpty());
+		
+		rom.putByte(0x1001, 1);
+		rom.putInt(0x3FFE, 0x12345678); // spans pages 3 and 4
+		rom.putBytes(0x7000, new byte[GbaRom.PAGE_SIZE]);
+		assertEquals(pages(1, 3, 4, 7), rom.getDirtyPages());
+		
+		assertTrue(rom.isDirty(0x1FFF, 2));
+		assertTrue(rom.isDirty(0x4000, 1));
+		assertFalse(rom.isDirty(0x2000, 0x1000));
+		assertFalse(rom.isDirty(0x1001, 0));
+	}
+	
+	@Test
+	public void inMemoryRomsStayDirty() {
+		GbaRom rom = new GbaRom(new byte[PAGES * GbaRom.PAGE_SIZE]);
+		rom.putByte(0x2000, 1);
+		rom.flush();
+		assertEquals(pages(2), rom.getDirtyPages());
+	}
+	
+	@Test
+	public void flushOnlyCleansTheGivenRange() throws IOException {
+		File file = createRomFile();
+		GbaRom rom = new GbaRom(file, GbaRomMode.READ_WRITE);
+		try {
+			for (int page : new int[] { 0, 1, 5, 7 })
+				rom.putInt(page * GbaRom.PAGE_SIZE + 0x10, 0x11111111 * (page + 1));
+			assertEquals(pages(0, 1, 5, 7), rom.getDirtyPages());
+			
+			// pages are cleaned by page, so a range only touching a page still flushes all of it
+			rom.flush(0x1FFF, 0x3002);
+			assertEquals(pages(0, 7), rom.getDirtyPages());
+			assertFalse(rom.isDirty(0x1000, 0x6000));
+			
+			rom.flush(0x7000, 0x1000);
+			assertEquals(pages(0), rom.getDirtyPages());
+			
+			rom.flush();
+			assertTrue(rom.getDirtyPages().isEmpty());
+			
+			// writes after a flush mark their page again
+			rom.putByte(0x5000, 0xFF);
+			assertEquals(pages(5), rom.getDirtyPages());
+		} finally {
+			rom.close();
+		}
+		
+		byte[] bytes = new byte[PAGES * GbaRom.PAGE_SIZE];
+		GbaRom expected = new GbaRom(bytes);
+		for (int page : new int[] { 0, 1, 5, 7 })
+			expected.putInt(page * GbaRom.PAGE_SIZE + 0x10, 0x11111111 * (page + 1));
+		expected.putByte(0x5000, 0xFF);
+		assertArrayEquals(bytes, Files.readAllBytes(file.toPath()));
+	}
+	
+	@Test
+	public void failedFlushesKeepPagesDirty() throws IOException {
+		File file = createRomFile();
+		GbaRom rom = new GbaRom(file, GbaRomMode.READ_WRITE);
+		rom.close();
+		
+		// the mapping outlives the channel, so the page is written but a closed ROM can no longer be flushed
+		rom.putByte(0x2000, 1);
+		rom.putByte(0x3000, 1);
+		try {
+			rom.flush();
+			fail("Flushed through a closed channel");
+		} catch (IllegalStateException e) {
+			assertEquals(pages(2, 3), rom.getDirtyPages());
+		}
+	}
+	
+	@Test
+	public void readOnlyAndPrivateRomsAreNeverFlushed() throws IOException {
+		File file = createRomFile();
+		GbaRom rom = new GbaRom(file, GbaRomMode.PRIVATE);
+		try {
+			rom.putByte(0x1000, 1);
+			rom.flush();
+			assertEquals(pages(1), rom.getDirtyPages());
+		} finally {
+			rom.close();
+		}
+		assertEquals(0, Files.readAllBytes(file.toPath())[0x1000]);
+	}
+	
+	private static File createRomFile() throws IOException {
+		File file = File.createTempFile("aphl", ".gba");
+		file.deleteOnExit();
+		Files.write(file.toPath(), new byte[PAGES * GbaRom.PAGE_SIZE]);
+		return file;
+	}
+	
+	private static BitSet pages(int... indexes) {
+		BitSet pages = new BitSet();
+		for (int index : indexes)
+			pages.set(index);
+		return pages;
+	}
+}
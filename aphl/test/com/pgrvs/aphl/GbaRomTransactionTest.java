@@ -0,0 +1,330 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.pgrvs.aphl.img.BitmapPixelData;
+import com.pgrvs.aphl.img.BitmapPixelDepth;
+import com.pgrvs.aphl.util.CompressedBlock;
+import com.pgrvs.aphl.util.CompressionType;
+import com.pgrvs.aphl.util.CompressionUtil;
+import com.pgrvs.aphl.util.Lz77CompressionUtil;
+
+/**
+ * Tests for {@link GbaRomTransaction}, and for saving through {@link GbaRom#save(Savable...)}.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class GbaRomTransactionTest {
+	
+	@Test
+	public void pendingWritesAreOnlyAppliedOnCommit() {
+		GbaRom rom = new GbaRom(new byte[0x4000]);
+		GbaRomTransaction transaction = rom.beginTransaction();
+		rom.putInt(0x1000, 0x12345678);
+		rom.putBytes(0x1004, new byte[] { 1, 2, 3, 4 });
+		
+		// reads see pending writes, views only see applied data
+		assertEquals(0x12345678, rom.getInt(0x1000));
+		assertEquals(3, rom.getByte(0x1006));
+		assertEquals(0, rom.getByteView().getInt(0x1000));
+		assertFalse(rom.isDirty(0x1000, 8));
+		assertEquals(8, transaction.getPendingBytes());
+		assertEquals(1, transaction.getPendingRanges());
+		
+		transaction.commit();
+		assertTrue(transaction.isClosed());
+		assertNull(rom.getTransaction());
+		assertEquals(0x12345678, rom.getByteView().getInt(0x1000));
+		assertEquals(3, rom.getByteView().get(0x1006));
+		assertTrue(rom.isDirty(0x1000, 8));
+	}
+	
+	@Test
+	public void rollbackLeavesTheRomUntouched() {
+		GbaRom rom = new GbaRom(new byte[0x4000]);
+		rom.putShort(0x2000, 0x1111);
+		try (GbaRomTransaction transaction = rom.beginTransaction()) {
+			rom.putShort(0x2000, 0x2222);
+			rom.putByte(0x3000, 0x33);
+			assertEquals(0x2222, rom.getShort(0x2000));
+			assertEquals(2, transaction.getPendingRanges());
+		}
+		
+		// closing without a commit rolls back
+		assertNull(rom.getTransaction());
+		assertEquals(0x1111, rom.getShort(0x2000));
+		assertEquals(0, rom.getByte(0x3000));
+		assertFalse(rom.isDirty(0x3000, 1));
+	}
+	
+	@Test
+	public void listenersSeeStagedAppliedAndDroppedRanges() {
+		GbaRom rom = new GbaRom(new byte[0x4000]);
+		List<String> writes = new ArrayList<String>();
+		rom.addWriteListener((address, length) -> writes.add(Integer.toHexString(address) + ":" + length));
+		
+		GbaRomTransaction transaction = rom.beginTransaction();
+		rom.putInt(0x1000, 1);
+		assertEquals(1, writes.size());
+		transaction.commit();
+		assertEquals("1000:4", writes.get(writes.size() - 1));
+		
+		writes.clear();
+		transaction = rom.beginTransaction();
+		rom.putInt(0x2000, 1);
+		transaction.rollback();
+		assertEquals(2, writes.size());
+		assertEquals("2000:4", writes.get(1));
+	}
+	
+	@Test
+	public void listenersAreOnlyToldOfPendingRanges() {
+		GbaRom rom = new GbaRom(new byte[0x4000]);
+		rom.putByte(0x1006, 0x66);
+		List<String> writes = new ArrayList<String>();
+		rom.addWriteListener((address, length) -> writes.add(Integer.toHexString(address) + ":" + length));
+		
+		// the ranges are close enough to be applied as one write, but the bytes between them never change
+		GbaRomTransaction transaction = rom.beginTransaction();
+		rom.putInt(0x1000, 0x11111111);
+		rom.putInt(0x1010, 0x22222222);
+		writes.clear();
+		transaction.commit();
+		assertEquals("[1000:4, 1010:4]", writes.toString());
+		assertEquals(0x66, rom.getByte(0x1006));
+		assertEquals(0x22222222, rom.getInt(0x1010));
+	}
+	
+	@Test
+	public void onlyOneTransactionMayBeOpen() {
+		GbaRom rom = new GbaRom(new byte[0x4000]);
+		GbaRomTransaction transaction = rom.beginTransaction();
+		try {
+			rom.beginTransaction();
+			fail("Opened a second transaction");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		transaction.commit();
+		rom.beginTransaction().rollback();
+	}
+	
+	@Test
+	public void headerSavesJoinTheOpenTransaction() {
+		GbaRom rom = new GbaRom(new byte[0x4000]);
+		GbaRomHeader header = rom.getHeader();
+		header.setTitle("POKEMON FIRE");
+		header.setGameCode("BPRE");
+		
+		GbaRomTransaction transaction = rom.beginTransaction();
+		rom.save(header);
+		assertEquals("POKEMON FIRE", new GbaRomHeader(rom).getTitle());
+		assertEquals(0, rom.getByteView().get(0xA0));
+		transaction.rollback();
+		assertEquals(0, rom.getByte(0xA0));
+		assertEquals(0, rom.getByte(0xAC));
+		
+		rom.save(header);
+		assertEquals('B', rom.getByteView().get(0xAC));
+		assertEquals("BPRE", new GbaRomHeader(rom).getGameCode());
+		assertEquals("POKEMON FIRE", new GbaRomHeader(rom).getTitle());
+		assertTrue(rom.isDirty(0xA0, 0x20));
+	}
+	
+	@Test
+	@SuppressWarnings("deprecation")
+	public void buffersCanStillBeReadAndSavedAsHeaders() {
+		ByteBuffer bytes = ByteBuffer.allocate(0x200);
+		bytes.put(0xAC, (byte) 'B').put(0xAD, (byte) 'P').put(0xAE, (byte) 'R').put(0xAF, (byte) 'E');
+		GbaRomHeader header = new GbaRomHeader(bytes);
+		assertEquals("BPRE", header.getGameCode());
+		
+		header.setTitle("POKEMON FIRE");
+		header.save();
+		assertEquals("POKEMON FIRE", new GbaRomHeader(new GbaRom(bytes.array())).getTitle());
+	}
+	
+	@Test
+	public void failedSavesApplyNothing() {
+		GbaRom rom = new GbaRom(new byte[0x4000]);
+		Savable first = () -> rom.putInt(0x1000, 0x12345678);
+		Savable failing = () -> {
+			rom.putInt(0x1004, 0x12345678);
+			throw new IllegalStateException("Failed to save!");
+		};
+		
+		try {
+			rom.save(first, failing);
+			fail("The failing save was not thrown");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertNull(rom.getTransaction());
+		assertEquals(0, rom.getInt(0x1000));
+		assertEquals(0, rom.getInt(0x1004));
+		
+		rom.save(first);
+		assertEquals(0x12345678, rom.getByteView().getInt(0x1000));
+	}
+	
+	@Test
+	public void outOfRangeWritesFailWhenMade() {
+		GbaRom rom = new GbaRom(new byte[0x4000]);
+		List<String> writes = new ArrayList<String>();
+		rom.addWriteListener((address, length) -> writes.add(Integer.toHexString(address) + ":" + length));
+		
+		GbaRomTransaction transaction = rom.beginTransaction();
+		rom.putInt(0x1000, 0x12345678);
+		try {
+			rom.putBytes(0x3FFE, new byte[4]);
+			fail("Staged a write past the end of the ROM");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		try {
+			rom.putByte(-1, 0);
+			fail("Staged a write before the start of the ROM");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		assertEquals(1, transaction.getPendingRanges());
+		
+		writes.clear();
+		transaction.commit();
+		assertEquals("[1000:4]", writes.toString());
+		assertEquals(0x12345678, rom.getByteView().getInt(0x1000));
+		rom.beginTransaction().rollback();
+	}
+	
+	@Test
+	public void commitsLeaveFlushingToTheCaller() throws IOException {
+		File file = File.createTempFile("aphl", ".gba");
+		file.deleteOnExit();
+		Files.write(file.toPath(), new byte[0x4000]);
+		GbaRom rom = new GbaRom(file, GbaRomMode.READ_WRITE);
+		try {
+			GbaRomTransaction transaction = rom.beginTransaction();
+			rom.putInt(0x2000, 0x12345678);
+			transaction.commit();
+			assertTrue(rom.isDirty(0x2000, 4));
+			rom.flush();
+			assertFalse(rom.isDirty(0x2000, 4));
+		} finally {
+			rom.close();
+		}
+		assertEquals(0x78, Files.readAllBytes(file.toPath())[0x2000]);
+	}
+	
+	@Test
+	public void failedFlushesLeaveTheRomUsable() throws IOException {
+		File file = File.createTempFile("aphl", ".gba");
+		file.deleteOnExit();
+		Files.write(file.toPath(), new byte[0x4000]);
+		GbaRom rom = new GbaRom(file, GbaRomMode.READ_WRITE);
+		rom.close();
+		
+		// the channel is closed, so the commit is applied but can not be flushed
+		GbaRomTransaction transaction = rom.beginTransaction();
+		rom.putInt(0x2000, 0x12345678);
+		transaction.commit();
+		try {
+			rom.flush();
+			fail("Flushed a closed ROM");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertNull(rom.getTransaction());
+		assertEquals(0x12345678, rom.getByteView().getInt(0x2000));
+		assertTrue(rom.isDirty(0x2000, 4));
+		
+		// the ROM can still be written, with or without a transaction
+		rom.putByte(0x3000, 1);
+		transaction = rom.beginTransaction();
+		rom.putByte(0x3001, 2);
+		transaction.rollback();
+		assertEquals(1, rom.getByte(0x3000));
+		assertEquals(0, rom.getByte(0x3001));
+	}
+	
+	@Test
+	public void compressedDataIsReadWithPendingWrites() {
+		GbaRom rom = new GbaRom(new byte[0x4000]);
+		byte[] committed = new byte[64];
+		byte[] rewritten = new byte[300];
+		for (int i = 0; i < rewritten.length; i++)
+			rewritten[i] = (byte) (i * 7 + (i >> 4));
+		rom.putBytes(0x1000, Lz77CompressionUtil.compress(committed));
+		
+		GbaRomTransaction transaction = rom.beginTransaction();
+		byte[] compressed = Lz77CompressionUtil.compress(rewritten);
+		rom.putBytes(0x1000, compressed);
+		// an RLE block of 8 bytes of 0x42, where the applied data is still empty
+		rom.putBytes(0x3000, new byte[] { 0x30, 8, 0, 0, (byte) 0x85, 0x42 });
+		rom.putBytes(0x2000, new byte[] { 0x21, 0x43 });
+		
+		assertArrayEquals(unsigned(rewritten), CompressionUtil.decompress(rom, 0x1000));
+		assertArrayEquals(unsigned(rewritten), Lz77CompressionUtil.decompress(rom, 0x1000));
+		assertArrayEquals(new int[] { 0x42, 0x42, 0x42, 0x42, 0x42, 0x42, 0x42, 0x42 }, 
+				CompressionUtil.decompress(rom, 0x3000));
+		
+		CompressedBlock block = CompressionUtil.measure(rom, 0x1000);
+		assertEquals(0x1000, block.getAddress());
+		assertEquals(CompressionType.LZ77, block.getType());
+		assertEquals(rewritten.length, block.getDecompressedLength());
+		assertTrue(block.getCompressedLength() <= compressed.length);
+		assertEquals(6, CompressionUtil.measure(rom, 0x3000).getCompressedLength());
+		
+		BitmapPixelData pixels = new BitmapPixelData(rom, 0x2000, 32, BitmapPixelDepth.BPP_4);
+		assertEquals(1, pixels.getPixel(0));
+		assertEquals(4, pixels.getPixel(3));
+		
+		transaction.rollback();
+		assertArrayEquals(unsigned(committed), CompressionUtil.decompress(rom, 0x1000));
+		assertEquals(0, new BitmapPixelData(rom, 0x2000, 32, BitmapPixelDepth.BPP_4).getPixel(0));
+	}
+	
+	private static int[] unsigned(byte[] bytes) {
+		int[] values = new int[bytes.length];
+		for (int i = 0; i < bytes.length; i++)
+			values[i] = bytes[i] & 0xFF;
+		return values;
+	}
+}
@@ -0,0 +1,93 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link GbaStringTable} and the tables shared through {@link GbaRom#getStringTable(int, int)}.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class GbaStringTableTest {
+	
+	@Test
+	public void sharedTablesAreReturnedOnce() {
+		GbaRom rom = romWithNames("ABC", "DEF", "GHI");
+		GbaStringTable table = rom.getStringTable(0x100, 3);
+		for (int i = 0; i < 1000; i++)
+			assertSame(table, rom.getStringTable(0x100, 3));
+		
+		// releasing a shared table leaves it in sync for every other caller
+		table.release();
+		rom.putString(table.getAddress(1), "XYZ");
+		assertEquals("XYZ", rom.getStringTable(0x100, 3).get(1));
+	}
+	
+	@Test
+	public void entriesFollowWrites() {
+		GbaRom rom = romWithNames("ABC", "DEF", "GHI");
+		GbaStringTable table = new GbaStringTable(rom, 0x100, 3, 2);
+		assertEquals(Arrays.asList("ABC", "DEF", "GHI"), Arrays.asList(table.get(0), table.get(1), table.get(2)));
+		
+		// a longer entry moves every entry after it
+		putNames(rom, "ABCD", "EF", "GH");
+		assertEquals("ABCD", table.get(0));
+		assertEquals("EF", table.get(1));
+		assertEquals("GH", table.get(2));
+		assertEquals(0x10B, table.getEndAddress());
+		table.release();
+	}
+	
+	/**
+	 * 
+	 * @param names The strings to write at 0x100, each followed by an ending character
+	 * @return ROM holding the strings
+	 */
+	private static GbaRom romWithNames(String... names) {
+		GbaRom rom = new GbaRom(new byte[0x1000]);
+		putNames(rom, names);
+		return rom;
+	}
+	
+	/**
+	 * 
+	 * @param rom The ROM to write
+	 * @param names The strings to write at 0x100, each followed by an ending character
+	 */
+	private static void putNames(GbaRom rom, String... names) {
+		int address = 0x100;
+		for (String name : names) {
+			rom.putString(address, name);
+			address += name.length();
+			rom.putByte(address++, 0xFF);
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link PointerIndex}.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class PointerIndexTest {
+	
+	@Test
+	public void scanFindsAlignedPointersInEveryChunk() {
+		ByteBuffer data = ByteBuffer.allocate(0x100000).order(ByteOrder.LITTLE_ENDIAN);
+		data.putInt(0x00010, 0x08001234);
+		data.putInt(0x3FFFC, 0x08001234); // the last word of the first chunk
+		data.putInt(0xFFFFC, 0x08001234); // the last word of the ROM
+		data.putInt(0x00021, 0x08001234); // not aligned
+		data.putInt(0x00030, 0x08200000); // past the end of the ROM
+		data.putInt(0x00040, 0x02001234); // not a ROM address
+		PointerIndex index = new PointerIndex(new GbaRom(data.array()));
+		
+		assertArrayEquals(new int[] { 0x10, 0x3FFFC, 0xFFFFC }, index.getReferences(0x1234));
+		assertArrayEquals(new int[0], index.getReferences(0x200000));
+		assertArrayEquals(new int[0], index.getReferences(0x1235));
+	}
+	
+	@Test
+	public void referencesFollowWrites() {
+		GbaRom rom = new GbaRom(new byte[0x4000]);
+		rom.putPointer(0x100, 0x2000);
+		PointerIndex index = new PointerIndex(rom);
+		
+		rom.putPointer(0x200, 0x2000);
+		rom.putBytes(0x300, new byte[] { 0, 0x20, 0, 0x08 });
+		rom.putInt(0x100, 0);
+		assertArrayEquals(new int[] { 0x200, 0x300 }, index.getReferences(0x2000));
+		
+		// writes made after the index is released are no longer found
+		index.release();
+		rom.putPointer(0x400, 0x2000);
+		assertArrayEquals(new int[] { 0x200, 0x300 }, index.getReferences(0x2000));
+	}
+	
+	@Test
+	public void manyWritesAreFolded() {
+		GbaRom rom = new GbaRom(new byte[0x10000]);
+		PointerIndex index = new PointerIndex(rom);
+		for (int address = 0; address < 0x10000; address += 4)
+			rom.putPointer(address, address < 0x8000 ? 0x1000 : 0x2000);
+		for (int address = 0; address < 0x4000; address += 4)
+			rom.putInt(address, 0);
+		
+		assertEquals(0x1000, index.getReferences(0x1000).length);
+		assertEquals(0x4000, index.getReferences(0x1000)[0]);
+		assertEquals(0x2000, index.getReferences(0x2000).length);
+	}
+	
+	@Test
+	public void repointRewritesEveryReference() {
+		GbaRom rom = new GbaRom(new byte[0x4000]);
+		rom.putPointer(0x100, 0x2000);
+		rom.putPointer(0x104, 0x2000);
+		rom.putPointer(0x108, 0x3000);
+		PointerIndex index = new PointerIndex(rom);
+		
+		assertEquals(2, index.repoint(0x2000, 0x3000));
+		assertEquals(0x3000, rom.getPointer(0x104));
+		assertArrayEquals(new int[0], index.getReferences(0x2000));
+		assertArrayEquals(new int[] { 0x100, 0x104, 0x108 }, index.getReferences(0x3000));
+		assertEquals(0, index.repoint(0x2000, 0x3000));
+	}
+	
+	@Test
+	public void repointJoinsTheOpenTransaction() {
+		GbaRom rom = new GbaRom(new byte[0x4000]);
+		rom.putPointer(0x100, 0x2000);
+		PointerIndex index = new PointerIndex(rom);
+		
+		GbaRomTransaction transaction = rom.beginTransaction();
+		assertEquals(1, index.repoint(0x2000, 0x3000));
+		assertArrayEquals(new int[] { 0x100 }, index.getReferences(0x3000));
+		assertEquals(0x08002000, rom.getByteView().getInt(0x100));
+		transaction.rollback();
+		
+		assertArrayEquals(new int[] { 0x100 }, index.getReferences(0x2000));
+		assertArrayEquals(new int[0], index.getReferences(0x3000));
+	}
+}
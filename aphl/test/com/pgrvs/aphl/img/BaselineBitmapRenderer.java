@@ -0,0 +1,71 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.img;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+
+/**
+ * The image renderer as it was before {@link BitmapImage} wrote straight into its DataBufferInt, kept as a 
+ * reference that the faster renderer is checked and timed against. Each pixel goes through 
+ * {@link java.awt.image.WritableRaster#setPixel(int, int, int[])} with a fresh array, as the original did.
+ * 
+ * @author Phillip Groves
+ *
+ */
+class BaselineBitmapRenderer {
+	
+	private static final int TILE_SIZE = 8;
+	
+	/**
+	 * 
+	 * @param pixels Pixel data
+	 * @param palette Color data
+	 * @param width Width in pixels
+	 * @param height Height in pixels
+	 * @return The rendered image
+	 */
+	static BufferedImage render(BitmapPixelData pixels, BitmapPaletteData palette, int width, int height) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Color[] colors = palette.getColors(); // the original palette held its Color objects
+		
+		int index = 0;
+		for (int yTile = 0; yTile < (height / TILE_SIZE); yTile++) {
+			for (int xTile = 0; xTile < (width / TILE_SIZE); xTile++) {
+				for (int yPixel = 0; yPixel < TILE_SIZE; yPixel++) {
+					for (int xPixel = 0; xPixel < TILE_SIZE; xPixel++) {
+						int colorIndex = pixels.getPixel(index);
+						Color pixel = colors[colorIndex];
+						
+						image.getRaster().setPixel(xPixel + (xTile * TILE_SIZE), yPixel + (yTile * TILE_SIZE), 
+								new int[] { pixel.getRed(), pixel.getGreen(), pixel.getBlue(), 
+										colorIndex == 0 ? 0 : 255 });
+						index++;
+					}
+				}
+			}
+		}
+		return image;
+	}
+}
@@ -0,0 +1,114 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.img;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * <p>Benchmark of {@link BitmapImage} rendering against {@link BaselineBitmapRenderer}. Renders 2000 sprites of 
+ * 64x64 pixels at 4 bits per pixel, and 500 at 8 bits per pixel, with the same palette.</p>
+ * 
+ * <p>Every image is first checked to be pixel-identical to the baseline. Each renderer then draws every sprite 
+ * several times, and the best pass is reported.</p>
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class BitmapImageBenchmark {
+	
+	private static final int WARMUP_PASSES = 3;
+	private static final int PASSES = 10;
+	
+	/** Keeps rendered images alive, so that no pass can be optimized away */
+	private static long sink;
+	
+	public static void main(String[] args) {
+		run(BitmapPixelDepth.BPP_4, 2000);
+		run(BitmapPixelDepth.BPP_8, 500);
+	}
+	
+	/**
+	 * 
+	 * @param depth Bits per pixel of each sprite
+	 * @param count The amount of sprites
+	 */
+	private static void run(BitmapPixelDepth depth, int count) {
+		Random random = new Random(11);
+		short[] colors = new short[1 << depth.value()];
+		for (int i = 0; i < colors.length; i++)
+			colors[i] = (short) random.nextInt(0x8000);
+		final BitmapPaletteData palette = new BitmapPaletteData(colors);
+		
+		final BitmapPixelData[] sprites = new BitmapPixelData[count];
+		for (int i = 0; i < count; i++) {
+			byte[] values = new byte[64 * 64 * depth.value() / 8];
+			random.nextBytes(values);
+			sprites[i] = new BitmapPixelData(values, depth);
+			if (!Arrays.equals(pixels(new BitmapImage(sprites[i], palette, 64, 64)), 
+					pixels(BaselineBitmapRenderer.render(sprites[i], palette, 64, 64))))
+				throw new IllegalStateException("Sprite " + i + " differs from the baseline");
+		}
+		System.out.printf("%d sprites of 64x64 at %d bpp, all identical to the baseline%n", count, depth.value());
+		
+		report("baseline (Raster.setPixel)", count, new Runnable() {
+			public void run() {
+				for (BitmapPixelData sprite : sprites)
+					sink += BaselineBitmapRenderer.render(sprite, palette, 64, 64).getRGB(1, 1);
+			}
+		});
+		report("BitmapImage", count, new Runnable() {
+			public void run() {
+				for (BitmapPixelData sprite : sprites)
+					sink += new BitmapImage(sprite, palette, 64, 64).getRGB(1, 1);
+			}
+		});
+		System.out.println();
+	}
+	
+	/**
+	 * Runs the given pass until warmed up, and prints the time of the best pass.
+	 * 
+	 * @param name Name of the renderer
+	 * @param count The amount of images rendered by each pass
+	 * @param pass Renders every sprite once
+	 */
+	private static void report(String name, int count, Runnable pass) {
+		for (int i = 0; i < WARMUP_PASSES; i++)
+			pass.run();
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < PASSES; i++) {
+			long start = System.nanoTime();
+			pass.run();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.printf("%-28s %8.2f ms %8.2f us per image%n", name, best / 1e6, best / 1e3 / count);
+	}
+	
+	private static int[] pixels(BufferedImage image) {
+		return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+	}
+}
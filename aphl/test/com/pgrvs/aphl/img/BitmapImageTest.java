@@ -0,0 +1,110 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.img;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that {@link BitmapImage} renders every pixel depth exactly as {@link BaselineBitmapRenderer} does.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class BitmapImageTest {
+	
+	@Test
+	public void rendersLikeTheBaseline() {
+		Random random = new Random(12);
+		for (BitmapPixelDepth depth : BitmapPixelDepth.values()) {
+			short[] colors = new short[1 << depth.value()];
+			for (int i = 0; i < colors.length; i++)
+				colors[i] = (short) random.nextInt(0x8000);
+			BitmapPaletteData palette = new BitmapPaletteData(colors);
+			
+			for (int width = 8; width <= 64; width *= 2) {
+				byte[] values = new byte[width * 32 * depth.value() / 8];
+				random.nextBytes(values);
+				BitmapPixelData pixels = new BitmapPixelData(values, depth);
+				
+				BitmapImage image = new BitmapImage(pixels, palette, width);
+				assertEquals(32, image.getHeight());
+				assertArrayEquals(depth + " at width " + width, 
+						pixels(BaselineBitmapRenderer.render(pixels, palette, width, 32)), pixels(image));
+			}
+		}
+	}
+	
+	@Test
+	public void indexZeroIsTransparent() {
+		BitmapPaletteData palette = new BitmapPaletteData(new short[] { 0x7FFF, 0x001F });
+		BitmapImage image = new BitmapImage(new BitmapPixelData(new byte[] { 0x02, 0, 0, 0, 0, 0, 0, 0 }, 
+				BitmapPixelDepth.BPP_1), palette, 8, 8);
+		assertEquals(0x00F8F8F8, image.getRGB(0, 0));
+		assertEquals(0xFFF80000, image.getRGB(1, 0));
+	}
+	
+	@Test
+	public void recolorsOnlyTheChangedColors() {
+		Random random = new Random(13);
+		short[] colors = new short[16];
+		for (int i = 0; i < colors.length; i++)
+			colors[i] = (short) random.nextInt(0x8000);
+		BitmapPaletteData palette = new BitmapPaletteData(colors);
+		byte[] values = new byte[32 * 32 / 2];
+		random.nextBytes(values);
+		BitmapImage image = new BitmapImage(new BitmapPixelData(values, BitmapPixelDepth.BPP_4), palette, 32);
+		palette.addPaletteListener(image);
+		int[] before = pixels(image).clone();
+		
+		// a listener is only told about colors 5 and 6, so it must leave every other color alone
+		palette.removePaletteListener(image);
+		palette.setValue(2, 0x7C00);
+		palette.addPaletteListener(image);
+		palette.setValues(5, new short[] { 0x001F, 0x03E0 });
+		
+		int[] after = pixels(image);
+		for (int y = 0; y < 32; y++) {
+			for (int x = 0; x < 32; x++) {
+				int index = image.getIndex(x, y);
+				int expected = index == 5 || index == 6 ? palette.getArgb(index) : before[y * 32 + x];
+				assertEquals("pixel " + x + "," + y, expected, after[y * 32 + x]);
+			}
+		}
+		BufferedImage tile = image.getTile(0, false, false);
+		for (int y = 0; y < 8; y++)
+			for (int x = 0; x < 8; x++)
+				assertEquals("tile pixel " + x + "," + y, image.getRGB(x, y), tile.getRGB(x, y));
+	}
+	
+	private static int[] pixels(BufferedImage image) {
+		return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+	}
+}
@@ -0,0 +1,209 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.img;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link BitmapImporter}, which import images and then draw them again through {@link BitmapImage} and 
+ * {@link TilemapRenderer}.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class BitmapImporterTest {
+	
+	/** Colors that survive the reduction to 15 bits, as {@link BitmapImage} draws them */
+	private static final int[] COLORS = { 0xFFF80000, 0xFF00F800, 0xFF0000F8, 0xFFF8F8F8, 0xFF080808, 0xFF804020 };
+	
+	@Test
+	public void importedImagesDrawLikeTheOriginal() {
+		for (BitmapPixelDepth depth : new BitmapPixelDepth[] { BitmapPixelDepth.BPP_4, BitmapPixelDepth.BPP_8 }) {
+			BufferedImage image = image(tile(0), tile(1), tile(2), tile(3));
+			ImportedBitmap imported = new BitmapImporter(depth).importImage(image);
+			assertNull(imported.getTilemap());
+			assertEquals(4, imported.getTileCount());
+			assertEquals(1 << depth.value(), imported.getPalette().length);
+			assertEquals(0, imported.getPalette()[0]);
+			
+			assertDrawnLike(image, new BitmapImage(imported.getPixelData(), imported.getPaletteData(), 
+					imported.getWidth()));
+		}
+	}
+	
+	@Test
+	public void repeatedAndFlippedTilesAreHeldOnce() {
+		int[] tile = tile(0);
+		BufferedImage image = image(tile, flip(tile, true, false), tile(1), flip(tile, false, true), 
+				flip(tile, true, true), tile, flip(tile(1), true, true), tile(2));
+		BitmapImporter importer = new BitmapImporter(BitmapPixelDepth.BPP_4);
+		importer.setDeduplicate(true);
+		ImportedBitmap imported = importer.importImage(image);
+		
+		assertEquals(3, imported.getTileCount());
+		int[] tilemap = imported.getTilemap();
+		assertEquals(8, tilemap.length);
+		int[] expected = { 0x000, 0x400, 0x001, 0x800, 0xC00, 0x000, 0xC01, 0x002 };
+		for (int i = 0; i < expected.length; i++)
+			assertEquals("Tile " + i, expected[i], tilemap[i] & 0xFFF);
+		
+		TilemapRenderer renderer = new TilemapRenderer(new BitmapTileAtlas(imported.getPixelData()), 
+				imported.getPaletteData(), imported.getWidth() / 8, imported.getHeight() / 8);
+		renderer.setEntries(tilemap);
+		renderer.render();
+		assertDrawnLike(image, renderer.getImage());
+	}
+	
+	@Test
+	public void pixelsBelowHalfAlphaAreTransparent() {
+		int[] tile = new int[64];
+		tile[0] = 0x7FF80000;
+		tile[1] = 0x80F80000;
+		tile[2] = 0xFFF80000;
+		BitmapPixelData pixels = new BitmapImporter(BitmapPixelDepth.BPP_4).importImage(image(tile)).getPixelData();
+		assertEquals(0, pixels.getPixel(0));
+		assertTrue(pixels.getPixel(1) > 0);
+		assertEquals(pixels.getPixel(1), pixels.getPixel(2));
+		assertEquals(0, pixels.getPixel(3));
+	}
+	
+	@Test
+	public void manyColorsAreReducedToThePalette() {
+		// 128 shades of red and 128 of blue, far more than 15 colors
+		int[] first = new int[64], second = new int[64], third = new int[64], fourth = new int[64];
+		for (int i = 0; i < 64; i++) {
+			first[i] = 0xFF000000 | ((i * 2) << 16);
+			second[i] = 0xFF000000 | ((128 + i * 2) << 16);
+			third[i] = 0xFF000000 | (i * 2);
+			fourth[i] = 0xFF000000 | (128 + i * 2);
+		}
+		BufferedImage image = image(first, second, third, fourth);
+		ImportedBitmap imported = new BitmapImporter(BitmapPixelDepth.BPP_4).importImage(image);
+		short[] palette = imported.getPalette();
+		assertEquals(16, palette.length);
+		for (short color : palette)
+			assertEquals(0, color & 0x8000);
+		
+		// every pixel is close to its palette color, and reds never become blues
+		BitmapImage drawn = new BitmapImage(imported.getPixelData(), imported.getPaletteData(), imported.getWidth());
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < image.getWidth(); x++) {
+				int original = image.getRGB(x, y), color = drawn.getRGB(x, y);
+				for (int shift = 0; shift <= 16; shift += 8)
+					assertTrue("Pixel (" + x + ", " + y + ")", 
+							Math.abs(((original >> shift) & 0xFF) - ((color >> shift) & 0xFF)) <= 40);
+			}
+		}
+	}
+	
+	@Test
+	public void tileIdsAreLimitedTo0x3FF() {
+		BitmapImporter importer = new BitmapImporter(BitmapPixelDepth.BPP_4);
+		importer.setDeduplicate(true);
+		assertEquals(0x400, importer.importImage(uniqueTiles(0x400)).getTileCount());
+		
+		try {
+			importer.importImage(uniqueTiles(0x401));
+			fail("Imported more tiles than a tilemap can address");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+	
+	/**
+	 * Builds an image of the given amount of tiles, none of which match another in any flip. The top left pixel of 
+	 * each tile is white and the other corners are black, and each tile number is written in white across the 
+	 * inner pixels of its second and third rows.
+	 */
+	private static BufferedImage uniqueTiles(int count) {
+		int[][] tiles = new int[count][];
+		for (int i = 0; i < count; i++) {
+			int[] tile = new int[64];
+			Arrays.fill(tile, 0xFF000000);
+			tile[0] = 0xFFF8F8F8;
+			for (int bit = 0; bit < 12; bit++)
+				if ((i & (1 << bit)) != 0)
+					tile[((1 + bit / 6) * 8) + 1 + (bit % 6)] = 0xFFF8F8F8;
+			tiles[i] = tile;
+		}
+		return image(tiles);
+	}
+	
+	/**
+	 * @return A tile of the given seed, where pixels in the left half of the top row are transparent
+	 */
+	private static int[] tile(int seed) {
+		int[] tile = new int[64];
+		for (int i = 0; i < 64; i++)
+			tile[i] = i < 4 ? 0 : COLORS[(i * (seed + 3) + (i >> 3) * seed) % COLORS.length];
+		return tile;
+	}
+	
+	private static int[] flip(int[] tile, boolean xFlip, boolean yFlip) {
+		int[] flipped = new int[64];
+		for (int y = 0; y < 8; y++)
+			for (int x = 0; x < 8; x++)
+				flipped[(y * 8) + x] = tile[((yFlip ? 7 - y : y) * 8) + (xFlip ? 7 - x : x)];
+		return flipped;
+	}
+	
+	/**
+	 * @return An image holding the given tiles in one row, or in rows of 32 tiles if there are more
+	 */
+	private static BufferedImage image(int[]... tiles) {
+		int columns = Math.min(tiles.length, 32);
+		int rows = (tiles.length + columns - 1) / columns;
+		BufferedImage image = new BufferedImage(columns * 8, rows * 8, BufferedImage.TYPE_INT_ARGB);
+		for (int i = 0; i < tiles.length; i++)
+			image.setRGB((i % columns) * 8, (i / columns) * 8, 8, 8, tiles[i], 0, 8);
+		return image;
+	}
+	
+	/**
+	 * Checks that every opaque pixel of the original is drawn in the same color, and every transparent pixel is 
+	 * drawn transparent.
+	 */
+	private static void assertDrawnLike(BufferedImage original, BufferedImage drawn) {
+		assertEquals(original.getWidth(), drawn.getWidth());
+		assertEquals(original.getHeight(), drawn.getHeight());
+		for (int y = 0; y < original.getHeight(); y++) {
+			for (int x = 0; x < original.getWidth(); x++) {
+				int expected = original.getRGB(x, y);
+				int color = drawn.getRGB(x, y);
+				if ((expected >>> 24) < 0x80)
+					assertEquals("Pixel (" + x + ", " + y + ")", 0, color >>> 24);
+				else
+					assertEquals("Pixel (" + x + ", " + y + ")", expected, color);
+			}
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.img;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+import com.pgrvs.aphl.GbaRom;
+import com.pgrvs.aphl.util.CompressionType;
+import com.pgrvs.aphl.util.Lz77CompressionUtil;
+
+/**
+ * Tests for reading and saving {@link BitmapPaletteData}.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class BitmapPaletteDataTest {
+	
+	/** 16 colors, each of whose first byte matches a compression type */
+	private static final short[] COLORS = new short[16];
+	
+	static {
+		int[] types = { 0x10, 0x11, 0x24, 0x28, 0x30 };
+		for (int i = 0; i < COLORS.length; i++)
+			COLORS[i] = (short) (types[i % types.length] | (i << 10));
+	}
+	
+	@Test
+	public void uncompressedPalettesAreNeverDecompressed() {
+		for (int first : new int[] { 0x10, 0x11, 0x24, 0x28, 0x30 }) {
+			GbaRom rom = new GbaRom(new byte[0x1000]);
+			short[] colors = COLORS.clone();
+			colors[0] = (short) first;
+			rom.putShorts(0x200, colors);
+			assertEquals(CompressionType.of(first), CompressionType.of(rom.getByte(0x200)));
+			
+			BitmapPaletteData palette = new BitmapPaletteData(rom, 0x200, 16, false);
+			assertEquals(16, palette.size());
+			for (int i = 0; i < 16; i++)
+				assertEquals(colors[i] & 0xFFFF, palette.getValue(i));
+		}
+	}
+	
+	@Test
+	public void compressedPalettesAreDecompressed() {
+		GbaRom rom = new GbaRom(new byte[0x1000]);
+		rom.putBytes(0x200, Lz77CompressionUtil.compress(bytes(COLORS)));
+		
+		BitmapPaletteData palette = new BitmapPaletteData(rom, 0x200, 16);
+		assertEquals(16, palette.size());
+		for (int i = 0; i < 16; i++)
+			assertEquals(COLORS[i] & 0xFFFF, palette.getValue(i));
+		
+		// changes are compressed again on save
+		palette.setValue(3, 0x7FFF);
+		palette.save();
+		assertEquals(0x7FFF, new BitmapPaletteData(rom, 0x200, 16, true).getValue(3));
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void compressedPalettesMustBeCompressed() {
+		GbaRom rom = new GbaRom(new byte[0x1000]);
+		rom.putShort(0x200, 0x7FFF);
+		new BitmapPaletteData(rom, 0x200, 16, true);
+	}
+	
+	@Test
+	public void uncompressedPalettesSaveInPlace() {
+		GbaRom rom = new GbaRom(new byte[0x1000]);
+		rom.putShorts(0x200, COLORS);
+		BitmapPaletteData palette = new BitmapPaletteData(rom, 0x200, 16, false);
+		palette.setValue(15, 0x1234);
+		palette.save();
+		assertEquals(0x1234, rom.getShort(0x200 + 30));
+		assertEquals(COLORS[14] & 0xFFFF, rom.getShort(0x200 + 28));
+	}
+	
+	private static byte[] bytes(short[] colors) {
+		byte[] data = new byte[colors.length * 2];
+		ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().put(colors);
+		return data;
+	}
+}
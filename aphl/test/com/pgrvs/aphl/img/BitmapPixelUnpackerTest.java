@@ -0,0 +1,92 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.img;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks {@link BitmapPixelUnpacker} against plain bit math, for every pixel depth and for runs of pixels that 
+ * start and end within a byte.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class BitmapPixelUnpackerTest {
+	
+	@Test
+	public void pixelsArePackedFromTheLowestBits() {
+		ByteBuffer source = ByteBuffer.wrap(new byte[] { (byte) 0xE4 }); // 11 10 01 00
+		assertEquals(0, BitmapPixelUnpacker.getPixel(source, 0, BitmapPixelDepth.BPP_1));
+		assertEquals(1, BitmapPixelUnpacker.getPixel(source, 2, BitmapPixelDepth.BPP_1));
+		assertEquals(0, BitmapPixelUnpacker.getPixel(source, 0, BitmapPixelDepth.BPP_2));
+		assertEquals(1, BitmapPixelUnpacker.getPixel(source, 1, BitmapPixelDepth.BPP_2));
+		assertEquals(3, BitmapPixelUnpacker.getPixel(source, 3, BitmapPixelDepth.BPP_2));
+		assertEquals(0x4, BitmapPixelUnpacker.getPixel(source, 0, BitmapPixelDepth.BPP_4));
+		assertEquals(0xE, BitmapPixelUnpacker.getPixel(source, 1, BitmapPixelDepth.BPP_4));
+		assertEquals(0xE4, BitmapPixelUnpacker.getPixel(source, 0, BitmapPixelDepth.BPP_8));
+	}
+	
+	@Test
+	public void unpacksEveryDepthFromAnyPixel() {
+		Random random = new Random(15);
+		byte[] values = new byte[64];
+		random.nextBytes(values);
+		ByteBuffer source = ByteBuffer.wrap(values);
+		for (BitmapPixelDepth depth : BitmapPixelDepth.values()) {
+			int pixels = values.length * 8 / depth.value();
+			byte[] expected = new byte[pixels];
+			for (int i = 0; i < pixels; i++)
+				expected[i] = (byte) pixel(values, i, depth.value());
+			
+			// odd starts and lengths begin and end partway through a byte at every depth below 8bpp
+			for (int pixel : new int[] { 0, 1, 3, 5, 7, 9 }) {
+				for (int length : new int[] { 0, 1, 2, 3, 7, 13, 17, pixels - pixel - 5 }) {
+					byte[] destination = new byte[length + 3];
+					BitmapPixelUnpacker.unpack(source, pixel, depth, destination, 3, length);
+					byte[] range = new byte[length + 3];
+					System.arraycopy(expected, pixel, range, 3, length);
+					assertArrayEquals(depth + " from " + pixel + " for " + length, range, destination);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * @param values Packed pixel data
+	 * @param pixel Index of the pixel
+	 * @param bits Bits per pixel
+	 * @return Color index of the pixel
+	 */
+	private static int pixel(byte[] values, int pixel, int bits) {
+		int bit = pixel * bits;
+		return ((values[bit / 8] & 0xFF) >> (bit % 8)) & ((1 << bits) - 1);
+	}
+}
@@ -0,0 +1,106 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.img;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link BitmapTileAtlas}.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class BitmapTileAtlasTest {
+	
+	@Test
+	public void pixelsAreUnsigned() {
+		// two 8bpp tiles, holding every color index from 0 to 255 in order
+		byte[] values = new byte[2 * BitmapTileAtlas.TILE_PIXELS * 2];
+		for (int i = 0; i < values.length; i++)
+			values[i] = (byte) i;
+		BitmapTileAtlas atlas = new BitmapTileAtlas(new BitmapPixelData(values, BitmapPixelDepth.BPP_8));
+		assertEquals(4, atlas.size());
+		
+		for (int id = 0; id < atlas.size(); id++) {
+			for (int y = 0; y < 8; y++) {
+				for (int x = 0; x < 8; x++) {
+					int expected = (id * 64 + y * 8 + x) & 0xFF;
+					assertEquals(expected, atlas.getPixel(id, x, y, false, false));
+					assertEquals(expected, atlas.getPixel(id, 7 - x, y, true, false));
+					assertEquals(expected, atlas.getPixel(id, x, 7 - y, false, true));
+					assertEquals(expected, atlas.getPixel(id, 7 - x, 7 - y, true, true));
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void flippedIndexesMatchGetPixel() {
+		byte[] values = new byte[4 * 32];
+		for (int i = 0; i < values.length; i++)
+			values[i] = (byte) (i * 37);
+		BitmapTileAtlas atlas = new BitmapTileAtlas(new BitmapPixelData(values, BitmapPixelDepth.BPP_4));
+		for (int variant = 0; variant < 4; variant++) {
+			boolean xFlip = (variant & 1) != 0, yFlip = (variant & 2) != 0;
+			byte[] indexes = atlas.getIndexes(xFlip, yFlip);
+			for (int id = 0; id < atlas.size(); id++) {
+				for (int i = 0; i < 64; i++)
+					assertEquals(indexes[atlas.getOffset(id) + i] & 0xFF, atlas.getPixel(id, i % 8, i / 8, xFlip, yFlip));
+			}
+		}
+	}
+	
+	@Test
+	public void eachVariantIsSharedBetweenThreads() throws Exception {
+		final BitmapTileAtlas atlas = new BitmapTileAtlas(new BitmapPixelData(new byte[64 * 32], 
+				BitmapPixelDepth.BPP_4));
+		ExecutorService threads = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<byte[]>> variants = new ArrayList<Future<byte[]>>();
+			for (int i = 0; i < 64; i++) {
+				final boolean xFlip = (i & 1) != 0, yFlip = (i & 2) != 0;
+				variants.add(threads.submit(new Callable<byte[]>() {
+					@Override
+					public byte[] call() {
+						return atlas.getIndexes(xFlip, yFlip);
+					}
+				}));
+			}
+			for (int i = 0; i < variants.size(); i++)
+				assertSame(atlas.getIndexes((i & 1) != 0, (i & 2) != 0), variants.get(i).get());
+		} finally {
+			threads.shutdownNow();
+		}
+	}
+}
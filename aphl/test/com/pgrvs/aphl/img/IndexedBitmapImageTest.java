@@ -0,0 +1,107 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.img;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.awt.image.IndexColorModel;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link IndexedBitmapImage}.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class IndexedBitmapImageTest {
+	
+	@Test
+	public void shortPalettesArePaddedToTheDepth() {
+		// two 4bpp tiles with only four colors; the raster must still hold four bits per pixel
+		byte[] values = new byte[64];
+		values[0] = 0x21;
+		values[1] = 0x53;
+		values[32] = 0x03;
+		BitmapPaletteData palette = new BitmapPaletteData(new short[] { 0x7FFF, 0x001F, 0x03E0, 0x7C00 });
+		IndexedBitmapImage image = new IndexedBitmapImage(new BitmapPixelData(values, BitmapPixelDepth.BPP_4), 
+				palette, 16, 8);
+		
+		assertEquals(16, image.getWidth());
+		assertEquals(8, image.getHeight());
+		assertEquals(4, image.getColorModel().getPixelSize());
+		assertEquals(4, image.getSampleModel().getSampleSize(0));
+		assertEquals(1, image.getRaster().getSample(0, 0, 0));
+		assertEquals(2, image.getRaster().getSample(1, 0, 0));
+		assertEquals(3, image.getRaster().getSample(2, 0, 0));
+		assertEquals(5, image.getRaster().getSample(3, 0, 0));
+		assertEquals(3, image.getRaster().getSample(8, 0, 0));
+		
+		assertEquals(0, image.getRGB(4, 0) >>> 24);
+		assertEquals(palette.getArgb(1), image.getRGB(0, 0));
+		assertEquals(palette.getArgb(2), image.getRGB(1, 0));
+		assertEquals(palette.getArgb(3), image.getRGB(2, 0));
+		assertEquals(palette.getArgb(3), image.getRGB(8, 0));
+		// indexes past the end of the palette are transparent black
+		assertEquals(0, image.getRGB(3, 0));
+	}
+	
+	@Test
+	public void shortPalettesWorkAtEveryDepth() {
+		BitmapPaletteData palette = new BitmapPaletteData(new short[] { 0x7FFF, 0x001F });
+		for (BitmapPixelDepth depth : BitmapPixelDepth.values()) {
+			byte[] values = new byte[16 * 8 * depth.value() / 8];
+			values[0] = 1;
+			IndexedBitmapImage image = new IndexedBitmapImage(new BitmapPixelData(values, depth), palette, 16, 8);
+			assertEquals(depth.toString(), depth.value(), image.getSampleModel().getSampleSize(0));
+			assertEquals(depth.toString(), palette.getArgb(1), image.getRGB(0, 0));
+		}
+	}
+	
+	@Test
+	public void withPaletteSharesTheRaster() {
+		byte[] values = new byte[16];
+		values[0] = 0x1B;
+		BitmapPaletteData palette = new BitmapPaletteData(new short[] { 0, 0x001F, 0x03E0, 0x7C00 });
+		IndexedBitmapImage image = new IndexedBitmapImage(new BitmapPixelData(values, BitmapPixelDepth.BPP_2), 
+				palette, 8, 8);
+		
+		BitmapPaletteData shiny = new BitmapPaletteData(new short[] { 0, 0x7FFF });
+		IndexedBitmapImage swapped = image.withPalette(shiny);
+		assertSame(image.getRaster(), swapped.getRaster());
+		assertEquals(BitmapPixelDepth.BPP_2, swapped.getDepth());
+		assertEquals(2, swapped.getSampleModel().getSampleSize(0));
+		assertEquals(4, ((IndexColorModel) swapped.getColorModel()).getMapSize());
+		
+		int first = image.getRaster().getSample(0, 0, 0);
+		assertEquals(image.getRaster().getSample(0, 0, 0), swapped.getRaster().getSample(0, 0, 0));
+		assertEquals(first < 2 ? shiny.getArgb(first) : 0, swapped.getRGB(0, 0));
+		
+		// edits to the pixels show in both images
+		image.getRaster().setSample(1, 0, 0, 1);
+		assertEquals(palette.getArgb(1), image.getRGB(1, 0));
+		assertEquals(shiny.getArgb(1), swapped.getRGB(1, 0));
+	}
+}
@@ -0,0 +1,188 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.img;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import com.pgrvs.aphl.GbaRom;
+import com.pgrvs.aphl.util.Lz77CompressionUtil;
+
+/**
+ * Exports a few small sprites with {@link SpriteSheetExporter}, and checks the sheets and manifests written.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class SpriteSheetExporterTest {
+	
+	@Test
+	public void spritesArePlacedOnSheetsAndListed() throws IOException {
+		GbaRom rom = new GbaRom(new byte[0x4000]);
+		rom.putBytes(0x1000, Lz77CompressionUtil.compress(bytes(128, 1)));
+		rom.putBytes(0x1400, Lz77CompressionUtil.compress(bytes(32, 2)));
+		rom.putBytes(0x1800, Lz77CompressionUtil.compress(bytes(256, 3)));
+		rom.putBytes(0x2000, colors(16, 4));
+		rom.putBytes(0x2100, Lz77CompressionUtil.compress(colors(256, 5)));
+		
+		List<SpriteExportJob> jobs = Arrays.asList(
+				new SpriteExportJob("front", 0x1000, 0x2000, false, 16, BitmapPixelDepth.BPP_4), 
+				new SpriteExportJob("icon", 0x1400, 0x2000, false, 8, BitmapPixelDepth.BPP_4), 
+				new SpriteExportJob("wide, \"quoted\"", 0x1800, 0x2100, 32, BitmapPixelDepth.BPP_8));
+		
+		File directory = Files.createTempDirectory("aphl").toFile();
+		SpriteSheetExporter exporter = new SpriteSheetExporter(rom, directory);
+		exporter.setSheetSize(32, 16);
+		exporter.setThreads(2);
+		assertEquals(2, exporter.export(jobs));
+		
+		// the two 4bpp sprites share a shelf, and the wide sprite does not fit below them
+		BufferedImage first = ImageIO.read(new File(directory, "sheet-0.png"));
+		BufferedImage second = ImageIO.read(new File(directory, "sheet-1.png"));
+		assertEquals(24, first.getWidth());
+		assertEquals(16, first.getHeight());
+		assertEquals(32, second.getWidth());
+		assertEquals(8, second.getHeight());
+		assertPlaced(rom, jobs.get(0), first, 0, 0, 16);
+		assertPlaced(rom, jobs.get(1), first, 16, 0, 8);
+		assertPlaced(rom, jobs.get(2), second, 0, 0, 8);
+		
+		List<String> csv = Files.readAllLines(new File(directory, "manifest.csv").toPath(), StandardCharsets.UTF_8);
+		assertEquals(Arrays.asList(
+				"name,sheet,x,y,width,height,pixelAddress,paletteAddress,depth", 
+				"front,sheet-0.png,0,0,16,16,001000,002000,4", 
+				"icon,sheet-0.png,16,0,8,8,001400,002000,4", 
+				"\"wide, \"\"quoted\"\"\",sheet-1.png,0,0,32,8,001800,002100,8"), csv);
+		
+		String json = new String(Files.readAllBytes(new File(directory, "manifest.json").toPath()), 
+				StandardCharsets.UTF_8);
+		assertTrue(json.trim().startsWith("["));
+		assertTrue(json.trim().endsWith("]"));
+		assertTrue(json.contains("{\"name\": \"icon\", \"sheet\": \"sheet-0.png\", \"x\": 16, \"y\": 0, \"width\": 8, "
+				+ "\"height\": 8, \"pixelAddress\": \"001400\", \"paletteAddress\": \"002000\", \"depth\": 4},"));
+		assertTrue(json.contains("\"name\": \"wide, \\\"quoted\\\"\""));
+		assertFalse(json.contains("},\n]"));
+	}
+	
+	@Test
+	public void palettesAreOnlySharedWhenReadTheSameWay() throws IOException {
+		GbaRom rom = new GbaRom(new byte[0x4000]);
+		rom.putBytes(0x1000, Lz77CompressionUtil.compress(bytes(256, 1)));
+		rom.putBytes(0x1400, Lz77CompressionUtil.compress(bytes(256, 2)));
+		rom.putBytes(0x2000, colors(256, 3));
+		
+		// the taller 4bpp sprite is rendered first, and loads the first 16 colors at the shared address
+		List<SpriteExportJob> jobs = Arrays.asList(
+				new SpriteExportJob("small", 0x1000, 0x2000, false, 16, BitmapPixelDepth.BPP_4), 
+				new SpriteExportJob("large", 0x1400, 0x2000, false, 32, BitmapPixelDepth.BPP_8));
+		File directory = Files.createTempDirectory("aphl").toFile();
+		SpriteSheetExporter exporter = new SpriteSheetExporter(rom, directory);
+		exporter.setThreads(1);
+		assertEquals(1, exporter.export(jobs));
+		
+		BufferedImage sheet = ImageIO.read(new File(directory, "sheet-0.png"));
+		assertPlaced(rom, jobs.get(0), sheet, 0, 0, 32);
+		assertPlaced(rom, jobs.get(1), sheet, 16, 0, 8);
+	}
+	
+	@Test
+	public void jobsMustFillWholeTiles() throws IOException {
+		GbaRom rom = new GbaRom(new byte[0x4000]);
+		// 48 bytes at 4bpp and a width of 8 is 12 rows
+		rom.putBytes(0x1000, Lz77CompressionUtil.compress(bytes(48, 1)));
+		rom.putBytes(0x2000, colors(16, 4));
+		File directory = Files.createTempDirectory("aphl").toFile();
+		
+		try {
+			new SpriteSheetExporter(rom, directory).export(Arrays.asList(
+					new SpriteExportJob("short", 0x1000, 0x2000, false, 8, BitmapPixelDepth.BPP_4)));
+			fail("Exported a sprite of partial tiles");
+		} catch (IllegalStateException e) {
+			// thrown while packing, rather than from a renderer thread
+			assertTrue(e.getMessage(), e.getMessage().contains("short"));
+		}
+		try {
+			new SpriteSheetExporter(rom, directory).export(Arrays.asList(
+					new SpriteExportJob("uncompressed", 0x2000, 0x2000, false, 8, BitmapPixelDepth.BPP_4)));
+			fail("Exported a sprite that is not compressed");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("uncompressed"));
+		}
+		assertFalse(new File(directory, "sheet-0.png").exists());
+		assertFalse(new File(directory, "manifest.csv").exists());
+		
+		for (int width : new int[] { 0, -8, 12 }) {
+			try {
+				new SpriteExportJob("bad", 0x1000, 0x2000, width, BitmapPixelDepth.BPP_4);
+				fail("Created a job of width " + width);
+			} catch (IllegalStateException e) {
+				// expected
+			}
+		}
+	}
+	
+	/**
+	 * Checks a sprite on a sheet against the sprite drawn on its own.
+	 */
+	private static void assertPlaced(GbaRom rom, SpriteExportJob job, BufferedImage sheet, int x, int y, int height) {
+		BitmapPaletteData palette = new BitmapPaletteData(rom, job.getPaletteAddress(), 1 << job.getDepth().value(), 
+				job.isPaletteCompressed());
+		BitmapImage image = new BitmapImage(new BitmapPixelData(rom, job.getPixelAddress(), job.getDepth()), palette, 
+				job.getWidth(), height);
+		for (int row = 0; row < height; row++)
+			for (int column = 0; column < job.getWidth(); column++)
+				assertEquals(job.getName() + " at (" + column + ", " + row + ")", image.getRGB(column, row), 
+						sheet.getRGB(x + column, y + row));
+	}
+	
+	private static byte[] bytes(int length, int seed) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++)
+			data[i] = (byte) ((i * 29 + seed * 7) ^ (i >> 2));
+		return data;
+	}
+	
+	private static byte[] colors(int count, int seed) {
+		ByteBuffer colors = ByteBuffer.allocate(count * 2).order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i < count; i++)
+			colors.putShort((short) ((i * 0x0C63 + seed * 0x1234) & 0x7FFF));
+		return colors.array();
+	}
+}
@@ -0,0 +1,221 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.img;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.awt.Rectangle;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link TilemapRenderer}.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class TilemapRendererTest {
+	
+	/** A pixel value never drawn by a renderer, for finding pixels that were not redrawn */
+	private static final int UNTOUCHED = 0x12345678;
+	
+	@Test
+	public void onlyDirtyTilesAreRedrawn() {
+		BitmapTileAtlas atlas = atlas(BitmapPixelDepth.BPP_4, 4);
+		BitmapPaletteData palette = palette(32);
+		TilemapRenderer renderer = new TilemapRenderer(atlas, palette, 4, 3);
+		assertEquals(new Rectangle(0, 0, 32, 24), renderer.render());
+		assertNull(renderer.render());
+		
+		Arrays.fill(pixels(renderer), UNTOUCHED);
+		renderer.setEntry(1, 1, 0x0402);
+		renderer.setEntry(2, 2, 0x0003);
+		assertEquals(new Rectangle(8, 8, 16, 16), renderer.render());
+		for (int y = 0; y < 3; y++) {
+			for (int x = 0; x < 4; x++) {
+				boolean redrawn = (x == 1 && y == 1) || (x == 2 && y == 2);
+				if (redrawn)
+					assertTile(renderer, atlas, palette, x, y, renderer.getEntry(x, y));
+				else
+					assertEquals(UNTOUCHED, pixels(renderer)[(y * 8 * 32) + (x * 8)]);
+			}
+		}
+		
+		// setting an entry to its current value does not mark it
+		renderer.setEntry(1, 1, 0x0402);
+		assertNull(renderer.render());
+		
+		renderer.markDirty();
+		assertEquals(new Rectangle(0, 0, 32, 24), renderer.render());
+		assertTile(renderer, atlas, palette, 0, 0, 0);
+	}
+	
+	@Test
+	public void flipsAndPaletteBanksAreRead() {
+		BitmapTileAtlas atlas = atlas(BitmapPixelDepth.BPP_4, 2);
+		BitmapPaletteData palette = palette(32);
+		TilemapRenderer renderer = new TilemapRenderer(atlas, palette, 4, 1);
+		renderer.setEntries(new int[] { 0x0001, 0x1401, 0x1801, 0x1C01 });
+		renderer.render();
+		for (int x = 0; x < 4; x++)
+			assertTile(renderer, atlas, palette, x, 0, renderer.getEntry(x, 0));
+		
+		// index 0 is transparent, whatever the bank
+		int transparent = findPixel(atlas, 1, 0);
+		assertEquals(0, renderer.getImage().getRGB(transparent % 8, transparent / 8) >>> 24);
+	}
+	
+	@Test
+	public void paletteBanksAreIgnoredAt8bpp() {
+		BitmapTileAtlas atlas = atlas(BitmapPixelDepth.BPP_8, 2);
+		BitmapPaletteData palette = palette(256);
+		TilemapRenderer renderer = new TilemapRenderer(atlas, palette, 2, 1);
+		renderer.setEntry(0, 0, 0x0001);
+		renderer.setEntry(1, 0, 0xF001);
+		renderer.render();
+		for (int y = 0; y < 8; y++)
+			for (int x = 0; x < 8; x++)
+				assertEquals(renderer.getImage().getRGB(x, y), renderer.getImage().getRGB(8 + x, y));
+		assertTile(renderer, atlas, palette, 0, 0, 0x0001);
+	}
+	
+	@Test
+	public void metatilesAreDrawnFromTheirEntries() {
+		BitmapTileAtlas atlas = atlas(BitmapPixelDepth.BPP_4, 4);
+		BitmapPaletteData palette = palette(32);
+		int[] metatiles = { 
+				0x0000, 0x0401, 0x1802, 0x1C03, // metatile 0
+				0x0003, 0x0002, 0x0001, 0x1000  // metatile 1
+		};
+		TilemapRenderer renderer = new TilemapRenderer(atlas, palette, 6, 2);
+		renderer.setMetatiles(metatiles, 2);
+		renderer.setMetatile(0, 0, 0);
+		renderer.setMetatile(1, 0, 1);
+		renderer.setMetatile(2, 0, 0);
+		assertEquals(new Rectangle(0, 0, 48, 16), renderer.render());
+		assertMetatiles(renderer, atlas, palette, metatiles, 0, 1, 0);
+		
+		// placing a metatile again only redraws the tiles it changes, copied from the cache
+		Arrays.fill(pixels(renderer), UNTOUCHED);
+		renderer.setMetatile(2, 0, 0);
+		assertNull(renderer.render());
+		renderer.setMetatile(1, 0, 0);
+		assertEquals(new Rectangle(16, 0, 16, 16), renderer.render());
+		assertMetatiles(renderer, atlas, palette, metatiles, -1, 0, -1);
+		
+		// new metatile entries redraw every placed metatile
+		int[] swapped = { 0x0003, 0x0002, 0x0001, 0x1000, 0x0000, 0x0401, 0x1802, 0x1C03 };
+		renderer.setMetatiles(swapped, 2);
+		assertEquals(new Rectangle(0, 0, 48, 16), renderer.render());
+		assertEquals(0x0000, renderer.getEntry(0, 0));
+		
+		renderer.setMetatile(0, 0, 0);
+		renderer.setMetatile(1, 0, 1);
+		renderer.setMetatile(2, 0, 0);
+		renderer.render();
+		assertMetatiles(renderer, atlas, palette, swapped, 0, 1, 0);
+		
+		// palette changes are not hidden by cached metatiles
+		BitmapPaletteData other = palette(32, 5);
+		renderer.setPalette(other);
+		renderer.render();
+		assertMetatiles(renderer, atlas, other, swapped, 0, 1, 0);
+	}
+	
+	@Test
+	public void tilesOutsideTheAtlasAreTransparent() {
+		BitmapTileAtlas atlas = atlas(BitmapPixelDepth.BPP_4, 1);
+		TilemapRenderer renderer = new TilemapRenderer(atlas, palette(16), 1, 1);
+		renderer.setEntry(0, 0, 0x3FF);
+		renderer.render();
+		for (int pixel : pixels(renderer))
+			assertEquals(0, pixel);
+	}
+	
+	/**
+	 * Checks the pixels of each metatile of the top row of a renderer, skipping those given as -1.
+	 */
+	private static void assertMetatiles(TilemapRenderer renderer, BitmapTileAtlas atlas, BitmapPaletteData palette, 
+			int[] metatiles, int... ids) {
+		for (int i = 0; i < ids.length; i++) {
+			if (ids[i] < 0)
+				continue;
+			for (int tile = 0; tile < 4; tile++)
+				assertTile(renderer, atlas, palette, (i * 2) + (tile % 2), tile / 2, metatiles[(ids[i] * 4) + tile]);
+		}
+	}
+	
+	/**
+	 * Checks every pixel of a tile against the pixels of the atlas, flipped and colored as the entry gives.
+	 */
+	private static void assertTile(TilemapRenderer renderer, BitmapTileAtlas atlas, BitmapPaletteData palette, 
+			int xTile, int yTile, int entry) {
+		boolean xFlip = (entry & 0x400) != 0, yFlip = (entry & 0x800) != 0;
+		int bank = atlas.getDepth() == BitmapPixelDepth.BPP_8 ? 0 : (entry >> 12) << 4;
+		for (int y = 0; y < 8; y++) {
+			for (int x = 0; x < 8; x++) {
+				int index = atlas.getPixel(entry & 0x3FF, x, y, xFlip, yFlip);
+				int expected = index == 0 ? 0 : palette.getArgb(bank + index);
+				assertEquals("Tile (" + xTile + ", " + yTile + ") pixel (" + x + ", " + y + ")", expected, 
+						renderer.getImage().getRGB((xTile * 8) + x, (yTile * 8) + y));
+			}
+		}
+	}
+	
+	/**
+	 * @return Position of the first pixel of the tile with the given color index
+	 */
+	private static int findPixel(BitmapTileAtlas atlas, int id, int index) {
+		for (int i = 0; i < 64; i++) {
+			if (atlas.getPixel(id, i % 8, i / 8, false, false) == index)
+				return i;
+		}
+		throw new IllegalStateException("Tile " + id + " has no pixel of color " + index);
+	}
+	
+	private static BitmapTileAtlas atlas(BitmapPixelDepth depth, int tiles) {
+		byte[] values = new byte[tiles * 8 * depth.value()];
+		for (int i = 0; i < values.length; i++)
+			values[i] = (byte) ((i * 37) ^ (i >> 3));
+		return new BitmapTileAtlas(new BitmapPixelData(values, depth));
+	}
+	
+	private static BitmapPaletteData palette(int size) {
+		return palette(size, 1);
+	}
+	
+	private static BitmapPaletteData palette(int size, int seed) {
+		short[] colors = new short[size];
+		for (int i = 0; i < size; i++)
+			colors[i] = (short) ((i * 0x421 * seed + i) & 0x7FFF);
+		return new BitmapPaletteData(colors);
+	}
+	
+	private static int[] pixels(TilemapRenderer renderer) {
+		return ((DataBufferInt) renderer.getImage().getRaster().getDataBuffer()).getData();
+	}
+}
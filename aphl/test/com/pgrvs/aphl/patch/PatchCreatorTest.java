@@ -0,0 +1,221 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.patch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import org.junit.Test;
+
+import com.pgrvs.aphl.GbaRom;
+import com.pgrvs.aphl.GbaRomTransaction;
+
+/**
+ * Tests for {@link PatchCreator}, which round-trip patches of every format through {@link PatchApplier}.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class PatchCreatorTest {
+	
+	/** Large enough to hold the address that reads as the end of an IPS patch, and several compared chunks */
+	private static final int ROM_LENGTH = 0x480000;
+	
+	@Test
+	public void patchesRoundTripInEveryFormat() throws IOException {
+		byte[] source = randomRom(1);
+		byte[] target = edit(source, 2);
+		for (PatchFormat format : PatchFormat.values()) {
+			byte[] patch = create(new GbaRom(source.clone()), new GbaRom(target.clone()), format);
+			assertEquals(format, PatchFormat.of(ByteBuffer.wrap(patch)));
+			assertArrayEquals(format.name(), target, apply(source, patch));
+		}
+	}
+	
+	@Test
+	public void dirtyPagesRoundTripInEveryFormat() throws IOException {
+		byte[] source = randomRom(3);
+		GbaRom target = new GbaRom(source.clone());
+		byte[] edited = edit(source, 4);
+		for (int address = 0; address < edited.length; address++) {
+			if (edited[address] != source[address])
+				target.putByte(address, edited[address]);
+		}
+		
+		for (PatchFormat format : PatchFormat.values()) {
+			ByteArrayOutputStream patch = new ByteArrayOutputStream();
+			PatchCreator.create(new GbaRom(source.clone()), target, target.getDirtyPages(), format, patch);
+			assertArrayEquals(format.name(), edited, apply(source, patch.toByteArray()));
+		}
+	}
+	
+	@Test
+	public void identicalRomsMakeEmptyPatches() throws IOException {
+		byte[] source = randomRom(5);
+		byte[] patch = create(new GbaRom(source.clone()), new GbaRom(source.clone()), PatchFormat.IPS);
+		assertArrayEquals(new byte[] { 'P', 'A', 'T', 'C', 'H', 'E', 'O', 'F' }, patch);
+		for (PatchFormat format : PatchFormat.values())
+			assertArrayEquals(source, apply(source, create(new GbaRom(source), new GbaRom(source), format)));
+	}
+	
+	@Test
+	public void ipsPatchesTruncateToTheTargetLength() throws IOException {
+		ByteArrayOutputStream patch = new ByteArrayOutputStream();
+		PatchCreator.create(ByteBuffer.allocate(0x2000), ByteBuffer.allocate(0x1800), null, PatchFormat.IPS, patch);
+		assertArrayEquals(new byte[] { 'P', 'A', 'T', 'C', 'H', 'E', 'O', 'F', 0, 0x18, 0 }, patch.toByteArray());
+		
+		try {
+			PatchCreator.create(ByteBuffer.allocate(0x1000002), ByteBuffer.allocate(0x1000001), null, 
+					PatchFormat.IPS, new ByteArrayOutputStream());
+			fail("Truncated past 0xFFFFFF");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+	
+	@Test
+	public void romsWithOpenTransactionsAreRefused() throws IOException {
+		GbaRom source = new GbaRom(new byte[0x1000]);
+		GbaRom target = new GbaRom(new byte[0x1000]);
+		GbaRomTransaction transaction = target.beginTransaction();
+		target.putInt(0x100, 1);
+		try {
+			PatchCreator.create(source, target, PatchFormat.BPS, new ByteArrayOutputStream());
+			fail("Created a patch without the pending writes");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		transaction.rollback();
+	}
+	
+	@Test
+	public void recordsMayNotRunIntoTheChecksums() {
+		// both patches are for 0x100 bytes, and a BPS target read of 10 bytes has only 4 bytes before the checksums
+		byte[] bps = { 'B', 'P', 'S', '1', 0, (byte) 0x81, 0, (byte) 0x81, (byte) 0x80, (byte) ((9 << 2) | 1 | 0x80), 
+				1, 2, 3, 4 };
+		// a UPS record of XOR bytes without the 0 that ends it
+		byte[] ups = { 'U', 'P', 'S', '1', 0, (byte) 0x81, 0, (byte) 0x81, (byte) 0x80, 1, 2, 3 };
+		for (byte[] patch : new byte[][] { bps, ups }) {
+			try {
+				PatchApplier.apply(new GbaRom(new byte[0x100]), ByteBuffer.wrap(withChecksums(patch, 
+						new byte[0x100])));
+				fail("Read the checksums as data");
+			} catch (IllegalStateException e) {
+				assertEquals("Patch ends unexpectedly!", e.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * @param patch The patch without its checksums
+	 * @param source The data the patch is for
+	 * @return The patch followed by the source, target, and patch checksums, where the target checksum never 
+	 * 	matches
+	 */
+	private static byte[] withChecksums(byte[] patch, byte[] source) {
+		ByteBuffer bytes = ByteBuffer.allocate(patch.length + 12).order(ByteOrder.LITTLE_ENDIAN);
+		CRC32 crc = new CRC32();
+		crc.update(source);
+		bytes.put(patch).putInt((int) crc.getValue()).putInt(0);
+		crc.reset();
+		crc.update(bytes.array(), 0, bytes.position());
+		bytes.putInt((int) crc.getValue());
+		return bytes.array();
+	}
+	
+	/**
+	 * 
+	 * @param source The ROM before the changes
+	 * @param target The ROM after the changes
+	 * @param format The format of the patch
+	 * @return The patch
+	 * @throws IOException If the patch cannot be written
+	 */
+	private static byte[] create(GbaRom source, GbaRom target, PatchFormat format) throws IOException {
+		ByteArrayOutputStream patch = new ByteArrayOutputStream();
+		PatchCreator.create(source, target, format, patch);
+		return patch.toByteArray();
+	}
+	
+	/**
+	 * 
+	 * @param source The data to patch, which is left unchanged
+	 * @param patch The patch to apply
+	 * @return The patched data
+	 */
+	private static byte[] apply(byte[] source, byte[] patch) {
+		GbaRom rom = new GbaRom(source.clone());
+		PatchApplier.apply(rom, ByteBuffer.wrap(patch));
+		byte[] patched = new byte[rom.getLength()];
+		rom.getByteView().get(patched);
+		return patched;
+	}
+	
+	/**
+	 * 
+	 * @param seed Seed of the data
+	 * @return Data of {@link #ROM_LENGTH} bytes, which is random apart from a stretch of 0xFF
+	 */
+	private static byte[] randomRom(long seed) {
+		byte[] data = new byte[ROM_LENGTH];
+		new Random(seed).nextBytes(data);
+		Arrays.fill(data, 0x300000, 0x340000, (byte) 0xFF);
+		return data;
+	}
+	
+	/**
+	 * 
+	 * @param source The data to edit, which is left unchanged
+	 * @param seed Seed of the edits
+	 * @return Copy of the data with scattered edits, long runs, edits across the edges of compared chunks, and 
+	 * 	an edit at the address that reads as the end of an IPS patch
+	 */
+	private static byte[] edit(byte[] source, long seed) {
+		Random random = new Random(seed);
+		byte[] data = source.clone();
+		for (int i = 0; i < 500; i++) {
+			int address = random.nextInt(data.length - 64);
+			for (int j = random.nextInt(64); j >= 0; j--)
+				data[address + j] ^= 1 + random.nextInt(255);
+		}
+		Arrays.fill(data, 0x100000, 0x120000, (byte) 0x00); // a run longer than an IPS record can hold
+		Arrays.fill(data, 0x20000, 0x20040, (byte) 0x55);
+		for (int address = 0x3FFF0; address < 0x40010; address++)
+			data[address] ^= 0x5A;
+		for (int address = 0x454F40; address < 0x454F50; address++)
+			data[address] ^= 0xA5;
+		data[data.length - 1] ^= 1;
+		return data;
+	}
+}
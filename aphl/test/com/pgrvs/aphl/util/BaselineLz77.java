@@ -0,0 +1,98 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The Lz77 decoder as it was before decompression moved onto byte arrays, kept as a reference that newer decoders 
+ * are checked against. It reads through the position of a buffer one byte at a time, as the original did through 
+ * the shared position of the ROM.
+ * 
+ * @author Phillip Groves
+ *
+ */
+class BaselineLz77 {
+	
+	private static final int LZ77_OPCODE = 0x10;
+	
+	/**
+	 * 
+	 * @param source Buffer holding the compressed data
+	 * @param address Address to read
+	 * @return Decompressed data
+	 */
+	static int[] decompress(ByteBuffer source, int address) {
+		ByteBuffer rom = source.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		rom.position(address);
+		if ((rom.get() & 0xFF) != LZ77_OPCODE)
+			throw new IllegalStateException("Invalid Lz77 compression opcode.");
+		
+		int[] data = new int[getDecompLength(rom)];
+		int destination, flags, offset, length, value, position = 0;
+		boolean flagged;
+		
+		while (position < data.length) {
+			flags = rom.get() & 0xFF;
+			for (int i = 0; i < 8; i++) {
+				flagged = (flags & ( 0x80 >> i) ) > 0;
+				if ( flagged ) {
+					value = rom.get() & 0xFF;
+					length = (value >> 4) + 3;
+					offset = ((value & 0x0F) << 8) | (rom.get() & 0xFF);
+					destination = position;
+					
+					if (offset > position)
+						throw new IllegalStateException("Cannot go back more than already written.");
+					for (int j = 0; j < length; j++)
+						data[position++] = data[destination - offset - 1 + j];
+				} else {
+					value = rom.get() & 0xFF;
+					if (position < data.length)
+						data[position++] = value;
+					else if (value == 0)
+						break;
+				}
+				if (position > data.length)
+					break;
+			}
+		}
+		return data;
+	}
+	
+	/**
+	 * 
+	 * @param rom Buffer positioned after the opcode
+	 * @return Amount of decompressed bytes
+	 */
+	private static int getDecompLength(ByteBuffer rom) {
+		int length = 0;
+		for (int i = 0; i < 3; i++)
+			length |= ((rom.get() & 0xFF) << ( i * 8));
+		if (length == 0)
+			length = rom.getInt();
+		return length;
+	}
+}
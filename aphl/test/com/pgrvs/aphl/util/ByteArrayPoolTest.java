@@ -0,0 +1,74 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for the limits of {@link ByteArrayPool}.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class ByteArrayPoolTest {
+	
+	@Test
+	public void arraysAreReusedBySize() {
+		ByteArrayPool pool = new ByteArrayPool(1);
+		byte[] array = pool.acquire(100);
+		assertEquals(128, array.length);
+		pool.release(array);
+		pool.release(new byte[128]); // past the amount held for this size
+		assertEquals(128, pool.getHeldBytes());
+		assertSame(array, pool.acquire(65));
+		assertEquals(0, pool.getHeldBytes());
+		assertNotSame(array, pool.acquire(65));
+	}
+	
+	@Test
+	public void poolsHoldAtMostTheirTotalLength() {
+		ByteArrayPool pool = new ByteArrayPool(8, 0x3000);
+		pool.release(new byte[0x2000]);
+		pool.release(new byte[0x2000]);
+		pool.release(new byte[0x1000]);
+		assertEquals(0x3000, pool.getHeldBytes());
+		
+		pool.acquire(0x2000);
+		pool.release(new byte[0x2000]);
+		assertEquals(0x3000, pool.getHeldBytes());
+	}
+	
+	@Test
+	public void theSharedPoolIsCapped() {
+		ByteArrayPool pool = ByteArrayPool.getShared();
+		for (int i = 0; i < ByteArrayPool.DEFAULT_ARRAYS_PER_SIZE; i++)
+			pool.release(new byte[1 << 24]);
+		assertTrue(pool.getHeldBytes() <= ByteArrayPool.SHARED_MAX_BYTES);
+	}
+}
@@ -0,0 +1,204 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import com.pgrvs.aphl.GbaRom;
+
+/**
+ * Tests for {@link CompressedBlockScanner}, over ROMs holding compressed blocks at known addresses.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class CompressedBlockScannerTest {
+	
+	private static final CompressionType[] TYPES = { CompressionType.LZ77, CompressionType.LZ11, 
+			CompressionType.RLE };
+	
+	@Test
+	public void findsEveryBlock() {
+		byte[] bytes = background(1 << 20);
+		List<CompressedBlock> expected = new ArrayList<CompressedBlock>();
+		Random random = new Random(9);
+		for (int address = 0x100, n = 0; address < bytes.length - 0x8000; n++) {
+			byte[] data = Lz77CompressionUtilTest.spriteLike(random, (8 + random.nextInt(0x400)) * 4);
+			CompressionType type = TYPES[n % TYPES.length];
+			byte[] stream = type == CompressionType.LZ77 ? Lz77CompressionUtil.compress(data) 
+					: type == CompressionType.LZ11 ? CompressionUtilTest.lz11(data) : CompressionUtilTest.rle(data);
+			System.arraycopy(stream, 0, bytes, address, stream.length);
+			expected.add(new CompressedBlock(address, type, CompressionUtil.measure(ByteBuffer.wrap(bytes), 
+					address).getCompressedLength(), data.length));
+			assertEquals(stream.length, (expected.get(n).getCompressedLength() + 3) & ~3);
+			address += stream.length + random.nextInt(0x100) * 4;
+		}
+		
+		// compressed data can look like the start of another block, so only blocks that are not nested must match
+		CompressedBlockScanner scanner = new CompressedBlockScanner();
+		List<CompressedBlock> all = scanner.scan(new GbaRom(bytes));
+		for (CompressedBlock block : expected)
+			assertTrue(block.toString(), names(all).contains(block.toString()));
+		
+		scanner.setSkipNested(true);
+		assertBlocks(expected, scanner.scan(new GbaRom(bytes)));
+		assertBlocks(expected, scanner.scan(ByteBuffer.wrap(bytes).order(ByteOrder.BIG_ENDIAN), new ForkJoinPool(3)));
+		
+		// only the chosen types are found
+		scanner.setTypes(EnumSet.of(CompressionType.LZ11));
+		List<CompressedBlock> lz11 = scanner.scan(new GbaRom(bytes));
+		for (CompressedBlock block : lz11)
+			assertEquals(CompressionType.LZ11, block.getType());
+		for (CompressedBlock block : expected) {
+			if (block.getType() == CompressionType.LZ11)
+				assertTrue(block.toString(), names(lz11).contains(block.toString()));
+		}
+	}
+	
+	@Test
+	public void filtersByLength() {
+		byte[] bytes = background(0x10000);
+		byte[] small = Lz77CompressionUtil.compress(new byte[0x40]);
+		byte[] large = Lz77CompressionUtil.compress(new byte[0x4000]);
+		System.arraycopy(small, 0, bytes, 0x1000, small.length);
+		System.arraycopy(large, 0, bytes, 0x2000, large.length);
+		
+		CompressedBlockScanner scanner = new CompressedBlockScanner();
+		assertEquals(2, scanner.scan(new GbaRom(bytes)).size());
+		scanner.setLengthRange(0x100, 0x40000);
+		assertEquals(0x2000, scanner.scan(new GbaRom(bytes)).get(0).getAddress());
+		assertEquals(1, scanner.scan(new GbaRom(bytes)).size());
+	}
+	
+	@Test
+	public void skipsNestedBlocks() {
+		// an Lz77 block hidden in the literal bytes of an RLE block, as uncompressed data can look compressed
+		byte[] inner = Lz77CompressionUtil.compress(Lz77CompressionUtilTest.spriteLike(new Random(10), 0x40));
+		byte[] outer = new byte[4 + 1 + 128];
+		outer[0] = 0x30;
+		outer[1] = (byte) 128;
+		outer[4] = 0x7F; // the next 128 bytes are copied as they are
+		System.arraycopy(inner, 0, outer, 8, inner.length);
+		
+		byte[] bytes = background(0x10000);
+		System.arraycopy(outer, 0, bytes, 0x1000, outer.length);
+		
+		CompressedBlockScanner scanner = new CompressedBlockScanner();
+		List<CompressedBlock> blocks = scanner.scan(new GbaRom(bytes));
+		assertEquals(2, blocks.size());
+		assertEquals(0x1008, blocks.get(1).getAddress());
+		
+		scanner.setSkipNested(true);
+		blocks = scanner.scan(new GbaRom(bytes));
+		assertEquals(1, blocks.size());
+		assertEquals(CompressionType.RLE, blocks.get(0).getType());
+	}
+	
+	@Test
+	public void findsExtendedHeadersAndBlocksEndingTheRom() {
+		byte[] data = Lz77CompressionUtilTest.spriteLike(new Random(11), 0x200);
+		byte[] stream = Lz77CompressionUtil.compress(data);
+		// the same stream, with the length moved into an extended header
+		byte[] extended = new byte[stream.length + 4];
+		extended[0] = 0x10;
+		ByteBuffer.wrap(extended, 4, 4).order(ByteOrder.LITTLE_ENDIAN).putInt(data.length);
+		System.arraycopy(stream, 4, extended, 8, stream.length - 4);
+		
+		// 32 bytes of 5 as a single RLE run, ending at the last byte of the ROM
+		byte[] run = { 0x30, 0x20, 0, 0, (byte) 0x9D, 5 };
+		byte[] bytes = background(0x10000 + run.length);
+		System.arraycopy(extended, 0, bytes, 0x1000, extended.length);
+		System.arraycopy(run, 0, bytes, 0x10000, run.length);
+		
+		List<CompressedBlock> blocks = new CompressedBlockScanner().scan(new GbaRom(bytes));
+		assertEquals(2, blocks.size());
+		assertEquals(new CompressedBlock(0x1000, CompressionType.LZ77, CompressionUtil.measure(ByteBuffer.wrap(
+				extended), 0).getCompressedLength(), data.length).toString(), blocks.get(0).toString());
+		assertEquals(new CompressedBlock(0x10000, CompressionType.RLE, run.length, 0x20).toString(), 
+				blocks.get(1).toString());
+		assertEquals(bytes.length, blocks.get(1).getEndAddress());
+	}
+	
+	/**
+	 * 
+	 * @param length The amount of bytes
+	 * @return Bytes that never start a block (0xFF is not a compression type)
+	 */
+	private static byte[] background(int length) {
+		byte[] bytes = new byte[length];
+		Arrays.fill(bytes, (byte) 0xFF);
+		return bytes;
+	}
+	
+	private static void assertBlocks(List<CompressedBlock> expected, List<CompressedBlock> actual) {
+		assertEquals(names(expected), names(actual));
+	}
+	
+	/**
+	 * 
+	 * @param blocks Blocks to describe
+	 * @return The description of each block, which holds every field
+	 */
+	private static List<String> names(List<CompressedBlock> blocks) {
+		List<String> names = new ArrayList<String>(blocks.size());
+		for (CompressedBlock block : blocks)
+			names.add(block.toString());
+		return names;
+	}
+}
@@ -0,0 +1,351 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.pgrvs.aphl.GbaRom;
+
+/**
+ * Round-trips every format read by {@link CompressionUtil#decompress(ByteBuffer, int, byte[], int)}. The library 
+ * only compresses Lz77, so streams of the other formats are built here by simple encoders written from the format 
+ * descriptions.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class CompressionUtilTest {
+	
+	@Test
+	public void decompressesEveryFormat() {
+		Random random = new Random(7);
+		for (int n = 0; n < 40; n++) {
+			byte[] data = n % 4 == 0 ? noise(random, 1 + random.nextInt(0x800), 16) 
+					: Lz77CompressionUtilTest.spriteLike(random, 1 + random.nextInt(0x4000));
+			check(Lz77CompressionUtil.compress(data), CompressionType.LZ77, data);
+			check(lz11(data), CompressionType.LZ11, data);
+			check(rle(data), CompressionType.RLE, data);
+			check(huffman(data, 8), CompressionType.HUFFMAN_8, data);
+			byte[] nibbles = noise(random, 2 * (1 + random.nextInt(0x800)), 256);
+			check(huffman(nibbles, 4), CompressionType.HUFFMAN_4, nibbles);
+		}
+	}
+	
+	@Test
+	public void decompressesLongLz11AndRleRuns() {
+		byte[] data = new byte[70000];
+		Arrays.fill(data, 5000, 70000, (byte) 7);
+		for (int i = 0; i < 300; i++)
+			data[i] = (byte) i;
+		check(lz11(data), CompressionType.LZ11, data); // uses every length size, up to 16 bits
+		check(rle(data), CompressionType.RLE, data);
+	}
+	
+	@Test
+	public void decompressesThroughTheRom() {
+		byte[] data = Lz77CompressionUtilTest.spriteLike(new Random(9), 0x1000);
+		byte[] stream = lz11(data);
+		GbaRom rom = new GbaRom(new byte[0x4000]);
+		rom.putBytes(0x1000, stream);
+		
+		int[] values = CompressionUtil.decompress(rom, 0x1000);
+		for (int i = 0; i < data.length; i++)
+			assertEquals(data[i] & 0xFF, values[i]);
+		assertArrayEquals(data, rom.getAssetCache().get(0x1000));
+	}
+	
+	@Test
+	public void measuresBlocksEndingAtTheLimit() {
+		byte[] tiny = { 1, 2, 3, 1, 2, 3 };
+		byte[] sprite = Lz77CompressionUtilTest.spriteLike(new Random(3), 0x200);
+		byte[][] streams = { 
+				Lz77CompressionUtil.compress(tiny), lz11(tiny), rle(new byte[] { 9 }), huffman(tiny, 8), 
+				Lz77CompressionUtil.compress(sprite), lz11(sprite), rle(sprite), huffman(sprite, 8), huffman(sprite, 4),
+				// an RLE run of 5 bytes behind an extended header
+				{ 0x30, 0, 0, 0, 5, 0, 0, 0, (byte) 0x82, 7 } 
+		};
+		for (byte[] stream : streams) {
+			int length = CompressionUtil.measure(ByteBuffer.wrap(stream), 0).getCompressedLength();
+			byte[] exact = Arrays.copyOf(stream, length);
+			CompressedBlock block = CompressionUtil.measure(ByteBuffer.wrap(exact), 0);
+			assertEquals(block.toString(), length, block.getCompressedLength());
+			assertArrayEquals(CompressionUtil.decompress(ByteBuffer.wrap(stream), 0), 
+					CompressionUtil.decompress(ByteBuffer.wrap(exact), 0));
+			
+			CompressionType type = CompressionUtil.getType(ByteBuffer.wrap(stream), 0);
+			assertEquals(-1, CompressionUtil.measure(ByteBuffer.wrap(Arrays.copyOf(stream, length - 1)), 0, type));
+		}
+		
+		// a header alone is too short to hold an extended length
+		assertEquals(-1, CompressionUtil.measure(ByteBuffer.wrap(new byte[] { 0x30, 0, 0, 0 }), 0, CompressionType.RLE));
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void rejectsUnknownFormats() {
+		CompressionUtil.decompress(ByteBuffer.wrap(new byte[] { 0x20, 4, 0, 0, 1, 2, 3, 4 }), 0);
+	}
+	
+	/**
+	 * Decompresses the given stream from a misaligned address of buffers in both byte orders, and through a pool.
+	 * 
+	 * @param stream Compressed data
+	 * @param type The expected format
+	 * @param data The expected decompressed data
+	 */
+	private static void check(byte[] stream, CompressionType type, byte[] data) {
+		for (ByteOrder order : new ByteOrder[] { ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN }) {
+			byte[] bytes = new byte[stream.length + 0x40];
+			System.arraycopy(stream, 0, bytes, 0x20, stream.length);
+			ByteBuffer source = ByteBuffer.wrap(bytes).order(order);
+			
+			assertEquals(type, CompressionUtil.getType(source, 0x20));
+			assertEquals(data.length, CompressionUtil.getDecompLength(source, 0x20));
+			assertArrayEquals(type.toString(), data, CompressionUtil.decompress(source, 0x20));
+			
+			byte[] offset = new byte[data.length + 3];
+			int read = CompressionUtil.decompress(source, 0x20, offset, 3);
+			assertEquals(type.toString(), (stream.length + 3) & ~3, (read + 3) & ~3);
+			assertArrayEquals(data, Arrays.copyOfRange(offset, 3, offset.length));
+			
+			ByteArrayPool pool = new ByteArrayPool(1);
+			byte[] pooled = CompressionUtil.decompress(source, 0x20, pool);
+			assertArrayEquals(data, Arrays.copyOf(pooled, data.length));
+			pool.release(pooled);
+		}
+	}
+	
+	/**
+	 * 
+	 * @param random Source of the bytes
+	 * @param length The amount of bytes
+	 * @param values The amount of distinct values
+	 * @return Random data of few distinct values
+	 */
+	private static byte[] noise(Random random, int length, int values) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++)
+			data[i] = (byte) random.nextInt(values);
+		return data;
+	}
+	
+	/**
+	 * 
+	 * @param type The format
+	 * @param length The amount of decompressed bytes
+	 * @return Stream holding the 4-byte header
+	 */
+	private static ByteArrayOutputStream header(CompressionType type, int length) {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		stream.write(type.value());
+		stream.write(length);
+		stream.write(length >> 8);
+		stream.write(length >> 16);
+		return stream;
+	}
+	
+	/**
+	 * 
+	 * @param stream Stream to pad
+	 * @return The bytes of the stream, padded to a multiple of 4
+	 */
+	private static byte[] padded(ByteArrayOutputStream stream) {
+		while (stream.size() % 4 != 0)
+			stream.write(0);
+		return stream.toByteArray();
+	}
+	
+	/**
+	 * Greedy Lz11 encoder, searching the whole window for the longest match.
+	 * 
+	 * @param data Data to compress
+	 * @return Lz11 stream
+	 */
+	static byte[] lz11(byte[] data) {
+		ByteArrayOutputStream stream = header(CompressionType.LZ11, data.length);
+		ByteArrayOutputStream tokens = new ByteArrayOutputStream();
+		int flags = 0, count = 0;
+		for (int position = 0; position < data.length; ) {
+			int best = 0, distance = 0;
+			for (int from = Math.max(0, position - 0x1000); from < position; from++) {
+				int length = 0;
+				while (position + length < data.length && length < 65808 
+						&& data[from + length] == data[position + length])
+					length++;
+				if (length > best) {
+					best = length;
+					distance = position - from;
+				}
+			}
+			
+			flags <<= 1;
+			if (best >= 3) {
+				flags |= 1;
+				int d = distance - 1;
+				if (best <= 16) {
+					tokens.write(((best - 1) << 4) | (d >> 8));
+				} else if (best <= 272) {
+					tokens.write((best - 0x11) >> 4);
+					tokens.write((((best - 0x11) & 0x0F) << 4) | (d >> 8));
+				} else {
+					tokens.write(0x10 | ((best - 0x111) >> 12));
+					tokens.write((best - 0x111) >> 4);
+					tokens.write((((best - 0x111) & 0x0F) << 4) | (d >> 8));
+				}
+				tokens.write(d);
+				position += best;
+			} else {
+				tokens.write(data[position++]);
+			}
+			
+			if (++count == 8 || position == data.length) {
+				stream.write(flags << (8 - count));
+				byte[] bytes = tokens.toByteArray();
+				stream.write(bytes, 0, bytes.length);
+				tokens.reset();
+				flags = count = 0;
+			}
+		}
+		return padded(stream);
+	}
+	
+	/**
+	 * 
+	 * @param data Data to compress
+	 * @return RLE stream, with runs of 3 or more bytes
+	 */
+	static byte[] rle(byte[] data) {
+		ByteArrayOutputStream stream = header(CompressionType.RLE, data.length);
+		int literal = 0;
+		for (int position = 0; position <= data.length; ) {
+			int run = 1;
+			while (position < data.length && position + run < data.length && run < 130 
+					&& data[position + run] == data[position])
+				run++;
+			if (position == data.length || run >= 3 || position - literal == 128) {
+				if (position > literal) {
+					stream.write(position - literal - 1);
+					stream.write(data, literal, position - literal);
+				}
+				if (position == data.length)
+					break;
+				if (run >= 3) {
+					stream.write(0x80 | (run - 3));
+					stream.write(data[position]);
+					position += run;
+				}
+				literal = position;
+			} else {
+				position++;
+			}
+		}
+		return padded(stream);
+	}
+	
+	/**
+	 * Huffman encoder. The code tree is laid out breadth first, which keeps child offsets small enough for the 
+	 * node format while few distinct values are used.
+	 * 
+	 * @param data Data to compress
+	 * @param bits Bits in each value, 4 or 8
+	 * @return Huffman stream
+	 */
+	static byte[] huffman(byte[] data, int bits) {
+		int[] values = new int[data.length * 8 / bits];
+		for (int i = 0; i < values.length; i++)
+			values[i] = bits == 8 ? data[i] & 0xFF : (data[i >> 1] >> ((i & 1) * 4)) & 0x0F;
+		
+		// build the tree from the frequency of each value, always with at least two leaves
+		int[] counts = new int[1 << bits];
+		for (int value : values)
+			counts[value]++;
+		PriorityQueue<int[]> queue = new PriorityQueue<int[]>(16, 
+				(a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]));
+		int[][] children = new int[1024][];
+		int nodes = 1 << bits;
+		for (int value = 0; value < counts.length; value++) {
+			if (counts[value] > 0 || queue.size() < 2 && value >= counts.length - 2)
+				queue.add(new int[] { counts[value], value });
+		}
+		while (queue.size() > 1) {
+			int[] a = queue.poll(), b = queue.poll();
+			children[nodes] = new int[] { a[1], b[1] };
+			queue.add(new int[] { a[0] + b[0], nodes++ });
+		}
+		int root = queue.poll()[1];
+		
+		// lay out the tree breadth first: slot 0 holds the size, slot 1 the root, and each pair of children follows
+		String[] codes = new String[1 << bits];
+		byte[] table = new byte[512];
+		int free = 2;
+		ArrayDeque<int[]> pending = new ArrayDeque<int[]>(); // node, slot, code length, code
+		pending.add(new int[] { root, 1, 0, 0 });
+		while (!pending.isEmpty()) {
+			int[] entry = pending.poll();
+			int[] pair = children[entry[0]];
+			int slot = entry[1], offset = (free - (slot & ~1) - 2) >> 1;
+			if (offset > 0x3F)
+				throw new IllegalStateException("Too many values for the node format");
+			int flags = offset;
+			for (int side = 0; side < 2; side++) {
+				int child = pair[side], code = (entry[3] << 1) | side, length = entry[2] + 1;
+				if (child < (1 << bits)) {
+					flags |= side == 0 ? 0x80 : 0x40;
+					table[free + side] = (byte) child;
+					codes[child] = String.format("%" + length + "s", Integer.toBinaryString(code)).replace(' ', '0');
+				} else {
+					pending.add(new int[] { child, free + side, length, code });
+				}
+			}
+			table[slot] = (byte) flags;
+			free += 2;
+		}
+		int size = (free + 3) & ~3;
+		table[0] = (byte) (size / 2 - 1);
+		
+		ByteArrayOutputStream stream = header(bits == 8 ? CompressionType.HUFFMAN_8 : CompressionType.HUFFMAN_4, 
+				data.length);
+		stream.write(table, 0, size);
+		StringBuilder code = new StringBuilder();
+		for (int value : values)
+			code.append(codes[value]);
+		while (code.length() % 32 != 0)
+			code.append('0');
+		ByteBuffer words = ByteBuffer.allocate(code.length() / 8).order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i < code.length(); i += 32)
+			words.putInt((int) Long.parseLong(code.substring(i, i + 32), 2));
+		stream.write(words.array(), 0, words.capacity());
+		return stream.toByteArray();
+	}
+}
@@ -0,0 +1,97 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import org.junit.Test;
+
+import com.pgrvs.aphl.GbaRom;
+import com.pgrvs.aphl.GbaRomTransaction;
+
+/**
+ * Tests for {@link Crc32Util}, checked against {@link CRC32}.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class Crc32UtilTest {
+	
+	@Test
+	public void checksumsMatchAcrossChunks() {
+		byte[] data = new byte[(3 << 20) + 123];
+		new Random(25).nextBytes(data);
+		for (int length : new int[] { 0, 1, 1 << 20, (1 << 20) + 1, data.length }) {
+			assertEquals(expected(data, 0, length), Crc32Util.crc32(ByteBuffer.wrap(data, 0, length)));
+			// from the position of the buffer to its limit
+			int from = Math.min(7, length);
+			assertEquals(expected(data, from, length), Crc32Util.crc32(ByteBuffer.wrap(data, from, length - from)));
+		}
+	}
+	
+	@Test
+	public void combinedChecksumsMatchTheWhole() {
+		byte[] data = new byte[100000];
+		new Random(26).nextBytes(data);
+		int first = expected(data, 0, 40000);
+		int second = expected(data, 40000, data.length);
+		assertEquals(expected(data, 0, data.length), Crc32Util.combine(first, second, data.length - 40000));
+		assertEquals(first, Crc32Util.combine(first, 0, 0));
+	}
+	
+	@Test
+	public void romChecksumsIncludePendingWrites() {
+		byte[] data = new byte[(2 << 20) + 0x100];
+		new Random(27).nextBytes(data);
+		GbaRom rom = new GbaRom(data.clone());
+		assertEquals(expected(data, 0, data.length), Crc32Util.crc32(rom));
+		
+		GbaRomTransaction transaction = rom.beginTransaction();
+		rom.putInt(0x100000 - 2, 0x12345678); // across the edge of a chunk
+		data[0x100000 - 2] = 0x78;
+		data[0x100000 - 1] = 0x56;
+		data[0x100000] = 0x34;
+		data[0x100000 + 1] = 0x12;
+		assertEquals(expected(data, 0, data.length), Crc32Util.crc32(rom));
+		transaction.rollback();
+	}
+	
+	/**
+	 * 
+	 * @param data Data to check
+	 * @param start The first index to check
+	 * @param end The index after the last to check
+	 * @return The checksum given by {@link CRC32}
+	 */
+	private static int expected(byte[] data, int start, int end) {
+		CRC32 crc = new CRC32();
+		if (start < end)
+			crc.update(data, start, end - start);
+		return (int) crc.getValue();
+	}
+}
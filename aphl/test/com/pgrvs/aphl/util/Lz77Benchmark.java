@@ -0,0 +1,148 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.util;
+
+import java.nio.ByteBuffer;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+
+import com.pgrvs.aphl.GbaRom;
+import com.pgrvs.aphl.GbaRomMode;
+
+/**
+ * <p>Benchmark of Lz77 decompression over every compressed asset of a ROM. Run with the path of a ROM file, or 
+ * without arguments to use a 16 MB ROM of generated sprite-like assets.</p>
+ * 
+ * <p>Assets are found with {@link CompressedBlockScanner}, and each one is first checked against 
+ * {@link BaselineLz77}. Blocks that the baseline cannot decode (uncompressed data that only looks like Lz77) are 
+ * skipped. Each decoder then decompresses every asset several times, and the best pass is reported.</p>
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class Lz77Benchmark {
+	
+	private static final int WARMUP_PASSES = 3;
+	private static final int PASSES = 10;
+	
+	/** Keeps decompressed data alive, so that no pass can be optimized away */
+	private static long sink;
+	
+	public static void main(String[] args) {
+		GbaRom rom = args.length > 0 ? new GbaRom(args[0], GbaRomMode.READ_ONLY) : generate(16 << 20);
+		final ByteBuffer source = rom.getByteView();
+		
+		CompressedBlockScanner scanner = new CompressedBlockScanner();
+		scanner.setTypes(EnumSet.of(CompressionType.LZ77));
+		scanner.setSkipNested(true);
+		List<CompressedBlock> found = scanner.scan(rom);
+		
+		final int[] blocks = new int[found.size()];
+		int count = 0, skipped = 0;
+		long bytes = 0;
+		for (CompressedBlock block : found) {
+			int[] expected;
+			try {
+				expected = BaselineLz77.decompress(source, block.getAddress());
+			} catch (RuntimeException e) {
+				skipped++;
+				continue;
+			}
+			byte[] data = Lz77CompressionUtil.decompress(source, block.getAddress());
+			for (int i = 0; i < expected.length; i++) {
+				if ((data[i] & 0xFF) != expected[i])
+					throw new IllegalStateException("Output differs from the baseline at " + block);
+			}
+			blocks[count++] = block.getAddress();
+			bytes += expected.length;
+		}
+		System.out.printf("%d assets (%d skipped), %.1f MB decompressed, all identical to the baseline%n", count, 
+				skipped, bytes / 1048576.0);
+		
+		final int assets = count;
+		final ByteArrayPool pool = new ByteArrayPool(ByteArrayPool.DEFAULT_ARRAYS_PER_SIZE);
+		report("baseline (int[], byte at a time)", bytes, new Runnable() {
+			public void run() {
+				for (int i = 0; i < assets; i++)
+					sink += BaselineLz77.decompress(source, blocks[i]).length;
+			}
+		});
+		report("decompress(ByteBuffer, int)", bytes, new Runnable() {
+			public void run() {
+				for (int i = 0; i < assets; i++)
+					sink += Lz77CompressionUtil.decompress(source, blocks[i]).length;
+			}
+		});
+		report("decompress(ByteBuffer, int, ByteArrayPool)", bytes, new Runnable() {
+			public void run() {
+				for (int i = 0; i < assets; i++) {
+					byte[] data = Lz77CompressionUtil.decompress(source, blocks[i], pool);
+					sink += data[0];
+					pool.release(data);
+				}
+			}
+		});
+		System.out.println(sink == 42 ? "" : "done");
+	}
+	
+	/**
+	 * Runs the given pass until warmed up, and prints the time of the best pass.
+	 * 
+	 * @param name Name of the decoder
+	 * @param bytes The amount of bytes decompressed by each pass
+	 * @param pass Decompresses every asset once
+	 */
+	private static void report(String name, long bytes, Runnable pass) {
+		for (int i = 0; i < WARMUP_PASSES; i++)
+			pass.run();
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < PASSES; i++) {
+			long start = System.nanoTime();
+			pass.run();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.printf("%-44s %8.2f ms %8.1f MB/s%n", name, best / 1e6, bytes / 1048576.0 / (best / 1e9));
+	}
+	
+	/**
+	 * 
+	 * @param length The size of the ROM in bytes
+	 * @return ROM of random bytes with compressed sprite-like assets placed at aligned addresses
+	 */
+	private static GbaRom generate(int length) {
+		Random random = new Random(11);
+		byte[] bytes = new byte[length];
+		random.nextBytes(bytes);
+		for (int address = 0; ; ) {
+			byte[] asset = Lz77CompressionUtil.compress(Lz77CompressionUtilTest.spriteLike(random, 
+					0x200 << random.nextInt(7)));
+			if (address + asset.length > length)
+				break;
+			System.arraycopy(asset, 0, bytes, address, asset.length);
+			address += asset.length + (random.nextInt(64) << 2);
+		}
+		return new GbaRom(bytes, GbaRomMode.READ_ONLY);
+	}
+}
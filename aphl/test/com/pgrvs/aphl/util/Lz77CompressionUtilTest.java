@@ -0,0 +1,231 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.pgrvs.aphl.GbaRom;
+
+/**
+ * Checks every decompress() method of {@link Lz77CompressionUtil} against {@link BaselineLz77}, and round-trips 
+ * the compressor at every level.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class Lz77CompressionUtilTest {
+	
+	@Test
+	public void decompressMatchesBaseline() {
+		Random random = new Random(5);
+		ByteArrayPool pool = new ByteArrayPool(ByteArrayPool.DEFAULT_ARRAYS_PER_SIZE);
+		for (int n = 0; n < 500; n++) {
+			int length = n < 10 ? n + 1 : random.nextInt(n < 450 ? 0x2000 : 0x20000) + 1;
+			byte[] stream = randomStream(random, length, n % 50 == 0);
+			int address = random.nextInt(0x100) * 4;
+			ByteBuffer source = place(stream, address, n % 2 == 0 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+			
+			int[] expected = BaselineLz77.decompress(source, address);
+			assertEquals(length, expected.length);
+			assertEquals(length, Lz77CompressionUtil.getDecompLength(source, address));
+			
+			byte[] data = Lz77CompressionUtil.decompress(source, address);
+			assertArrayEquals(expected, unsigned(data, length));
+			
+			byte[] offset = new byte[length + 7];
+			assertEquals(stream.length, Lz77CompressionUtil.decompress(source, address, offset, 7));
+			assertArrayEquals(data, Arrays.copyOfRange(offset, 7, length + 7));
+			
+			ByteBuffer direct = ByteBuffer.allocateDirect(length + 3);
+			direct.position(3);
+			assertEquals(stream.length, Lz77CompressionUtil.decompress(source, address, direct));
+			assertEquals(length + 3, direct.position());
+			direct.position(3);
+			byte[] copied = new byte[length];
+			direct.get(copied);
+			assertArrayEquals(data, copied);
+			
+			byte[] pooled = Lz77CompressionUtil.decompress(source, address, pool);
+			assertArrayEquals(data, Arrays.copyOf(pooled, length));
+			pool.release(pooled);
+			
+			if (n % 10 == 0) {
+				GbaRom rom = new GbaRom(Arrays.copyOf(source.array(), source.capacity() + 0x200));
+				assertArrayEquals(expected, Lz77CompressionUtil.decompress(rom, address));
+			}
+		}
+	}
+	
+	@Test
+	public void compressRoundTripsAtEveryLevel() {
+		Random random = new Random(6);
+		byte[][] inputs = { new byte[0x4000], new byte[0x4000], spriteLike(random, 0x10000), new byte[1] };
+		random.nextBytes(inputs[1]);
+		for (byte[] input : inputs) {
+			for (CompressionLevel level : CompressionLevel.values()) {
+				for (boolean vramSafe : new boolean[] { true, false }) {
+					byte[] stream = Lz77CompressionUtil.compress(input, 0, input.length, level, vramSafe);
+					assertEquals(0, stream.length & 3);
+					ByteBuffer source = ByteBuffer.wrap(stream).order(ByteOrder.LITTLE_ENDIAN);
+					assertArrayEquals(input, Lz77CompressionUtil.decompress(source, 0));
+					// the baseline reads on to the end of the last flag byte, so give it the padding a ROM would have
+					assertArrayEquals(unsigned(input, input.length), 
+							BaselineLz77.decompress(ByteBuffer.wrap(Arrays.copyOf(stream, stream.length + 16)), 0));
+					if (vramSafe)
+						assertEquals(-1, findDistanceOne(stream));
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void compressesPartOfAnArray() {
+		byte[] input = spriteLike(new Random(7), 0x3000);
+		byte[] stream = Lz77CompressionUtil.compress(input, 0x1000, 0x1000, CompressionLevel.BEST, true);
+		assertArrayEquals(Arrays.copyOfRange(input, 0x1000, 0x2000), 
+				Lz77CompressionUtil.decompress(ByteBuffer.wrap(stream), 0));
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void rejectsOtherOpcodes() {
+		Lz77CompressionUtil.decompress(ByteBuffer.wrap(new byte[] { 0x11, 4, 0, 0, 0, 1, 2, 3, 4 }), 0);
+	}
+	
+	/**
+	 * Builds a valid Lz77 stream of random literals and back-references, including overlapping references and 
+	 * references from a distance of 1, which the compressor does not always emit.
+	 * 
+	 * @param random Source of the tokens
+	 * @param length The amount of decompressed bytes
+	 * @param extended Whether to write the 8-byte header used for long data
+	 * @return The stream, without padding
+	 */
+	static byte[] randomStream(Random random, int length, boolean extended) {
+		byte[] stream = new byte[8 + length * 2 + (length >> 3) + 1];
+		int write = 0;
+		stream[write++] = 0x10;
+		if (extended) {
+			write += 3;
+			for (int i = 0; i < 4; i++)
+				stream[write++] = (byte) (length >> (i * 8));
+		} else {
+			for (int i = 0; i < 3; i++)
+				stream[write++] = (byte) (length >> (i * 8));
+		}
+		
+		int position = 0, flagIndex = 0, flagBit = 0;
+		while (position < length) {
+			if (flagBit == 0) {
+				flagIndex = write++;
+				flagBit = 0x80;
+			}
+			int count = 3 + random.nextInt(16);
+			if (position > 0 && count <= length - position && random.nextInt(3) != 0) {
+				int distance = 1 + random.nextInt(Math.min(position, random.nextBoolean() ? 16 : 0x1000));
+				stream[flagIndex] |= flagBit;
+				stream[write++] = (byte) (((count - 3) << 4) | ((distance - 1) >> 8));
+				stream[write++] = (byte) (distance - 1);
+				position += count;
+			} else {
+				stream[write++] = (byte) random.nextInt(8);
+				position++;
+			}
+			flagBit >>= 1;
+		}
+		return Arrays.copyOf(stream, write);
+	}
+	
+	/**
+	 * 
+	 * @param random Source of the pixels
+	 * @param length The amount of bytes
+	 * @return Data with runs and repeats, like 4bpp sprite tiles
+	 */
+	static byte[] spriteLike(Random random, int length) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; ) {
+			int run = Math.min(length - i, 1 + random.nextInt(12));
+			if (i >= 32 && random.nextInt(4) == 0)
+				System.arraycopy(data, i - 32, data, i, run);
+			else
+				Arrays.fill(data, i, i + run, (byte) (random.nextInt(4) * 0x11));
+			i += run;
+		}
+		return data;
+	}
+	
+	/**
+	 * 
+	 * @param stream Compressed data
+	 * @param address Where to place it
+	 * @param order Order of the returned buffer
+	 * @return Buffer holding the stream at the given address, followed by zero padding
+	 */
+	private static ByteBuffer place(byte[] stream, int address, ByteOrder order) {
+		byte[] bytes = new byte[address + stream.length + 16];
+		System.arraycopy(stream, 0, bytes, address, stream.length);
+		return ByteBuffer.wrap(bytes).order(order);
+	}
+	
+	private static int[] unsigned(byte[] data, int length) {
+		int[] values = new int[length];
+		for (int i = 0; i < length; i++)
+			values[i] = data[i] & 0xFF;
+		return values;
+	}
+	
+	/**
+	 * 
+	 * @param stream Lz77 stream with a 4-byte header
+	 * @return Index of the first back-reference from a distance of 1, or -1 if there is none
+	 */
+	private static int findDistanceOne(byte[] stream) {
+		int length = (stream[1] & 0xFF) | (stream[2] & 0xFF) << 8 | (stream[3] & 0xFF) << 16;
+		int read = 4, position = 0;
+		while (position < length) {
+			int flags = stream[read++];
+			for (int i = 0; i < 8 && position < length; i++, flags <<= 1) {
+				if ((flags & 0x80) != 0) {
+					int value = stream[read] & 0xFF;
+					if ((((value & 0x0F) << 8) | (stream[read + 1] & 0xFF)) == 0)
+						return read;
+					position += (value >> 4) + 3;
+					read += 2;
+				} else {
+					read++;
+					position++;
+				}
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,126 @@
+/****************************************************************************\ 
+ *                                                                           * 
+ *                     ADVANCED POKMON HACKING LIBRARY                      * 
+ *                                                                           * 
+ *     A Java library for helping developers modify Pokemon game data        * 
+ *                                                                           * 
+ *                Copyright (C) 2017  Phillip Groves                         * 
+ *                                                                           * 
+ * This program is free software; you can redistribute it and/or modify it   * 
+ * under the terms of the GNU General Public License as published by the     * 
+ * Free Software Foundation; either version 2 of the License, or (at your    * 
+ * option) any later version.                                                * 
+ *                                                                           * 
+ * This program is distributed in the hope that it will be useful, but       * 
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANT-      * 
+ * ABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the LICENSE file for    * 
+ * more details.                                                             * 
+ *                                                                           * 
+ * You should have received a copy of the GNU General Public License along   * 
+ * with this program; if not, write to the Free Software Foundation, Inc.,   * 
+ * 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.             * 
+ /****************************************************************************/
+
+package com.pgrvs.aphl.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.pgrvs.aphl.GbaRom;
+
+/**
+ * Round trips the character set through {@link PoketextCodec}.
+ * 
+ * @author Phillip Groves
+ *
+ */
+public class PoketextCodecTest {
+	
+	private PoketextCodec codec;
+	
+	@Before
+	public void setUp() throws IOException {
+		try (Reader reader = new InputStreamReader(new FileInputStream("src/resources/character-set.ini"), 
+				StandardCharsets.UTF_8)) {
+			codec = PoketextCodec.load(reader);
+		}
+	}
+	
+	@Test
+	public void everyByteRoundTrips() {
+		for (int value = 0; value < 256; value++) {
+			String token = codec.getToken(value);
+			byte[] encoded = codec.encode(token);
+			// "'" is listed at both 0xB3 and 0xB4, and encodes to the later
+			int expected = value == 0xB3 ? 0xB4 : value;
+			assertArrayEquals(token, new byte[] { (byte) expected }, encoded);
+		}
+	}
+	
+	@Test
+	public void duplicateTokensEncodeToTheLaterValue() {
+		assertEquals("'", codec.getToken(0xB3));
+		assertEquals("'", codec.getToken(0xB4));
+		assertArrayEquals(new byte[] { (byte) 0xB4 }, codec.encode("'"));
+		
+		Map<Integer, String> tokens = new HashMap<Integer, String>();
+		tokens.put(0x10, "x");
+		tokens.put(0x20, "x");
+		assertArrayEquals(new byte[] { 0x20 }, new PoketextCodec(tokens).encode("x"));
+	}
+	
+	@Test
+	public void textRoundTrips() {
+		String text = "PIKACHU used THUNDERBOLT!|br|It's super effective... \u00C9t\u00E9 [Lv]5|end|";
+		byte[] encoded = codec.encode(text);
+		assertEquals(0xFF, encoded[encoded.length - 1] & 0xFF);
+		assertEquals(0xB0, encoded[text.indexOf("...") - 3] & 0xFF); // "|br|" is one byte
+		
+		StringBuilder decoded = new StringBuilder();
+		assertEquals(encoded.length, codec.decode(ByteBuffer.wrap(encoded), 0, encoded.length, decoded));
+		assertEquals(text, decoded.toString());
+		
+		decoded.setLength(0);
+		assertEquals(encoded.length, codec.decodeUntilEnd(ByteBuffer.wrap(encoded), 0, decoded));
+		assertEquals(text.substring(0, text.length() - "|end|".length()), decoded.toString());
+	}
+	
+	@Test
+	public void unmappedBytesRoundTripAsHex() {
+		assertEquals("|0A|", codec.getToken(0x0A));
+		assertArrayEquals(new byte[] { (byte) 0xBB, 0x0A, (byte) 0xBC }, codec.encode("A|0A|B"));
+	}
+	
+	@Test
+	public void unencodableTextIsRefused() {
+		try {
+			codec.encode("A\u2603B");
+			fail("Encoded a character outside of the character set");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		
+		// the baseline skipped such characters; strings are now refused whole
+		GbaRom rom = new GbaRom(new byte[0x100]);
+		try {
+			rom.putString(0x10, "AB\u2603");
+			fail("Wrote a character outside of the character set");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertEquals(0, rom.getByte(0x10));
+	}
+}